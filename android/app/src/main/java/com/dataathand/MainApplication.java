@@ -6,7 +6,12 @@ import android.util.Log;
 
 import com.bugsnag.android.Bugsnag;
 import com.bugsnag.android.Configuration;
+import com.dataathand.fitbit.FitbitLocalCachePackage;
+import com.dataathand.fitbit.FitbitSeriesStreamPackage;
+import com.dataathand.logging.LogWriterPackage;
+import com.dataathand.speech.SpeechMetricsReporter;
 import com.dataathand.speech.SpeechToTextPackage;
+import com.dataathand.time.DateSequencePackage;
 import com.facebook.react.PackageList;
 import com.facebook.react.ReactApplication;
 import com.facebook.react.ReactInstanceManager;
@@ -33,6 +38,10 @@ public class MainApplication extends Application implements ReactApplication {
                     // Packages that cannot be autolinked yet can be added manually here, for example:
                     // packages.add(new MyReactNativePackage());
                     packages.add(new SpeechToTextPackage());
+                    packages.add(new FitbitLocalCachePackage());
+                    packages.add(new FitbitSeriesStreamPackage());
+                    packages.add(new DateSequencePackage());
+                    packages.add(new LogWriterPackage());
                     return packages;
                 }
 
@@ -55,6 +64,7 @@ public class MainApplication extends Application implements ReactApplication {
             Log.d("Main", "Initialize BugSnag");
             Configuration bugsnagConfig = new Configuration(BuildConfig.BUGSNAG_API_KEY);
             Bugsnag.start(this, bugsnagConfig);
+            SpeechMetricsReporter.start();
         }
 
         SoLoader.init(this, /* native exopackage */ false);
@@ -0,0 +1,123 @@
+package com.dataathand.fitbit;
+
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+//SQL for the aggregations in src/measure/service/fitbit/sqlite/database.ts.
+//Table, column and time key names end up in the statement text, so they are checked against the cache schema first.
+//Arguments are bound as strings by rawQuery(), hence the casts: the season CASE expression has no numeric affinity.
+final class AggregationQueries {
+
+    static final String TIME_KEY_DAY_OF_WEEK = "dayOfWeek";
+    static final String TIME_KEY_MONTH = "month";
+    static final String TIME_KEY_SEASON = "season";
+    static final String TIME_KEY_YEAR = "year";
+
+    private static final String SEASON_CASE_CLAUSE = "CASE " +
+            "WHEN month BETWEEN 3 AND 5 THEN 0 " +
+            "WHEN month BETWEEN 6 AND 8 THEN 1 " +
+            "WHEN month BETWEEN 9 AND 11 THEN 2 " +
+            "WHEN month = 12 OR month = 1 OR month = 2 THEN 3 " +
+            "END";
+
+    private static final Map<String, Set<String>> AGGREGATABLE_COLUMNS;
+
+    static {
+        final Map<String, Set<String>> columns = new HashMap<>();
+        columns.put("StepCount", setOf("value"));
+        columns.put("RestingHeartRate", setOf("value"));
+        columns.put("WeightTrend", setOf("value"));
+        columns.put("WeightLog", setOf("value"));
+        columns.put("SleepLog", setOf("lengthInSeconds", "bedTimeDiffSeconds", "wakeTimeDiffSeconds"));
+        AGGREGATABLE_COLUMNS = Collections.unmodifiableMap(columns);
+    }
+
+    private AggregationQueries() {
+    }
+
+    static void checkTable(String tableName) {
+        if (!AGGREGATABLE_COLUMNS.containsKey(tableName)) {
+            throw new IllegalArgumentException("Unsupported table: " + tableName);
+        }
+    }
+
+    static void checkColumn(String tableName, String columnName) {
+        checkTable(tableName);
+        if (!AGGREGATABLE_COLUMNS.get(tableName).contains(columnName)) {
+            throw new IllegalArgumentException("Unsupported column: " + tableName + "." + columnName);
+        }
+    }
+
+    static String timeKeyExpression(String timeKey) {
+        switch (timeKey) {
+            case TIME_KEY_DAY_OF_WEEK:
+                return "dayOfWeek";
+            case TIME_KEY_MONTH:
+                return "month";
+            case TIME_KEY_SEASON:
+                return SEASON_CASE_CLAUSE;
+            case TIME_KEY_YEAR:
+                return "year";
+            default:
+                throw new IllegalArgumentException("Unsupported time key: " + timeKey);
+        }
+    }
+
+    /**
+     * MIN, MAX, SUM, AVG and COUNT of one column, in that order, optionally preceded by the group key.
+     * The first two arguments are the numbered date range, followed by the filter key if one is given.
+     */
+    static String makeValueQuery(String tableName, String columnName,
+                                 @Nullable String groupBy, @Nullable String filterBy) {
+        checkColumn(tableName, columnName);
+        return makeQuery(tableName, "MIN(" + columnName + "), MAX(" + columnName + "), SUM(" + columnName + "), AVG(" + columnName + "), COUNT(" + columnName + ")",
+                groupBy, filterBy);
+    }
+
+    /**
+     * AVG, MIN and MAX of two columns followed by the COUNT of the first, optionally preceded by the group key.
+     */
+    static String makeRangeQuery(String tableName, String columnA, String columnB,
+                                 @Nullable String groupBy, @Nullable String filterBy) {
+        checkColumn(tableName, columnA);
+        checkColumn(tableName, columnB);
+        return makeQuery(tableName,
+                "AVG(" + columnA + "), MIN(" + columnA + "), MAX(" + columnA + "), " +
+                        "AVG(" + columnB + "), MIN(" + columnB + "), MAX(" + columnB + "), COUNT(" + columnA + ")",
+                groupBy, filterBy);
+    }
+
+    //Every value of the column, including NULLs, for the statistics that SummaryStatistics selects in memory.
+    static String makeColumnQuery(String tableName, String columnName) {
+        checkColumn(tableName, columnName);
+        return "SELECT " + columnName + " FROM " + tableName;
+    }
+
+    private static String makeQuery(String tableName, String aggregations,
+                                    @Nullable String groupBy, @Nullable String filterBy) {
+        final StringBuilder query = new StringBuilder("SELECT ");
+        if (groupBy != null) {
+            query.append(timeKeyExpression(groupBy)).append(" AS timeKey, ");
+        }
+        query.append(aggregations)
+                .append(" FROM ").append(tableName)
+                .append(" WHERE numberedDate BETWEEN CAST(? AS INTEGER) AND CAST(? AS INTEGER)");
+        if (filterBy != null) {
+            query.append(" AND ").append(timeKeyExpression(filterBy)).append(" = CAST(? AS INTEGER)");
+        }
+        if (groupBy != null) {
+            query.append(" GROUP BY timeKey");
+        }
+        return query.toString();
+    }
+
+    private static Set<String> setOf(String... values) {
+        return Collections.unmodifiableSet(new HashSet<>(Arrays.asList(values)));
+    }
+}
@@ -0,0 +1,185 @@
+package com.dataathand.fitbit;
+
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+//Results of the range aggregations, kept so that views the user toggles back to are not queried again.
+//Entries are evicted least recently used first once their estimated size exceeds the budget,
+//and dropped as soon as rows of their table are written within their date range. Thread-safe.
+class AggregationResultCache {
+
+    //Rough heap overhead of an entry beyond its arrays: key, result, map node and array headers.
+    private static final long ENTRY_OVERHEAD_BYTES = 256;
+
+    static final class Key {
+        final String kind;
+        final String tableName;
+        final String columns;
+        final int startDate;
+        final int endDate;
+        @Nullable
+        final String groupBy;
+        @Nullable
+        final String filterBy;
+        final int filterKey;
+
+        /**
+         * @param kind    the aggregation, e.g. values or ranges, or a downsampling at a zoom level.
+         * @param columns the aggregated columns, joined.
+         */
+        Key(String kind, String tableName, String columns, int startDate, int endDate,
+            @Nullable String groupBy, @Nullable String filterBy, int filterKey) {
+            this.kind = kind;
+            this.tableName = tableName;
+            this.columns = columns;
+            this.startDate = startDate;
+            this.endDate = endDate;
+            this.groupBy = groupBy;
+            this.filterBy = filterBy;
+            this.filterKey = filterBy != null ? filterKey : 0;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            } else if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return startDate == other.startDate && endDate == other.endDate && filterKey == other.filterKey
+                    && kind.equals(other.kind) && tableName.equals(other.tableName) && columns.equals(other.columns)
+                    && Objects.equals(groupBy, other.groupBy) && Objects.equals(filterBy, other.filterBy);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, tableName, columns, startDate, endDate, groupBy, filterBy, filterKey);
+        }
+    }
+
+    //Query results column by column. SQL NULL is stored as NaN, which SQLite never returns for an aggregate.
+    static final class Result {
+        final String[] columnNames;
+        final double[][] columns;
+        final int rowCount;
+
+        Result(String[] columnNames, double[][] columns, int rowCount) {
+            this.columnNames = columnNames;
+            this.columns = columns;
+            this.rowCount = rowCount;
+        }
+
+        long estimateBytes() {
+            return ENTRY_OVERHEAD_BYTES + (long) columns.length * (16 + 8L * rowCount);
+        }
+    }
+
+    static final class Stats {
+        long hits;
+        long misses;
+        long evictions;
+        long invalidations;
+        int entries;
+        long bytes;
+        long maxBytes;
+    }
+
+    private final long maxBytes;
+
+    //In access order, least recently used first.
+    private final LinkedHashMap<Key, Result> entries = new LinkedHashMap<>(16, 0.75f, true);
+    //Bumped by every invalidation. Tables remember the generation they were last written in,
+    //so that results read before a write are not stored after it.
+    private long generation = 0;
+    private final Map<String, Long> tableWrittenGenerations = new HashMap<>();
+    private long clearedGeneration = 0;
+
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long invalidations = 0;
+
+    AggregationResultCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    @Nullable
+    synchronized Result get(Key key) {
+        final Result result = entries.get(key);
+        if (result != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return result;
+    }
+
+    //Take this before querying and pass it to put().
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    //Does nothing if the table was written since the generation was taken, or if the result alone exceeds the budget.
+    synchronized void put(Key key, Result result, long queriedGeneration) {
+        final Long writtenGeneration = tableWrittenGenerations.get(key.tableName);
+        if (queriedGeneration < clearedGeneration || (writtenGeneration != null && queriedGeneration < writtenGeneration)
+                || result.estimateBytes() > maxBytes) {
+            return;
+        }
+
+        final Result previous = entries.put(key, result);
+        if (previous != null) {
+            bytes -= previous.estimateBytes();
+        }
+        bytes += result.estimateBytes();
+
+        final Iterator<Result> eldest = entries.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().estimateBytes();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    //Drops the results of the table whose range overlaps the written one. Dates are numbered dates, both inclusive.
+    synchronized void invalidate(String tableName, int startDate, int endDate) {
+        tableWrittenGenerations.put(tableName, ++generation);
+
+        final Iterator<Map.Entry<Key, Result>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<Key, Result> entry = iterator.next();
+            final Key key = entry.getKey();
+            if (key.tableName.equals(tableName) && key.startDate <= endDate && startDate <= key.endDate) {
+                bytes -= entry.getValue().estimateBytes();
+                iterator.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    //For when the database is closed or deleted. The statistics are kept.
+    synchronized void clear() {
+        clearedGeneration = ++generation;
+        entries.clear();
+        bytes = 0;
+    }
+
+    synchronized Stats getStats() {
+        final Stats stats = new Stats();
+        stats.hits = hits;
+        stats.misses = misses;
+        stats.evictions = evictions;
+        stats.invalidations = invalidations;
+        stats.entries = entries.size();
+        stats.bytes = bytes;
+        stats.maxBytes = maxBytes;
+        return stats;
+    }
+}
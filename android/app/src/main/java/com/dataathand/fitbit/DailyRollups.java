@@ -0,0 +1,240 @@
+package com.dataathand.fitbit;
+
+import androidx.annotation.Nullable;
+
+import com.dataathand.time.NumberedDates;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+//Periods, cells and query plans of the rollups that RollupMaintainer keeps for the daily summary tables.
+//A cell holds the count, sum, min and max of one column over a period. Weeks start on Sunday and hold every day once,
+//so they have a single cell. Months and years have one cell per day of week, so that day-of-week cycles can use them.
+final class DailyRollups {
+
+    static final int LEVEL_WEEK = 0;
+    static final int LEVEL_MONTH = 1;
+    static final int LEVEL_YEAR = 2;
+
+    static final int[] LEVELS = {LEVEL_WEEK, LEVEL_MONTH, LEVEL_YEAR};
+
+    //The day of week of week cells.
+    static final int ALL_DAYS = -1;
+
+    private DailyRollups() {
+    }
+
+    static final class Cell {
+        long n = 0;
+        double sum = 0;
+        double min = Double.NaN;
+        double max = Double.NaN;
+
+        Cell() {
+        }
+
+        Cell(long n, double sum, double min, double max) {
+            this.n = n;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+        }
+
+        void add(double value) {
+            n++;
+            sum += value;
+            min = n == 1 ? value : Math.min(min, value);
+            max = n == 1 ? value : Math.max(max, value);
+        }
+
+        void add(Cell other) {
+            if (other.n == 0) {
+                return;
+            }
+            min = n == 0 ? other.min : Math.min(min, other.min);
+            max = n == 0 ? other.max : Math.max(max, other.max);
+            n += other.n;
+            sum += other.sum;
+        }
+    }
+
+    static int getPeriodStart(int level, int numberedDate) {
+        switch (level) {
+            case LEVEL_WEEK: {
+                final LocalDate date = NumberedDates.toLocalDate(numberedDate);
+                return NumberedDates.fromLocalDate(date.minusDays(NumberedDates.getDayOfWeek(date)));
+            }
+            case LEVEL_MONTH:
+                return numberedDate / 100 * 100 + 1;
+            case LEVEL_YEAR:
+                return numberedDate / 10000 * 10000 + 101;
+            default:
+                throw new IllegalArgumentException("Unknown level: " + level);
+        }
+    }
+
+    static int getPeriodEnd(int level, int periodStart) {
+        final LocalDate start = NumberedDates.toLocalDate(periodStart);
+        switch (level) {
+            case LEVEL_WEEK:
+                return NumberedDates.fromLocalDate(start.plusDays(6));
+            case LEVEL_MONTH:
+                return NumberedDates.fromLocalDate(start.plusMonths(1).minusDays(1));
+            case LEVEL_YEAR:
+                return NumberedDates.fromLocalDate(start.plusYears(1).minusDays(1));
+            default:
+                throw new IllegalArgumentException("Unknown level: " + level);
+        }
+    }
+
+    //Packs level, period start and day of week into one map key.
+    static long makeCellKey(int level, int periodStart, int dayOfWeek) {
+        return ((long) level << 40) | ((long) periodStart << 4) | (dayOfWeek + 1);
+    }
+
+    static int getLevelOfKey(long key) {
+        return (int) (key >>> 40);
+    }
+
+    static int getPeriodStartOfKey(long key) {
+        return (int) ((key >>> 4) & 0xFFFFFFFFL);
+    }
+
+    static int getDayOfWeekOfKey(long key) {
+        return (int) (key & 0xF) - 1;
+    }
+
+    //Adds a day to its week, month and year cells.
+    static void addDay(Map<Long, Cell> cells, int numberedDate, double value) {
+        final int dayOfWeek = NumberedDates.getDayOfWeek(numberedDate);
+        for (int level : LEVELS) {
+            final long key = makeCellKey(level, getPeriodStart(level, numberedDate), level == LEVEL_WEEK ? ALL_DAYS : dayOfWeek);
+            Cell cell = cells.get(key);
+            if (cell == null) {
+                cell = new Cell();
+                cells.put(key, cell);
+            }
+            cell.add(value);
+        }
+    }
+
+    //Same as the SEASON_CASE_CLAUSE of AggregationQueries.
+    static int getSeason(int month) {
+        if (month >= 3 && month <= 5) {
+            return 0;
+        } else if (month >= 6 && month <= 8) {
+            return 1;
+        } else if (month >= 9 && month <= 11) {
+            return 2;
+        } else {
+            return 3;
+        }
+    }
+
+    /**
+     * The value of a time key for a cell, or for a raw row when the period is the day itself.
+     * Only called for levels the plan allows for the key, i.e. every day of the cell shares the value.
+     */
+    static int getTimeKey(String timeKey, int periodStart, int dayOfWeek) {
+        switch (timeKey) {
+            case AggregationQueries.TIME_KEY_DAY_OF_WEEK:
+                return dayOfWeek;
+            case AggregationQueries.TIME_KEY_MONTH:
+                return NumberedDates.getMonth(periodStart);
+            case AggregationQueries.TIME_KEY_SEASON:
+                return getSeason(NumberedDates.getMonth(periodStart));
+            case AggregationQueries.TIME_KEY_YEAR:
+                return NumberedDates.getYear(periodStart);
+            default:
+                throw new IllegalArgumentException("Unsupported time key: " + timeKey);
+        }
+    }
+
+    //A run of consecutive periods of one level, or of raw days when the level is null.
+    static final class Segment {
+        @Nullable
+        final Integer level;
+        final int startDate;
+        final int endDate;
+
+        Segment(@Nullable Integer level, int startDate, int endDate) {
+            this.level = level;
+            this.startDate = startDate;
+            this.endDate = endDate;
+        }
+
+        @Override
+        public String toString() {
+            return (level == null ? "day" : level == LEVEL_WEEK ? "week" : level == LEVEL_MONTH ? "month" : "year")
+                    + " " + startDate + "-" + endDate;
+        }
+    }
+
+    /**
+     * Covers the range with as few cells as the time keys allow: whole years, then whole months,
+     * then whole weeks within what is left of a month, and raw days for the rest.
+     * Years cannot tell months or seasons apart, and weeks cannot tell days of week apart.
+     * For rollup segments, the dates are the starts of the first and the last period.
+     */
+    static List<Segment> plan(int startDate, int endDate, @Nullable String groupBy, @Nullable String filterBy) {
+        if (startDate > endDate) {
+            return Collections.emptyList();
+        }
+
+        final boolean isYearUsable = !needsKey(groupBy, filterBy, AggregationQueries.TIME_KEY_MONTH)
+                && !needsKey(groupBy, filterBy, AggregationQueries.TIME_KEY_SEASON);
+        final boolean isWeekUsable = !needsKey(groupBy, filterBy, AggregationQueries.TIME_KEY_DAY_OF_WEEK);
+
+        final List<Segment> segments = new ArrayList<>();
+        final LocalDate end = NumberedDates.toLocalDate(endDate);
+        LocalDate cursor = NumberedDates.toLocalDate(startDate);
+        while (!cursor.isAfter(end)) {
+            final LocalDate yearEnd = cursor.withDayOfYear(cursor.lengthOfYear());
+            final LocalDate monthEnd = cursor.withDayOfMonth(cursor.lengthOfMonth());
+            if (isYearUsable && cursor.getDayOfYear() == 1 && !yearEnd.isAfter(end)) {
+                append(segments, LEVEL_YEAR, cursor);
+                cursor = yearEnd.plusDays(1);
+            } else if (cursor.getDayOfMonth() == 1 && !monthEnd.isAfter(end)) {
+                append(segments, LEVEL_MONTH, cursor);
+                cursor = monthEnd.plusDays(1);
+            } else {
+                final LocalDate edgeEnd = monthEnd.isAfter(end) ? end : monthEnd;
+                while (!cursor.isAfter(edgeEnd)) {
+                    final LocalDate weekEnd = cursor.plusDays(6);
+                    if (isWeekUsable && NumberedDates.getDayOfWeek(cursor) == 0 && !weekEnd.isAfter(edgeEnd)) {
+                        append(segments, LEVEL_WEEK, cursor);
+                        cursor = weekEnd.plusDays(1);
+                    } else {
+                        append(segments, null, cursor);
+                        cursor = cursor.plusDays(1);
+                    }
+                }
+            }
+        }
+        return segments;
+    }
+
+    private static boolean needsKey(@Nullable String groupBy, @Nullable String filterBy, String timeKey) {
+        return timeKey.equals(groupBy) || timeKey.equals(filterBy);
+    }
+
+    //Extends the last segment if it is of the same level and ends right before the period.
+    private static void append(List<Segment> segments, @Nullable Integer level, LocalDate periodStart) {
+        final int start = NumberedDates.fromLocalDate(periodStart);
+        if (!segments.isEmpty()) {
+            final Segment last = segments.get(segments.size() - 1);
+            final boolean isSameLevel = level == null ? last.level == null : level.equals(last.level);
+            if (isSameLevel) {
+                final int lastEnd = level == null ? last.endDate : getPeriodEnd(level, last.endDate);
+                if (NumberedDates.toEpochDay(lastEnd) + 1 == periodStart.toEpochDay()) {
+                    segments.set(segments.size() - 1, new Segment(level, last.startDate, start));
+                    return;
+                }
+            }
+        }
+        segments.add(new Segment(level, start, start));
+    }
+}
@@ -0,0 +1,38 @@
+package com.dataathand.fitbit;
+
+import java.util.Arrays;
+
+//Parsed rows of one fetched date range, kept in primitive arrays until they are written.
+class DailySummaryChunk {
+
+    private int[] numberedDates;
+    private double[] values;
+    private int size = 0;
+
+    DailySummaryChunk(int expectedSize) {
+        numberedDates = new int[Math.max(1, expectedSize)];
+        values = new double[Math.max(1, expectedSize)];
+    }
+
+    void add(int numberedDate, double value) {
+        if (size == numberedDates.length) {
+            numberedDates = Arrays.copyOf(numberedDates, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        numberedDates[size] = numberedDate;
+        values[size] = value;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int getNumberedDate(int index) {
+        return numberedDates[index];
+    }
+
+    double getValue(int index) {
+        return values[index];
+    }
+}
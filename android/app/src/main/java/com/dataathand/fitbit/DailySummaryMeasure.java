@@ -0,0 +1,47 @@
+package com.dataathand.fitbit;
+
+import androidx.annotation.Nullable;
+
+//Measures whose Fitbit responses map to one row per day in a daily summary table of the local cache.
+//Each mirrors a FitbitSummaryLogMeasure subclass on the JavaScript side.
+enum DailySummaryMeasure {
+    DailyStep("daily_step", "StepCount", "activities/steps", "activities-steps", "step_daily", null, true),
+    RestingHeartRate("resting_heart_rate", "RestingHeartRate", "activities/heart", "activities-heart", "heartrate_daily", "restingHeartRate", false),
+    WeightTrend("weight_trend", "WeightTrend", "body/weight", "body-weight", "weight_trend", null, false);
+
+    //Same as FitbitSummaryLogMeasure.maxQueryRangeLength.
+    static final int MAX_QUERY_RANGE_DAYS = 365;
+
+    final String key;
+    final String tableName;
+    final String resourcePath;
+    final String resourcePropertyKey;
+    final String prefetchTableType;
+
+    //When set, the value of an entry is an object and the number is this field of it.
+    @Nullable
+    final String nestedValueKey;
+
+    final boolean rejectsZero;
+
+    DailySummaryMeasure(String key, String tableName, String resourcePath, String resourcePropertyKey,
+                        String prefetchTableType, @Nullable String nestedValueKey, boolean rejectsZero) {
+        this.key = key;
+        this.tableName = tableName;
+        this.resourcePath = resourcePath;
+        this.resourcePropertyKey = resourcePropertyKey;
+        this.prefetchTableType = prefetchTableType;
+        this.nestedValueKey = nestedValueKey;
+        this.rejectsZero = rejectsZero;
+    }
+
+    @Nullable
+    static DailySummaryMeasure fromKey(String key) {
+        for (DailySummaryMeasure measure : values()) {
+            if (measure.key.equals(key)) {
+                return measure;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,140 @@
+package com.dataathand.fitbit;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import com.dataathand.time.NumberedDates;
+
+import java.io.IOException;
+
+//Reads Fitbit daily summary responses token by token, so that a year of entries never exists as a JSON tree.
+//Entries are kept or dropped by the same rules as FitbitSummaryLogMeasure.handleQueryResultEntry().
+final class DailySummaryParser {
+
+    private DailySummaryParser() {
+    }
+
+    /**
+     * Parses a Fitbit API response such as {"activities-steps": [{"dateTime": "2020-01-01", "value": "1234"}, ...]}.
+     */
+    static void parseApiResponse(JsonReader reader, DailySummaryMeasure measure, DailySummaryChunk chunk) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals(measure.resourcePropertyKey) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                parseEntries(reader, measure, chunk);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Parses a prefetch backend response, {"crawlLog": {"queried_by_numbered_date": ...}, "data": [...]}.
+     * @return the date until which the backend has crawled, or 0 if it did not tell.
+     */
+    static int parsePrefetchResponse(JsonReader reader, DailySummaryMeasure measure, DailySummaryChunk chunk) throws IOException {
+        int queriedUntil = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (name.equals("data") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                parseEntries(reader, measure, chunk);
+            } else if (name.equals("crawlLog") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.nextName().equals("queried_by_numbered_date") && reader.peek() == JsonToken.NUMBER) {
+                        queriedUntil = reader.nextInt();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return queriedUntil;
+    }
+
+    private static void parseEntries(JsonReader reader, DailySummaryMeasure measure, DailySummaryChunk chunk) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            int numberedDate = 0;
+            double value = Double.NaN;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                final String name = reader.nextName();
+                if (name.equals("dateTime") && reader.peek() == JsonToken.STRING) {
+                    numberedDate = parseFormattedDate(reader.nextString());
+                } else if (name.equals("value")) {
+                    value = measure.nestedValueKey != null ? readNestedNumber(reader, measure.nestedValueKey) : readNumber(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (numberedDate != 0 && !Double.isNaN(value) && !(measure.rejectsZero && value == 0)) {
+                chunk.add(numberedDate, value);
+            }
+        }
+        reader.endArray();
+    }
+
+    private static double readNestedNumber(JsonReader reader, String key) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return Double.NaN;
+        }
+
+        double value = Double.NaN;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals(key)) {
+                value = readNumber(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return value;
+    }
+
+    //Fitbit sends numbers as strings in most daily summaries.
+    private static double readNumber(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case NUMBER:
+                return reader.nextDouble();
+            case STRING:
+                try {
+                    return Double.parseDouble(reader.nextString());
+                } catch (NumberFormatException e) {
+                    return Double.NaN;
+                }
+            default:
+                reader.skipValue();
+                return Double.NaN;
+        }
+    }
+
+    //"yyyy-MM-dd" to yyyyMMdd.
+    static int parseFormattedDate(String formatted) {
+        if (formatted.length() != 10 || formatted.charAt(4) != '-' || formatted.charAt(7) != '-') {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(formatted.substring(0, 4)) * 10000
+                    + Integer.parseInt(formatted.substring(5, 7)) * 100
+                    + Integer.parseInt(formatted.substring(8, 10));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    static String toFormattedDate(int numberedDate) {
+        return NumberedDates.toLocalDate(numberedDate).toString();
+    }
+}
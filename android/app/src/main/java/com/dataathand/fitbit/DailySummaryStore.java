@@ -0,0 +1,6 @@
+package com.dataathand.fitbit;
+
+//Destination of parsed chunks. Each call must be atomic so that a failed sync never leaves half a chunk behind.
+interface DailySummaryStore {
+    void writeChunk(DailySummaryMeasure measure, DailySummaryChunk chunk);
+}
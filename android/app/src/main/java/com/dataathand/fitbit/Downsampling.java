@@ -0,0 +1,267 @@
+package com.dataathand.fitbit;
+
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+//Reduces intraday series to about as many points as a chart has pixels across, so that the bridge and the
+//renderer handle the same amount of data whatever the length of the range.
+//Widths are rounded down to zoom levels, powers of two, so that results can be shared between charts of similar widths.
+final class Downsampling {
+
+    static final int MIN_LEVEL = 4;
+    static final int MAX_LEVEL = 12;
+
+    enum Method {
+        //Largest-Triangle-Three-Buckets: one point per bucket, the one that keeps the visible shape of the line.
+        Lttb("lttb"),
+        //The lowest and highest point of each time bucket, so that no spike is lost. Empty buckets stay gaps.
+        MinMax("minmax");
+
+        final String key;
+
+        Method(String key) {
+            this.key = key;
+        }
+
+        @Nullable
+        static Method fromKey(String key) {
+            for (Method method : values()) {
+                if (method.key.equals(key)) {
+                    return method;
+                }
+            }
+            return null;
+        }
+    }
+
+    //Takes points in ascending order of x, whole days at a time.
+    abstract static class PointSink {
+
+        abstract void add(double xValue, double yValue);
+
+        void addPoints(IntradaySeriesCodec.Points points, long offsetSeconds) {
+            for (int i = 0; i < points.size(); i++) {
+                add(offsetSeconds + points.secondsOfDay[i], points.values[i]);
+            }
+        }
+
+        //Places the value of each hour at its start.
+        void addHourly(int[] values, long offsetSeconds) {
+            for (int hour = 0; hour < values.length; hour++) {
+                add(offsetSeconds + hour * 3600L, values[hour]);
+            }
+        }
+    }
+
+    //Points in ascending order of x, in growable primitive arrays.
+    static final class Series extends PointSink {
+        double[] x;
+        double[] y;
+        int size = 0;
+
+        Series(int capacity) {
+            x = new double[Math.max(16, capacity)];
+            y = new double[x.length];
+        }
+
+        @Override
+        void add(double xValue, double yValue) {
+            if (size == x.length) {
+                x = Arrays.copyOf(x, size * 2);
+                y = Arrays.copyOf(y, size * 2);
+            }
+            x[size] = xValue;
+            y[size] = yValue;
+            size++;
+        }
+
+        Series select(int[] indices) {
+            final Series selected = new Series(indices.length);
+            for (int index : indices) {
+                selected.add(x[index], y[index]);
+            }
+            return selected;
+        }
+    }
+
+    //Reduces points as they are read, so that a range costs memory for its buckets rather than for its points.
+    //Keeps the lowest and highest point of each of a fixed number of equal spans of [startX, endX). Empty spans stay gaps.
+    //MinMax returns these points as they are. LTTB picks from them, LTTB_BUCKETS_PER_POINT spans per point it returns,
+    //which keeps the spikes it would have picked from the full series.
+    static final class Reducer extends PointSink {
+
+        static final int LTTB_BUCKETS_PER_POINT = 4;
+
+        private final Method method;
+        private final int pointCount;
+        private final double startX;
+        private final double bucketWidth;
+
+        private final double[] minX;
+        private final double[] minY;
+        private final double[] maxX;
+        private final double[] maxY;
+        private final int[] counts;
+
+        Reducer(Method method, int zoomLevel, double startX, double endX) {
+            this.method = method;
+            this.pointCount = 1 << zoomLevel;
+            //Two points a bucket.
+            final int bucketCount = method == Method.MinMax ? pointCount / 2 : pointCount * LTTB_BUCKETS_PER_POINT;
+            this.startX = startX;
+            this.bucketWidth = Math.max(endX - startX, 1) / bucketCount;
+            minX = new double[bucketCount];
+            minY = new double[bucketCount];
+            maxX = new double[bucketCount];
+            maxY = new double[bucketCount];
+            counts = new int[bucketCount];
+        }
+
+        @Override
+        void add(double xValue, double yValue) {
+            final int bucket = Math.max(0, Math.min(counts.length - 1, (int) ((xValue - startX) / bucketWidth)));
+            if (counts[bucket]++ == 0) {
+                minX[bucket] = maxX[bucket] = xValue;
+                minY[bucket] = maxY[bucket] = yValue;
+            } else if (yValue < minY[bucket]) {
+                minX[bucket] = xValue;
+                minY[bucket] = yValue;
+            } else if (yValue > maxY[bucket]) {
+                maxX[bucket] = xValue;
+                maxY[bucket] = yValue;
+            }
+        }
+
+        Series finish() {
+            final Series extremes = new Series(counts.length * 2);
+            for (int bucket = 0; bucket < counts.length; bucket++) {
+                if (counts[bucket] == 0) {
+                    continue;
+                } else if (minX[bucket] == maxX[bucket]) {
+                    extremes.add(minX[bucket], minY[bucket]);
+                } else if (minX[bucket] < maxX[bucket]) {
+                    extremes.add(minX[bucket], minY[bucket]);
+                    extremes.add(maxX[bucket], maxY[bucket]);
+                } else {
+                    extremes.add(maxX[bucket], maxY[bucket]);
+                    extremes.add(minX[bucket], minY[bucket]);
+                }
+            }
+            return method == Method.MinMax ? extremes : extremes.select(lttb(extremes.x, extremes.y, extremes.size, pointCount));
+        }
+    }
+
+    //Finds the periods in which points follow each other within maxGap while passing every point on to the next sink,
+    //e.g. the spans in which a tracker was worn. A period needs at least minPoints points; lone points belong to none.
+    //Its first and last point are kept, so that a period can be drawn from its ends even where downsampling dropped them.
+    static final class Periods extends PointSink {
+        private final PointSink next;
+        private final double maxGap;
+        private final int minPoints;
+
+        //The first and the last point of each period.
+        final Series starts = new Series(16);
+        final Series ends = new Series(16);
+
+        private double startX;
+        private double startY;
+        private double lastX;
+        private double lastY;
+        private int count = 0;
+
+        Periods(PointSink next, double maxGap, int minPoints) {
+            this.next = next;
+            this.maxGap = maxGap;
+            this.minPoints = minPoints;
+        }
+
+        @Override
+        void add(double xValue, double yValue) {
+            next.add(xValue, yValue);
+            if (count > 0 && xValue - lastX >= maxGap) {
+                closePeriod();
+            }
+            if (count == 0) {
+                startX = xValue;
+                startY = yValue;
+            }
+            lastX = xValue;
+            lastY = yValue;
+            count++;
+        }
+
+        //Closes the last period. Call it once every point was added.
+        void finish() {
+            closePeriod();
+        }
+
+        private void closePeriod() {
+            if (count >= minPoints) {
+                starts.add(startX, startY);
+                ends.add(lastX, lastY);
+            }
+            count = 0;
+        }
+    }
+
+    private Downsampling() {
+    }
+
+    //The largest power of two not above the width, clamped to the supported levels.
+    static int toZoomLevel(int pixelWidth) {
+        final int level = 31 - Integer.numberOfLeadingZeros(Math.max(1, pixelWidth));
+        return Math.max(MIN_LEVEL, Math.min(MAX_LEVEL, level));
+    }
+
+    //Indices of at most threshold points, always including the first and the last.
+    static int[] lttb(double[] x, double[] y, int count, int threshold) {
+        if (threshold >= count || threshold < 3) {
+            return identity(count);
+        }
+
+        final int[] selected = new int[threshold];
+        //The first and last point are kept as they are, and the rest is split into threshold - 2 buckets.
+        final double bucketSize = (double) (count - 2) / (threshold - 2);
+        int a = 0;
+        selected[0] = 0;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            //The average of the next bucket stands in for the point that will be chosen there.
+            final int nextStart = (int) ((bucket + 1) * bucketSize) + 1;
+            final int nextEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, count);
+            double averageX = 0;
+            double averageY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                averageX += x[i];
+                averageY += y[i];
+            }
+            averageX /= nextEnd - nextStart;
+            averageY /= nextEnd - nextStart;
+
+            final int start = (int) (bucket * bucketSize) + 1;
+            final int end = (int) ((bucket + 1) * bucketSize) + 1;
+            double maxArea = -1;
+            int chosen = start;
+            for (int i = start; i < end; i++) {
+                //Twice the area of the triangle of the previous choice, this point and the next average.
+                final double area = Math.abs((x[a] - averageX) * (y[i] - y[a]) - (x[a] - x[i]) * (averageY - y[a]));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = i;
+                }
+            }
+            selected[bucket + 1] = chosen;
+            a = chosen;
+        }
+        selected[threshold - 1] = count - 1;
+        return selected;
+    }
+
+    private static int[] identity(int count) {
+        final int[] indices = new int[count];
+        for (int i = 0; i < count; i++) {
+            indices[i] = i;
+        }
+        return indices;
+    }
+}
@@ -0,0 +1,348 @@
+package com.dataathand.fitbit;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.dataathand.utils.NamedThreadFactory;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//Runs the range aggregations of the Fitbit local cache natively.
+//Results are returned column by column as arrays of numbers instead of one object per row.
+//They are cached until rows of their table are written within their range, so revisited views skip SQLite.
+//Tables that RollupMaintainer keeps rollups of are aggregated from week, month and year cells instead of every day.
+public class FitbitAggregationModule extends ReactContextBaseJavaModule {
+
+    private static final String TAG = "FitbitAggregation";
+
+    private static final String ERROR_NO_DATABASE = "NO_DATABASE";
+    private static final String ERROR_QUERY = "QUERY_FAILED";
+
+    private static final String[] VALUE_COLUMN_NAMES = {"min", "max", "sum", "avg", "n"};
+    private static final String[] RANGE_COLUMN_NAMES = {"avgA", "minA", "maxA", "avgB", "minB", "maxB", "n"};
+    private static final String TIME_KEY_COLUMN_NAME = "timeKey";
+
+    private static final String KIND_VALUES = "values";
+    private static final String KIND_RANGES = "ranges";
+
+    private static final ExecutorService s_queryExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("fitbit-aggregation"));
+
+    FitbitAggregationModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return "FitbitLocalAggregation";
+    }
+
+    /**
+     * Resolves {min, max, sum, avg, n}, each an array with one entry per group.
+     * When grouped, a timeKey array comes first. Without a groupBy, every array has exactly one entry.
+     */
+    @ReactMethod
+    public void aggregateValues(String tableName, String columnName, int startDate, int endDate,
+                                @Nullable String groupBy, @Nullable String filterBy, int filterKey, Promise promise) {
+        s_queryExecutor.execute(() -> {
+            try {
+                final AggregationResultCache.Key key = new AggregationResultCache.Key(KIND_VALUES, tableName, columnName,
+                        startDate, endDate, groupBy, filterBy, filterKey);
+                promise.resolve(toMap(queryCached(key, () -> AggregationQueries.makeValueQuery(tableName, columnName, groupBy, filterBy),
+                        VALUE_COLUMN_NAMES)));
+            } catch (Exception e) {
+                reject(promise, e);
+            }
+        });
+    }
+
+    /**
+     * Resolves {avgA, minA, maxA, avgB, minB, maxB, n} for two columns that form a range, such as bed and wake times.
+     */
+    @ReactMethod
+    public void aggregateRanges(String tableName, String columnA, String columnB, int startDate, int endDate,
+                                @Nullable String groupBy, @Nullable String filterBy, int filterKey, Promise promise) {
+        s_queryExecutor.execute(() -> {
+            try {
+                final AggregationResultCache.Key key = new AggregationResultCache.Key(KIND_RANGES, tableName, columnA + "," + columnB,
+                        startDate, endDate, groupBy, filterBy, filterKey);
+                promise.resolve(toMap(queryCached(key, () -> AggregationQueries.makeRangeQuery(tableName, columnA, columnB, groupBy, filterBy),
+                        RANGE_COLUMN_NAMES)));
+            } catch (Exception e) {
+                reject(promise, e);
+            }
+        });
+    }
+
+    /**
+     * Computes the same box plot statistics as FitbitLocalDbManager.getBoxplotInfo() in one call.
+     * The column is read once and its percentiles are selected in memory instead of sorted by three queries.
+     */
+    @ReactMethod
+    public void getBoxPlotInfo(String tableName, String columnName, Promise promise) {
+        s_queryExecutor.execute(() -> {
+            try (Cursor cursor = openDatabase().rawQuery(AggregationQueries.makeColumnQuery(tableName, columnName), null)) {
+                final double[] values = new double[cursor.getCount()];
+                int count = 0;
+                int nullCount = 0;
+                while (cursor.moveToNext()) {
+                    if (cursor.isNull(0)) {
+                        nullCount++;
+                    } else {
+                        values[count++] = cursor.getDouble(0);
+                    }
+                }
+                promise.resolve(toMap(SummaryStatistics.BoxPlot.compute(values, count, nullCount)));
+            } catch (Exception e) {
+                reject(promise, e);
+            }
+        });
+    }
+
+    //Called by the JavaScript side after it wrote rows of the table between the numbered dates, both inclusive.
+    //The rollups are kept right by the dates it recorded as dirty in the same transaction, which are refreshed here
+    //rather than on the next aggregation. Queued behind the running aggregations, so that none of them reads stale cached results.
+    @ReactMethod
+    public void onRowsWritten(String tableName, int startDate, int endDate, Promise promise) {
+        s_queryExecutor.execute(() -> {
+            try {
+                if (RollupMaintainer.isRolledUp(tableName)) {
+                    LocalCacheDatabase.getRollups(getReactApplicationContext()).applyDirtyRanges(tableName);
+                }
+                promise.resolve(true);
+            } catch (Exception e) {
+                reject(promise, e);
+            } finally {
+                LocalCacheDatabase.getResultCache().invalidate(tableName, startDate, endDate);
+            }
+        });
+    }
+
+    /**
+     * Compares the stored rollups of the table with ones recomputed from its rows.
+     * Resolves {checkedCells, mismatches}, the latter an array of descriptions.
+     */
+    @ReactMethod
+    public void checkRollups(String tableName, Promise promise) {
+        s_queryExecutor.execute(() -> {
+            try {
+                final RollupMaintainer rollups = LocalCacheDatabase.getRollups(getReactApplicationContext());
+                rollups.ensureBuilt(tableName);
+                final RollupConsistencyChecker.Report report = new RollupConsistencyChecker(rollups).check(tableName);
+                final WritableMap result = Arguments.createMap();
+                result.putInt("checkedCells", report.checkedCells);
+                final WritableArray mismatches = Arguments.createArray();
+                for (String mismatch : report.mismatches) {
+                    mismatches.pushString(mismatch);
+                }
+                result.putArray("mismatches", mismatches);
+                promise.resolve(result);
+            } catch (Exception e) {
+                reject(promise, e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void getCacheStats(Promise promise) {
+        final AggregationResultCache.Stats stats = LocalCacheDatabase.getResultCache().getStats();
+        final WritableMap result = Arguments.createMap();
+        result.putDouble("hits", stats.hits);
+        result.putDouble("misses", stats.misses);
+        result.putDouble("evictions", stats.evictions);
+        result.putDouble("invalidations", stats.invalidations);
+        result.putInt("entries", stats.entries);
+        result.putDouble("bytes", stats.bytes);
+        result.putDouble("maxBytes", stats.maxBytes);
+        promise.resolve(result);
+    }
+
+    //Must be called before the JavaScript side deletes the database file.
+    @ReactMethod
+    public void close(Promise promise) {
+        s_queryExecutor.execute(() -> {
+            LocalCacheDatabase.close();
+            promise.resolve(true);
+        });
+    }
+
+    @Override
+    public void onCatalystInstanceDestroy() {
+        super.onCatalystInstanceDestroy();
+        s_queryExecutor.execute(LocalCacheDatabase::close);
+    }
+
+    private SQLiteDatabase openDatabase() {
+        return LocalCacheDatabase.open(getReactApplicationContext());
+    }
+
+    private interface QueryFactory {
+        String makeQuery();
+    }
+
+    //The query is only made on a miss, since making it validates the table and columns, which a hit already passed.
+    private AggregationResultCache.Result queryCached(AggregationResultCache.Key key, QueryFactory queryFactory, String[] columnNames) {
+        final AggregationResultCache cache = LocalCacheDatabase.getResultCache();
+        final AggregationResultCache.Result cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        final long generation = cache.getGeneration();
+        final String[] keyColumns = key.columns.split(",");
+        final AggregationResultCache.Result result;
+        if (RollupMaintainer.isRolledUp(key.tableName, keyColumns)) {
+            final RollupMaintainer rollups = LocalCacheDatabase.getRollups(getReactApplicationContext());
+            rollups.ensureBuilt(key.tableName);
+            result = toResult(rollups.aggregate(key.tableName, keyColumns, key.startDate, key.endDate, key.groupBy, key.filterBy, key.filterKey),
+                    key.kind, key.groupBy != null, columnNames);
+        } else {
+            result = queryColumns(queryFactory.makeQuery(),
+                    makeArguments(key.startDate, key.endDate, key.filterBy, key.filterKey), key.groupBy != null, columnNames);
+        }
+        cache.put(key, result, generation);
+        return result;
+    }
+
+    //Lays the cells of the groups out as the query of the kind would return them.
+    private static AggregationResultCache.Result toResult(Map<Integer, DailyRollups.Cell[]> groups, String kind, boolean isGrouped, String[] columnNames) {
+        final int offset = isGrouped ? 1 : 0;
+        final double[][] columns = new double[columnNames.length + offset][groups.size()];
+        int row = 0;
+        for (Map.Entry<Integer, DailyRollups.Cell[]> group : groups.entrySet()) {
+            final DailyRollups.Cell[] cells = group.getValue();
+            final double[] values;
+            if (KIND_RANGES.equals(kind)) {
+                values = new double[]{average(cells[0]), min(cells[0]), max(cells[0]),
+                        average(cells[1]), min(cells[1]), max(cells[1]), cells[0].n};
+            } else {
+                values = new double[]{min(cells[0]), max(cells[0]), cells[0].n > 0 ? cells[0].sum : Double.NaN, average(cells[0]), cells[0].n};
+            }
+            if (isGrouped) {
+                columns[0][row] = group.getKey();
+            }
+            for (int i = 0; i < values.length; i++) {
+                columns[i + offset][row] = values[i];
+            }
+            row++;
+        }
+
+        final String[] names = new String[columns.length];
+        if (isGrouped) {
+            names[0] = TIME_KEY_COLUMN_NAME;
+        }
+        System.arraycopy(columnNames, 0, names, offset, columnNames.length);
+        return new AggregationResultCache.Result(names, columns, groups.size());
+    }
+
+    //Like SQL, aggregates of no values are NULL, stored as NaN.
+    private static double average(DailyRollups.Cell cell) {
+        return cell.n > 0 ? cell.sum / cell.n : Double.NaN;
+    }
+
+    private static double min(DailyRollups.Cell cell) {
+        return cell.n > 0 ? cell.min : Double.NaN;
+    }
+
+    private static double max(DailyRollups.Cell cell) {
+        return cell.n > 0 ? cell.max : Double.NaN;
+    }
+
+    private AggregationResultCache.Result queryColumns(String query, String[] arguments, boolean isGrouped, String[] columnNames) {
+        final int columnCount = columnNames.length + (isGrouped ? 1 : 0);
+        double[][] columns = new double[columnCount][16];
+        int rowCount = 0;
+
+        try (Cursor cursor = openDatabase().rawQuery(query, arguments)) {
+            while (cursor.moveToNext()) {
+                if (rowCount == columns[0].length) {
+                    for (int i = 0; i < columnCount; i++) {
+                        columns[i] = Arrays.copyOf(columns[i], rowCount * 2);
+                    }
+                }
+                for (int i = 0; i < columnCount; i++) {
+                    columns[i][rowCount] = cursor.isNull(i) ? Double.NaN : cursor.getDouble(i);
+                }
+                rowCount++;
+            }
+        }
+
+        for (int i = 0; i < columnCount; i++) {
+            columns[i] = Arrays.copyOf(columns[i], rowCount);
+        }
+
+        final String[] names = new String[columnCount];
+        if (isGrouped) {
+            names[0] = TIME_KEY_COLUMN_NAME;
+        }
+        System.arraycopy(columnNames, 0, names, isGrouped ? 1 : 0, columnNames.length);
+        return new AggregationResultCache.Result(names, columns, rowCount);
+    }
+
+    private static WritableMap toMap(AggregationResultCache.Result result) {
+        final WritableMap map = Arguments.createMap();
+        for (int i = 0; i < result.columns.length; i++) {
+            final WritableArray array = Arguments.createArray();
+            for (double value : result.columns[i]) {
+                if (Double.isNaN(value)) {
+                    array.pushNull();
+                } else {
+                    array.pushDouble(value);
+                }
+            }
+            map.putArray(result.columnNames[i], array);
+        }
+        return map;
+    }
+
+    static WritableMap toMap(SummaryStatistics.BoxPlot boxPlot) {
+        final WritableMap result = Arguments.createMap();
+        putNumber(result, "median", boxPlot.median);
+        putNumber(result, "percentile25", boxPlot.percentile25);
+        putNumber(result, "percentile75", boxPlot.percentile75);
+        putNumber(result, "iqr", boxPlot.iqr);
+        putNumber(result, "minWithoutOutlier", boxPlot.minWithoutOutlier);
+        putNumber(result, "maxWithoutOutlier", boxPlot.maxWithoutOutlier);
+        return result;
+    }
+
+    private static String[] makeArguments(int startDate, int endDate, @Nullable String filterBy, int filterKey) {
+        if (filterBy != null) {
+            return new String[]{Integer.toString(startDate), Integer.toString(endDate), Integer.toString(filterKey)};
+        } else {
+            return new String[]{Integer.toString(startDate), Integer.toString(endDate)};
+        }
+    }
+
+    private static void putNumber(WritableMap map, String key, @Nullable Double value) {
+        if (value == null) {
+            map.putNull(key);
+        } else {
+            map.putDouble(key, value);
+        }
+    }
+
+    private static void reject(Promise promise, Exception e) {
+        Log.e(TAG, "Aggregation failed", e);
+        if (e instanceof IllegalStateException) {
+            promise.reject(ERROR_NO_DATABASE, e.getMessage(), e);
+        } else {
+            promise.reject(ERROR_QUERY, e.getMessage(), e);
+        }
+    }
+}
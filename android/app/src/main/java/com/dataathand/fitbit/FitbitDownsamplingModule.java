@@ -0,0 +1,170 @@
+package com.dataathand.fitbit;
+
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.dataathand.time.NumberedDates;
+import com.dataathand.utils.NamedThreadFactory;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//Serves intraday series of the Fitbit local cache reduced to the width of the chart that draws them. See Downsampling.
+//Results are kept in the aggregation result cache per method and zoom level, and dropped like aggregations when their rows are written.
+public class FitbitDownsamplingModule extends ReactContextBaseJavaModule {
+
+    private static final String TAG = "FitbitDownsampling";
+
+    private static final String ERROR_ARGUMENT = "INVALID_ARGUMENT";
+    private static final String ERROR_QUERY = "QUERY_FAILED";
+
+    //A year of per-minute heart rate is about half a million points.
+    private static final int MAX_RANGE_DAYS = 366;
+    private static final int SECONDS_PER_DAY = 24 * 3600;
+
+    private static final String[] COLUMN_NAMES = {"x", "value"};
+    private static final String[] PERIOD_COLUMN_NAMES = {"periodStartX", "periodStartValue", "periodEndX", "periodEndValue"};
+    //A lone point is no period.
+    private static final int MIN_PERIOD_POINTS = 2;
+
+    private static final ExecutorService s_downsamplingExecutor = Executors.newSingleThreadExecutor(
+            new NamedThreadFactory("fitbit-downsampling"));
+
+    FitbitDownsamplingModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return "FitbitLocalDownsampling";
+    }
+
+    /**
+     * Resolves {zoomLevel, x, value} with at most 2^zoomLevel points, where x is the second since the start of startDate.
+     * With a positive periodGapSeconds, the map also has the first and the last point of every period in which points
+     * are less than periodGapSeconds apart, as periodStartX, periodStartValue, periodEndX and periodEndValue.
+     * The periods are found on every point, as their gaps may be narrower than the span a downsampled point stands for.
+     *
+     * @param measureKey intraday-heartrate or intraday_step, whose series are the heart rate points and the hourly steps.
+     * @param method     lttb or minmax.
+     */
+    @ReactMethod
+    public void downsample(String measureKey, int startDate, int endDate, int pixelWidth, String method, int periodGapSeconds, Promise promise) {
+        final IntradayColumn column = toColumn(measureKey);
+        final Downsampling.Method downsamplingMethod = Downsampling.Method.fromKey(method);
+        if (column == null || downsamplingMethod == null) {
+            promise.reject(ERROR_ARGUMENT, "Cannot downsample " + measureKey + " by " + method);
+            return;
+        } else if (startDate > endDate || NumberedDates.toEpochDay(endDate) - NumberedDates.toEpochDay(startDate) >= MAX_RANGE_DAYS) {
+            promise.reject(ERROR_ARGUMENT, "Cannot downsample from " + startDate + " to " + endDate);
+            return;
+        }
+
+        s_downsamplingExecutor.execute(() -> {
+            try {
+                final int zoomLevel = Downsampling.toZoomLevel(pixelWidth);
+                final AggregationResultCache cache = LocalCacheDatabase.getResultCache();
+                final AggregationResultCache.Key key = new AggregationResultCache.Key(downsamplingMethod.key + "@" + zoomLevel,
+                        column.tableName, column.columnName, startDate, endDate, null, null, 0);
+                final AggregationResultCache.Key periodsKey = periodGapSeconds > 0 ? new AggregationResultCache.Key("periods@" + periodGapSeconds,
+                        column.tableName, column.columnName, startDate, endDate, null, null, 0) : null;
+                AggregationResultCache.Result result = cache.get(key);
+                AggregationResultCache.Result periods = periodsKey != null ? cache.get(periodsKey) : null;
+                if (result == null || (periodsKey != null && periods == null)) {
+                    final long generation = cache.getGeneration();
+                    final Downsampling.Reducer reducer = new Downsampling.Reducer(downsamplingMethod, zoomLevel, 0,
+                            (NumberedDates.toEpochDay(endDate) - NumberedDates.toEpochDay(startDate) + 1) * SECONDS_PER_DAY);
+                    if (periodsKey != null) {
+                        final Downsampling.Periods periodSink = new Downsampling.Periods(reducer, periodGapSeconds, MIN_PERIOD_POINTS);
+                        read(column, startDate, endDate, periodSink);
+                        periodSink.finish();
+                        periods = new AggregationResultCache.Result(PERIOD_COLUMN_NAMES, new double[][]{
+                                Arrays.copyOf(periodSink.starts.x, periodSink.starts.size), Arrays.copyOf(periodSink.starts.y, periodSink.starts.size),
+                                Arrays.copyOf(periodSink.ends.x, periodSink.ends.size), Arrays.copyOf(periodSink.ends.y, periodSink.ends.size)
+                        }, periodSink.starts.size);
+                        cache.put(periodsKey, periods, generation);
+                    } else {
+                        read(column, startDate, endDate, reducer);
+                    }
+                    final Downsampling.Series series = reducer.finish();
+                    result = new AggregationResultCache.Result(COLUMN_NAMES,
+                            new double[][]{Arrays.copyOf(series.x, series.size), Arrays.copyOf(series.y, series.size)}, series.size);
+                    cache.put(key, result, generation);
+                }
+                final WritableMap map = toMap(result, zoomLevel);
+                if (periods != null) {
+                    putColumns(map, periods);
+                }
+                promise.resolve(map);
+            } catch (Exception e) {
+                Log.e(TAG, "Downsampling failed", e);
+                promise.reject(ERROR_QUERY, e.getMessage(), e);
+            }
+        });
+    }
+
+    @Nullable
+    private static IntradayColumn toColumn(String measureKey) {
+        switch (measureKey) {
+            case "intraday-heartrate":
+                return IntradayColumn.HeartRatePoints;
+            case "intraday_step":
+                return IntradayColumn.HourlySteps;
+            default:
+                return null;
+        }
+    }
+
+    //Hands the series of every cached day in the range to the sink as it is read, one after another on the same time axis.
+    private void read(IntradayColumn column, int startDate, int endDate, Downsampling.PointSink sink) {
+        final long startEpochDay = NumberedDates.toEpochDay(startDate);
+        try (Cursor cursor = LocalCacheDatabase.open(getReactApplicationContext()).rawQuery(
+                "SELECT numberedDate, " + column.columnName + " FROM " + column.tableName
+                        + " WHERE numberedDate BETWEEN CAST(? AS INTEGER) AND CAST(? AS INTEGER) ORDER BY numberedDate",
+                new String[]{Integer.toString(startDate), Integer.toString(endDate)})) {
+            while (cursor.moveToNext()) {
+                if (cursor.isNull(1)) {
+                    continue;
+                }
+                final long offsetSeconds = (NumberedDates.toEpochDay(cursor.getInt(0)) - startEpochDay) * SECONDS_PER_DAY;
+                final boolean isBlob = cursor.getType(1) == Cursor.FIELD_TYPE_BLOB;
+                if (column == IntradayColumn.HeartRatePoints) {
+                    sink.addPoints(isBlob ? IntradaySeriesCodec.decodePoints(cursor.getBlob(1))
+                            : IntradaySeriesCodec.parseLegacyPoints(cursor.getString(1)), offsetSeconds);
+                } else {
+                    sink.addHourly(isBlob ? IntradaySeriesCodec.decodeSeries(cursor.getBlob(1))
+                            : IntradaySeriesCodec.parseLegacySeries(cursor.getString(1)), offsetSeconds);
+                }
+            }
+        }
+    }
+
+    private static WritableMap toMap(AggregationResultCache.Result result, int zoomLevel) {
+        final WritableMap map = Arguments.createMap();
+        map.putInt("zoomLevel", zoomLevel);
+        putColumns(map, result);
+        return map;
+    }
+
+    private static void putColumns(WritableMap map, AggregationResultCache.Result result) {
+        for (int c = 0; c < result.columnNames.length; c++) {
+            final WritableArray array = Arguments.createArray();
+            for (int i = 0; i < result.rowCount; i++) {
+                array.pushDouble(result.columns[c][i]);
+            }
+            map.putArray(result.columnNames[c], array);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.dataathand.fitbit;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.dataathand.utils.NamedThreadFactory;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//Keeps the intraday heart rate points and hourly steps of the Fitbit local cache as compact blobs.
+//JavaScript still inserts the delimited strings; compact() then rewrites those rows in place.
+//The blobs share the TEXT columns, since a TEXT affinity leaves blob values untouched.
+public class FitbitIntradayStorageModule extends ReactContextBaseJavaModule {
+
+    private static final String TAG = "FitbitIntradayStorage";
+
+    private static final String ERROR_UNSUPPORTED_TABLE = "UNSUPPORTED_TABLE";
+    private static final String ERROR_QUERY = "QUERY_FAILED";
+
+    private static final int COMPACTION_BATCH_SIZE = 100;
+
+    private static final ExecutorService s_storageExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("fitbit-intraday"));
+
+    FitbitIntradayStorageModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return "FitbitIntradayStorage";
+    }
+
+    /**
+     * Encodes every row of the table between the numbered dates, both inclusive, that still holds a delimited string.
+     * Rows that cannot be parsed are left as they are. Resolves the number of rows converted.
+     */
+    @ReactMethod
+    public void compact(String tableName, int startDate, int endDate, Promise promise) {
+        final IntradayColumn column = IntradayColumn.fromTableName(tableName);
+        if (column == null) {
+            promise.reject(ERROR_UNSUPPORTED_TABLE, "Unsupported table: " + tableName);
+            return;
+        }
+
+        s_storageExecutor.execute(() -> {
+            try {
+                promise.resolve(compact(openDatabase(), column, startDate, endDate));
+            } catch (Exception e) {
+                Log.e(TAG, "Compaction failed", e);
+                promise.reject(ERROR_QUERY, e.getMessage(), e);
+            }
+        });
+    }
+
+    //Resolves {secondOfDay: number[], value: number[]}, or null if the day is not cached.
+    @ReactMethod
+    public void readHeartRatePoints(int date, Promise promise) {
+        s_storageExecutor.execute(() -> {
+            try {
+                final Object stored = readCell(openDatabase(), IntradayColumn.HeartRatePoints, date);
+                if (stored == null) {
+                    promise.resolve(null);
+                    return;
+                }
+
+                final IntradaySeriesCodec.Points points = stored instanceof byte[]
+                        ? IntradaySeriesCodec.decodePoints((byte[]) stored)
+                        : IntradaySeriesCodec.parseLegacyPoints((String) stored);
+
+                final WritableArray secondsOfDay = Arguments.createArray();
+                final WritableArray values = Arguments.createArray();
+                for (int i = 0; i < points.size(); i++) {
+                    secondsOfDay.pushInt(points.secondsOfDay[i]);
+                    values.pushInt(points.values[i]);
+                }
+
+                final WritableMap result = Arguments.createMap();
+                result.putArray("secondOfDay", secondsOfDay);
+                result.putArray("value", values);
+                promise.resolve(result);
+            } catch (Exception e) {
+                Log.e(TAG, "Reading heart rate points failed", e);
+                promise.reject(ERROR_QUERY, e.getMessage(), e);
+            }
+        });
+    }
+
+    //Resolves the step counts by hour of day, or null if the day is not cached.
+    @ReactMethod
+    public void readHourlySteps(int date, Promise promise) {
+        s_storageExecutor.execute(() -> {
+            try {
+                final Object stored = readCell(openDatabase(), IntradayColumn.HourlySteps, date);
+                if (stored == null) {
+                    promise.resolve(null);
+                    return;
+                }
+
+                final int[] steps = stored instanceof byte[]
+                        ? IntradaySeriesCodec.decodeSeries((byte[]) stored)
+                        : IntradaySeriesCodec.parseLegacySeries((String) stored);
+
+                final WritableArray result = Arguments.createArray();
+                for (int value : steps) {
+                    result.pushInt(value);
+                }
+                promise.resolve(result);
+            } catch (Exception e) {
+                Log.e(TAG, "Reading hourly steps failed", e);
+                promise.reject(ERROR_QUERY, e.getMessage(), e);
+            }
+        });
+    }
+
+    //Resolves {numberedDate: number[], text: string[]} with every row in the delimited format, for the CSV export.
+    @ReactMethod
+    public void exportAsText(String tableName, Promise promise) {
+        final IntradayColumn column = IntradayColumn.fromTableName(tableName);
+        if (column == null) {
+            promise.reject(ERROR_UNSUPPORTED_TABLE, "Unsupported table: " + tableName);
+            return;
+        }
+
+        s_storageExecutor.execute(() -> {
+            try (Cursor cursor = openDatabase().rawQuery(
+                    "SELECT numberedDate, " + column.columnName + " FROM " + column.tableName + " ORDER BY numberedDate", null)) {
+                final WritableArray dates = Arguments.createArray();
+                final WritableArray texts = Arguments.createArray();
+                while (cursor.moveToNext()) {
+                    dates.pushInt(cursor.getInt(0));
+                    if (cursor.isNull(1)) {
+                        texts.pushNull();
+                    } else if (cursor.getType(1) == Cursor.FIELD_TYPE_BLOB) {
+                        texts.pushString(column.decodeToLegacyText(cursor.getBlob(1)));
+                    } else {
+                        texts.pushString(cursor.getString(1));
+                    }
+                }
+
+                final WritableMap result = Arguments.createMap();
+                result.putArray("numberedDate", dates);
+                result.putArray("text", texts);
+                promise.resolve(result);
+            } catch (Exception e) {
+                Log.e(TAG, "Export failed", e);
+                promise.reject(ERROR_QUERY, e.getMessage(), e);
+            }
+        });
+    }
+
+    private SQLiteDatabase openDatabase() {
+        return LocalCacheDatabase.open(getReactApplicationContext());
+    }
+
+    //Returns a byte[] for compacted rows, a String for legacy rows, or null.
+    static Object readCell(SQLiteDatabase db, IntradayColumn column, int date) {
+        try (Cursor cursor = db.rawQuery(
+                "SELECT " + column.columnName + " FROM " + column.tableName + " WHERE numberedDate = CAST(? AS INTEGER)",
+                new String[]{Integer.toString(date)})) {
+            if (!cursor.moveToFirst() || cursor.isNull(0)) {
+                return null;
+            } else if (cursor.getType(0) == Cursor.FIELD_TYPE_BLOB) {
+                return cursor.getBlob(0);
+            } else {
+                return cursor.getString(0);
+            }
+        }
+    }
+
+    static int compact(SQLiteDatabase db, IntradayColumn column) {
+        return compact(db, column, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    //Converts the rows between the numbered dates, both inclusive, so that compacting what was just inserted
+    //does not scan the whole table.
+    //Each batch commits on its own, so an interrupted compaction leaves every row either converted or untouched,
+    //and the next one picks up the rows still in text.
+    static int compact(SQLiteDatabase db, IntradayColumn column, int startDate, int endDate) {
+        final String selectQuery = "SELECT numberedDate, " + column.columnName + " FROM " + column.tableName +
+                " WHERE numberedDate > CAST(? AS INTEGER) AND numberedDate <= CAST(? AS INTEGER)" +
+                " AND typeof(" + column.columnName + ") = 'text'" +
+                " ORDER BY numberedDate LIMIT " + COMPACTION_BATCH_SIZE;
+        final String endArgument = Integer.toString(endDate);
+
+        int converted = 0;
+        long lastDate = (long) startDate - 1;
+        final int[] dates = new int[COMPACTION_BATCH_SIZE];
+        final byte[][] blobs = new byte[COMPACTION_BATCH_SIZE][];
+
+        try (SQLiteStatement update = db.compileStatement(
+                "UPDATE " + column.tableName + " SET " + column.columnName + " = ? WHERE numberedDate = ?")) {
+            while (true) {
+                int batchSize = 0;
+                int fetched = 0;
+                try (Cursor cursor = db.rawQuery(selectQuery, new String[]{Long.toString(lastDate), endArgument})) {
+                    while (cursor.moveToNext()) {
+                        fetched++;
+                        lastDate = cursor.getInt(0);
+                        try {
+                            blobs[batchSize] = column.encodeLegacyText(cursor.getString(1));
+                            dates[batchSize] = cursor.getInt(0);
+                            batchSize++;
+                        } catch (NumberFormatException e) {
+                            Log.w(TAG, "Leaving malformed row of " + column.tableName + " at " + lastDate + " as text");
+                        }
+                    }
+                }
+
+                if (fetched == 0) {
+                    break;
+                }
+
+                //One short transaction per batch so that the JavaScript connection is never blocked for long.
+                db.beginTransaction();
+                try {
+                    for (int i = 0; i < batchSize; i++) {
+                        update.bindBlob(1, blobs[i]);
+                        update.bindLong(2, dates[i]);
+                        update.executeUpdateDelete();
+                        update.clearBindings();
+                        blobs[i] = null;
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                converted += batchSize;
+            }
+        }
+
+        if (converted > 0) {
+            Log.d(TAG, "Compacted " + converted + " rows of " + column.tableName);
+        }
+        return converted;
+    }
+}
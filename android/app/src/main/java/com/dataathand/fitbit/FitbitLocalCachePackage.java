@@ -0,0 +1,32 @@
+package com.dataathand.fitbit;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.ReactPackage;
+import com.facebook.react.bridge.NativeModule;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.uimanager.ViewManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class FitbitLocalCachePackage implements ReactPackage {
+    @NonNull
+    @Override
+    public List<NativeModule> createNativeModules(@NonNull ReactApplicationContext reactContext) {
+        List<NativeModule> modules = new ArrayList<>();
+        modules.add(new FitbitAggregationModule(reactContext));
+        modules.add(new FitbitIntradayStorageModule(reactContext));
+        modules.add(new FitbitSyncModule(reactContext));
+        modules.add(new FitbitStatisticsModule(reactContext));
+        modules.add(new FitbitDownsamplingModule(reactContext));
+        return modules;
+    }
+
+    @NonNull
+    @Override
+    public List<ViewManager> createViewManagers(@NonNull ReactApplicationContext reactContext) {
+        return Collections.emptyList();
+    }
+}
@@ -0,0 +1,230 @@
+package com.dataathand.fitbit;
+
+import android.database.Cursor;
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.dataathand.utils.NamedThreadFactory;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+//Streams daily series of the Fitbit local cache to JavaScript in sequenced chunks instead of one large result.
+//Each chunk event carries the columns as arrays of numbers. JavaScript acknowledges every chunk it has taken in,
+//and the reader stays at most MAX_IN_FLIGHT chunks ahead. See SeriesStream.
+public class FitbitSeriesStreamModule extends ReactContextBaseJavaModule {
+
+    private static final String TAG = "FitbitSeriesStream";
+
+    static final String EVENT_CHUNK = "fitbit.series.chunk";
+    static final String EVENT_ERROR = "fitbit.series.error";
+
+    private static final String ERROR_INVALID_ARGUMENTS = "INVALID_ARGUMENTS";
+
+    //Every daily summary table has these besides its value columns.
+    private static final Set<String> DATE_COLUMNS = new HashSet<>(Arrays.asList("year", "month", "dayOfWeek"));
+
+    private static final int DEFAULT_CHUNK_SIZE = 365;
+    private static final int MAX_CHUNK_SIZE = 4096;
+    private static final int MAX_IN_FLIGHT = 2;
+    //A consumer that does not acknowledge for this long is assumed gone.
+    private static final long ACK_TIMEOUT_MILLIS = 30 * 1000;
+
+    //Streams block while waiting for acknowledgements, so they get their own threads. Further streams queue up.
+    private static final int MAX_CONCURRENT_STREAMS = 3;
+    private static final ThreadPoolExecutor s_streamExecutor = new ThreadPoolExecutor(MAX_CONCURRENT_STREAMS, MAX_CONCURRENT_STREAMS,
+            30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new NamedThreadFactory("fitbit-series-stream"));
+
+    static {
+        s_streamExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    private final Map<Integer, SeriesStream> streams = new ConcurrentHashMap<>();
+
+    FitbitSeriesStreamModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return "FitbitSeriesStream";
+    }
+
+    /**
+     * Starts streaming the rows of the table between the numbered dates, in ascending order of date.
+     * The stream id is chosen by JavaScript, so that it can listen before the first chunk is sent.
+     * Each chunk event is {streamId, sequence, isLast, numberedDate: number[], columns: {[columnName]: (number|null)[]}}.
+     * Errors, including cancellation, are sent as {streamId, code, message} instead. Resolves once the stream is queued.
+     */
+    @ReactMethod
+    public void open(int streamId, String tableName, ReadableArray columnNames, int startDate, int endDate, int chunkSize, Promise promise) {
+        final String[] columns = new String[columnNames.size()];
+        try {
+            AggregationQueries.checkTable(tableName);
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = columnNames.getString(i);
+                if (!DATE_COLUMNS.contains(columns[i])) {
+                    AggregationQueries.checkColumn(tableName, columns[i]);
+                }
+            }
+            if (streams.containsKey(streamId)) {
+                throw new IllegalArgumentException("Stream " + streamId + " is open already");
+            }
+        } catch (RuntimeException e) {
+            promise.reject(ERROR_INVALID_ARGUMENTS, e.getMessage(), e);
+            return;
+        }
+
+        final SeriesStream stream = new SeriesStream(streamId, new CursorSource(tableName, columns, startDate, endDate), columns.length + 1,
+                chunkSize > 0 ? Math.min(chunkSize, MAX_CHUNK_SIZE) : DEFAULT_CHUNK_SIZE, MAX_IN_FLIGHT, ACK_TIMEOUT_MILLIS, new EventSink(columns));
+        streams.put(streamId, stream);
+        s_streamExecutor.execute(stream);
+        promise.resolve(true);
+    }
+
+    //Acknowledges the chunks of the stream up to the sequence.
+    @ReactMethod
+    public void acknowledge(int streamId, int sequence) {
+        final SeriesStream stream = streams.get(streamId);
+        if (stream != null) {
+            stream.acknowledge(sequence);
+        }
+    }
+
+    //For when the view that reads the stream is left. The stream ends with a CANCELLED error and frees its thread right away,
+    //also while its query still runs.
+    @ReactMethod
+    public void cancel(int streamId) {
+        final SeriesStream stream = streams.get(streamId);
+        if (stream != null) {
+            stream.cancel();
+            //A stream still queued would otherwise wait for a thread only to report the cancellation.
+            if (s_streamExecutor.remove(stream)) {
+                stream.run();
+            }
+        }
+    }
+
+    @Override
+    public void onCatalystInstanceDestroy() {
+        super.onCatalystInstanceDestroy();
+        for (SeriesStream stream : streams.values()) {
+            stream.cancel();
+        }
+    }
+
+    //Reads numberedDate and the columns, with NULL as NaN. Opens the cursor on the stream's thread.
+    private class CursorSource implements SeriesStream.Source {
+        private final String query;
+        private final String[] arguments;
+        private final CancellationSignal cancellationSignal = new CancellationSignal();
+        private Cursor cursor = null;
+
+        CursorSource(String tableName, String[] columns, int startDate, int endDate) {
+            query = "SELECT numberedDate" + (columns.length > 0 ? ", " + String.join(", ", columns) : "") + " FROM " + tableName +
+                    " WHERE numberedDate BETWEEN CAST(? AS INTEGER) AND CAST(? AS INTEGER) ORDER BY numberedDate";
+            arguments = new String[]{Integer.toString(startDate), Integer.toString(endDate)};
+        }
+
+        @Override
+        public boolean next(double[] row) {
+            if (cursor == null) {
+                cursor = LocalCacheDatabase.open(getReactApplicationContext()).rawQuery(query, arguments, cancellationSignal);
+            }
+            if (!cursor.moveToNext()) {
+                return false;
+            }
+            for (int i = 0; i < row.length; i++) {
+                row[i] = cursor.isNull(i) ? Double.NaN : cursor.getDouble(i);
+            }
+            return true;
+        }
+
+        @Override
+        public void cancel() {
+            cancellationSignal.cancel();
+        }
+
+        @Override
+        public void close() {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    private class EventSink implements SeriesStream.Sink {
+        private final String[] columns;
+
+        EventSink(String[] columns) {
+            this.columns = columns;
+        }
+
+        @Override
+        public void onChunk(int streamId, int sequence, double[][] values, int rowCount, boolean isLast) {
+            final WritableMap params = Arguments.createMap();
+            params.putInt("streamId", streamId);
+            params.putInt("sequence", sequence);
+            params.putBoolean("isLast", isLast);
+            params.putArray("numberedDate", toArray(values[0], rowCount));
+            final WritableMap columnMap = Arguments.createMap();
+            for (int i = 0; i < columns.length; i++) {
+                columnMap.putArray(columns[i], toArray(values[i + 1], rowCount));
+            }
+            params.putMap("columns", columnMap);
+            if (isLast) {
+                streams.remove(streamId);
+            }
+            emit(EVENT_CHUNK, params);
+        }
+
+        @Override
+        public void onError(int streamId, String code, String message) {
+            streams.remove(streamId);
+            if (!SeriesStream.ERROR_CANCELLED.equals(code)) {
+                Log.w(TAG, "Stream " + streamId + " failed: " + message);
+            }
+            final WritableMap params = Arguments.createMap();
+            params.putInt("streamId", streamId);
+            params.putString("code", code);
+            params.putString("message", message);
+            emit(EVENT_ERROR, params);
+        }
+
+        private void emit(String eventName, WritableMap params) {
+            if (getReactApplicationContext().hasActiveCatalystInstance()) {
+                getReactApplicationContext().getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class).emit(eventName, params);
+            }
+        }
+    }
+
+    private static WritableArray toArray(double[] values, int count) {
+        final WritableArray array = Arguments.createArray();
+        for (int i = 0; i < count; i++) {
+            if (Double.isNaN(values[i])) {
+                array.pushNull();
+            } else {
+                array.pushDouble(values[i]);
+            }
+        }
+        return array;
+    }
+}
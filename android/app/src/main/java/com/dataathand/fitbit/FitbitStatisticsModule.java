@@ -0,0 +1,131 @@
+package com.dataathand.fitbit;
+
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.dataathand.utils.NamedThreadFactory;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//Computes summaries of the intraday series of the Fitbit local cache off the JavaScript thread,
+//reading the points straight from their blobs into primitive arrays. See HeartRateStatistics.
+public class FitbitStatisticsModule extends ReactContextBaseJavaModule {
+
+    private static final String TAG = "FitbitStatistics";
+
+    private static final String ERROR_QUERY = "QUERY_FAILED";
+
+    private static final ExecutorService s_statisticsExecutor = Executors.newSingleThreadExecutor(
+            new NamedThreadFactory("fitbit-statistics", Thread.MIN_PRIORITY));
+
+    FitbitStatisticsModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return "FitbitLocalStatistics";
+    }
+
+    /**
+     * Resolves {count, min, max, mean, boxPlot, zones: {name, seconds, reportedMinutes}, hourly: {count, min, max, mean, zoneSeconds}},
+     * where the zone and hourly entries are arrays, or null if the day is not cached.
+     */
+    @ReactMethod
+    public void getHeartRateStatistics(int date, Promise promise) {
+        s_statisticsExecutor.execute(() -> {
+            final IntradayColumn column = IntradayColumn.HeartRatePoints;
+            try (Cursor cursor = LocalCacheDatabase.open(getReactApplicationContext()).rawQuery(
+                    "SELECT " + column.columnName + ", zones FROM " + column.tableName + " WHERE numberedDate = CAST(? AS INTEGER)",
+                    new String[]{Integer.toString(date)})) {
+                if (!cursor.moveToFirst() || cursor.isNull(0)) {
+                    promise.resolve(null);
+                    return;
+                }
+
+                final IntradaySeriesCodec.Points points = cursor.getType(0) == Cursor.FIELD_TYPE_BLOB
+                        ? IntradaySeriesCodec.decodePoints(cursor.getBlob(0))
+                        : IntradaySeriesCodec.parseLegacyPoints(cursor.getString(0));
+                final HeartRateStatistics statistics = new HeartRateStatistics(points,
+                        HeartRateStatistics.parseZones(cursor.isNull(1) ? null : cursor.getString(1)));
+                promise.resolve(toMap(statistics));
+            } catch (Exception e) {
+                Log.e(TAG, "Computing heart rate statistics failed", e);
+                promise.reject(ERROR_QUERY, e.getMessage(), e);
+            }
+        });
+    }
+
+    private static WritableMap toMap(HeartRateStatistics statistics) {
+        final WritableMap result = Arguments.createMap();
+        result.putInt("count", statistics.count);
+        putNumber(result, "min", statistics.min);
+        putNumber(result, "max", statistics.max);
+        putNumber(result, "mean", statistics.mean);
+        result.putMap("boxPlot", FitbitAggregationModule.toMap(statistics.boxPlot));
+
+        final WritableArray names = Arguments.createArray();
+        final WritableArray seconds = Arguments.createArray();
+        final WritableArray reportedMinutes = Arguments.createArray();
+        final WritableArray hourlyZoneSeconds = Arguments.createArray();
+        for (int z = 0; z < statistics.zones.size(); z++) {
+            names.pushString(statistics.zones.get(z).name);
+            seconds.pushInt(statistics.zoneSeconds[z]);
+            reportedMinutes.pushInt(statistics.zones.get(z).minutes);
+            hourlyZoneSeconds.pushArray(toArray(statistics.hourlyZoneSeconds[z]));
+        }
+        final WritableMap zones = Arguments.createMap();
+        zones.putArray("name", names);
+        zones.putArray("seconds", seconds);
+        zones.putArray("reportedMinutes", reportedMinutes);
+        result.putMap("zones", zones);
+
+        final WritableMap hourly = Arguments.createMap();
+        hourly.putArray("count", toArray(statistics.hourlyCount));
+        hourly.putArray("min", toArray(statistics.hourlyMin));
+        hourly.putArray("max", toArray(statistics.hourlyMax));
+        hourly.putArray("mean", toArray(statistics.hourlyMean));
+        hourly.putArray("zoneSeconds", hourlyZoneSeconds);
+        result.putMap("hourly", hourly);
+        return result;
+    }
+
+    private static WritableArray toArray(int[] values) {
+        final WritableArray array = Arguments.createArray();
+        for (int value : values) {
+            array.pushInt(value);
+        }
+        return array;
+    }
+
+    private static WritableArray toArray(double[] values) {
+        final WritableArray array = Arguments.createArray();
+        for (double value : values) {
+            if (Double.isNaN(value)) {
+                array.pushNull();
+            } else {
+                array.pushDouble(value);
+            }
+        }
+        return array;
+    }
+
+    private static void putNumber(WritableMap map, String key, double value) {
+        if (Double.isNaN(value)) {
+            map.putNull(key);
+        } else {
+            map.putDouble(key, value);
+        }
+    }
+}
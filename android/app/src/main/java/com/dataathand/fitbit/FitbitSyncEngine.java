@@ -0,0 +1,325 @@
+package com.dataathand.fitbit;
+
+import android.util.JsonReader;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.dataathand.time.NumberedDates;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches daily summaries for several measures at once. Date ranges are split into chunks the Fitbit API accepts,
+ * the chunks of all measures run in parallel on the given executor, and requests to the Fitbit API pass a token bucket.
+ * Responses are parsed as streams and every chunk is stored atomically as soon as it arrives.
+ */
+class FitbitSyncEngine {
+
+    private static final String TAG = "FitbitSyncEngine";
+
+    static final String ERROR_CREDENTIAL = "CredentialError";
+    static final String ERROR_QUOTA_LIMIT = "QuotaLimitReached";
+    static final String ERROR_HTTP = "HttpError";
+    static final String ERROR_CANCELLED = "Cancelled";
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int READ_TIMEOUT_MILLIS = 30000;
+
+    static final class Config {
+        String apiBaseUrl = "https://api.fitbit.com";
+        String accessToken;
+
+        //The prefetch backend is used only when both are set.
+        @Nullable
+        String prefetchBaseUrl;
+        @Nullable
+        String fitbitUserId;
+    }
+
+    static final class Job {
+        final DailySummaryMeasure measure;
+        final int startDate;
+        final int endDate;
+        final boolean tryPrefetch;
+
+        Job(DailySummaryMeasure measure, int startDate, int endDate, boolean tryPrefetch) {
+            this.measure = measure;
+            this.startDate = startDate;
+            this.endDate = endDate;
+            this.tryPrefetch = tryPrefetch;
+        }
+    }
+
+    static final class Result {
+        int storedChunks = 0;
+        int storedRows = 0;
+
+        //From the Fitbit-Rate-Limit-* headers of the last API response, or -1 if no API request was made.
+        int quotaRemaining = -1;
+        int quotaResetSeconds = -1;
+    }
+
+    interface ProgressListener {
+        void onChunkStored(DailySummaryMeasure measure, int completedChunks, int totalChunks, int storedRows);
+    }
+
+    static class SyncException extends IOException {
+        final String code;
+
+        SyncException(String code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+
+    private final Config config;
+    private final ExecutorService executor;
+    private final TokenBucket rateLimiter;
+    private final DailySummaryStore store;
+
+    private final AtomicBoolean isCancelled = new AtomicBoolean(false);
+    private final List<Future<?>> runningTasks = new ArrayList<>();
+
+    private final Result result = new Result();
+    private final AtomicInteger completedChunks = new AtomicInteger(0);
+    private final AtomicInteger totalChunks = new AtomicInteger(0);
+    private final AtomicInteger storedRows = new AtomicInteger(0);
+
+    private ProgressListener progressListener = null;
+
+    FitbitSyncEngine(Config config, ExecutorService executor, TokenBucket rateLimiter, DailySummaryStore store) {
+        this.config = config;
+        this.executor = executor;
+        this.rateLimiter = rateLimiter;
+        this.store = store;
+    }
+
+    void setProgressListener(@Nullable ProgressListener listener) {
+        this.progressListener = listener;
+    }
+
+    /**
+     * Blocks until every job is stored. The first failure cancels the chunks that are still pending.
+     */
+    Result run(List<Job> jobs) throws IOException, InterruptedException {
+        //Prefetched data comes first since it decides which ranges are left for the Fitbit API.
+        final List<Future<Integer>> prefetches = new ArrayList<>();
+        for (Job job : jobs) {
+            if (job.tryPrefetch && config.prefetchBaseUrl != null && config.fitbitUserId != null) {
+                totalChunks.incrementAndGet();
+                prefetches.add(submit(() -> fetchPrefetched(job)));
+            } else {
+                prefetches.add(null);
+            }
+        }
+
+        final List<Future<Integer>> chunkTasks = new ArrayList<>();
+        for (int i = 0; i < jobs.size(); i++) {
+            final Job job = jobs.get(i);
+            int remainingStart = job.startDate;
+            if (prefetches.get(i) != null) {
+                final int prefetchedUntil = await(prefetches.get(i));
+                if (prefetchedUntil >= job.endDate) {
+                    continue;
+                } else if (prefetchedUntil > 0) {
+                    //Same as the JavaScript implementation: the day the backend stopped at is fetched again.
+                    remainingStart = Math.max(job.startDate, prefetchedUntil);
+                }
+            }
+
+            for (int[] range : splitRange(remainingStart, job.endDate, DailySummaryMeasure.MAX_QUERY_RANGE_DAYS)) {
+                totalChunks.incrementAndGet();
+                chunkTasks.add(submit(() -> fetchFromApi(job.measure, range[0], range[1])));
+            }
+        }
+
+        for (Future<Integer> task : chunkTasks) {
+            await(task);
+        }
+
+        result.storedChunks = completedChunks.get();
+        result.storedRows = storedRows.get();
+        return result;
+    }
+
+    void cancel() {
+        isCancelled.set(true);
+        synchronized (runningTasks) {
+            for (Future<?> task : runningTasks) {
+                task.cancel(true);
+            }
+        }
+    }
+
+    static List<int[]> splitRange(int startDate, int endDate, int maxDays) {
+        final List<int[]> ranges = new ArrayList<>();
+        long start = NumberedDates.toEpochDay(startDate);
+        final long end = NumberedDates.toEpochDay(endDate);
+        while (start <= end) {
+            final long chunkEnd = Math.min(end, start + maxDays - 1);
+            ranges.add(new int[]{NumberedDates.fromEpochDay(start), NumberedDates.fromEpochDay(chunkEnd)});
+            start = chunkEnd + 1;
+        }
+        return ranges;
+    }
+
+    private interface Task {
+        int run() throws IOException, InterruptedException;
+    }
+
+    private Future<Integer> submit(Task task) {
+        final Future<Integer> future = executor.submit(() -> {
+            if (isCancelled.get()) {
+                throw new SyncException(ERROR_CANCELLED, "The sync was cancelled.");
+            }
+            return task.run();
+        });
+        synchronized (runningTasks) {
+            runningTasks.add(future);
+        }
+        return future;
+    }
+
+    private int await(Future<Integer> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (CancellationException e) {
+            throw new SyncException(ERROR_CANCELLED, "The sync was cancelled.");
+        } catch (ExecutionException e) {
+            cancel();
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    //Returns the date until which the backend had data, or 0 if it could not be used.
+    private int fetchPrefetched(Job job) throws IOException {
+        final String url = trimTrailingSlash(config.prefetchBaseUrl) + "/" + config.fitbitUserId + "/" + job.measure.prefetchTableType
+                + "?start=" + job.startDate + "&end=" + job.endDate;
+
+        final HttpURLConnection connection = open(url);
+        try {
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                Log.d(TAG, "Prefetch backend answered " + connection.getResponseCode() + " for " + job.measure.key);
+                return 0;
+            }
+
+            final DailySummaryChunk chunk = new DailySummaryChunk(DailySummaryMeasure.MAX_QUERY_RANGE_DAYS);
+            final int queriedUntil;
+            try (JsonReader reader = newJsonReader(connection.getInputStream())) {
+                queriedUntil = DailySummaryParser.parsePrefetchResponse(reader, job.measure, chunk);
+            }
+            storeChunk(job.measure, chunk);
+            return queriedUntil > 0 ? queriedUntil : job.endDate;
+        } catch (IOException e) {
+            //The backend is optional, as in fetchDataFromPrefetchBackend().
+            Log.w(TAG, "Prefetch backend failed for " + job.measure.key, e);
+            return 0;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private int fetchFromApi(DailySummaryMeasure measure, int startDate, int endDate) throws IOException, InterruptedException {
+        rateLimiter.acquire();
+
+        final String url = trimTrailingSlash(config.apiBaseUrl) + "/1/user/-/" + measure.resourcePath + "/date/"
+                + DailySummaryParser.toFormattedDate(startDate) + "/" + DailySummaryParser.toFormattedDate(endDate) + ".json";
+
+        final HttpURLConnection connection = open(url);
+        connection.setRequestProperty("Authorization", "Bearer " + config.accessToken);
+        try {
+            final int status = connection.getResponseCode();
+            updateQuota(connection);
+
+            switch (status) {
+                case HttpURLConnection.HTTP_OK:
+                    break;
+                case HttpURLConnection.HTTP_UNAUTHORIZED:
+                    throw new SyncException(ERROR_CREDENTIAL, "Access token invalid.");
+                case 429:
+                    throw new SyncException(ERROR_QUOTA_LIMIT, "Quota limit reached.");
+                default:
+                    throw new SyncException(ERROR_HTTP, "Fitbit API answered " + status + " for " + url);
+            }
+
+            final DailySummaryChunk chunk = new DailySummaryChunk(DailySummaryMeasure.MAX_QUERY_RANGE_DAYS);
+            try (JsonReader reader = newJsonReader(connection.getInputStream())) {
+                DailySummaryParser.parseApiResponse(reader, measure, chunk);
+            }
+            storeChunk(measure, chunk);
+            return chunk.size();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private void storeChunk(DailySummaryMeasure measure, DailySummaryChunk chunk) throws SyncException {
+        if (isCancelled.get()) {
+            throw new SyncException(ERROR_CANCELLED, "The sync was cancelled.");
+        }
+
+        store.writeChunk(measure, chunk);
+        final int rows = storedRows.addAndGet(chunk.size());
+        final int completed = completedChunks.incrementAndGet();
+        final ProgressListener listener = progressListener;
+        if (listener != null) {
+            listener.onChunkStored(measure, completed, totalChunks.get(), rows);
+        }
+    }
+
+    private synchronized void updateQuota(HttpURLConnection connection) {
+        final String remaining = connection.getHeaderField("Fitbit-Rate-Limit-Remaining");
+        final String reset = connection.getHeaderField("Fitbit-Rate-Limit-Reset");
+        try {
+            if (remaining != null) {
+                final int value = Integer.parseInt(remaining.trim());
+                //Responses arrive out of order. The smallest remainder is the latest one.
+                result.quotaRemaining = result.quotaRemaining < 0 ? value : Math.min(result.quotaRemaining, value);
+            }
+            if (reset != null) {
+                result.quotaResetSeconds = Integer.parseInt(reset.trim());
+            }
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Malformed rate limit headers: " + remaining + ", " + reset);
+        }
+    }
+
+    private static HttpURLConnection open(String url) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("GET");
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        connection.setRequestProperty("Accept", "application/json");
+        return connection;
+    }
+
+    private static JsonReader newJsonReader(InputStream stream) {
+        return new JsonReader(new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8)));
+    }
+
+    private static String trimTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+}
@@ -0,0 +1,201 @@
+package com.dataathand.fitbit;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.dataathand.time.NumberedDates;
+import com.dataathand.utils.NamedThreadFactory;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+//Syncs the daily summary measures of the Fitbit local cache without routing every response through JavaScript.
+//JavaScript still owns the credentials and hands a valid access token to each sync.
+public class FitbitSyncModule extends ReactContextBaseJavaModule {
+
+    private static final String TAG = "FitbitSync";
+
+    static final String EVENT_PROGRESS = "fitbit.sync.progress";
+
+    private static final String ERROR_INVALID_OPTIONS = "INVALID_OPTIONS";
+    private static final String ERROR_NO_DATABASE = "NO_DATABASE";
+    private static final String ERROR_SYNC = "SYNC_FAILED";
+
+    private static final int DEFAULT_MAX_CONCURRENCY = 4;
+    private static final int MAX_CONCURRENCY_LIMIT = 8;
+
+    //Fitbit allows 150 requests per hour, so the bucket only smooths bursts. The quota itself is tracked by JavaScript.
+    private static final int DEFAULT_BURST = 8;
+    private static final double DEFAULT_REQUESTS_PER_SECOND = 4;
+
+    //Syncs of different measures run side by side and block on their chunks, so each gets a thread apart from the fetching pool.
+    private static final ExecutorService s_syncExecutor = Executors.newCachedThreadPool(new NamedThreadFactory("fitbit-sync"));
+    private static final ThreadPoolExecutor s_fetchExecutor = new ThreadPoolExecutor(DEFAULT_MAX_CONCURRENCY, DEFAULT_MAX_CONCURRENCY,
+            30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new NamedThreadFactory("fitbit-fetch"));
+
+    //One bucket for the process, so that concurrent syncs share the request rate instead of each bursting on its own.
+    private static final TokenBucket s_rateLimiter = new TokenBucket(DEFAULT_BURST, DEFAULT_REQUESTS_PER_SECOND);
+
+    static {
+        s_fetchExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    private final Set<FitbitSyncEngine> runningEngines = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    FitbitSyncModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return "FitbitSync";
+    }
+
+    /**
+     * options: {
+     *   accessToken: string, apiBaseUrl?: string, prefetchBaseUrl?: string, fitbitUserId?: string,
+     *   maxConcurrency?: number, requestsPerSecond?: number,
+     *   measures: Array<{key: string, startDate: number, endDate: number, tryPrefetch?: boolean}>
+     * }
+     * Resolves {storedChunks, storedRows, quotaRemaining, quotaResetSeconds}. The two quota fields are -1 when unknown.
+     * Rejects with the engine's error code, e.g. CredentialError, so that JavaScript can refresh the token and retry.
+     */
+    @ReactMethod
+    public void sync(ReadableMap options, Promise promise) {
+        final FitbitSyncEngine.Config config = new FitbitSyncEngine.Config();
+        final List<FitbitSyncEngine.Job> jobs = new ArrayList<>();
+        final int maxConcurrency;
+        final double requestsPerSecond;
+        try {
+            config.accessToken = options.getString("accessToken");
+            if (options.hasKey("apiBaseUrl") && !options.isNull("apiBaseUrl")) {
+                config.apiBaseUrl = options.getString("apiBaseUrl");
+            }
+            if (options.hasKey("prefetchBaseUrl") && !options.isNull("prefetchBaseUrl")) {
+                config.prefetchBaseUrl = options.getString("prefetchBaseUrl");
+            }
+            if (options.hasKey("fitbitUserId") && !options.isNull("fitbitUserId")) {
+                config.fitbitUserId = options.getString("fitbitUserId");
+            }
+
+            final ReadableArray measures = options.getArray("measures");
+            for (int i = 0; i < measures.size(); i++) {
+                final ReadableMap entry = measures.getMap(i);
+                final DailySummaryMeasure measure = DailySummaryMeasure.fromKey(entry.getString("key"));
+                if (measure == null) {
+                    throw new IllegalArgumentException("Unsupported measure: " + entry.getString("key"));
+                }
+                final int startDate = entry.getInt("startDate");
+                final int endDate = entry.getInt("endDate");
+                if (NumberedDates.toEpochDay(startDate) > NumberedDates.toEpochDay(endDate)) {
+                    throw new IllegalArgumentException("Invalid range for " + measure.key + ": " + startDate + " - " + endDate);
+                }
+                jobs.add(new FitbitSyncEngine.Job(measure, startDate, endDate,
+                        entry.hasKey("tryPrefetch") && entry.getBoolean("tryPrefetch")));
+            }
+
+            maxConcurrency = options.hasKey("maxConcurrency")
+                    ? Math.max(1, Math.min(MAX_CONCURRENCY_LIMIT, options.getInt("maxConcurrency")))
+                    : DEFAULT_MAX_CONCURRENCY;
+            requestsPerSecond = options.hasKey("requestsPerSecond")
+                    ? options.getDouble("requestsPerSecond")
+                    : DEFAULT_REQUESTS_PER_SECOND;
+            if (requestsPerSecond <= 0) {
+                throw new IllegalArgumentException("Invalid requestsPerSecond: " + requestsPerSecond);
+            }
+        } catch (RuntimeException e) {
+            promise.reject(ERROR_INVALID_OPTIONS, e.getMessage(), e);
+            return;
+        }
+
+        s_syncExecutor.execute(() -> {
+            final DailySummaryStore store;
+            try {
+                store = new SqliteDailySummaryStore(LocalCacheDatabase.open(getReactApplicationContext()), LocalCacheDatabase.getResultCache(),
+                        LocalCacheDatabase.getRollups(getReactApplicationContext()));
+            } catch (Exception e) {
+                promise.reject(ERROR_NO_DATABASE, e.getMessage(), e);
+                return;
+            }
+
+            //The latest sync sets the shared limits. Growing the pool requires raising the maximum first and shrinking it the other way around.
+            synchronized (s_fetchExecutor) {
+                if (maxConcurrency > s_fetchExecutor.getMaximumPoolSize()) {
+                    s_fetchExecutor.setMaximumPoolSize(maxConcurrency);
+                    s_fetchExecutor.setCorePoolSize(maxConcurrency);
+                } else {
+                    s_fetchExecutor.setCorePoolSize(maxConcurrency);
+                    s_fetchExecutor.setMaximumPoolSize(maxConcurrency);
+                }
+                s_rateLimiter.setRate(requestsPerSecond);
+            }
+
+            final FitbitSyncEngine engine = new FitbitSyncEngine(config, s_fetchExecutor, s_rateLimiter, store);
+            engine.setProgressListener(this::emitProgressEvent);
+            runningEngines.add(engine);
+            try {
+                final long startedAt = System.currentTimeMillis();
+                final FitbitSyncEngine.Result result = engine.run(jobs);
+                Log.d(TAG, "Stored " + result.storedRows + " rows in " + result.storedChunks + " chunks in "
+                        + (System.currentTimeMillis() - startedAt) + " millis.");
+
+                final WritableMap map = Arguments.createMap();
+                map.putInt("storedChunks", result.storedChunks);
+                map.putInt("storedRows", result.storedRows);
+                map.putInt("quotaRemaining", result.quotaRemaining);
+                map.putInt("quotaResetSeconds", result.quotaResetSeconds);
+                promise.resolve(map);
+            } catch (FitbitSyncEngine.SyncException e) {
+                Log.e(TAG, "Sync failed: " + e.code, e);
+                promise.reject(e.code, e.getMessage(), e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                promise.reject(FitbitSyncEngine.ERROR_CANCELLED, e.getMessage(), e);
+            } catch (Exception e) {
+                Log.e(TAG, "Sync failed", e);
+                promise.reject(ERROR_SYNC, e.getMessage(), e);
+            } finally {
+                runningEngines.remove(engine);
+            }
+        });
+    }
+
+    //Cancels the running syncs, if any. Chunks already stored are kept.
+    @ReactMethod
+    public void cancel(Promise promise) {
+        boolean cancelled = false;
+        for (FitbitSyncEngine engine : runningEngines) {
+            engine.cancel();
+            cancelled = true;
+        }
+        promise.resolve(cancelled);
+    }
+
+    private void emitProgressEvent(DailySummaryMeasure measure, int completedChunks, int totalChunks, int storedRows) {
+        final WritableMap params = Arguments.createMap();
+        params.putString("measureKey", measure.key);
+        params.putInt("completedChunks", completedChunks);
+        params.putInt("totalChunks", totalChunks);
+        params.putInt("storedRows", storedRows);
+        getReactApplicationContext().getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class).emit(EVENT_PROGRESS, params);
+    }
+}
@@ -0,0 +1,123 @@
+package com.dataathand.fitbit;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//Summaries of one day of intraday heart rate points: quartiles, the time spent in each heart rate zone,
+//and per-hour counts, ranges, means and zone times. Everything is computed in one pass plus a few selections.
+final class HeartRateStatistics {
+
+    //A point stands for the time until the next one, up to a minute, so that gaps in wearing the tracker count for nothing.
+    static final int MAX_POINT_SECONDS = 60;
+
+    static final int HOURS_PER_DAY = 24;
+
+    //One entry of HeartRateIntraDayInfo.zones, which the JavaScript side stores as "caloriesOut&min&max&minutes&name|...".
+    static final class Zone {
+        final String name;
+        final int min;
+        final int max;
+        final int minutes;
+
+        Zone(String name, int min, int max, int minutes) {
+            this.name = name;
+            this.min = min;
+            this.max = max;
+            this.minutes = minutes;
+        }
+
+        //Fitbit zones share their boundaries, so a value on one belongs to the upper zone.
+        boolean contains(int value) {
+            return value >= min && value < max;
+        }
+    }
+
+    static List<Zone> parseZones(@Nullable String text) {
+        final List<Zone> zones = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return zones;
+        }
+        for (String entry : text.split("\\|")) {
+            final String[] fields = entry.split("&");
+            if (fields.length >= 5) {
+                zones.add(new Zone(fields[4], Integer.parseInt(fields[1]), Integer.parseInt(fields[2]), Integer.parseInt(fields[3])));
+            }
+        }
+        return zones;
+    }
+
+    final int count;
+    final double min;
+    final double max;
+    final double mean;
+    final SummaryStatistics.BoxPlot boxPlot;
+
+    final List<Zone> zones;
+    //Seconds in each zone, in the order of zones.
+    final int[] zoneSeconds;
+
+    final int[] hourlyCount = new int[HOURS_PER_DAY];
+    final double[] hourlyMin = new double[HOURS_PER_DAY];
+    final double[] hourlyMax = new double[HOURS_PER_DAY];
+    final double[] hourlyMean = new double[HOURS_PER_DAY];
+    //Seconds in each zone by hour of day, zone first.
+    final int[][] hourlyZoneSeconds;
+
+    /**
+     * @param points in ascending order of time, as Fitbit returns them.
+     */
+    HeartRateStatistics(IntradaySeriesCodec.Points points, List<Zone> zones) {
+        this.zones = zones;
+        count = points.size();
+        zoneSeconds = new int[zones.size()];
+        hourlyZoneSeconds = new int[zones.size()][HOURS_PER_DAY];
+
+        final double[] values = new double[count];
+        final double[] hourlySum = new double[HOURS_PER_DAY];
+        double sum = 0;
+        double min = Double.NaN;
+        double max = Double.NaN;
+        int previousSeconds = 0;
+        for (int i = 0; i < count; i++) {
+            final int value = points.values[i];
+            final int hour = Math.min(HOURS_PER_DAY - 1, Math.max(0, points.secondsOfDay[i] / 3600));
+            values[i] = value;
+            sum += value;
+            min = i == 0 ? value : Math.min(min, value);
+            max = i == 0 ? value : Math.max(max, value);
+
+            hourlyMin[hour] = hourlyCount[hour] == 0 ? value : Math.min(hourlyMin[hour], value);
+            hourlyMax[hour] = hourlyCount[hour] == 0 ? value : Math.max(hourlyMax[hour], value);
+            hourlyCount[hour]++;
+            hourlySum[hour] += value;
+
+            //The last point lasts as long as the one before it.
+            final int seconds = i + 1 < count
+                    ? Math.max(0, Math.min(MAX_POINT_SECONDS, points.secondsOfDay[i + 1] - points.secondsOfDay[i]))
+                    : previousSeconds;
+            previousSeconds = seconds;
+            for (int z = 0; z < zones.size(); z++) {
+                if (zones.get(z).contains(value)) {
+                    zoneSeconds[z] += seconds;
+                    hourlyZoneSeconds[z][hour] += seconds;
+                }
+            }
+        }
+
+        this.min = min;
+        this.max = max;
+        mean = count > 0 ? sum / count : Double.NaN;
+        for (int hour = 0; hour < HOURS_PER_DAY; hour++) {
+            if (hourlyCount[hour] == 0) {
+                hourlyMin[hour] = Double.NaN;
+                hourlyMax[hour] = Double.NaN;
+                hourlyMean[hour] = Double.NaN;
+            } else {
+                hourlyMean[hour] = hourlySum[hour] / hourlyCount[hour];
+            }
+        }
+        boxPlot = SummaryStatistics.BoxPlot.compute(values, count, 0);
+    }
+}
@@ -0,0 +1,48 @@
+package com.dataathand.fitbit;
+
+import androidx.annotation.Nullable;
+
+//Intraday columns of the Fitbit local cache that are stored with IntradaySeriesCodec.
+enum IntradayColumn {
+    HeartRatePoints("HeartRateIntraDayInfo", "points", IntradaySeriesCodec.FORMAT_POINTS),
+    HourlySteps("StepCountIntraDay", "hourlySteps", IntradaySeriesCodec.FORMAT_SERIES);
+
+    final String tableName;
+    final String columnName;
+    final byte format;
+
+    IntradayColumn(String tableName, String columnName, byte format) {
+        this.tableName = tableName;
+        this.columnName = columnName;
+        this.format = format;
+    }
+
+    @Nullable
+    static IntradayColumn fromTableName(String tableName) {
+        for (IntradayColumn column : values()) {
+            if (column.tableName.equals(tableName)) {
+                return column;
+            }
+        }
+        return null;
+    }
+
+    //Encodes a legacy delimited string into the blob format of this column.
+    byte[] encodeLegacyText(String text) {
+        switch (format) {
+            case IntradaySeriesCodec.FORMAT_POINTS:
+                return IntradaySeriesCodec.encodePoints(IntradaySeriesCodec.parseLegacyPoints(text));
+            default:
+                return IntradaySeriesCodec.encodeSeries(IntradaySeriesCodec.parseLegacySeries(text));
+        }
+    }
+
+    String decodeToLegacyText(byte[] blob) {
+        switch (format) {
+            case IntradaySeriesCodec.FORMAT_POINTS:
+                return IntradaySeriesCodec.toLegacyText(IntradaySeriesCodec.decodePoints(blob));
+            default:
+                return IntradaySeriesCodec.toLegacyText(IntradaySeriesCodec.decodeSeries(blob));
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.dataathand.fitbit;
+
+import androidx.annotation.Nullable;
+
+//Binary format for the intraday columns of the Fitbit local cache.
+//A blob starts with a format byte and the number of entries as a varint. Each entry is then stored
+//as the zigzag varint of its difference to the previous one, so a typical per-minute heart rate point takes 2-3 bytes
+//instead of about 8 characters of "secondOfDay&value|".
+//Rows written before this format still hold the delimited strings, which parseLegacy*() reads.
+final class IntradaySeriesCodec {
+
+    static final byte FORMAT_POINTS = 1;
+    static final byte FORMAT_SERIES = 2;
+
+    private static final char SEPARATOR_BETWEEN = '|';
+    private static final char SEPARATOR_WITHIN = '&';
+
+    //Second-of-day and value pairs, as stored in HeartRateIntraDayInfo.points.
+    static final class Points {
+        final int[] secondsOfDay;
+        final short[] values;
+
+        Points(int[] secondsOfDay, short[] values) {
+            this.secondsOfDay = secondsOfDay;
+            this.values = values;
+        }
+
+        int size() {
+            return secondsOfDay.length;
+        }
+    }
+
+    private IntradaySeriesCodec() {
+    }
+
+    static boolean isEncoded(@Nullable byte[] blob, byte format) {
+        return blob != null && blob.length > 0 && blob[0] == format;
+    }
+
+    static byte[] encodePoints(Points points) {
+        final int count = points.size();
+        final Writer writer = new Writer(1 + 5 + count * 2 * 5);
+        writer.putByte(FORMAT_POINTS);
+        writer.putVarint(count);
+        int previousSecond = 0;
+        int previousValue = 0;
+        for (int i = 0; i < count; i++) {
+            writer.putVarint(zigzag(points.secondsOfDay[i] - previousSecond));
+            writer.putVarint(zigzag(points.values[i] - previousValue));
+            previousSecond = points.secondsOfDay[i];
+            previousValue = points.values[i];
+        }
+        return writer.toByteArray();
+    }
+
+    static Points decodePoints(byte[] blob) {
+        checkFormat(blob, FORMAT_POINTS);
+        final Reader reader = new Reader(blob, 1);
+        final int count = reader.getVarint();
+        final int[] secondsOfDay = new int[count];
+        final short[] values = new short[count];
+        int second = 0;
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            second += unzigzag(reader.getVarint());
+            value += unzigzag(reader.getVarint());
+            secondsOfDay[i] = second;
+            values[i] = (short) value;
+        }
+        return new Points(secondsOfDay, values);
+    }
+
+    static byte[] encodeSeries(int[] values) {
+        final Writer writer = new Writer(1 + 5 + values.length * 5);
+        writer.putByte(FORMAT_SERIES);
+        writer.putVarint(values.length);
+        int previous = 0;
+        for (int value : values) {
+            writer.putVarint(zigzag(value - previous));
+            previous = value;
+        }
+        return writer.toByteArray();
+    }
+
+    static int[] decodeSeries(byte[] blob) {
+        checkFormat(blob, FORMAT_SERIES);
+        final Reader reader = new Reader(blob, 1);
+        final int[] values = new int[reader.getVarint()];
+        int value = 0;
+        for (int i = 0; i < values.length; i++) {
+            value += unzigzag(reader.getVarint());
+            values[i] = value;
+        }
+        return values;
+    }
+
+    /**
+     * Parses "secondOfDay&value|secondOfDay&value|...".
+     * @throws NumberFormatException if the text is not in that form.
+     */
+    static Points parseLegacyPoints(String text) {
+        final int count = countEntries(text);
+        final int[] secondsOfDay = new int[count];
+        final short[] values = new short[count];
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            final int within = text.indexOf(SEPARATOR_WITHIN, start);
+            final int end = endOfEntry(text, start);
+            if (within < 0 || within > end) {
+                throw new NumberFormatException("Malformed point: " + text.substring(start, end));
+            }
+            secondsOfDay[i] = parseInt(text, start, within);
+            final int value = parseInt(text, within + 1, end);
+            if (value < Short.MIN_VALUE || value > Short.MAX_VALUE) {
+                throw new NumberFormatException("Point value out of range: " + value);
+            }
+            values[i] = (short) value;
+            start = end + 1;
+        }
+        return new Points(secondsOfDay, values);
+    }
+
+    /**
+     * Parses "value|value|...".
+     * @throws NumberFormatException if the text is not in that form.
+     */
+    static int[] parseLegacySeries(String text) {
+        final int[] values = new int[countEntries(text)];
+        int start = 0;
+        for (int i = 0; i < values.length; i++) {
+            final int end = endOfEntry(text, start);
+            values[i] = parseInt(text, start, end);
+            start = end + 1;
+        }
+        return values;
+    }
+
+    static String toLegacyText(Points points) {
+        final StringBuilder builder = new StringBuilder(points.size() * 9);
+        for (int i = 0; i < points.size(); i++) {
+            if (i > 0) {
+                builder.append(SEPARATOR_BETWEEN);
+            }
+            builder.append(points.secondsOfDay[i]).append(SEPARATOR_WITHIN).append(points.values[i]);
+        }
+        return builder.toString();
+    }
+
+    static String toLegacyText(int[] values) {
+        final StringBuilder builder = new StringBuilder(values.length * 4);
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                builder.append(SEPARATOR_BETWEEN);
+            }
+            builder.append(values[i]);
+        }
+        return builder.toString();
+    }
+
+    private static void checkFormat(byte[] blob, byte format) {
+        if (!isEncoded(blob, format)) {
+            throw new IllegalArgumentException("Not an intraday blob of format " + format);
+        }
+    }
+
+    private static int countEntries(String text) {
+        if (text.isEmpty()) {
+            return 0;
+        }
+        int count = 1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == SEPARATOR_BETWEEN) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int endOfEntry(String text, int start) {
+        final int end = text.indexOf(SEPARATOR_BETWEEN, start);
+        return end < 0 ? text.length() : end;
+    }
+
+    //Integer.parseInt() without the substring.
+    private static int parseInt(String text, int start, int end) {
+        final boolean isNegative = start < end && text.charAt(start) == '-';
+        if (start >= end || (isNegative && start + 1 == end)) {
+            throw new NumberFormatException("Empty number in " + text);
+        }
+        //Accumulated negatively, as Integer.parseInt() does, so that Integer.MIN_VALUE fits.
+        final int limit = isNegative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        int value = 0;
+        for (int i = isNegative ? start + 1 : start; i < end; i++) {
+            final int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Not a number: " + text.substring(start, end));
+            }
+            if (value < (limit + digit) / 10) {
+                throw new NumberFormatException("Out of the int range: " + text.substring(start, end));
+            }
+            value = value * 10 - digit;
+        }
+        return isNegative ? value : -value;
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class Writer {
+        private final byte[] bytes;
+        private int length = 0;
+
+        Writer(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        void putByte(byte value) {
+            bytes[length++] = value;
+        }
+
+        void putVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        byte[] toByteArray() {
+            final byte[] result = new byte[length];
+            System.arraycopy(bytes, 0, result, 0, length);
+            return result;
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] bytes;
+        private int position;
+
+        Reader(byte[] bytes, int position) {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        int getVarint() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (position >= bytes.length || shift > 28) {
+                    throw new IllegalArgumentException("Truncated intraday blob");
+                }
+                b = bytes[position++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+}
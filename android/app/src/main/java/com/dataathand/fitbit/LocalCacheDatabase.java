@@ -0,0 +1,74 @@
+package com.dataathand.fitbit;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.io.File;
+
+//The native connection to the Fitbit local cache that react-native-sqlite-storage creates and owns the schema of.
+//Android serializes access to a single connection, so the native modules share this one.
+final class LocalCacheDatabase {
+
+    private static final String TAG = "LocalCacheDatabase";
+
+    //Same file that react-native-sqlite-storage opens with location 'default'.
+    static final String DATABASE_NAME = "fitbit-local-cache.sqlite";
+
+    private static final long RESULT_CACHE_BYTES = 2 * 1024 * 1024;
+
+    private static SQLiteDatabase s_database = null;
+
+    private static final AggregationResultCache s_resultCache = new AggregationResultCache(RESULT_CACHE_BYTES);
+
+    //Tied to s_database.
+    private static RollupMaintainer s_rollups = null;
+
+    private LocalCacheDatabase() {
+    }
+
+    /**
+     * @throws IllegalStateException if the JavaScript side has not created the database yet.
+     */
+    static synchronized SQLiteDatabase open(Context context) {
+        if (s_database != null && s_database.isOpen()) {
+            return s_database;
+        }
+
+        final File file = context.getDatabasePath(DATABASE_NAME);
+        if (!file.exists()) {
+            throw new IllegalStateException("The local cache database does not exist yet.");
+        }
+
+        s_database = SQLiteDatabase.openDatabase(file.getPath(), null,
+                SQLiteDatabase.OPEN_READWRITE | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+        s_rollups = new RollupMaintainer(s_database);
+        Log.d(TAG, "Opened " + file.getPath());
+        return s_database;
+    }
+
+    /**
+     * The rollups of the open database. Whatever writes rows of a rolled-up table has to keep them current.
+     *
+     * @throws IllegalStateException if the JavaScript side has not created the database yet.
+     */
+    static synchronized RollupMaintainer getRollups(Context context) {
+        open(context);
+        return s_rollups;
+    }
+
+    //Must be called before the JavaScript side deletes the database file.
+    static synchronized void close() {
+        if (s_database != null) {
+            s_database.close();
+            s_database = null;
+        }
+        s_rollups = null;
+        s_resultCache.clear();
+    }
+
+    //Whatever writes rows of an aggregatable table has to invalidate their range here.
+    static AggregationResultCache getResultCache() {
+        return s_resultCache;
+    }
+}
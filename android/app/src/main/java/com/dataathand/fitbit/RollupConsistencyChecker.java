@@ -0,0 +1,68 @@
+package com.dataathand.fitbit;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+//Recomputes the rollups of a table from its rows and reports every stored cell that differs, is missing or is left over.
+//Sums are compared with a relative tolerance, since incremental updates add the days in a different order.
+class RollupConsistencyChecker {
+
+    private static final double SUM_TOLERANCE = 1e-9;
+
+    static final class Report {
+        int checkedCells = 0;
+        final List<String> mismatches = new ArrayList<>();
+
+        boolean isConsistent() {
+            return mismatches.isEmpty();
+        }
+    }
+
+    private final RollupMaintainer rollups;
+
+    RollupConsistencyChecker(RollupMaintainer rollups) {
+        this.rollups = rollups;
+    }
+
+    Report check(String tableName) {
+        final Report report = new Report();
+        final String[] columnNames = RollupMaintainer.getRolledUpColumns(tableName);
+        final Map<Long, DailyRollups.Cell>[] expected = rollups.scan(tableName, columnNames, null, null);
+        for (int i = 0; i < columnNames.length; i++) {
+            final Map<Long, DailyRollups.Cell> stored = rollups.readCells(tableName, columnNames[i]);
+            final Set<Long> keys = new HashSet<>(expected[i].keySet());
+            keys.addAll(stored.keySet());
+            for (long key : keys) {
+                report.checkedCells++;
+                final String mismatch = compare(expected[i].get(key), stored.get(key));
+                if (mismatch != null) {
+                    report.mismatches.add(String.format(Locale.US, "%s.%s level %d from %d, day %d: %s", tableName, columnNames[i],
+                            DailyRollups.getLevelOfKey(key), DailyRollups.getPeriodStartOfKey(key), DailyRollups.getDayOfWeekOfKey(key), mismatch));
+                }
+            }
+        }
+        return report;
+    }
+
+    @Nullable
+    private static String compare(@Nullable DailyRollups.Cell expected, @Nullable DailyRollups.Cell stored) {
+        if (stored == null) {
+            return "missing";
+        } else if (expected == null) {
+            return "left over with n=" + stored.n;
+        } else if (expected.n != stored.n) {
+            return "n is " + stored.n + " instead of " + expected.n;
+        } else if (Math.abs(expected.sum - stored.sum) > SUM_TOLERANCE * Math.max(1, Math.abs(expected.sum))) {
+            return "sum is " + stored.sum + " instead of " + expected.sum;
+        } else if (expected.min != stored.min || expected.max != stored.max) {
+            return "range is " + stored.min + "-" + stored.max + " instead of " + expected.min + "-" + expected.max;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,443 @@
+package com.dataathand.fitbit;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.dataathand.time.NumberedDates;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+//Keeps week, month and year rollups of the daily summary tables in the DailyRollup table of the local cache,
+//so that aggregations over long ranges read a few cells instead of every day. See DailyRollups for the cells.
+//The rollups of a table are built from its rows on first use. After that, whoever writes rows keeps them current:
+//the native sync within its own transaction through a Batch, the JavaScript side by recording the dates it wrote in
+//DailyRollupDirty within its own transaction. Those are refreshed before the rollups are read again, even by a later process.
+class RollupMaintainer {
+
+    private static final String TAG = "RollupMaintainer";
+
+    static final String TABLE_NAME = "DailyRollup";
+    private static final String STATE_TABLE_NAME = "DailyRollupState";
+    //Also created by the JavaScript side, which inserts into it. Keep the definitions the same.
+    static final String DIRTY_TABLE_NAME = "DailyRollupDirty";
+
+    //Rollups of an older version are rebuilt.
+    private static final int VERSION = 1;
+
+    private static final Map<String, String[]> ROLLED_UP_COLUMNS;
+
+    static {
+        final Map<String, String[]> columns = new HashMap<>();
+        columns.put("StepCount", new String[]{"value"});
+        columns.put("RestingHeartRate", new String[]{"value"});
+        columns.put("WeightTrend", new String[]{"value"});
+        columns.put("SleepLog", new String[]{"lengthInSeconds", "bedTimeDiffSeconds", "wakeTimeDiffSeconds"});
+        ROLLED_UP_COLUMNS = Collections.unmodifiableMap(columns);
+    }
+
+    private final SQLiteDatabase database;
+
+    //Only changed within transactions of the database, which its connection serializes across threads.
+    //Writers check it within theirs, so no rows are written between a build and their batch.
+    //A table whose state row is of the current version is built, whichever process built it.
+    private boolean isSchemaReady = false;
+    private final Set<String> builtTables = Collections.synchronizedSet(new HashSet<>());
+
+    RollupMaintainer(SQLiteDatabase database) {
+        this.database = database;
+    }
+
+    static boolean isRolledUp(String tableName, String... columnNames) {
+        final String[] columns = ROLLED_UP_COLUMNS.get(tableName);
+        return columns != null && Arrays.asList(columns).containsAll(Arrays.asList(columnNames));
+    }
+
+    static String[] getRolledUpColumns(String tableName) {
+        final String[] columns = ROLLED_UP_COLUMNS.get(tableName);
+        if (columns == null) {
+            throw new IllegalArgumentException("Not rolled up: " + tableName);
+        }
+        return columns;
+    }
+
+    //Rollups built by an earlier process count as built, so that writers keep them current from the start.
+    boolean isBuilt(String tableName) {
+        if (builtTables.contains(tableName)) {
+            return true;
+        }
+
+        database.beginTransaction();
+        try {
+            ensureSchema();
+            final boolean isPersisted = readVersion(tableName) == VERSION;
+            database.setTransactionSuccessful();
+            if (isPersisted) {
+                builtTables.add(tableName);
+            }
+            return isPersisted;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    //Builds the rollups of the table from its rows unless they are built already, and refreshes the dates recorded as dirty.
+    void ensureBuilt(String tableName) {
+        if (isBuilt(tableName)) {
+            applyDirtyRanges(tableName);
+            return;
+        }
+        final String[] columnNames = getRolledUpColumns(tableName);
+
+        database.beginTransaction();
+        try {
+            if (builtTables.contains(tableName)) {
+                return;
+            }
+            ensureSchema();
+            if (readVersion(tableName) != VERSION) {
+                final long startedAt = System.currentTimeMillis();
+                database.delete(TABLE_NAME, "tableName = ?", new String[]{tableName});
+                //The build takes in every row, dirty or not.
+                database.delete(DIRTY_TABLE_NAME, "tableName = ?", new String[]{tableName});
+                final Map<Long, DailyRollups.Cell>[] cells = scan(tableName, columnNames, null, null);
+                for (int i = 0; i < columnNames.length; i++) {
+                    insertCells(tableName, columnNames[i], cells[i], null, null);
+                }
+                final SQLiteStatement state = database.compileStatement("INSERT OR REPLACE INTO " + STATE_TABLE_NAME + " (tableName, version) VALUES (?, ?)");
+                state.bindString(1, tableName);
+                state.bindLong(2, VERSION);
+                state.executeInsert();
+                state.close();
+                Log.d(TAG, "Built the rollups of " + tableName + " in " + (System.currentTimeMillis() - startedAt) + " millis.");
+            }
+            database.setTransactionSuccessful();
+            builtTables.add(tableName);
+        } finally {
+            try {
+                database.endTransaction();
+            } catch (RuntimeException e) {
+                builtTables.remove(tableName);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Refreshes the dates recorded in DailyRollupDirty for the table and clears them, in one transaction.
+     * Rollups that are not built yet only drop the records, since building them takes in every row.
+     */
+    void applyDirtyRanges(String tableName) {
+        database.beginTransaction();
+        try {
+            ensureSchema();
+            final boolean isBuilt = isBuilt(tableName);
+            try (Cursor cursor = database.rawQuery("SELECT startDate, endDate FROM " + DIRTY_TABLE_NAME + " WHERE tableName = ?",
+                    new String[]{tableName})) {
+                if (cursor.getCount() == 0) {
+                    database.setTransactionSuccessful();
+                    return;
+                }
+                while (isBuilt && cursor.moveToNext()) {
+                    refresh(tableName, cursor.getInt(0), cursor.getInt(1));
+                }
+            }
+            database.delete(DIRTY_TABLE_NAME, "tableName = ?", new String[]{tableName});
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Recomputes every cell whose period overlaps the dates from the rows of the table. Does nothing if the rollups
+     * of the table are not built yet, since building them takes in every row. Joins the transaction of the caller, if any.
+     */
+    void refresh(String tableName, int startDate, int endDate) {
+        if (!isBuilt(tableName)) {
+            return;
+        }
+        final String[] columnNames = getRolledUpColumns(tableName);
+
+        //Years contain their months, but not the weeks that straddle New Year. Those are recomputed in full.
+        final int firstYear = DailyRollups.getPeriodStart(DailyRollups.LEVEL_YEAR, startDate);
+        final int lastYear = DailyRollups.getPeriodStart(DailyRollups.LEVEL_YEAR, endDate);
+        final int lastDay = DailyRollups.getPeriodEnd(DailyRollups.LEVEL_YEAR, lastYear);
+        final int firstWeek = DailyRollups.getPeriodStart(DailyRollups.LEVEL_WEEK, firstYear);
+        final int lastWeek = DailyRollups.getPeriodStart(DailyRollups.LEVEL_WEEK, lastDay);
+
+        database.beginTransaction();
+        try {
+            final String[] yearArguments = {tableName, Integer.toString(firstYear), Integer.toString(lastDay)};
+            database.delete(TABLE_NAME, "tableName = ? AND level <> " + DailyRollups.LEVEL_WEEK + " AND periodStart BETWEEN ? AND ?", yearArguments);
+            final String[] weekArguments = {tableName, Integer.toString(firstWeek), Integer.toString(lastWeek)};
+            database.delete(TABLE_NAME, "tableName = ? AND level = " + DailyRollups.LEVEL_WEEK + " AND periodStart BETWEEN ? AND ?", weekArguments);
+
+            final Map<Long, DailyRollups.Cell>[] cells = scan(tableName, columnNames, firstWeek, DailyRollups.getPeriodEnd(DailyRollups.LEVEL_WEEK, lastWeek));
+            for (int i = 0; i < columnNames.length; i++) {
+                insertCells(tableName, columnNames[i], cells[i], firstYear, lastDay);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Collects the changes of rows about to be written in the caller's transaction.
+     * Reads the current values between the dates first, so it has to be created before the rows are written.
+     */
+    Batch newBatch(String tableName, String columnName, int startDate, int endDate) {
+        return new Batch(tableName, columnName, startDate, endDate);
+    }
+
+    class Batch {
+        private final String tableName;
+        private final String columnName;
+        private final Map<Integer, Double> previousValues = new HashMap<>();
+        private final Map<Long, DailyRollups.Cell> deltas = new HashMap<>();
+        private int startDate = Integer.MAX_VALUE;
+        private int endDate = Integer.MIN_VALUE;
+        //A replaced value may have been the min or max of its cells, which only the rows can tell.
+        private boolean hasReplacedValue = false;
+
+        private Batch(String tableName, String columnName, int startDate, int endDate) {
+            this.tableName = tableName;
+            this.columnName = columnName;
+            try (Cursor cursor = database.rawQuery("SELECT numberedDate, " + columnName + " FROM " + tableName +
+                    " WHERE numberedDate BETWEEN CAST(? AS INTEGER) AND CAST(? AS INTEGER)", new String[]{Integer.toString(startDate), Integer.toString(endDate)})) {
+                while (cursor.moveToNext()) {
+                    if (!cursor.isNull(1)) {
+                        previousValues.put(cursor.getInt(0), cursor.getDouble(1));
+                    }
+                }
+            }
+        }
+
+        void put(int numberedDate, double value) {
+            final Double previous = previousValues.put(numberedDate, value);
+            if (previous != null && previous == value) {
+                return;
+            }
+            startDate = Math.min(startDate, numberedDate);
+            endDate = Math.max(endDate, numberedDate);
+            if (previous != null) {
+                hasReplacedValue = true;
+            } else {
+                DailyRollups.addDay(deltas, numberedDate, value);
+            }
+        }
+
+        //Call after the rows are written, within the same transaction.
+        void apply() {
+            if (startDate > endDate) {
+                return;
+            }
+            if (hasReplacedValue) {
+                refresh(tableName, startDate, endDate);
+                return;
+            }
+
+            try (SQLiteStatement update = database.compileStatement("UPDATE " + TABLE_NAME +
+                    " SET n = n + ?, sum = sum + ?, min = MIN(min, ?), max = MAX(max, ?)" +
+                    " WHERE tableName = ? AND columnName = ? AND level = ? AND periodStart = ? AND dayOfWeek = ?");
+                 SQLiteStatement insert = compileInsert()) {
+                for (Map.Entry<Long, DailyRollups.Cell> entry : deltas.entrySet()) {
+                    final DailyRollups.Cell delta = entry.getValue();
+                    update.bindLong(1, delta.n);
+                    update.bindDouble(2, delta.sum);
+                    update.bindDouble(3, delta.min);
+                    update.bindDouble(4, delta.max);
+                    update.bindString(5, tableName);
+                    update.bindString(6, columnName);
+                    update.bindLong(7, DailyRollups.getLevelOfKey(entry.getKey()));
+                    update.bindLong(8, DailyRollups.getPeriodStartOfKey(entry.getKey()));
+                    update.bindLong(9, DailyRollups.getDayOfWeekOfKey(entry.getKey()));
+                    if (update.executeUpdateDelete() == 0) {
+                        bindInsert(insert, tableName, columnName, entry.getKey(), delta);
+                        insert.executeInsert();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Aggregates the columns over the dates from as few cells as possible, grouped and filtered by time keys
+     * as AggregationQueries does. Without a groupBy, the only group is 0 and is present even without any value.
+     *
+     * @return the cells of each group by group key, one per column, in the order of the keys.
+     */
+    TreeMap<Integer, DailyRollups.Cell[]> aggregate(String tableName, String[] columnNames, int startDate, int endDate,
+                                                    @Nullable String groupBy, @Nullable String filterBy, int filterKey) {
+        final TreeMap<Integer, DailyRollups.Cell[]> groups = new TreeMap<>();
+        if (groupBy == null) {
+            groups.put(0, newCells(columnNames.length));
+        }
+
+        for (DailyRollups.Segment segment : DailyRollups.plan(startDate, endDate, groupBy, filterBy)) {
+            if (segment.level == null) {
+                try (Cursor cursor = database.rawQuery("SELECT numberedDate, " + String.join(", ", columnNames) + " FROM " + tableName +
+                        " WHERE numberedDate BETWEEN CAST(? AS INTEGER) AND CAST(? AS INTEGER)", toArguments(segment.startDate, segment.endDate))) {
+                    while (cursor.moveToNext()) {
+                        final int numberedDate = cursor.getInt(0);
+                        final DailyRollups.Cell[] cells = getGroup(groups, columnNames.length, numberedDate,
+                                NumberedDates.getDayOfWeek(numberedDate), groupBy, filterBy, filterKey);
+                        for (int i = 0; cells != null && i < columnNames.length; i++) {
+                            if (!cursor.isNull(i + 1)) {
+                                cells[i].add(cursor.getDouble(i + 1));
+                            }
+                        }
+                    }
+                }
+            } else {
+                for (int i = 0; i < columnNames.length; i++) {
+                    try (Cursor cursor = database.rawQuery("SELECT periodStart, dayOfWeek, n, sum, min, max FROM " + TABLE_NAME +
+                            " WHERE tableName = ? AND columnName = ? AND level = " + segment.level +
+                            " AND periodStart BETWEEN CAST(? AS INTEGER) AND CAST(? AS INTEGER)", new String[]{tableName, columnNames[i],
+                            Integer.toString(segment.startDate), Integer.toString(segment.endDate)})) {
+                        while (cursor.moveToNext()) {
+                            final DailyRollups.Cell[] cells = getGroup(groups, columnNames.length, cursor.getInt(0), cursor.getInt(1),
+                                    groupBy, filterBy, filterKey);
+                            if (cells != null) {
+                                cells[i].add(new DailyRollups.Cell(cursor.getLong(2), cursor.getDouble(3), cursor.getDouble(4), cursor.getDouble(5)));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return groups;
+    }
+
+    //Null if the filter leaves the period out.
+    @Nullable
+    private static DailyRollups.Cell[] getGroup(Map<Integer, DailyRollups.Cell[]> groups, int columnCount, int periodStart, int dayOfWeek,
+                                                @Nullable String groupBy, @Nullable String filterBy, int filterKey) {
+        if (filterBy != null && DailyRollups.getTimeKey(filterBy, periodStart, dayOfWeek) != filterKey) {
+            return null;
+        }
+        final int key = groupBy != null ? DailyRollups.getTimeKey(groupBy, periodStart, dayOfWeek) : 0;
+        DailyRollups.Cell[] cells = groups.get(key);
+        if (cells == null) {
+            cells = newCells(columnCount);
+            groups.put(key, cells);
+        }
+        return cells;
+    }
+
+    private static DailyRollups.Cell[] newCells(int count) {
+        final DailyRollups.Cell[] cells = new DailyRollups.Cell[count];
+        for (int i = 0; i < count; i++) {
+            cells[i] = new DailyRollups.Cell();
+        }
+        return cells;
+    }
+
+    //The stored cells of a column by cell key.
+    Map<Long, DailyRollups.Cell> readCells(String tableName, String columnName) {
+        final Map<Long, DailyRollups.Cell> cells = new HashMap<>();
+        try (Cursor cursor = database.rawQuery("SELECT level, periodStart, dayOfWeek, n, sum, min, max FROM " + TABLE_NAME +
+                " WHERE tableName = ? AND columnName = ?", new String[]{tableName, columnName})) {
+            while (cursor.moveToNext()) {
+                cells.put(DailyRollups.makeCellKey(cursor.getInt(0), cursor.getInt(1), cursor.getInt(2)),
+                        new DailyRollups.Cell(cursor.getLong(3), cursor.getDouble(4), cursor.getDouble(5), cursor.getDouble(6)));
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Computes the cells of each column from the rows of the table, optionally between two dates.
+     */
+    @SuppressWarnings("unchecked")
+    Map<Long, DailyRollups.Cell>[] scan(String tableName, String[] columnNames, @Nullable Integer startDate, @Nullable Integer endDate) {
+        final Map<Long, DailyRollups.Cell>[] cells = new Map[columnNames.length];
+        for (int i = 0; i < columnNames.length; i++) {
+            cells[i] = new HashMap<>();
+        }
+
+        String query = "SELECT numberedDate, " + String.join(", ", columnNames) + " FROM " + tableName;
+        String[] arguments = null;
+        if (startDate != null && endDate != null) {
+            query += " WHERE numberedDate BETWEEN CAST(? AS INTEGER) AND CAST(? AS INTEGER)";
+            arguments = toArguments(startDate, endDate);
+        }
+        try (Cursor cursor = database.rawQuery(query, arguments)) {
+            while (cursor.moveToNext()) {
+                for (int i = 0; i < columnNames.length; i++) {
+                    if (!cursor.isNull(i + 1)) {
+                        DailyRollups.addDay(cells[i], cursor.getInt(0), cursor.getDouble(i + 1));
+                    }
+                }
+            }
+        }
+        return cells;
+    }
+
+    //Month and year cells outside the dates, if given, are left out. Week cells are always inserted.
+    private void insertCells(String tableName, String columnName, Map<Long, DailyRollups.Cell> cells,
+                             @Nullable Integer startDate, @Nullable Integer endDate) {
+        try (SQLiteStatement insert = compileInsert()) {
+            for (Map.Entry<Long, DailyRollups.Cell> entry : cells.entrySet()) {
+                final int periodStart = DailyRollups.getPeriodStartOfKey(entry.getKey());
+                if (startDate != null && DailyRollups.getLevelOfKey(entry.getKey()) != DailyRollups.LEVEL_WEEK
+                        && (periodStart < startDate || periodStart > endDate)) {
+                    continue;
+                }
+                bindInsert(insert, tableName, columnName, entry.getKey(), entry.getValue());
+                insert.executeInsert();
+            }
+        }
+    }
+
+    private SQLiteStatement compileInsert() {
+        return database.compileStatement("INSERT INTO " + TABLE_NAME +
+                " (tableName, columnName, level, periodStart, dayOfWeek, n, sum, min, max) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+    }
+
+    private static void bindInsert(SQLiteStatement insert, String tableName, String columnName, long key, DailyRollups.Cell cell) {
+        insert.bindString(1, tableName);
+        insert.bindString(2, columnName);
+        insert.bindLong(3, DailyRollups.getLevelOfKey(key));
+        insert.bindLong(4, DailyRollups.getPeriodStartOfKey(key));
+        insert.bindLong(5, DailyRollups.getDayOfWeekOfKey(key));
+        insert.bindLong(6, cell.n);
+        insert.bindDouble(7, cell.sum);
+        insert.bindDouble(8, cell.min);
+        insert.bindDouble(9, cell.max);
+    }
+
+    private void ensureSchema() {
+        if (isSchemaReady) {
+            return;
+        }
+        database.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" +
+                "tableName TEXT NOT NULL, columnName TEXT NOT NULL, level INTEGER NOT NULL, " +
+                "periodStart INTEGER NOT NULL, dayOfWeek INTEGER NOT NULL, " +
+                "n INTEGER NOT NULL, sum REAL NOT NULL, min REAL NOT NULL, max REAL NOT NULL, " +
+                "PRIMARY KEY (tableName, columnName, level, periodStart, dayOfWeek))");
+        database.execSQL("CREATE TABLE IF NOT EXISTS " + STATE_TABLE_NAME + " (tableName TEXT PRIMARY KEY, version INTEGER NOT NULL)");
+        database.execSQL("CREATE TABLE IF NOT EXISTS " + DIRTY_TABLE_NAME + " (tableName TEXT NOT NULL, startDate INTEGER NOT NULL, endDate INTEGER NOT NULL)");
+        isSchemaReady = true;
+    }
+
+    private int readVersion(String tableName) {
+        try (Cursor cursor = database.rawQuery("SELECT version FROM " + STATE_TABLE_NAME + " WHERE tableName = ?", new String[]{tableName})) {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        }
+    }
+
+    private static String[] toArguments(int startDate, int endDate) {
+        return new String[]{Integer.toString(startDate), Integer.toString(endDate)};
+    }
+}
@@ -0,0 +1,119 @@
+package com.dataathand.fitbit;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+//Reads a series in fixed-size chunks and hands them to a sink, at most maxInFlight chunks ahead of the acknowledgements.
+//A stream that is cancelled, or whose consumer stops acknowledging, closes its source and ends with an error.
+//run() blocks its thread while waiting for acknowledgements, so each stream needs a thread of its own.
+class SeriesStream implements Runnable {
+
+    static final String ERROR_CANCELLED = "CANCELLED";
+    static final String ERROR_ACK_TIMEOUT = "ACK_TIMEOUT";
+    static final String ERROR_READ = "READ_FAILED";
+
+    interface Source {
+        //Fills the row with the next one, in the order of the columns. Returns false past the last row.
+        boolean next(double[] row);
+
+        //Called from another thread to abort a read in progress, which may then throw.
+        void cancel();
+
+        void close();
+    }
+
+    interface Sink {
+        //The arrays are reused for the next chunk, so they must be consumed before returning.
+        void onChunk(int streamId, int sequence, double[][] columns, int rowCount, boolean isLast);
+
+        void onError(int streamId, String code, String message);
+    }
+
+    final int id;
+    private final Source source;
+    private final int columnCount;
+    private final int chunkSize;
+    private final long ackTimeoutMillis;
+    private final Sink sink;
+
+    //One permit per chunk the consumer may still take before acknowledging.
+    private final Semaphore permits;
+    //Guarded by this.
+    private int lastAcknowledged = -1;
+    private volatile boolean isCancelled = false;
+
+    SeriesStream(int id, Source source, int columnCount, int chunkSize, int maxInFlight, long ackTimeoutMillis, Sink sink) {
+        this.id = id;
+        this.source = source;
+        this.columnCount = columnCount;
+        this.chunkSize = chunkSize;
+        this.ackTimeoutMillis = ackTimeoutMillis;
+        this.sink = sink;
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    //Acknowledges every chunk up to the sequence, so a lost acknowledgement is made up for by the next one.
+    synchronized void acknowledge(int sequence) {
+        if (sequence > lastAcknowledged) {
+            permits.release(sequence - lastAcknowledged);
+            lastAcknowledged = sequence;
+        }
+    }
+
+    void cancel() {
+        isCancelled = true;
+        source.cancel();
+        //Wakes the producer if it waits for an acknowledgement.
+        permits.release();
+    }
+
+    boolean isCancelled() {
+        return isCancelled;
+    }
+
+    @Override
+    public void run() {
+        final double[][] columns = new double[columnCount][chunkSize];
+        final double[] row = new double[columnCount];
+        try {
+            int sequence = 0;
+            boolean hasNext = !isCancelled && source.next(row);
+            while (!isCancelled) {
+                if (!permits.tryAcquire(ackTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    sink.onError(id, ERROR_ACK_TIMEOUT, "No acknowledgement for " + ackTimeoutMillis + " millis");
+                    return;
+                } else if (isCancelled) {
+                    break;
+                }
+
+                int rowCount = 0;
+                while (hasNext && rowCount < chunkSize && !isCancelled) {
+                    for (int c = 0; c < columnCount; c++) {
+                        columns[c][rowCount] = row[c];
+                    }
+                    rowCount++;
+                    hasNext = source.next(row);
+                }
+                if (isCancelled) {
+                    break;
+                }
+                sink.onChunk(id, sequence++, columns, rowCount, !hasNext);
+                if (!hasNext) {
+                    return;
+                }
+            }
+            sink.onError(id, ERROR_CANCELLED, "Cancelled");
+        } catch (InterruptedException e) {
+            sink.onError(id, ERROR_CANCELLED, "Interrupted");
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            if (isCancelled) {
+                sink.onError(id, ERROR_CANCELLED, "Cancelled");
+            } else {
+                sink.onError(id, ERROR_READ, String.valueOf(e));
+            }
+        } finally {
+            source.close();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.dataathand.fitbit;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.dataathand.time.NumberedDates;
+
+import java.time.LocalDate;
+
+//Writes each chunk in a single transaction with one precompiled statement, in the row format of handleQueryResultEntry().
+//Rollups of the table, once built, are updated within the same transaction.
+//Cached aggregations over the written dates are dropped once the transaction is committed.
+class SqliteDailySummaryStore implements DailySummaryStore {
+
+    private final SQLiteDatabase database;
+    private final AggregationResultCache resultCache;
+    private final RollupMaintainer rollups;
+
+    SqliteDailySummaryStore(SQLiteDatabase database, AggregationResultCache resultCache, RollupMaintainer rollups) {
+        this.database = database;
+        this.resultCache = resultCache;
+        this.rollups = rollups;
+    }
+
+    @Override
+    public void writeChunk(DailySummaryMeasure measure, DailySummaryChunk chunk) {
+        if (chunk.size() == 0) {
+            return;
+        }
+
+        int startDate = Integer.MAX_VALUE;
+        int endDate = Integer.MIN_VALUE;
+        for (int i = 0; i < chunk.size(); i++) {
+            startDate = Math.min(startDate, chunk.getNumberedDate(i));
+            endDate = Math.max(endDate, chunk.getNumberedDate(i));
+        }
+
+        database.beginTransaction();
+        try (SQLiteStatement insert = database.compileStatement("INSERT OR REPLACE INTO " + measure.tableName +
+                " (numberedDate, year, month, dayOfWeek, value) VALUES (?, ?, ?, ?, ?)")) {
+            final RollupMaintainer.Batch rollupBatch = rollups.isBuilt(measure.tableName)
+                    ? rollups.newBatch(measure.tableName, "value", startDate, endDate) : null;
+            for (int i = 0; i < chunk.size(); i++) {
+                final int numberedDate = chunk.getNumberedDate(i);
+                final LocalDate date = NumberedDates.toLocalDate(numberedDate);
+                insert.bindLong(1, numberedDate);
+                insert.bindLong(2, date.getYear());
+                insert.bindLong(3, date.getMonthValue());
+                insert.bindLong(4, NumberedDates.getDayOfWeek(date));
+                insert.bindDouble(5, chunk.getValue(i));
+                insert.executeInsert();
+                if (rollupBatch != null) {
+                    rollupBatch.put(numberedDate, chunk.getValue(i));
+                }
+            }
+            if (rollupBatch != null) {
+                rollupBatch.apply();
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        resultCache.invalidate(measure.tableName, startDate, endDate);
+    }
+}
@@ -0,0 +1,149 @@
+package com.dataathand.fitbit;
+
+import androidx.annotation.Nullable;
+
+import java.util.Locale;
+
+//Order statistics over primitive arrays by selection instead of sorting, so a percentile costs linear time on average.
+//Percentiles follow findPercentileValue() of the JavaScript side: the value at ROUND(count * ratio) - 1 in ascending order,
+//with the ratio rounded to two decimals and NULLs ordered first, as SQLite does.
+final class SummaryStatistics {
+
+    private SummaryStatistics() {
+    }
+
+    //Position of the percentile among count values, or -1 if there is none.
+    static int percentileIndex(int count, double ratio) {
+        if (count == 0) {
+            return -1;
+        }
+        final double roundedRatio = Double.parseDouble(String.format(Locale.US, "%.2f", ratio));
+        //SQLite treats a negative OFFSET as zero.
+        return (int) Math.max(0, Math.min(count - 1, Math.round(count * roundedRatio) - 1));
+    }
+
+    /**
+     * Moves the k-th smallest value of values[from, to) to index k, smaller or equal ones before it and larger or equal ones after it.
+     * Reorders the array in place.
+     */
+    static double select(double[] values, int from, int to, int k) {
+        int left = from;
+        int right = to - 1;
+        while (right > left) {
+            //Median of three, so that sorted input does not degrade to quadratic time.
+            final int middle = (left + right) >>> 1;
+            if (values[middle] < values[left]) {
+                swap(values, middle, left);
+            }
+            if (values[right] < values[left]) {
+                swap(values, right, left);
+            }
+            if (values[right] < values[middle]) {
+                swap(values, right, middle);
+            }
+            final double pivot = values[middle];
+
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(values, i, j);
+                    i++;
+                    j--;
+                }
+            }
+
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                break;
+            }
+        }
+        return values[k];
+    }
+
+    private static void swap(double[] values, int i, int j) {
+        final double value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+
+    //The same numbers as getBoxplotInfo() of the JavaScript side, with null wherever its queries return NULL.
+    static final class BoxPlot {
+        @Nullable
+        final Double median;
+        @Nullable
+        final Double percentile25;
+        @Nullable
+        final Double percentile75;
+        @Nullable
+        final Double iqr;
+        @Nullable
+        final Double minWithoutOutlier;
+        @Nullable
+        final Double maxWithoutOutlier;
+
+        private BoxPlot(@Nullable Double median, @Nullable Double percentile25, @Nullable Double percentile75, @Nullable Double iqr,
+                        @Nullable Double minWithoutOutlier, @Nullable Double maxWithoutOutlier) {
+            this.median = median;
+            this.percentile25 = percentile25;
+            this.percentile75 = percentile75;
+            this.iqr = iqr;
+            this.minWithoutOutlier = minWithoutOutlier;
+            this.maxWithoutOutlier = maxWithoutOutlier;
+        }
+
+        /**
+         * @param values    the non-null values in values[0, count). Reordered in place.
+         * @param nullCount rows without a value, which still count towards the percentile positions.
+         */
+        static BoxPlot compute(double[] values, int count, int nullCount) {
+            final int total = count + nullCount;
+            final int medianIndex = percentileIndex(total, 0.5) - nullCount;
+            final int index25 = percentileIndex(total, 0.25) - nullCount;
+            final int index75 = percentileIndex(total, 0.75) - nullCount;
+
+            //Each selection leaves the smaller values on its left, so the quartiles only search their half.
+            Double median = null;
+            int lowerEnd = count;
+            int upperStart = 0;
+            if (medianIndex >= 0) {
+                median = select(values, 0, count, medianIndex);
+                lowerEnd = medianIndex + 1;
+                upperStart = medianIndex;
+            }
+            final Double percentile25 = index25 >= 0 ? select(values, 0, Math.min(lowerEnd, count), index25) : null;
+            final Double percentile75 = index75 >= 0 ? select(values, Math.max(upperStart, 0), count, index75) : null;
+
+            if (percentile25 == null || percentile75 == null) {
+                return new BoxPlot(median, percentile25, percentile75, null, null, null);
+            }
+
+            final double iqr = percentile75 - percentile25;
+            final double lowerBound = percentile25 - iqr;
+            final double upperBound = percentile75 + iqr;
+            double minWithoutOutlier = Double.POSITIVE_INFINITY;
+            double maxWithoutOutlier = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < count; i++) {
+                final double value = values[i];
+                if (value >= lowerBound && value < minWithoutOutlier) {
+                    minWithoutOutlier = value;
+                }
+                if (value <= upperBound && value > maxWithoutOutlier) {
+                    maxWithoutOutlier = value;
+                }
+            }
+            return new BoxPlot(median, percentile25, percentile75, iqr,
+                    Double.isInfinite(minWithoutOutlier) ? null : minWithoutOutlier,
+                    Double.isInfinite(maxWithoutOutlier) ? null : maxWithoutOutlier);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.dataathand.fitbit;
+
+import java.util.concurrent.TimeUnit;
+
+//Classic token bucket: bursts up to the capacity, then a steady rate of permits per second.
+class TokenBucket {
+
+    private final double capacity;
+    private double permitsPerNano;
+
+    private double tokens;
+    private long lastRefillAt;
+
+    TokenBucket(int capacity, double permitsPerSecond) {
+        if (capacity <= 0 || permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("The capacity and the rate must be positive.");
+        }
+        this.capacity = capacity;
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.tokens = capacity;
+        this.lastRefillAt = System.nanoTime();
+    }
+
+    //Tokens already accumulated are kept.
+    synchronized void setRate(double permitsPerSecond) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("The rate must be positive.");
+        }
+        refill(System.nanoTime());
+        permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    synchronized boolean tryAcquire() {
+        refill(System.nanoTime());
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        } else return false;
+    }
+
+    /**
+     * Blocks until a permit is available.
+     */
+    void acquire() throws InterruptedException {
+        while (true) {
+            final long waitNanos;
+            synchronized (this) {
+                final long now = System.nanoTime();
+                refill(now);
+                if (tokens >= 1) {
+                    tokens -= 1;
+                    return;
+                }
+                waitNanos = (long) Math.ceil((1 - tokens) / permitsPerNano);
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.max(1, waitNanos));
+        }
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - lastRefillAt) * permitsPerNano);
+        lastRefillAt = now;
+    }
+}
@@ -0,0 +1,114 @@
+package com.dataathand.logging;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.dataathand.utils.NamedThreadFactory;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//Takes the log batches that DirectoryLogger used to post from JavaScript and uploads them through a LogUploadQueue.
+//Its spool is kept in the files directory, so that batches outlive both the session and the process.
+public class LogUploadModule extends ReactContextBaseJavaModule {
+
+    private static final String TAG = "LogUpload";
+
+    private static final String ERROR_ENQUEUE = "ENQUEUE_FAILED";
+
+    private static final String SPOOL_DIRECTORY_NAME = "log_uploads";
+
+    private static final ExecutorService s_spoolExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("log-upload-spool"));
+
+    //Created on s_spoolExecutor, since it reads the spool directory.
+    private static LogUploadQueue s_queue = null;
+
+    LogUploadModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return "LogUpload";
+    }
+
+    /**
+     * @param headers the session info, sent as request headers.
+     */
+    @ReactMethod
+    public void enqueue(String url, String fileName, ReadableMap headers, ReadableArray lines, Promise promise) {
+        final Map<String, String> headerMap = new HashMap<>();
+        for (Map.Entry<String, Object> entry : headers.toHashMap().entrySet()) {
+            if (entry.getValue() != null) {
+                headerMap.put(entry.getKey(), String.valueOf(entry.getValue()));
+            }
+        }
+
+        final List<String> list = new ArrayList<>(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            list.add(lines.getString(i));
+        }
+
+        s_spoolExecutor.execute(() -> {
+            try {
+                getQueue().enqueue(url, fileName, headerMap, list);
+                promise.resolve(null);
+            } catch (IOException e) {
+                Log.e(TAG, "Spooling " + list.size() + " lines of " + fileName + " failed", e);
+                promise.reject(ERROR_ENQUEUE, e.getMessage(), e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void flush(Promise promise) {
+        s_spoolExecutor.execute(() -> {
+            getQueue().flush();
+            promise.resolve(null);
+        });
+    }
+
+    @ReactMethod
+    public void getStats(Promise promise) {
+        s_spoolExecutor.execute(() -> {
+            final LogUploadQueue.Stats stats = getQueue().getStats();
+            final WritableMap result = Arguments.createMap();
+            result.putInt("pendingBatches", stats.pendingBatches);
+            result.putDouble("pendingLines", stats.pendingLines);
+            result.putDouble("pendingBytes", stats.pendingBytes);
+            result.putDouble("uploadedLines", stats.uploadedLines);
+            result.putDouble("uploadedRequests", stats.uploadedRequests);
+            result.putDouble("failedAttempts", stats.failedAttempts);
+            result.putDouble("droppedLines", stats.droppedLines);
+            result.putInt("consecutiveFailures", stats.consecutiveFailures);
+            result.putDouble("nextAttemptAt", stats.nextAttemptAt);
+            promise.resolve(result);
+        });
+    }
+
+    private LogUploadQueue getQueue() {
+        if (s_queue == null) {
+            final File spoolDirectory = new File(getReactApplicationContext().getFilesDir(), SPOOL_DIRECTORY_NAME);
+            s_queue = new LogUploadQueue(spoolDirectory,
+                    Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("log-upload", Thread.MIN_PRIORITY)),
+                    new LogUploadQueue.Config());
+        }
+        return s_queue;
+    }
+}
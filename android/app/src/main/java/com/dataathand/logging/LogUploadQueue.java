@@ -0,0 +1,262 @@
+package com.dataathand.logging;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Uploads interaction logs to the logging backend in the format DirectoryLogger used to post from JavaScript:
+ * {@code {"fileName": ..., "lines": [...]}} with the session info as headers, but gzipped.
+ * Batches are spooled to disk gzipped and uploaded on the scheduler after a coalescing delay, several batches per request.
+ * Failed uploads are retried with exponential backoff and jitter. Memory use does not depend on the backlog:
+ * request bodies are streamed from the spool, and the spool itself is bounded.
+ */
+class LogUploadQueue {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int READ_TIMEOUT_MILLIS = 30000;
+    private static final int BUFFER_BYTES = 8 * 1024;
+
+    static final class Config {
+        long coalescingDelayMillis = 5000;
+        long initialBackoffMillis = 5000;
+        long maxBackoffMillis = TimeUnit.MINUTES.toMillis(10);
+        //Compressed bytes per request. A single larger batch is still sent on its own.
+        long maxRequestBytes = 256 * 1024;
+        long maxSpoolBytes = 8 * 1024 * 1024;
+        int maxSpoolBatches = 10000;
+    }
+
+    static final class Stats {
+        int pendingBatches;
+        long pendingLines;
+        long pendingBytes;
+        long uploadedLines;
+        long uploadedRequests;
+        long failedAttempts;
+        //Dropped because the spool was full or the backend refused them.
+        long droppedLines;
+        int consecutiveFailures;
+        //Epoch millis of the next scheduled upload, or 0 if none is scheduled.
+        long nextAttemptAt;
+    }
+
+    private enum Outcome {
+        Delivered, Rejected, Failed
+    }
+
+    private final Config config;
+    private final UploadSpool spool;
+    private final ScheduledExecutorService scheduler;
+    private final Random random = new Random();
+
+    //Guarded by this.
+    private ScheduledFuture<?> scheduledUpload = null;
+    private long scheduledAt = 0;
+    private long backoffUntil = 0;
+    private int consecutiveFailures = 0;
+    private long uploadedLines = 0;
+    private long uploadedRequests = 0;
+    private long failedAttempts = 0;
+    private long rejectedLines = 0;
+
+    /**
+     * Batches left in the spool directory by an earlier process are uploaded after the coalescing delay.
+     *
+     * @param scheduler runs the uploads. It has to run one task at a time.
+     */
+    LogUploadQueue(File spoolDirectory, ScheduledExecutorService scheduler, Config config) {
+        this.config = config;
+        this.scheduler = scheduler;
+        this.spool = new UploadSpool(spoolDirectory, config.maxSpoolBytes, config.maxSpoolBatches);
+        if (spool.getBatchCount() > 0) {
+            requestUpload(config.coalescingDelayMillis);
+        }
+    }
+
+    //Writes the lines to the spool on the calling thread.
+    void enqueue(String url, String fileName, Map<String, String> headers, List<String> lines) throws IOException {
+        spool.add(new UploadSpool.Destination(url, fileName, headers), lines);
+        requestUpload(config.coalescingDelayMillis);
+    }
+
+    //Uploads without waiting for the coalescing delay, unless the backend is being backed off from.
+    void flush() {
+        requestUpload(0);
+    }
+
+    synchronized Stats getStats() {
+        final Stats stats = new Stats();
+        stats.pendingBatches = spool.getBatchCount();
+        stats.pendingLines = spool.getLineCount();
+        stats.pendingBytes = spool.getBytes();
+        stats.uploadedLines = uploadedLines;
+        stats.uploadedRequests = uploadedRequests;
+        stats.failedAttempts = failedAttempts;
+        stats.droppedLines = spool.getDroppedLineCount() + rejectedLines;
+        stats.consecutiveFailures = consecutiveFailures;
+        stats.nextAttemptAt = scheduledUpload != null ? scheduledAt : 0;
+        return stats;
+    }
+
+    private synchronized void requestUpload(long delayMillis) {
+        final long now = System.currentTimeMillis();
+        final long at = Math.max(now + delayMillis, backoffUntil);
+        if (scheduledUpload != null) {
+            if (scheduledAt <= at) {
+                return;
+            } else if (!scheduledUpload.cancel(false)) {
+                //Already running. It reschedules itself if anything is left.
+                return;
+            }
+        }
+
+        scheduledAt = at;
+        scheduledUpload = scheduler.schedule(this::uploadPending, at - now, TimeUnit.MILLISECONDS);
+    }
+
+    private void uploadPending() {
+        synchronized (this) {
+            scheduledUpload = null;
+        }
+
+        List<UploadSpool.Batch> batches;
+        while (!(batches = spool.lease(config.maxRequestBytes)).isEmpty()) {
+            final Outcome outcome = post(batches);
+            final int lineCount = countLines(batches);
+            synchronized (this) {
+                switch (outcome) {
+                    case Delivered:
+                        uploadedLines += lineCount;
+                        uploadedRequests++;
+                        consecutiveFailures = 0;
+                        backoffUntil = 0;
+                        break;
+                    case Rejected:
+                        rejectedLines += lineCount;
+                        break;
+                    case Failed:
+                        failedAttempts++;
+                        consecutiveFailures++;
+                        backoffUntil = System.currentTimeMillis() + getBackoffMillis(consecutiveFailures);
+                        break;
+                }
+            }
+
+            if (outcome == Outcome.Failed) {
+                spool.release(batches);
+                requestUpload(0);
+                return;
+            }
+            spool.remove(batches);
+        }
+    }
+
+    //Exponential with up to a fifth of jitter, so that clients that failed together do not retry together.
+    private long getBackoffMillis(int failures) {
+        final long exponential = config.initialBackoffMillis << Math.min(failures - 1, 30);
+        final long capped = exponential > 0 ? Math.min(config.maxBackoffMillis, exponential) : config.maxBackoffMillis;
+        return capped - (long) (capped * 0.2 * random.nextDouble());
+    }
+
+    private Outcome post(List<UploadSpool.Batch> batches) {
+        final UploadSpool.Destination destination = batches.get(0).destination;
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(destination.url).openConnection();
+            connection.setRequestMethod("POST");
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+            connection.setDoOutput(true);
+            connection.setChunkedStreamingMode(BUFFER_BYTES);
+            for (Map.Entry<String, String> header : destination.headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setRequestProperty("Content-Encoding", "gzip");
+
+            //The batches are inflated into a single gzip stream, since not every server decodes concatenated gzip members.
+            final StringBuilder prefix = new StringBuilder("{\"fileName\":");
+            UploadSpool.writeJsonString(prefix, destination.fileName);
+            prefix.append(",\"lines\":[");
+
+            final byte[] buffer = new byte[BUFFER_BYTES];
+            try (OutputStream output = new GZIPOutputStream(connection.getOutputStream(), BUFFER_BYTES)) {
+                output.write(prefix.toString().getBytes(StandardCharsets.UTF_8));
+                for (int i = 0; i < batches.size(); i++) {
+                    if (i > 0) {
+                        output.write(',');
+                    }
+                    try (InputStream input = new GZIPInputStream(new FileInputStream(batches.get(i).file), BUFFER_BYTES)) {
+                        int read;
+                        while ((read = input.read(buffer)) > 0) {
+                            output.write(buffer, 0, read);
+                        }
+                    }
+                }
+                output.write("]}".getBytes(StandardCharsets.UTF_8));
+            }
+
+            final int status = connection.getResponseCode();
+            drain(connection);
+            if (status >= 200 && status < 300) {
+                return Outcome.Delivered;
+            } else if (status >= 400 && status < 500 && status != 408 && status != 429) {
+                //Sending the same body again would not help.
+                return Outcome.Rejected;
+            } else {
+                return Outcome.Failed;
+            }
+        } catch (IOException e) {
+            return Outcome.Failed;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    //Lets the connection be reused.
+    private static void drain(HttpURLConnection connection) {
+        try (InputStream input = getResponseStream(connection)) {
+            if (input != null) {
+                final byte[] buffer = new byte[1024];
+                while (input.read(buffer) > 0) {
+                }
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Nullable
+    private static InputStream getResponseStream(HttpURLConnection connection) throws IOException {
+        try {
+            return connection.getInputStream();
+        } catch (IOException e) {
+            return connection.getErrorStream();
+        }
+    }
+
+    private static int countLines(List<UploadSpool.Batch> batches) {
+        int count = 0;
+        for (UploadSpool.Batch batch : batches) {
+            count += batch.lineCount;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,202 @@
+package com.dataathand.logging;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.dataathand.utils.NamedThreadFactory;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.WritableArray;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//Writes the JSON line logs of a logging session. JavaScript hands over each debounced batch in one call;
+//the lines are appended off the JS thread and rotated into gzipped segments, so exporting only has to seal the active segments.
+public class LogWriterModule extends ReactContextBaseJavaModule {
+
+    private static final String TAG = "LogWriter";
+
+    private static final String ERROR_WRITE = "WRITE_FAILED";
+    private static final String ERROR_EXPORT = "EXPORT_FAILED";
+
+    private static final long MAX_SEGMENT_BYTES = 256 * 1024;
+    private static final String INFO_FILE_NAME = "info.json";
+
+    private static final long COMPRESSION_TIMEOUT_MILLIS = 30000;
+
+    private static final ExecutorService s_writeExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("log-writer"));
+    private static final SegmentCompressor s_compressor = new SegmentCompressor(
+            Executors.newSingleThreadExecutor(new NamedThreadFactory("log-compression", Thread.MIN_PRIORITY)));
+
+    //Confined to s_writeExecutor. Keyed by the path of the active file.
+    private static final Map<String, SegmentedLogWriter> s_writers = new HashMap<>();
+
+    LogWriterModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return "LogWriter";
+    }
+
+    @ReactMethod
+    public void append(String directoryPath, String fileName, ReadableArray lines, Promise promise) {
+        final List<String> list = new ArrayList<>(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            list.add(lines.getString(i));
+        }
+
+        s_writeExecutor.execute(() -> {
+            try {
+                getWriter(new File(directoryPath), fileName).append(list);
+                promise.resolve(null);
+            } catch (IOException e) {
+                Log.e(TAG, "Appending to " + fileName + " failed", e);
+                promise.reject(ERROR_WRITE, e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Seals the logs of the directory, writes the session info next to them and resolves the paths of every file to share:
+     * the gzipped segments, the session info and whatever else the directory holds, such as screenshots.
+     */
+    @ReactMethod
+    public void export(String directoryPath, String sessionInfoJson, Promise promise) {
+        s_writeExecutor.execute(() -> {
+            try {
+                final List<File> files = exportImpl(new File(directoryPath), sessionInfoJson);
+                final WritableArray paths = Arguments.createArray();
+                for (File file : files) {
+                    paths.pushString(file.getAbsolutePath());
+                }
+                promise.resolve(paths);
+            } catch (Exception e) {
+                Log.e(TAG, "Export failed", e);
+                promise.reject(ERROR_EXPORT, e.getMessage(), e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void removeDirectory(String directoryPath, Promise promise) {
+        s_writeExecutor.execute(() -> {
+            try {
+                final File directory = new File(directoryPath);
+                closeWriters(directory);
+                //A pending compression would otherwise recreate files in the directory.
+                s_compressor.awaitIdle(COMPRESSION_TIMEOUT_MILLIS);
+                deleteRecursively(directory);
+                promise.resolve(null);
+            } catch (Exception e) {
+                Log.e(TAG, "Removing " + directoryPath + " failed", e);
+                promise.reject(ERROR_WRITE, e.getMessage(), e);
+            }
+        });
+    }
+
+    private static List<File> exportImpl(File directory, String sessionInfoJson) throws Exception {
+        if (!directory.isDirectory()) {
+            return Collections.emptyList();
+        }
+
+        //Logs written by an earlier process have no writer yet.
+        final String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                if (isActiveLogFile(name)) {
+                    getWriter(directory, name);
+                }
+            }
+        }
+
+        for (SegmentedLogWriter writer : s_writers.values()) {
+            if (writer.getActiveFile().getParentFile().equals(directory)) {
+                writer.seal();
+            }
+        }
+        s_compressor.awaitIdle(COMPRESSION_TIMEOUT_MILLIS);
+
+        try (OutputStream output = new FileOutputStream(new File(directory, INFO_FILE_NAME))) {
+            output.write(sessionInfoJson.getBytes(StandardCharsets.UTF_8));
+        }
+
+        final List<File> files = new ArrayList<>();
+        collectFiles(directory, files);
+        Collections.sort(files);
+        return files;
+    }
+
+    private static SegmentedLogWriter getWriter(File directory, String fileName) {
+        final File active = new File(directory, fileName);
+        SegmentedLogWriter writer = s_writers.get(active.getPath());
+        if (writer == null) {
+            writer = new SegmentedLogWriter(directory, fileName, MAX_SEGMENT_BYTES, s_compressor);
+            s_writers.put(active.getPath(), writer);
+        }
+        return writer;
+    }
+
+    private static void closeWriters(File directory) throws IOException {
+        final Iterator<SegmentedLogWriter> iterator = s_writers.values().iterator();
+        while (iterator.hasNext()) {
+            final SegmentedLogWriter writer = iterator.next();
+            if (writer.getActiveFile().getParentFile().equals(directory)) {
+                writer.close();
+                iterator.remove();
+            }
+        }
+    }
+
+    //Active log files are the JSON line files without a segment sequence.
+    private static boolean isActiveLogFile(String name) {
+        return name.endsWith(".jsonl") && !name.matches(".*\\.\\d+\\.jsonl");
+    }
+
+    private static void collectFiles(File directory, List<File> files) {
+        final File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+
+        for (File child : children) {
+            if (child.isDirectory()) {
+                collectFiles(child, files);
+            } else if (!child.getName().endsWith(SegmentCompressor.PARTIAL_SUFFIX)) {
+                files.add(child);
+            }
+        }
+    }
+
+    private static void deleteRecursively(File file) throws IOException {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not delete " + file);
+        }
+    }
+}
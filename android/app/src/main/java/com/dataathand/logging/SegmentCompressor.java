@@ -0,0 +1,76 @@
+package com.dataathand.logging;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPOutputStream;
+
+//Gzips rotated log segments one after another on its own executor.
+//A segment is replaced by <segment>.gz only once the compressed file is complete, so a crash leaves either of them intact.
+class SegmentCompressor {
+
+    static final String COMPRESSED_SUFFIX = ".gz";
+    static final String PARTIAL_SUFFIX = ".tmp";
+
+    private static final int BUFFER_BYTES = 32 * 1024;
+
+    private final ExecutorService executor;
+
+    /**
+     * @param executor has to run tasks one at a time, in order of submission.
+     */
+    SegmentCompressor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    static File compressedFileOf(File segment) {
+        return new File(segment.getPath() + COMPRESSED_SUFFIX);
+    }
+
+    //Resolves the compressed file.
+    Future<File> compress(File segment) {
+        return executor.submit(() -> compressImpl(segment));
+    }
+
+    //Waits until every segment submitted so far has been processed.
+    void awaitIdle(long timeoutMillis) throws InterruptedException, TimeoutException {
+        try {
+            executor.submit(() -> {
+            }).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static File compressImpl(File segment) throws IOException {
+        final File compressed = compressedFileOf(segment);
+        final File partial = new File(compressed.getPath() + PARTIAL_SUFFIX);
+
+        final byte[] buffer = new byte[BUFFER_BYTES];
+        try (InputStream input = new FileInputStream(segment);
+             OutputStream output = new GZIPOutputStream(new FileOutputStream(partial), BUFFER_BYTES)) {
+            int read;
+            while ((read = input.read(buffer)) > 0) {
+                output.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            partial.delete();
+            throw e;
+        }
+
+        if (!partial.renameTo(compressed)) {
+            partial.delete();
+            throw new IOException("Could not finish " + compressed);
+        }
+        segment.delete();
+        return compressed;
+    }
+}
@@ -0,0 +1,185 @@
+package com.dataathand.logging;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//Appends lines to one log file of a session directory.
+//Each batch is encoded straight into a direct buffer and written through a FileChannel, without intermediate byte arrays.
+//Once the active segment, e.g. speech_command.jsonl, reaches maxSegmentBytes, it is renamed to speech_command.000001.jsonl
+//and gzipped in the background. Rotated segments that were left uncompressed by a previous process are picked up on open.
+//Not thread-safe; LogWriterModule confines writers to its executor.
+class SegmentedLogWriter implements Closeable {
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final byte LINE_SEPARATOR = '\n';
+
+    private final File directory;
+    private final String fileName;
+    private final long maxSegmentBytes;
+    private final SegmentCompressor compressor;
+
+    private final String baseName;
+    private final String extension;
+    private final Pattern segmentPattern;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private FileChannel channel = null;
+    private long segmentBytes = 0;
+    private int lastSequence = 0;
+
+    SegmentedLogWriter(File directory, String fileName, long maxSegmentBytes, SegmentCompressor compressor) {
+        this.directory = directory;
+        this.fileName = fileName;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.compressor = compressor;
+
+        final int dot = fileName.lastIndexOf('.');
+        this.baseName = dot > 0 ? fileName.substring(0, dot) : fileName;
+        this.extension = dot > 0 ? fileName.substring(dot) : "";
+        this.segmentPattern = Pattern.compile(Pattern.quote(baseName) + "\\.(\\d+)" + Pattern.quote(extension)
+                + "(" + Pattern.quote(SegmentCompressor.COMPRESSED_SUFFIX) + ")?");
+
+        recoverSegments();
+    }
+
+    File getActiveFile() {
+        return new File(directory, fileName);
+    }
+
+    void append(List<String> lines) throws IOException {
+        if (lines.isEmpty()) {
+            return;
+        }
+
+        if (channel == null) {
+            open();
+        }
+
+        for (String line : lines) {
+            encode(line);
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.put(LINE_SEPARATOR);
+        }
+        drain();
+
+        if (segmentBytes >= maxSegmentBytes) {
+            rotate();
+        }
+    }
+
+    /**
+     * Rotates the active segment if it has any content, so that every line written so far ends up in a compressed segment.
+     */
+    void seal() throws IOException {
+        if (channel == null) {
+            final File active = getActiveFile();
+            segmentBytes = active.length();
+        }
+        rotate();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            drain();
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void open() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        //java.nio.file needs API level 26. Closing the channel closes the stream as well.
+        channel = new FileOutputStream(getActiveFile(), true).getChannel();
+        segmentBytes = channel.size();
+    }
+
+    private void encode(String line) throws IOException {
+        final CharBuffer chars = CharBuffer.wrap(line);
+        encoder.reset();
+        CoderResult result;
+        while ((result = encoder.encode(chars, buffer, true)).isOverflow()) {
+            drain();
+        }
+        if (result.isError()) {
+            result.throwException();
+        }
+        while (encoder.flush(buffer).isOverflow()) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            segmentBytes += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void rotate() throws IOException {
+        close();
+        if (segmentBytes == 0) {
+            return;
+        }
+
+        final File segment = new File(directory, baseName + "." + String.format(Locale.US, "%06d", ++lastSequence) + extension);
+        if (!getActiveFile().renameTo(segment)) {
+            throw new IOException("Could not rotate " + getActiveFile());
+        }
+        segmentBytes = 0;
+        compressor.compress(segment);
+    }
+
+    private void recoverSegments() {
+        final String[] names = directory.list();
+        if (names == null) {
+            return;
+        }
+
+        final List<File> uncompressed = new ArrayList<>();
+        for (String name : names) {
+            final Matcher matcher = segmentPattern.matcher(name);
+            if (!matcher.matches()) {
+                continue;
+            }
+
+            lastSequence = Math.max(lastSequence, Integer.parseInt(matcher.group(1)));
+            final File file = new File(directory, name);
+            if (matcher.group(2) == null) {
+                if (SegmentCompressor.compressedFileOf(file).exists()) {
+                    //Compressed before the process died, but not yet deleted.
+                    file.delete();
+                } else {
+                    uncompressed.add(file);
+                }
+            }
+        }
+
+        for (File segment : uncompressed) {
+            compressor.compress(segment);
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.dataathand.logging;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+//Persists log batches that wait for upload, so that they survive the app being killed.
+//Each batch is a gzip file holding its lines as comma-separated JSON strings, ready to be joined into a request body.
+//Batches of one destination are kept in a directory of their own.
+//When the spool is full, the oldest batches that are not being uploaded are dropped. Thread-safe.
+class UploadSpool {
+
+    private static final String DESTINATION_FILE_NAME = "destination.properties";
+    private static final String PARTIAL_SUFFIX = ".tmp";
+    private static final Pattern BATCH_PATTERN = Pattern.compile("(\\d+)-(\\d+)\\.gz");
+
+    private static final String KEY_URL = "url";
+    private static final String KEY_FILE_NAME = "fileName";
+    private static final String KEY_HEADER_PREFIX = "header.";
+
+    //Where a batch goes: the request URL, the log file name in the body and the request headers.
+    static final class Destination {
+        final String url;
+        final String fileName;
+        final SortedMap<String, String> headers;
+
+        Destination(String url, String fileName, Map<String, String> headers) {
+            this.url = url;
+            this.fileName = fileName;
+            this.headers = Collections.unmodifiableSortedMap(new TreeMap<>(headers));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            } else if (!(o instanceof Destination)) {
+                return false;
+            }
+            final Destination other = (Destination) o;
+            return url.equals(other.url) && fileName.equals(other.fileName) && headers.equals(other.headers);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(url, fileName, headers);
+        }
+    }
+
+    static final class Batch {
+        final long sequence;
+        final Destination destination;
+        final File file;
+        final int lineCount;
+        final long bytes;
+
+        private Batch(long sequence, Destination destination, File file, int lineCount) {
+            this.sequence = sequence;
+            this.destination = destination;
+            this.file = file;
+            this.lineCount = lineCount;
+            this.bytes = file.length();
+        }
+    }
+
+    private final File directory;
+    private final long maxBytes;
+    private final int maxBatches;
+
+    //Oldest first.
+    private final TreeMap<Long, Batch> batches = new TreeMap<>();
+    private final Map<Destination, File> destinationDirectories = new HashMap<>();
+    //Sequences of the batches handed out by lease() and not yet removed or released.
+    private final Set<Long> leased = new HashSet<>();
+
+    private long nextSequence = 0;
+    private int nextDirectoryId = 0;
+    private long totalBytes = 0;
+    private long droppedLineCount = 0;
+
+    UploadSpool(File directory, long maxBytes, int maxBatches) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.maxBatches = maxBatches;
+        load();
+    }
+
+    synchronized void add(Destination destination, List<String> lines) throws IOException {
+        if (lines.isEmpty()) {
+            return;
+        }
+
+        final File destinationDirectory = getDirectory(destination);
+        final long sequence = nextSequence++;
+        final File file = new File(destinationDirectory, String.format(Locale.US, "%012d-%d.gz", sequence, lines.size()));
+        final File partial = new File(file.getPath() + PARTIAL_SUFFIX);
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(partial)), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < lines.size(); i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writeJsonString(writer, lines.get(i));
+            }
+        } catch (IOException e) {
+            partial.delete();
+            throw e;
+        }
+
+        if (!partial.renameTo(file)) {
+            partial.delete();
+            throw new IOException("Could not spool " + file);
+        }
+
+        final Batch batch = new Batch(sequence, destination, file, lines.size());
+        batches.put(sequence, batch);
+        totalBytes += batch.bytes;
+
+        final Iterator<Batch> oldest = batches.values().iterator();
+        while ((totalBytes > maxBytes || batches.size() > maxBatches) && oldest.hasNext()) {
+            final Batch candidate = oldest.next();
+            if (candidate != batch && !leased.contains(candidate.sequence)) {
+                oldest.remove();
+                totalBytes -= candidate.bytes;
+                candidate.file.delete();
+                droppedLineCount += candidate.lineCount;
+            }
+        }
+        removeEmptyDirectories();
+    }
+
+    /**
+     * Hands out the oldest batches of one destination, up to {@code maxBytes} but at least one,
+     * until they are removed or released. Returns an empty list if nothing is left to lease.
+     */
+    synchronized List<Batch> lease(long maxBytes) {
+        final List<Batch> result = new ArrayList<>();
+        Destination destination = null;
+        long bytes = 0;
+        for (Batch batch : batches.values()) {
+            if (leased.contains(batch.sequence) || (destination != null && !batch.destination.equals(destination))) {
+                continue;
+            }
+            if (!result.isEmpty() && bytes + batch.bytes > maxBytes) {
+                break;
+            }
+            destination = batch.destination;
+            result.add(batch);
+            bytes += batch.bytes;
+        }
+
+        for (Batch batch : result) {
+            leased.add(batch.sequence);
+        }
+        return result;
+    }
+
+    synchronized void release(List<Batch> released) {
+        for (Batch batch : released) {
+            leased.remove(batch.sequence);
+        }
+    }
+
+    synchronized void remove(List<Batch> removed) {
+        for (Batch batch : removed) {
+            leased.remove(batch.sequence);
+            if (batches.remove(batch.sequence) != null) {
+                totalBytes -= batch.bytes;
+                batch.file.delete();
+            }
+        }
+        removeEmptyDirectories();
+    }
+
+    synchronized int getBatchCount() {
+        return batches.size();
+    }
+
+    synchronized long getLineCount() {
+        long count = 0;
+        for (Batch batch : batches.values()) {
+            count += batch.lineCount;
+        }
+        return count;
+    }
+
+    synchronized long getBytes() {
+        return totalBytes;
+    }
+
+    synchronized long getDroppedLineCount() {
+        return droppedLineCount;
+    }
+
+    static void writeJsonString(Appendable out, String value) throws IOException {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format(Locale.US, "\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    //Directories of destinations without batches go away, so that finished sessions do not pile up.
+    private void removeEmptyDirectories() {
+        final Set<Destination> destinations = new HashSet<>();
+        for (Batch batch : batches.values()) {
+            destinations.add(batch.destination);
+        }
+
+        final Iterator<Map.Entry<Destination, File>> iterator = destinationDirectories.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<Destination, File> entry = iterator.next();
+            if (!destinations.contains(entry.getKey())) {
+                deleteRecursively(entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    private File getDirectory(Destination destination) throws IOException {
+        File destinationDirectory = destinationDirectories.get(destination);
+        if (destinationDirectory != null) {
+            return destinationDirectory;
+        }
+
+        do {
+            destinationDirectory = new File(directory, Integer.toString(nextDirectoryId++));
+        } while (destinationDirectory.exists());
+
+        if (!destinationDirectory.mkdirs()) {
+            throw new IOException("Could not create " + destinationDirectory);
+        }
+
+        final Properties properties = new Properties();
+        properties.setProperty(KEY_URL, destination.url);
+        properties.setProperty(KEY_FILE_NAME, destination.fileName);
+        for (Map.Entry<String, String> header : destination.headers.entrySet()) {
+            properties.setProperty(KEY_HEADER_PREFIX + header.getKey(), header.getValue());
+        }
+        try (OutputStream output = new FileOutputStream(new File(destinationDirectory, DESTINATION_FILE_NAME))) {
+            properties.store(output, null);
+        }
+
+        destinationDirectories.put(destination, destinationDirectory);
+        return destinationDirectory;
+    }
+
+    private void load() {
+        final File[] destinationFiles = directory.listFiles();
+        if (destinationFiles == null) {
+            return;
+        }
+
+        for (File destinationDirectory : destinationFiles) {
+            final Destination destination = destinationDirectory.isDirectory() ? readDestination(destinationDirectory) : null;
+            if (destination == null) {
+                deleteRecursively(destinationDirectory);
+                continue;
+            }
+
+            try {
+                nextDirectoryId = Math.max(nextDirectoryId, Integer.parseInt(destinationDirectory.getName()) + 1);
+            } catch (NumberFormatException ignored) {
+            }
+
+            boolean hasBatches = false;
+            final File[] files = destinationDirectory.listFiles();
+            for (File file : files != null ? files : new File[0]) {
+                final Matcher matcher = BATCH_PATTERN.matcher(file.getName());
+                if (matcher.matches()) {
+                    final Batch batch = new Batch(Long.parseLong(matcher.group(1)), destination, file, Integer.parseInt(matcher.group(2)));
+                    batches.put(batch.sequence, batch);
+                    totalBytes += batch.bytes;
+                    nextSequence = Math.max(nextSequence, batch.sequence + 1);
+                    hasBatches = true;
+                } else if (!file.getName().equals(DESTINATION_FILE_NAME)) {
+                    //Batches that were being written when the process died.
+                    file.delete();
+                }
+            }
+
+            if (!hasBatches) {
+                deleteRecursively(destinationDirectory);
+            } else if (!destinationDirectories.containsKey(destination)) {
+                destinationDirectories.put(destination, destinationDirectory);
+            }
+        }
+    }
+
+    @Nullable
+    private static Destination readDestination(File destinationDirectory) {
+        final Properties properties = new Properties();
+        try (InputStream input = new FileInputStream(new File(destinationDirectory, DESTINATION_FILE_NAME))) {
+            properties.load(input);
+        } catch (IOException e) {
+            return null;
+        }
+
+        final String url = properties.getProperty(KEY_URL);
+        final String fileName = properties.getProperty(KEY_FILE_NAME);
+        if (url == null || fileName == null) {
+            return null;
+        }
+
+        final Map<String, String> headers = new HashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(KEY_HEADER_PREFIX)) {
+                headers.put(key.substring(KEY_HEADER_PREFIX.length()), properties.getProperty(key));
+            }
+        }
+        return new Destination(url, fileName, headers);
+    }
+
+    private static void deleteRecursively(File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
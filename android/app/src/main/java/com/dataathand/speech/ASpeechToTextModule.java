@@ -1,42 +1,100 @@
 package com.dataathand.speech;
 
+import android.os.SystemClock;
+import android.util.Log;
+
 import androidx.annotation.Nullable;
 
+import com.dataathand.speech.nlp.IncrementalSpeechParser;
+import com.dataathand.speech.nlp.SpeechPreprocessor;
+import com.dataathand.time.NumberedDates;
+import com.dataathand.utils.NamedThreadFactory;
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.PromiseImpl;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
 
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public abstract class ASpeechToTextModule extends ReactContextBaseJavaModule {
 
+    private static final String TAG = "ASpeechToTextModule";
+
     private static final String EVENT_STARTED = "speech.started";
     private static final String EVENT_STOPPED = "speech.stopped";
     private static final String EVENT_RECEIVED = "speech.received";
+    private static final String EVENT_LEVEL = "speech.level";
+    private static final String EVENT_INTENT = "speech.intent";
+    static final int DEFAULT_LEVEL_EVENT_RATE_HZ = 15;
     private static final int DEFAULT_PERMISSION_REQUEST = 1224;
     private static ReactApplicationContext reactContext;
     private Promise installRequest = null;
 
+    private static final ScheduledExecutorService s_emissionScheduler =
+            Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("speech-emission"));
+
+    private final PartialResultCoalescer receivedEventCoalescer =
+            new PartialResultCoalescer(s_emissionScheduler, this::emitReceivedEvent);
+
+    private volatile int levelEventRateHz = DEFAULT_LEVEL_EVENT_RATE_HZ;
+
+    //Written by the audio thread without locking and sent by the emission scheduler at the configured rate.
+    //The peak is kept as the bits of a non-negative float, which order like the floats themselves.
+    private volatile float latestRms = 0;
+    private final AtomicInteger peakBitsSinceLastLevelEvent = new AtomicInteger(0);
+    private volatile boolean hasPendingLevel = false;
+    private final Object levelEmissionLock = new Object();
+    private ScheduledFuture<?> levelEmission = null;
+
+    //Set by setPreprocessingContext(). While set, received events carry the native preprocessing annotations
+    //and every hypothesis is followed by a speculative intent event.
+    private final Object parserLock = new Object();
+    private IncrementalSpeechParser speechParser = null;
+
+    //When the recognizer last got audio, and how long the final intent took from there.
+    private volatile long lastAudioFrameAt = 0;
+    private long lastFinalIntentLatencyMillis = 0;
+    private long totalFinalIntentLatencyMillis = 0;
+    private int finalIntentCount = 0;
+
+    //Set when the module serves as a backend of SelectingSpeechToTextModule.
+    interface FallbackHandler {
+        /**
+         * @return the module that takes over the session of {@code failed}, or null when there is none.
+         * The caller releases the recognizer and the microphone, then calls {@link #startAsFallback()} on it.
+         */
+        @Nullable
+        ASpeechToTextModule takeOver(RecognizerSelector.Backend failed);
+    }
+
+    private RecognizerSelector selector = null;
+    private RecognizerSelector.Backend selectorBackend = null;
+    private FallbackHandler fallbackHandler = null;
+
+    private volatile long sessionRequestedAt = 0;
+    private volatile boolean hasResultInSession = false;
+    private volatile boolean hasFailedInSession = false;
+
+    //Created on first use rather than in a field initializer, since getName() is overridden by the subclasses.
+    //SpeechMetrics.forModule() returns the same instance for a name, so a racing first use is harmless.
+    private volatile SpeechMetrics metrics = null;
+
     ASpeechToTextModule(ReactApplicationContext reactContext) {
         super(reactContext);
         ASpeechToTextModule.reactContext = reactContext;
     }
 
-    static String joinTexts(@Nullable String left, @Nullable String right) {
-        if (left == null && right == null) {
-            return null;
-        } else if (left != null && right == null) {
-            return left;
-        } else if (left == null && right != null) {
-            return right;
-        } else {
-            return (left + " " + right).trim().replaceAll("\\s+", " ");
-        }
-    }
-
     protected abstract void installWithArguments(@Nullable final ReadableMap args) throws Exception;
 
     @ReactMethod
@@ -55,11 +113,104 @@ public abstract class ASpeechToTextModule extends ReactContextBaseJavaModule {
     protected void postInstall() {
     }
 
+    void attachSelector(RecognizerSelector selector, RecognizerSelector.Backend backend, FallbackHandler fallbackHandler) {
+        this.selector = selector;
+        this.selectorBackend = backend;
+        this.fallbackHandler = fallbackHandler;
+    }
+
+    //Whether the backend can serve sessions on this device at all.
+    boolean isAvailableForSelection() {
+        return true;
+    }
+
+    //Subclasses call this when start is requested, so that the time to the first result can be measured.
+    protected void markStartRequested() {
+        sessionRequestedAt = SystemClock.elapsedRealtime();
+        hasResultInSession = false;
+        hasFailedInSession = false;
+        getMetricsRegistry().markStartRequested(sessionRequestedAt);
+    }
+
+    //Subclasses call this when stop is requested, so that the time to the stop event can be measured.
+    protected void markStopRequested() {
+        getMetricsRegistry().markStopRequested(SystemClock.elapsedRealtime());
+    }
+
+    SpeechMetrics getMetricsRegistry() {
+        SpeechMetrics metrics = this.metrics;
+        if (metrics == null) {
+            metrics = SpeechMetrics.forModule(getName());
+            this.metrics = metrics;
+        }
+        return metrics;
+    }
+
+    private void markResultReceived() {
+        if (hasResultInSession) {
+            return;
+        }
+        hasResultInSession = true;
+        if (selector != null && sessionRequestedAt > 0) {
+            selector.recordFirstResult(selectorBackend, SystemClock.elapsedRealtime() - sessionRequestedAt);
+        }
+    }
+
+    /**
+     * Called by a subclass when the recognizer cannot serve the session, e.g. the service is unreachable.
+     * Only the first failure of a session without results counts, and only such a session is handed over.
+     * A recognizer that already produced results served the session, whatever happens to it afterwards.
+     *
+     * @return the module that takes over the session, or null when the failure should surface as usual.
+     */
+    @Nullable
+    protected ASpeechToTextModule reportBackendFailure(Object error) {
+        if (selector == null || hasFailedInSession || hasResultInSession) {
+            return null;
+        }
+        hasFailedInSession = true;
+        Log.w(TAG, selectorBackend.name + " failed: " + error);
+        selector.recordFailure(selectorBackend, SystemClock.elapsedRealtime());
+        if (fallbackHandler == null) {
+            return null;
+        }
+        final ASpeechToTextModule fallback = fallbackHandler.takeOver(selectorBackend);
+        if (fallback != null) {
+            getMetricsRegistry().recordFallback();
+        }
+        return fallback;
+    }
+
+    //Starts a session on behalf of a failed backend. JS already waits for this session, so a failure to start ends it.
+    void startAsFallback() {
+        start(new PromiseImpl(args -> {
+            if (args.length == 0 || !Boolean.TRUE.equals(args[0])) {
+                emitStopEvent("FallbackFailed");
+            }
+        }, args -> emitStopEvent("FallbackFailed")));
+    }
+
     protected void emitStartEvent() {
+        getMetricsRegistry().markSessionStarted(SystemClock.elapsedRealtime());
+        receivedEventCoalescer.reset();
+        startLevelEmission();
+        synchronized (parserLock) {
+            if (speechParser != null) {
+                speechParser.reset();
+            }
+        }
         getDeviceEmitter().emit(EVENT_STARTED, null);
     }
 
     protected void emitStopEvent(@Nullable Object error) {
+        receivedEventCoalescer.flush();
+        stopLevelEmission();
+        getMetricsRegistry().markSessionEnded(SystemClock.elapsedRealtime(), error != null);
+        //Recognizers may report the stop more than once; only the first one counts.
+        if (selector != null && sessionRequestedAt > 0 && hasResultInSession && !hasFailedInSession) {
+            selector.recordSuccess(selectorBackend);
+            sessionRequestedAt = 0;
+        }
         if (error != null) {
             final WritableMap params = Arguments.createMap();
             if (error instanceof Integer) {
@@ -69,14 +220,154 @@ public abstract class ASpeechToTextModule extends ReactContextBaseJavaModule {
             }
             getDeviceEmitter().emit(EVENT_STOPPED, params);
         } else {
+            emitFinalIntentEvent();
             getDeviceEmitter().emit(EVENT_STOPPED, null);
         }
     }
 
-    protected void emitReceivedEvent(String text) {
+    //Partial hypotheses are coalesced per window and deduplicated before they cross the bridge.
+    protected void emitPartialReceivedEvent(String text) {
+        markResultReceived();
+        getMetricsRegistry().markPartial(SystemClock.elapsedRealtime());
+        receivedEventCoalescer.offerPartial(text);
+    }
+
+    protected void emitFinalReceivedEvent(String text) {
+        markResultReceived();
+        getMetricsRegistry().markFinal();
+        receivedEventCoalescer.offerFinal(text);
+    }
+
+    private void emitReceivedEvent(String text) {
         WritableMap resultParams = Arguments.createMap();
         resultParams.putString("text", text);
+
+        WritableMap intentParams = null;
+        if (text != null) {
+            synchronized (parserLock) {
+                if (speechParser != null) {
+                    try {
+                        final long parseStartedAt = System.nanoTime();
+                        final SpeechPreprocessor.Result result = speechParser.update(text);
+                        final long parseMicros = (System.nanoTime() - parseStartedAt) / 1000;
+                        resultParams.putMap("annotations", toAnnotationMap(result));
+                        intentParams = toIntentMap(result, speechParser.getSpeculativeIntent(), false);
+                        intentParams.putDouble("parseMicros", parseMicros);
+                    } catch (RuntimeException e) {
+                        //The JavaScript side preprocesses the text by itself when annotations are missing.
+                        Log.e(TAG, "Failed to preprocess the transcript", e);
+                        speechParser.reset();
+                    }
+                }
+            }
+        }
+
         getDeviceEmitter().emit(EVENT_RECEIVED, resultParams);
+        if (intentParams != null) {
+            getDeviceEmitter().emit(EVENT_INTENT, intentParams);
+        }
+    }
+
+    //The intent of the last hypothesis once the recognizer has nothing more to say.
+    private void emitFinalIntentEvent() {
+        final WritableMap params;
+        synchronized (parserLock) {
+            if (speechParser == null || speechParser.getResult() == null) {
+                return;
+            }
+            params = toIntentMap(speechParser.getResult(), speechParser.getSpeculativeIntent(), true);
+            params.putDouble("reuseRatio", speechParser.getReuseRatio());
+
+            final long audioFrameAt = lastAudioFrameAt;
+            if (audioFrameAt > 0) {
+                final long latency = SystemClock.elapsedRealtime() - audioFrameAt;
+                lastFinalIntentLatencyMillis = latency;
+                totalFinalIntentLatencyMillis += latency;
+                finalIntentCount++;
+                params.putDouble("sinceLastAudioFrameMillis", latency);
+            }
+        }
+        getDeviceEmitter().emit(EVENT_INTENT, params);
+    }
+
+    private static WritableMap toIntentMap(SpeechPreprocessor.Result result, IncrementalSpeechParser.SpeculativeIntent intent, boolean isFinal) {
+        final WritableMap map = Arguments.createMap();
+        map.putString("normalizedText", result.normalizedText);
+        map.putString("intent", intent.intent);
+        map.putString("dataSource", intent.dataSource);
+        map.putString("timeCycle", intent.timeCycle);
+        if (intent.timeExpressionCount > 0) {
+            final WritableArray range = Arguments.createArray();
+            range.pushInt(intent.rangeStart);
+            range.pushInt(intent.rangeEnd);
+            map.putArray("range", range);
+        }
+        map.putInt("timeExpressionCount", intent.timeExpressionCount);
+        map.putBoolean("complete", intent.isComplete);
+        map.putDouble("stability", intent.stability);
+        map.putBoolean("isFinal", isFinal);
+        return map;
+    }
+
+    private static WritableMap toAnnotationMap(SpeechPreprocessor.Result result) {
+        final WritableArray items = Arguments.createArray();
+        for (SpeechPreprocessor.Annotation annotation : result.annotations) {
+            final WritableMap item = Arguments.createMap();
+            item.putString("kind", annotation.kind);
+            item.putInt("start", annotation.start);
+            item.putInt("end", annotation.end);
+            item.putString("text", annotation.text);
+            switch (annotation.kind) {
+                case SpeechPreprocessor.KIND_DATE:
+                    item.putInt("value", annotation.date);
+                    item.putString("preposition", annotation.preposition);
+                    break;
+                case SpeechPreprocessor.KIND_PERIOD: {
+                    final WritableArray range = Arguments.createArray();
+                    range.pushInt(annotation.date);
+                    range.pushInt(annotation.endDate);
+                    item.putArray("value", range);
+                    item.putBoolean("isPeriodCertain", annotation.isPeriodCertain);
+                    item.putBoolean("conjunctionTo", annotation.conjunctionTo);
+                    item.putString("beforeConjunction", annotation.beforeConjunction);
+                    item.putString("afterConjunction", annotation.afterConjunction);
+                    break;
+                }
+                default:
+                    item.putString("value", annotation.value);
+                    break;
+            }
+            items.pushMap(item);
+        }
+
+        final WritableMap map = Arguments.createMap();
+        map.putString("normalizedText", result.normalizedText);
+        map.putInt("today", result.today);
+        map.putBoolean("complete", result.isComplete);
+        map.putArray("items", items);
+        return map;
+    }
+
+    //today and dataInitialDate are numbered dates. Passing no today turns the native preprocessing off.
+    @ReactMethod
+    public void setPreprocessingContext(@Nullable final ReadableMap args, final Promise promise) {
+        try {
+            applyPreprocessingContext(args);
+            promise.resolve(true);
+        } catch (Exception e) {
+            promise.reject(e);
+        }
+    }
+
+    void applyPreprocessingContext(@Nullable final ReadableMap args) {
+        IncrementalSpeechParser parser = null;
+        if (args != null && args.hasKey("today") && !args.isNull("today")) {
+            final int dataInitialDate = args.hasKey("dataInitialDate") && !args.isNull("dataInitialDate") ? args.getInt("dataInitialDate") : 0;
+            parser = new IncrementalSpeechParser(NumberedDates.toLocalDate(args.getInt("today")), dataInitialDate);
+        }
+        synchronized (parserLock) {
+            speechParser = parser;
+        }
     }
 
     @ReactMethod
@@ -84,14 +375,100 @@ public abstract class ASpeechToTextModule extends ReactContextBaseJavaModule {
         boolean isPermissionGranted = false;
 
         try {
-            installWithArguments(args);
-            postInstall();
+            applyInstallArguments(args);
             promise.resolve(true);
         } catch (Exception e) {
             promise.reject(e);
         }
     }
 
+    void applyInstallArguments(@Nullable final ReadableMap args) throws Exception {
+        final long installStartedAt = SystemClock.elapsedRealtime();
+        if (args != null && args.hasKey("partialResultWindowMillis")) {
+            receivedEventCoalescer.setWindowMillis(args.getInt("partialResultWindowMillis"));
+        }
+        if (args != null && args.hasKey("levelEventRateHz")) {
+            levelEventRateHz = Math.max(0, args.getInt("levelEventRateHz"));
+        }
+        installWithArguments(args);
+        postInstall();
+        getMetricsRegistry().recordInstall(SystemClock.elapsedRealtime() - installStartedAt);
+    }
+
+    @ReactMethod
+    public void getEmissionStats(Promise promise) {
+        final WritableMap stats = Arguments.createMap();
+        stats.putDouble("emitted", receivedEventCoalescer.getEmittedCount());
+        stats.putDouble("suppressed", receivedEventCoalescer.getSuppressedCount());
+        stats.putDouble("windowMillis", receivedEventCoalescer.getWindowMillis());
+        synchronized (parserLock) {
+            stats.putDouble("finalIntentCount", finalIntentCount);
+            stats.putDouble("lastFinalIntentLatencyMillis", lastFinalIntentLatencyMillis);
+            stats.putDouble("meanFinalIntentLatencyMillis", finalIntentCount > 0 ? (double) totalFinalIntentLatencyMillis / finalIntentCount : 0);
+        }
+        promise.resolve(stats);
+    }
+
+    //Counters and latency percentiles of every session since the process started, under the module name
+    //as with SelectingSpeechToTextModule.
+    @ReactMethod
+    public void getMetrics(Promise promise) {
+        promise.resolve(Arguments.makeNativeMap(Collections.singletonMap(getName(), (Object) getMetricsRegistry().snapshot())));
+    }
+
+    //Level events per second, or 0 when they are off.
+    int getLevelEventRateHz() {
+        return levelEventRateHz;
+    }
+
+    //Levels are normalized to [0, 1]. Called on the audio thread for every meter window, so it neither locks nor allocates:
+    //the latest rms and the peak since the last event are picked up by the emission scheduler at the configured rate.
+    //Recognizers report a level for every audio buffer, so this also marks when audio last arrived.
+    protected void emitLevelEvent(float rms, float peak) {
+        lastAudioFrameAt = SystemClock.elapsedRealtime();
+        latestRms = rms;
+        final int peakBits = Float.floatToIntBits(Math.max(0f, peak));
+        int current;
+        do {
+            current = peakBitsSinceLastLevelEvent.get();
+        } while (peakBits > current && !peakBitsSinceLastLevelEvent.compareAndSet(current, peakBits));
+        hasPendingLevel = true;
+    }
+
+    private void startLevelEmission() {
+        final int rate = levelEventRateHz;
+        synchronized (levelEmissionLock) {
+            if (levelEmission != null || rate <= 0) {
+                return;
+            }
+            hasPendingLevel = false;
+            peakBitsSinceLastLevelEvent.set(0);
+            final long intervalMillis = Math.max(1, 1000 / rate);
+            levelEmission = s_emissionScheduler.scheduleAtFixedRate(this::emitPendingLevel, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void stopLevelEmission() {
+        synchronized (levelEmissionLock) {
+            if (levelEmission != null) {
+                levelEmission.cancel(false);
+                levelEmission = null;
+            }
+        }
+    }
+
+    //Runs on the emission scheduler.
+    private void emitPendingLevel() {
+        if (!hasPendingLevel) {
+            return;
+        }
+        hasPendingLevel = false;
+        final WritableMap params = Arguments.createMap();
+        params.putDouble("rms", latestRms);
+        params.putDouble("peak", Float.intBitsToFloat(peakBitsSinceLastLevelEvent.getAndSet(0)));
+        getDeviceEmitter().emit(EVENT_LEVEL, params);
+    }
+
     DeviceEventManagerModule.RCTDeviceEventEmitter getDeviceEmitter() {
         return reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class);
     }
@@ -0,0 +1,82 @@
+package com.dataathand.speech;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Build;
+
+import java.nio.ByteBuffer;
+
+//Live microphone input. The recorder is created once and reused across sessions.
+class AudioRecordSource implements AudioSource {
+
+    private final int sampleRate;
+    private final int bufferSize;
+
+    private AudioRecord recorder;
+
+    AudioRecordSource(int sampleRate, int bufferSize) {
+        this.sampleRate = sampleRate;
+        this.bufferSize = bufferSize;
+        this.initMic();
+    }
+
+    @Override
+    public void start() {
+        if (this.recorder == null) {
+            this.initMic();
+        }
+        this.recorder.startRecording();
+    }
+
+    @Override
+    public boolean isPaced() {
+        return true;
+    }
+
+    @Override
+    public int read(ByteBuffer buffer, int length) {
+        return this.recorder.read(buffer, length);
+    }
+
+    @Override
+    public void stop() {
+        this.recorder.stop();
+    }
+
+    @Override
+    public void release() {
+        if (this.recorder != null) {
+            this.recorder.release();
+            this.recorder = null;
+        }
+    }
+
+    private void initMic() {
+        // Note: currently, the Speech SDK support 16 kHz sample rate, 16 bit samples, mono (single-channel) only.
+        final int bufferSize = Math.max(this.bufferSize, AudioRecord.getMinBufferSize(sampleRate,
+                AudioFormat.CHANNEL_IN_MONO,
+                AudioFormat.ENCODING_PCM_16BIT));
+
+        if (Build.VERSION.SDK_INT >= 23) {
+            AudioFormat af = new AudioFormat.Builder()
+                    .setSampleRate(sampleRate)
+                    .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                    .setChannelMask(AudioFormat.CHANNEL_IN_MONO)
+                    .build();
+
+            this.recorder = new AudioRecord.Builder()
+                    .setAudioSource(MediaRecorder.AudioSource.VOICE_RECOGNITION)
+                    .setAudioFormat(af)
+                    .setBufferSizeInBytes(bufferSize)
+                    .build();
+        } else {
+            this.recorder = new AudioRecord(
+                    MediaRecorder.AudioSource.VOICE_RECOGNITION,
+                    sampleRate,
+                    AudioFormat.CHANNEL_IN_MONO,
+                    AudioFormat.ENCODING_PCM_16BIT,
+                    bufferSize);
+        }
+    }
+}
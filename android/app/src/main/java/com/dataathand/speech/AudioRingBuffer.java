@@ -0,0 +1,149 @@
+package com.dataathand.speech;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-producer, single-consumer byte ring buffer over a preallocated direct buffer.
+ * The capture thread is the only writer and the Speech SDK reader thread is the only reader,
+ * so the positions are published through atomics without any locking.
+ * Neither side allocates once the buffer is constructed.
+ */
+class AudioRingBuffer {
+
+    private static final long READ_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final int capacity;
+
+    //Each side owns its own view so that position/limit changes never race.
+    private final ByteBuffer writeView;
+    private final ByteBuffer readView;
+
+    //Monotonic byte counts. The difference is the number of readable bytes.
+    private final AtomicLong writeCursor = new AtomicLong(0);
+    private final AtomicLong readCursor = new AtomicLong(0);
+
+    private final AtomicLong overrunBytes = new AtomicLong(0);
+    private final AtomicLong underrunCount = new AtomicLong(0);
+
+    private volatile boolean isOpen = true;
+    private volatile Thread waitingReader = null;
+
+    AudioRingBuffer(int capacity) {
+        this.capacity = capacity;
+        final ByteBuffer storage = ByteBuffer.allocateDirect(capacity);
+        this.writeView = storage.duplicate();
+        this.readView = storage.duplicate();
+    }
+
+    int available() {
+        return (int) (writeCursor.get() - readCursor.get());
+    }
+
+    /**
+     * Copies {@code length} bytes from the start of {@code source}. Bytes that do not fit are dropped
+     * and counted as an overrun, since the producer must never move the consumer's cursor.
+     * @return the number of bytes actually stored.
+     */
+    int write(ByteBuffer source, int length) {
+        final long write = writeCursor.get();
+        final int free = capacity - (int) (write - readCursor.get());
+        //Keep whole 16-bit samples.
+        final int accepted = Math.min(length, free) & ~1;
+
+        if (accepted < length) {
+            overrunBytes.addAndGet(length - accepted);
+        }
+
+        if (accepted > 0) {
+            final int offset = (int) (write % capacity);
+            final int firstPart = Math.min(accepted, capacity - offset);
+
+            source.limit(firstPart).position(0);
+            writeView.limit(offset + firstPart).position(offset);
+            writeView.put(source);
+
+            if (firstPart < accepted) {
+                source.limit(accepted).position(firstPart);
+                writeView.limit(accepted - firstPart).position(0);
+                writeView.put(source);
+            }
+            source.clear();
+
+            writeCursor.lazySet(write + accepted);
+        }
+
+        final Thread reader = waitingReader;
+        if (reader != null) {
+            LockSupport.unpark(reader);
+        }
+
+        return accepted;
+    }
+
+    /**
+     * Blocks until at least one byte is readable or the buffer is closed.
+     * @return the number of bytes copied, or 0 when the buffer was closed with nothing left to read.
+     */
+    int read(byte[] destination, int offset, int length) {
+        long read = readCursor.get();
+        int readable = (int) (writeCursor.get() - read);
+
+        if (readable == 0 && isOpen) {
+            underrunCount.incrementAndGet();
+            waitingReader = Thread.currentThread();
+            while ((readable = (int) (writeCursor.get() - read)) == 0 && isOpen) {
+                LockSupport.parkNanos(this, READ_PARK_NANOS);
+            }
+            waitingReader = null;
+        }
+
+        final int count = Math.min(readable, length) & ~1;
+        if (count <= 0) {
+            return 0;
+        }
+
+        final int position = (int) (read % capacity);
+        final int firstPart = Math.min(count, capacity - position);
+
+        readView.limit(position + firstPart).position(position);
+        readView.get(destination, offset, firstPart);
+
+        if (firstPart < count) {
+            readView.limit(count - firstPart).position(0);
+            readView.get(destination, offset + firstPart, count - firstPart);
+        }
+
+        readCursor.lazySet(read + count);
+        return count;
+    }
+
+    /**
+     * Discards all buffered audio and reopens the buffer. Only call this while neither side is active.
+     */
+    void reset() {
+        readCursor.set(writeCursor.get());
+        isOpen = true;
+    }
+
+    /**
+     * Wakes up a blocked reader, which then drains what is left and sees the end of the stream.
+     */
+    void close() {
+        isOpen = false;
+        final Thread reader = waitingReader;
+        if (reader != null) {
+            LockSupport.unpark(reader);
+        }
+    }
+
+    long getOverrunBytes() {
+        return overrunBytes.get();
+    }
+
+    long getUnderrunCount() {
+        return underrunCount.get();
+    }
+}
@@ -0,0 +1,27 @@
+package com.dataathand.speech;
+
+import java.nio.ByteBuffer;
+
+//Where MicrophoneStream gets its 16 kHz, 16-bit, mono PCM from.
+//Only the capture thread calls read(); start() and stop() are called while it is not running.
+interface AudioSource {
+
+    //Returned by read() once a finite source has nothing more to give.
+    int END_OF_STREAM = -1000;
+
+    void start();
+
+    //Whether read() blocks at the pace of real audio. An unpaced source is held back instead of overrunning the ring buffer.
+    boolean isPaced();
+
+    /**
+     * Blocks until audio is available and copies up to {@code length} little-endian bytes to the start of {@code buffer}.
+     *
+     * @return the number of bytes read, {@link #END_OF_STREAM}, or another negative value on error.
+     */
+    int read(ByteBuffer buffer, int length);
+
+    void stop();
+
+    void release();
+}
@@ -7,6 +7,7 @@ import android.media.AudioManager;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.speech.RecognitionListener;
 import android.speech.RecognizerIntent;
 import android.speech.SpeechRecognizer;
@@ -15,15 +16,25 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.dataathand.speech.text.TranscriptAccumulator;
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
 
 import java.util.List;
 
 public class DefaultSpeechToTextModule extends ASpeechToTextModule implements RecognitionListener {
 
+    private static final float MIN_RMS_DB = -2f;
+    private static final float MAX_RMS_DB = 10f;
+
+    //SpeechRecognizer constants from API 31, reported by newer recognizers when the on-device model is missing.
+    private static final int ERROR_LANGUAGE_NOT_SUPPORTED = 12;
+    private static final int ERROR_LANGUAGE_UNAVAILABLE = 13;
+
     private SpeechRecognizer recognizer = null;
 
     private final Intent speechIntent;
@@ -35,9 +46,24 @@ public class DefaultSpeechToTextModule extends ASpeechToTextModule implements Re
 
     private boolean isStartOver = false;
     private int startOverCycle = 0;
-    private String accumulatedTextToPrevCycle = null;
+    private final TranscriptAccumulator transcript = new TranscriptAccumulator(false);
     private String currentCycleRecognizedText = null;
 
+    //In continuous dictation, one recognizer serves every cycle and the next cycle starts right at the end of speech.
+    private boolean isContinuous = false;
+
+    //Cycle statistics. Only touched on the main thread except for reads from getCycleStats().
+    private long restartRequestedAt = 0;
+    private long audioGapStartedAt = 0;
+    private int reusedCycleCount = 0;
+    private int recreatedCycleCount = 0;
+    private int measuredCycleCount = 0;
+    private long lastRestartLatencyMillis = 0;
+    private long totalRestartLatencyMillis = 0;
+    private long lastGapMillis = 0;
+    private long totalGapMillis = 0;
+    private long maxGapMillis = 0;
+
     @NonNull
     @Override
     public String getName() {
@@ -70,30 +96,40 @@ public class DefaultSpeechToTextModule extends ASpeechToTextModule implements Re
 
     @Override
     protected void installWithArguments(@Nullable ReadableMap args) throws Exception {
+        if (args != null && args.hasKey("preferOffline")) {
+            setPreferOffline(args.getBoolean("preferOffline"));
+        }
+        if (args != null && args.hasKey("continuousDictation")) {
+            isContinuous = args.getBoolean("continuousDictation");
+        }
+    }
+
+    void setPreferOffline(boolean preferOffline) {
+        if (Build.VERSION.SDK_INT >= 23) {
+            speechIntent.putExtra(RecognizerIntent.EXTRA_PREFER_OFFLINE, preferOffline);
+        }
+    }
+
+    @Override
+    boolean isAvailableForSelection() {
+        return SpeechRecognizer.isRecognitionAvailable(getReactApplicationContext());
     }
 
     @Override
     @ReactMethod
     public void start(Promise promise) {
+        markStartRequested();
         this.isRunning = true;
         Activity activity = getCurrentActivity();
         if (activity != null) {
             getCurrentActivity().runOnUiThread(() -> {
                 hasResultReceived = false;
                 pendingError = null;
+                audioGapStartedAt = 0;
 
-                AudioManager audioManager = (AudioManager) getReactApplicationContext().getApplicationContext().getSystemService(Context.AUDIO_SERVICE);
+                setStreamsMuted(true);
 
-                if (Build.VERSION.SDK_INT >= 23) {
-                    audioManager.adjustStreamVolume(AudioManager.STREAM_MUSIC, AudioManager.ADJUST_MUTE, 0);
-                    audioManager.adjustStreamVolume(AudioManager.STREAM_SYSTEM, AudioManager.ADJUST_MUTE, 0);
-                } else {
-                    audioManager.setStreamMute(AudioManager.STREAM_MUSIC, true);
-                    audioManager.setStreamMute(AudioManager.STREAM_SYSTEM, true);
-                }
-
-
-                startOver(false);
+                startOver(false, false);
 
                 Log.d("Speech", "Start requested.");
                 promise.resolve(true);
@@ -114,33 +150,79 @@ public class DefaultSpeechToTextModule extends ASpeechToTextModule implements Re
         promise.resolve(true);
     }
 
-    private void startOver(Boolean isStartOver) {
+    /**
+     * @param reuseRecognizer whether the current recognizer may serve the next cycle. Only honored in continuous dictation.
+     */
+    private void startOver(boolean isStartOver, boolean reuseRecognizer) {
         this.isStartOver = isStartOver;
         if (isStartOver) {
             startOverCycle++;
-            accumulatedTextToPrevCycle = joinTexts(accumulatedTextToPrevCycle, currentCycleRecognizedText);
+            transcript.commit(currentCycleRecognizedText);
+            //Otherwise a cycle that ends without any result would commit the same text again.
+            currentCycleRecognizedText = null;
         }
+        restartRequestedAt = SystemClock.elapsedRealtime();
 
-        if (recognizer != null) {
-            recognizer.destroy();
-        }
         pendingError = null;
 
-        recognizer = SpeechRecognizer.createSpeechRecognizer(getCurrentActivity());
-        recognizer.setRecognitionListener(DefaultSpeechToTextModule.this);
-
-                /*
-                if(Build.VERSION.SDK_INT >= 23){
-                    intent.putExtra(RecognizerIntent.EXTRA_PREFER_OFFLINE, true);
-                }*/
+        if (recognizer != null && isStartOver && isContinuous && reuseRecognizer) {
+            //Cancelling keeps the binding to the recognition service, which is most of the restart cost.
+            recognizer.cancel();
+            reusedCycleCount++;
+        } else {
+            if (recognizer != null) {
+                recognizer.destroy();
+            }
+            recognizer = SpeechRecognizer.createSpeechRecognizer(getCurrentActivity());
+            recognizer.setRecognitionListener(DefaultSpeechToTextModule.this);
+            if (isStartOver) {
+                recreatedCycleCount++;
+            }
+        }
 
         recognizer.startListening(speechIntent);
     }
 
+    //Audio stops being captured here until the next cycle is ready for speech.
+    private void markAudioGapStarted() {
+        if (audioGapStartedAt == 0) {
+            audioGapStartedAt = SystemClock.elapsedRealtime();
+        }
+    }
+
+    private void recordCycleRestart() {
+        final long now = SystemClock.elapsedRealtime();
+        lastRestartLatencyMillis = now - restartRequestedAt;
+        totalRestartLatencyMillis += lastRestartLatencyMillis;
+        if (audioGapStartedAt > 0) {
+            lastGapMillis = now - audioGapStartedAt;
+            totalGapMillis += lastGapMillis;
+            maxGapMillis = Math.max(maxGapMillis, lastGapMillis);
+            audioGapStartedAt = 0;
+        }
+        measuredCycleCount++;
+        getMetricsRegistry().recordRestart(lastRestartLatencyMillis);
+    }
+
+    @ReactMethod
+    public void getCycleStats(Promise promise) {
+        final WritableMap stats = Arguments.createMap();
+        stats.putBoolean("continuous", isContinuous);
+        stats.putInt("reusedCycles", reusedCycleCount);
+        stats.putInt("recreatedCycles", recreatedCycleCount);
+        stats.putDouble("lastRestartLatencyMillis", lastRestartLatencyMillis);
+        stats.putDouble("averageRestartLatencyMillis", measuredCycleCount > 0 ? (double) totalRestartLatencyMillis / measuredCycleCount : 0);
+        stats.putDouble("lastGapMillis", lastGapMillis);
+        stats.putDouble("totalGapMillis", totalGapMillis);
+        stats.putDouble("maxGapMillis", maxGapMillis);
+        promise.resolve(stats);
+    }
+
     @SuppressWarnings("WeakerAccess")
     @Override
     @ReactMethod
     public void stop(Promise promise) {
+        markStopRequested();
         isRunning = false;
         stopImpl(promise);
     }
@@ -153,7 +235,7 @@ public class DefaultSpeechToTextModule extends ASpeechToTextModule implements Re
                     recognizer = null;
                     startOverCycle = 0;
                     isStartOver = false;
-                    accumulatedTextToPrevCycle = null;
+                    transcript.reset();
                     currentCycleRecognizedText = null;
 
                     Log.d("Speech", "Stop Requested.");
@@ -185,25 +267,65 @@ public class DefaultSpeechToTextModule extends ASpeechToTextModule implements Re
                     promise.reject(e);
                 }
             } finally {
-                final Handler handler = new Handler();
-                handler.postDelayed(() -> {
-                    if (!isRunning) {
-                        AudioManager audioManager = (AudioManager) getReactApplicationContext().getApplicationContext().getSystemService(Context.AUDIO_SERVICE);
-                        if (Build.VERSION.SDK_INT >= 23) {
-                            audioManager.adjustStreamVolume(AudioManager.STREAM_MUSIC, AudioManager.ADJUST_UNMUTE, 0);
-                            audioManager.adjustStreamVolume(AudioManager.STREAM_SYSTEM, AudioManager.ADJUST_UNMUTE, 0);
-                        } else {
-                            audioManager.setStreamMute(AudioManager.STREAM_MUSIC, false);
-                            audioManager.setStreamMute(AudioManager.STREAM_SYSTEM, false);
-                        }
-                    }
-                }, 1000);
+                unmuteStreamsLater();
             }
 
         });
     }
 
-    private void emitResults(Bundle results) {
+    //Releases the recognizer without a stop event, because another backend carries on with the session.
+    private void abandon() {
+        isRunning = false;
+        if (recognizer != null) {
+            recognizer.destroy();
+            recognizer = null;
+        }
+        startOverCycle = 0;
+        isStartOver = false;
+        transcript.reset();
+        currentCycleRecognizedText = null;
+        pendingError = null;
+        unmuteStreamsLater();
+    }
+
+    //The recognizer beeps on every cycle. The streams stay muted while listening.
+    private void setStreamsMuted(boolean muted) {
+        AudioManager audioManager = (AudioManager) getReactApplicationContext().getApplicationContext().getSystemService(Context.AUDIO_SERVICE);
+        if (Build.VERSION.SDK_INT >= 23) {
+            final int direction = muted ? AudioManager.ADJUST_MUTE : AudioManager.ADJUST_UNMUTE;
+            audioManager.adjustStreamVolume(AudioManager.STREAM_MUSIC, direction, 0);
+            audioManager.adjustStreamVolume(AudioManager.STREAM_SYSTEM, direction, 0);
+        } else {
+            audioManager.setStreamMute(AudioManager.STREAM_MUSIC, muted);
+            audioManager.setStreamMute(AudioManager.STREAM_SYSTEM, muted);
+        }
+    }
+
+    private void unmuteStreamsLater() {
+        final Handler handler = new Handler();
+        handler.postDelayed(() -> {
+            if (!isRunning) {
+                setStreamsMuted(false);
+            }
+        }, 1000);
+    }
+
+    //Errors that say the recognizer itself cannot serve, rather than that the user said nothing.
+    //ERROR_CLIENT and ERROR_RECOGNIZER_BUSY are left out: cancelling and restarting the reused recognizer raises them.
+    private static boolean isBackendError(int error) {
+        switch (error) {
+            case SpeechRecognizer.ERROR_NETWORK:
+            case SpeechRecognizer.ERROR_NETWORK_TIMEOUT:
+            case SpeechRecognizer.ERROR_SERVER:
+            case ERROR_LANGUAGE_NOT_SUPPORTED:
+            case ERROR_LANGUAGE_UNAVAILABLE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void emitResults(Bundle results, boolean isFinal) {
         hasResultReceived = true;
 
         List<String> matches = results.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION);
@@ -211,17 +333,16 @@ public class DefaultSpeechToTextModule extends ASpeechToTextModule implements Re
         assert matches != null;
         float[] confidence = results.getFloatArray(SpeechRecognizer.CONFIDENCE_SCORES);
 
-        String recognizedText;
-        if (accumulatedTextToPrevCycle != null) {
-            //append the prior result.
-            recognizedText = joinTexts(accumulatedTextToPrevCycle, matches.get(0));
-        } else {
-            recognizedText = matches.get(0);
-        }
+        //append the prior result.
+        final String recognizedText = transcript.stitch(matches.get(0));
 
         currentCycleRecognizedText = matches.get(0);
 
-        emitReceivedEvent(recognizedText);
+        if (isFinal) {
+            emitFinalReceivedEvent(recognizedText);
+        } else {
+            emitPartialReceivedEvent(recognizedText);
+        }
 
     }
 
@@ -236,6 +357,8 @@ public class DefaultSpeechToTextModule extends ASpeechToTextModule implements Re
         Log.d("Speech", "Ready of Speech");
         if (!isStartOver) {
             emitStartEvent();
+        } else {
+            recordCycleRestart();
         }
     }
 
@@ -246,7 +369,9 @@ public class DefaultSpeechToTextModule extends ASpeechToTextModule implements Re
 
     @Override
     public void onRmsChanged(float rmsdB) {
-
+        //The platform reports roughly -2 to 10 dB. Map it onto the same [0, 1] scale as the PCM-based meter.
+        final float level = Math.max(0f, Math.min(1f, (rmsdB - MIN_RMS_DB) / (MAX_RMS_DB - MIN_RMS_DB)));
+        emitLevelEvent(level, level);
     }
 
     @Override
@@ -258,28 +383,42 @@ public class DefaultSpeechToTextModule extends ASpeechToTextModule implements Re
     @Override
     public void onEndOfSpeech() {
         Log.d("Speech", "on End of Speech");
-        //stop(null);
-        getCurrentActivity().runOnUiThread(() -> startOver(true));
+        markAudioGapStarted();
+        if (isContinuous) {
+            //Recognizer callbacks already run on the main thread. Restarting here rather than after the final result
+            //keeps the gap short; the last partial result of the cycle is committed instead.
+            startOver(true, true);
+        } else {
+            getCurrentActivity().runOnUiThread(() -> startOver(true, false));
+        }
     }
 
     @Override
     public void onError(int error) {
         Log.d("Speech", "on Error: " + error);
+        final ASpeechToTextModule fallback = isBackendError(error) ? reportBackendFailure(error) : null;
+        if (fallback != null) {
+            abandon();
+            fallback.startAsFallback();
+            return;
+        }
         pendingError = error;
-        startOver(true);
+        markAudioGapStarted();
+        //A recognizer that reported a client or busy error is not trusted with the next cycle.
+        startOver(true, error != SpeechRecognizer.ERROR_CLIENT && error != SpeechRecognizer.ERROR_RECOGNIZER_BUSY);
     }
 
     @Override
     public void onResults(Bundle results) {
 
         Log.d("Speech", "on Result");
-        emitResults(results);
+        emitResults(results, true);
     }
 
     @Override
     public void onPartialResults(Bundle partialResults) {
         Log.d("Speech", "on PartialResults");
-        emitResults(partialResults);
+        emitResults(partialResults, false);
     }
 
     @Override
@@ -0,0 +1,116 @@
+package com.dataathand.speech;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Counts millisecond latencies in buckets that widen with the value, as HdrHistogram does:
+//values below 32 are counted exactly, and every power of two above is split into 16 buckets,
+//so a percentile is never off by more than a sixteenth. Recording takes no lock and allocates nothing,
+//so that it can run on the recognizer and audio threads.
+class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    //Larger values, about 35 years, are clamped.
+    static final long MAX_VALUE = (1L << 40) - 1;
+
+    private static final int BUCKET_COUNT = indexOf(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong sum = new AtomicLong(0);
+    private final AtomicLong max = new AtomicLong(0);
+
+    static final class Snapshot {
+        final long count;
+        final long sum;
+        final long max;
+        private final long[] counts;
+
+        private Snapshot(long[] counts, long sum, long max) {
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            this.counts = counts;
+            this.count = total;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        double getMean() {
+            return count > 0 ? (double) sum / count : 0;
+        }
+
+        //The highest value that is equivalent to the value at the percentile, or 0 without any value.
+        long getPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i];
+                if (cumulative >= rank) {
+                    return Math.min(highestEquivalentValue(i), max);
+                }
+            }
+            return max;
+        }
+
+        Map<String, Object> toMap() {
+            final Map<String, Object> map = new LinkedHashMap<>();
+            map.put("count", count);
+            map.put("mean", getMean());
+            map.put("p50", getPercentile(50));
+            map.put("p90", getPercentile(90));
+            map.put("p99", getPercentile(99));
+            map.put("max", max);
+            return map;
+        }
+    }
+
+    void record(long value) {
+        final long clamped = Math.max(0, Math.min(MAX_VALUE, value));
+        counts.incrementAndGet(indexOf(clamped));
+        sum.addAndGet(clamped);
+        long currentMax;
+        while ((currentMax = max.get()) < clamped && !max.compareAndSet(currentMax, clamped)) {
+        }
+        count.incrementAndGet();
+    }
+
+    long getCount() {
+        return count.get();
+    }
+
+    //Values recorded meanwhile may be partly missing, e.g. counted in a bucket but not yet in the sum.
+    Snapshot snapshot() {
+        final long[] copy = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, sum.get(), max.get());
+    }
+
+    static int indexOf(long value) {
+        if (value < 2 * SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        //The value shifted right by this keeps its top five bits, i.e. lies in [16, 32).
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) (value >>> shift) - SUB_BUCKET_COUNT;
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        final long subBucket = (index & (SUB_BUCKET_COUNT - 1)) + SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,63 @@
+package com.dataathand.speech;
+
+import java.nio.ByteBuffer;
+
+//Computes RMS and peak levels of 16-bit PCM over fixed windows.
+//Levels are normalized to [0, 1] of full scale. Nothing is allocated per window.
+class LevelMeter {
+
+    interface Listener {
+        void onLevel(float rms, float peak);
+    }
+
+    private final int sampleRate;
+    private int windowSamples;
+
+    private double sumOfSquares = 0;
+    private int peak = 0;
+    private int sampleCount = 0;
+
+    private Listener listener = null;
+
+    LevelMeter(int sampleRate, int windowsPerSecond) {
+        this.sampleRate = sampleRate;
+        setWindowsPerSecond(windowsPerSecond);
+    }
+
+    //Call while nothing is processed, e.g. before capture starts.
+    void setWindowsPerSecond(int windowsPerSecond) {
+        this.windowSamples = Math.max(1, sampleRate / Math.max(1, windowsPerSecond));
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    void reset() {
+        sumOfSquares = 0;
+        peak = 0;
+        sampleCount = 0;
+    }
+
+    //The buffer must be little-endian and hold the samples from index 0.
+    void process(ByteBuffer pcm, int lengthInBytes) {
+        final int samples = lengthInBytes / 2;
+        for (int i = 0; i < samples; i++) {
+            final int sample = pcm.getShort(i * 2);
+            final int magnitude = sample < 0 ? -sample : sample;
+            sumOfSquares += (double) sample * sample;
+            if (magnitude > peak) {
+                peak = magnitude;
+            }
+
+            if (++sampleCount == windowSamples) {
+                if (listener != null) {
+                    listener.onLevel(
+                            (float) (Math.sqrt(sumOfSquares / sampleCount) / 32768.0),
+                            Math.min(1f, peak / 32768f));
+                }
+                reset();
+            }
+        }
+    }
+}
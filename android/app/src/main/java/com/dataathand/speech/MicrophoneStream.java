@@ -0,0 +1,241 @@
+package com.dataathand.speech;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.microsoft.cognitiveservices.speech.audio.AudioStreamFormat;
+import com.microsoft.cognitiveservices.speech.audio.PullAudioInputStreamCallback;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+//Forked from https://github.com/microsoft/botframework-solutions/blob/master/samples/android/clients/VirtualAssistantClient/directlinespeech/src/main/java/com/microsoft/bot/builder/solutions/directlinespeech/MicrophoneStream.java
+//A dedicated capture thread moves audio from the AudioSource into a ring buffer
+//so that the Speech SDK reader never talks to the microphone directly.
+//The source is the live microphone unless a recording is replayed for benchmarks.
+class MicrophoneStream extends PullAudioInputStreamCallback {
+
+    private static final String TAG = "MicrophoneStream";
+
+    interface CaptureErrorListener {
+        void onCaptureError(int errorCode);
+    }
+
+    // CONSTANTS
+    final static int SAMPLE_RATE = 16000;
+    final static int BYTES_PER_SECOND = SAMPLE_RATE * 2;
+    private final static int CAPTURE_CHUNK_BYTES = BYTES_PER_SECOND / 50; // 20 ms
+    private final static int RING_BUFFER_BYTES = BYTES_PER_SECOND * 2; // 2 s
+    private final static int PRE_ROLL_CHUNKS = 15; // 300 ms kept in front of the first speech frame
+    private final static long BACKPRESSURE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    // STATE
+    private AudioStreamFormat format = null;
+    private final AudioSource source;
+
+    private final AudioRingBuffer ringBuffer = new AudioRingBuffer(RING_BUFFER_BYTES);
+    private final ByteBuffer captureBuffer = ByteBuffer.allocateDirect(CAPTURE_CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+    private final VoiceActivityDetector voiceActivityDetector = new VoiceActivityDetector(SAMPLE_RATE);
+    private final LevelMeter levelMeter = new LevelMeter(SAMPLE_RATE, ASpeechToTextModule.DEFAULT_LEVEL_EVENT_RATE_HZ);
+    private volatile int levelRateHz = ASpeechToTextModule.DEFAULT_LEVEL_EVENT_RATE_HZ;
+    private volatile boolean isSkippingLeadingSilence = false;
+
+    //While leading silence is skipped, the latest chunks are kept here so that the onset of speech is not clipped.
+    private final ByteBuffer[] preRollChunks = new ByteBuffer[PRE_ROLL_CHUNKS];
+    private final int[] preRollLengths = new int[PRE_ROLL_CHUNKS];
+    private int preRollHead = 0;
+    private int preRollCount = 0;
+    private final AtomicLong skippedSilenceBytes = new AtomicLong(0);
+
+    private Thread captureThread = null;
+    private volatile boolean isCapturing = false;
+    private volatile CaptureErrorListener captureErrorListener = null;
+
+    public MicrophoneStream() {
+        this(new AudioRecordSource(SAMPLE_RATE, RING_BUFFER_BYTES / 4));
+    }
+
+    MicrophoneStream(AudioSource source) {
+        this.source = source;
+        for (int i = 0; i < PRE_ROLL_CHUNKS; i++) {
+            preRollChunks[i] = ByteBuffer.allocateDirect(CAPTURE_CHUNK_BYTES);
+        }
+    }
+
+    //Created on demand, since the SDK needs its native library for it.
+    public synchronized AudioStreamFormat getFormat() {
+        if (this.format == null) {
+            this.format = AudioStreamFormat.getWaveFormatPCM(SAMPLE_RATE, (short) 16, (short) 1);
+        }
+        return this.format;
+    }
+
+    long getOverrunBytes() {
+        return ringBuffer.getOverrunBytes();
+    }
+
+    long getUnderrunCount() {
+        return ringBuffer.getUnderrunCount();
+    }
+
+    long getSkippedSilenceBytes() {
+        return skippedSilenceBytes.get();
+    }
+
+    //The listener is called on the capture thread.
+    void setVoiceActivityListener(@Nullable VoiceActivityDetector.Listener listener) {
+        voiceActivityDetector.setListener(listener);
+    }
+
+    //The listener is called on the capture thread.
+    void setLevelListener(@Nullable LevelMeter.Listener listener) {
+        levelMeter.setListener(listener);
+    }
+
+    //The listener is called on the capture thread once the capture has stopped, before the reader sees the end of the stream.
+    void setCaptureErrorListener(@Nullable CaptureErrorListener listener) {
+        captureErrorListener = listener;
+    }
+
+    //Takes effect at the next start of capture. Levels are still metered at the default rate when events are off,
+    //since they also tell when audio last arrived.
+    void setLevelRateHz(int rateHz) {
+        levelRateHz = rateHz > 0 ? rateHz : ASpeechToTextModule.DEFAULT_LEVEL_EVENT_RATE_HZ;
+    }
+
+    void setEndOfSpeechSilenceMillis(int millis) {
+        voiceActivityDetector.setEndOfSpeechSilenceMillis(millis);
+    }
+
+    //When enabled, audio is held back from the recognizer until the first speech frame.
+    void setSkipLeadingSilence(boolean skip) {
+        isSkippingLeadingSilence = skip;
+    }
+
+    synchronized void startCapture() {
+        if (isCapturing) {
+            return;
+        }
+        //The previous capture failed on its own; its source still has to be stopped.
+        stopCapture();
+
+        ringBuffer.reset();
+        voiceActivityDetector.reset();
+        levelMeter.setWindowsPerSecond(levelRateHz);
+        levelMeter.reset();
+        preRollHead = 0;
+        preRollCount = 0;
+        this.source.start();
+        isCapturing = true;
+
+        captureThread = new Thread(this::captureLoop, "speech-capture");
+        captureThread.setPriority(Thread.MAX_PRIORITY);
+        captureThread.start();
+    }
+
+    synchronized void stopCapture() {
+        if (captureThread == null) {
+            return;
+        }
+
+        isCapturing = false;
+        try {
+            captureThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        captureThread = null;
+
+        this.source.stop();
+        ringBuffer.close();
+    }
+
+    private void captureLoop() {
+        final AudioSource source = this.source;
+        final boolean isPaced = source.isPaced();
+        while (isCapturing) {
+            final int read = source.read(captureBuffer, CAPTURE_CHUNK_BYTES);
+            if (read > 0) {
+                voiceActivityDetector.process(captureBuffer, read);
+                levelMeter.process(captureBuffer, read);
+                if (isSkippingLeadingSilence && !voiceActivityDetector.hasDetectedSpeech()) {
+                    holdPreRoll(read);
+                } else {
+                    if (!isPaced) {
+                        awaitRoomFor(read + preRollCount * CAPTURE_CHUNK_BYTES);
+                    }
+                    flushPreRoll();
+                    ringBuffer.write(captureBuffer, read);
+                }
+            } else if (read == AudioSource.END_OF_STREAM) {
+                //A replayed recording is over. The reader drains the buffer and then sees the end of the stream.
+                flushPreRoll();
+                ringBuffer.close();
+                break;
+            } else if (read < 0) {
+                Log.e(TAG, "Audio source read failed: " + read);
+                isCapturing = false;
+                final CaptureErrorListener listener = captureErrorListener;
+                if (listener != null) {
+                    listener.onCaptureError(read);
+                }
+                //The reader sees the end of the stream.
+                ringBuffer.close();
+                break;
+            }
+        }
+    }
+
+    private void awaitRoomFor(int length) {
+        while (isCapturing && RING_BUFFER_BYTES - ringBuffer.available() < length) {
+            LockSupport.parkNanos(this, BACKPRESSURE_PARK_NANOS);
+        }
+    }
+
+    private void holdPreRoll(int length) {
+        if (preRollCount == PRE_ROLL_CHUNKS) {
+            //Drop the oldest chunk.
+            skippedSilenceBytes.addAndGet(preRollLengths[preRollHead]);
+            preRollHead = (preRollHead + 1) % PRE_ROLL_CHUNKS;
+            preRollCount--;
+        }
+
+        final int slot = (preRollHead + preRollCount) % PRE_ROLL_CHUNKS;
+        final ByteBuffer chunk = preRollChunks[slot];
+        chunk.clear();
+        captureBuffer.limit(length).position(0);
+        chunk.put(captureBuffer);
+        captureBuffer.clear();
+        preRollLengths[slot] = length;
+        preRollCount++;
+    }
+
+    private void flushPreRoll() {
+        while (preRollCount > 0) {
+            ringBuffer.write(preRollChunks[preRollHead], preRollLengths[preRollHead]);
+            preRollHead = (preRollHead + 1) % PRE_ROLL_CHUNKS;
+            preRollCount--;
+        }
+    }
+
+    @Override
+    public int read(byte[] bytes) {
+        return ringBuffer.read(bytes, 0, bytes.length);
+    }
+
+    //Called by the Speech SDK when a recognizer lets go of this stream. The recorder is kept for the next session.
+    @Override
+    public void close() {
+        stopCapture();
+    }
+
+    synchronized void release() {
+        stopCapture();
+        this.source.release();
+    }
+}
@@ -1,28 +1,32 @@
 package com.dataathand.speech;
 
-import android.media.AudioFormat;
-import android.media.AudioRecord;
-import android.media.MediaRecorder;
-import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.dataathand.speech.text.SpeechTexts;
+import com.dataathand.speech.text.TranscriptAccumulator;
+import com.dataathand.utils.NamedThreadFactory;
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+import com.microsoft.cognitiveservices.speech.CancellationReason;
+import com.microsoft.cognitiveservices.speech.Connection;
 import com.microsoft.cognitiveservices.speech.SpeechConfig;
 import com.microsoft.cognitiveservices.speech.SpeechRecognizer;
 import com.microsoft.cognitiveservices.speech.audio.AudioConfig;
-import com.microsoft.cognitiveservices.speech.audio.AudioStreamFormat;
-import com.microsoft.cognitiveservices.speech.audio.PullAudioInputStreamCallback;
 
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 //The implementation was inspired by https://github.com/f111fei/react-native-microsoft-speech/blob/master/android/src/main/java/com/reactnative/ms/SpeechModule.java
 
@@ -30,29 +34,107 @@ public class MicrosoftSpeechToTextModule extends ASpeechToTextModule {
 
     static final String TAG = "MicrosoftSpeech";
 
-    private static ExecutorService s_executorService;
+    private static final int CONTROL_QUEUE_CAPACITY = 16;
 
-    static {
-        s_executorService = Executors.newCachedThreadPool();
+    //Session transitions run one at a time on this thread so that the bridge thread never waits for the service.
+    private static final ExecutorService s_controlExecutor = new ThreadPoolExecutor(1, 1,
+            0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(CONTROL_QUEUE_CAPACITY),
+            new NamedThreadFactory("speech-control"));
+
+    //Stopping outlasts a stop command only when the recognizer could not be released; starts are rejected until a stop succeeds.
+    private enum SessionState {
+        Idle, Starting, Running, Stopping
     }
 
+    //Only touched on the control thread.
+    private SessionState sessionState = SessionState.Idle;
+
     private SpeechConfig config = null;
 
     private SpeechRecognizer currentRecognizer = null;
 
+    //Set when the session ended outside of the recognizer, e.g. another backend took over; the late events of the released recognizer are dropped.
+    private volatile boolean isHandedOver = false;
+
     private MicrophoneStream microphoneStream;
 
-    private MicrophoneStream createMicrophoneStream() {
+    private MicrophoneStream obtainMicrophoneStream() {
+        if (microphoneStream == null) {
+            microphoneStream = new MicrophoneStream();
+            microphoneStream.setVoiceActivityListener(voiceActivityListener);
+            microphoneStream.setLevelListener(this::emitLevelEvent);
+            microphoneStream.setCaptureErrorListener(this::onCaptureError);
+        }
+        microphoneStream.setSkipLeadingSilence(isSkippingLeadingSilence);
+        microphoneStream.setLevelRateHz(getLevelEventRateHz());
+        if (endOfSpeechSilenceMillis > 0) {
+            microphoneStream.setEndOfSpeechSilenceMillis(endOfSpeechSilenceMillis);
+        }
+        return microphoneStream;
+    }
+
+    private final VoiceActivityDetector.Listener voiceActivityListener = new VoiceActivityDetector.Listener() {
+        @Override
+        public void onSpeechStarted() {
+            Log.d(TAG, "Voice activity started.");
+        }
+
+        @Override
+        public void onSpeechEnded() {
+            Log.d(TAG, "Voice activity ended.");
+            if (endOfSpeechSilenceMillis > 0) {
+                runOnControlThread(null, () -> {
+                    //The user may have stopped the session in the meantime.
+                    if (sessionState == SessionState.Running) {
+                        Log.d(TAG, "Stop the session after trailing silence.");
+                        stopImpl(null);
+                    }
+                });
+            }
+        }
+    };
+
+    //The recognizer only sees the end of the stream, so the session is ended here with the error.
+    private void onCaptureError(int errorCode) {
+        isHandedOver = true;
+        runOnControlThread(null, () -> {
+            if (sessionState == SessionState.Idle) {
+                return;
+            }
+            Log.e(TAG, "Stop the session after the audio capture failed: " + errorCode);
+            abandonImpl();
+            emitStopEvent("AudioCaptureFailed");
+        });
+    }
+
+    private void releaseMicrophoneStream() {
         if (microphoneStream != null) {
-            microphoneStream.close();
+            microphoneStream.release();
             microphoneStream = null;
         }
-
-        microphoneStream = new MicrophoneStream();
-        return microphoneStream;
     }
 
-    private String accumulatedTextToPrevCycle = null;
+    private final TranscriptAccumulator transcript = new TranscriptAccumulator(true);
+
+    private boolean isWarmStandbyEnabled = true;
+
+    private boolean isSkippingLeadingSilence = false;
+    //0 keeps the session open until JS stops it.
+    private int endOfSpeechSilenceMillis = 0;
+
+    private SpeechRecognizer standbyRecognizer = null;
+    private Connection standbyConnection = null;
+
+    private long startRequestedAt = 0;
+    private long lastStartLatencyMillis = 0;
+    private long totalStartLatencyMillis = 0;
+    private int warmStartCount = 0;
+    private int coldStartCount = 0;
+    private int startedSessionCount = 0;
+
+    //Overrun bytes of the microphone stream when the session started. Only touched on the control thread.
+    private long overrunBytesAtStart = 0;
 
     @NonNull
     @Override
@@ -72,7 +154,26 @@ public class MicrosoftSpeechToTextModule extends ASpeechToTextModule {
 
     @ReactMethod
     public void uninstall(Promise promise) {
+        runOnControlThread(promise, () -> {
+            discardStandby();
+            releaseMicrophoneStream();
+            promise.resolve(true);
+        });
+    }
 
+    @ReactMethod
+    public void getAudioStats(Promise promise) {
+        final WritableMap stats = Arguments.createMap();
+        if (microphoneStream != null) {
+            stats.putDouble("overrunBytes", microphoneStream.getOverrunBytes());
+            stats.putDouble("underruns", microphoneStream.getUnderrunCount());
+            stats.putDouble("skippedSilenceBytes", microphoneStream.getSkippedSilenceBytes());
+        } else {
+            stats.putDouble("overrunBytes", 0);
+            stats.putDouble("underruns", 0);
+            stats.putDouble("skippedSilenceBytes", 0);
+        }
+        promise.resolve(stats);
     }
 
     @Override
@@ -80,6 +181,8 @@ public class MicrosoftSpeechToTextModule extends ASpeechToTextModule {
 
         Log.d(TAG, "Try installing Microsoft Speech service.");
 
+        discardStandby();
+
         String subscriptionId, region;
 
         try {
@@ -98,6 +201,18 @@ public class MicrosoftSpeechToTextModule extends ASpeechToTextModule {
             config.setSpeechRecognitionLanguage("en-US");
 
             this.config = config;
+
+            if (args.hasKey("warmStandby")) {
+                this.isWarmStandbyEnabled = args.getBoolean("warmStandby");
+            }
+
+            //Voice activity detection on the capture path. Both are off unless requested.
+            if (args.hasKey("skipLeadingSilence")) {
+                this.isSkippingLeadingSilence = args.getBoolean("skipLeadingSilence");
+            }
+            if (args.hasKey("endOfSpeechSilenceMillis")) {
+                this.endOfSpeechSilenceMillis = args.getInt("endOfSpeechSilenceMillis");
+            }
         } catch (NullPointerException ex) {
             throw new Exception("CredentialInvalid");
         }
@@ -111,73 +226,192 @@ public class MicrosoftSpeechToTextModule extends ASpeechToTextModule {
         promise.resolve(true);
     }
 
-    @Override
-    @ReactMethod
-    public void start(Promise promise) {
-        Log.d(TAG, "Start speech recognition.");
-        if (this.currentRecognizer != null) {
-            this.currentRecognizer.close();
-            this.currentRecognizer = null;
-        }
-
-        this.accumulatedTextToPrevCycle = null;
-
-        final AudioConfig audioInput = AudioConfig.fromStreamInput(createMicrophoneStream());
+    private SpeechRecognizer createRecognizer() {
+        final AudioConfig audioInput = AudioConfig.fromStreamInput(obtainMicrophoneStream());
         final SpeechRecognizer recognizer = new SpeechRecognizer(this.config, audioInput);
 
         recognizer.sessionStarted.addEventListener((o, eventArgs) -> {
-            Log.d(TAG, "Session started");
+            final long latency = SystemClock.elapsedRealtime() - startRequestedAt;
+            lastStartLatencyMillis = latency;
+            totalStartLatencyMillis += latency;
+            startedSessionCount++;
+            Log.d(TAG, "Session started. Start latency: " + latency + " ms");
             emitStartEvent();
         });
 
         recognizer.sessionStopped.addEventListener((o, eventArgs) -> {
             Log.d(TAG, "Session stopped");
+            if (isHandedOver) {
+                return;
+            }
             emitStopEvent(null);
         });
 
         recognizer.recognizing.addEventListener((o, eventArgs) -> {
             Log.d(TAG, "Partial result received");
             final String s = eventArgs.getResult().getText();
-            final String stitchedResult = joinTexts(accumulatedTextToPrevCycle, s);
+            final String stitchedResult = transcript.stitch(s);
             //currentCycleRecognizedText = s;
-            emitReceivedEvent(stitchedResult);
+            emitPartialReceivedEvent(stitchedResult);
         });
 
         recognizer.recognized.addEventListener((o, eventArgs) -> {
-            String s = eventArgs.getResult().getText();
+            final String s = eventArgs.getResult().getText();
 
             Log.d(TAG, "Recognized: " + s);
 
-            if (s.lastIndexOf('.') == s.length() - 1) {
-                s = s.substring(0, s.length() - 1);
-            }
-
-            if (s.length() > 1 && !s.matches("I\\s+")) {
-                s = s.substring(0, 1).toLowerCase() + s.substring(1);
-            }
-
-            accumulatedTextToPrevCycle = joinTexts(accumulatedTextToPrevCycle, s)
-                    .replaceAll("([a-zA-Z])([,.])(\\s+|$)", "$1$3")
-                    .replaceAll("(\\s+)(2022)(\\s+)", "$12020 to$3");
-            emitReceivedEvent(accumulatedTextToPrevCycle);
+            transcript.commit(SpeechTexts.toSegment(s));
+            emitFinalReceivedEvent(transcript.getCommitted());
         });
 
 
         recognizer.canceled.addEventListener((o, eventArgs) -> {
-            Log.d(TAG, "Canceled.");
+            Log.d(TAG, "Canceled: " + eventArgs.getReason());
+            if (isHandedOver) {
+                return;
+            }
+            if (eventArgs.getReason() == CancellationReason.Error) {
+                final ASpeechToTextModule fallback = reportBackendFailure(eventArgs.getErrorDetails());
+                if (fallback != null) {
+                    isHandedOver = true;
+                    runOnControlThread(null, () -> {
+                        abandonImpl();
+                        fallback.startAsFallback();
+                    });
+                    return;
+                }
+            }
             emitStopEvent(null);
         });
 
-        final Future<Void> startTask = recognizer.startContinuousRecognitionAsync();
+        return recognizer;
+    }
+
+    //Warm standby ==========
+
+    private synchronized void prepareStandby() {
+        if (!isWarmStandbyEnabled || this.config == null || this.standbyRecognizer != null) {
+            return;
+        }
 
-        this.currentRecognizer = recognizer;
+        final SpeechRecognizer recognizer = createRecognizer();
 
+        //Opening the connection ahead of time moves the service handshake out of the start path.
         try {
-            startTask.get();
+            final Connection connection = Connection.fromRecognizer(recognizer);
+            connection.openConnection(true);
+            this.standbyConnection = connection;
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to pre-open the service connection.", e);
+        }
+
+        this.standbyRecognizer = recognizer;
+        Log.d(TAG, "Standby recognizer is ready.");
+    }
+
+    private void prepareStandbyInBackground() {
+        if (isWarmStandbyEnabled) {
+            runOnControlThread(null, this::prepareStandby);
+        }
+    }
+
+    @Nullable
+    private synchronized SpeechRecognizer takeStandby() {
+        final SpeechRecognizer recognizer = this.standbyRecognizer;
+        this.standbyRecognizer = null;
+        if (this.standbyConnection != null) {
+            this.standbyConnection.close();
+            this.standbyConnection = null;
+        }
+        return recognizer;
+    }
+
+    private synchronized void discardStandby() {
+        final SpeechRecognizer recognizer = takeStandby();
+        if (recognizer != null) {
+            recognizer.close();
+        }
+    }
+
+    @Override
+    protected void postInstall() {
+        super.postInstall();
+        prepareStandbyInBackground();
+    }
+
+    @ReactMethod
+    public void getSessionStats(Promise promise) {
+        final WritableMap stats = Arguments.createMap();
+        stats.putInt("warmStarts", warmStartCount);
+        stats.putInt("coldStarts", coldStartCount);
+        stats.putDouble("lastStartLatencyMillis", lastStartLatencyMillis);
+        stats.putDouble("averageStartLatencyMillis", startedSessionCount > 0 ? (double) totalStartLatencyMillis / startedSessionCount : 0);
+        promise.resolve(stats);
+    }
+
+    private void runOnControlThread(@Nullable Promise promise, Runnable command) {
+        try {
+            s_controlExecutor.execute(command);
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "Too many pending speech session commands.", e);
+            if (promise != null) {
+                promise.reject(e);
+            }
+        }
+    }
+
+    private void setSessionState(SessionState state) {
+        Log.d(TAG, "Session state: " + sessionState + " -> " + state);
+        sessionState = state;
+    }
+
+    @Override
+    @ReactMethod
+    public void start(Promise promise) {
+        Log.d(TAG, "Start speech recognition.");
+        markStartRequested();
+        final long requestedAt = SystemClock.elapsedRealtime();
+        runOnControlThread(promise, () -> startImpl(requestedAt, promise));
+    }
+
+    private void startImpl(long requestedAt, Promise promise) {
+        if (sessionState == SessionState.Running) {
+            Log.d(TAG, "Stop the running session before starting another.");
+            stopImpl(null);
+        }
+        if (sessionState != SessionState.Idle) {
+            Log.w(TAG, "Cannot start while the session is " + sessionState);
+            promise.reject(new Exception("SessionStopping"));
+            return;
+        }
+
+        this.startRequestedAt = requestedAt;
+        this.isHandedOver = false;
+
+        setSessionState(SessionState.Starting);
+
+        this.transcript.reset();
+
+        try {
+            SpeechRecognizer recognizer = takeStandby();
+            if (recognizer != null) {
+                warmStartCount++;
+            } else {
+                recognizer = createRecognizer();
+                coldStartCount++;
+            }
+
+            overrunBytesAtStart = obtainMicrophoneStream().getOverrunBytes();
+            obtainMicrophoneStream().startCapture();
+            this.currentRecognizer = recognizer;
+
+            recognizer.startContinuousRecognitionAsync().get();
             Log.d(TAG, "Speech session start command approved.");
+            setSessionState(SessionState.Running);
             promise.resolve(true);
-        } catch (ExecutionException | InterruptedException e) {
-            e.printStackTrace();
+        } catch (ExecutionException | InterruptedException | RuntimeException e) {
+            Log.e(TAG, "Failed to start the speech session.", e);
+            releaseSession();
             promise.resolve(false);
         }
     }
@@ -186,95 +420,111 @@ public class MicrosoftSpeechToTextModule extends ASpeechToTextModule {
     @ReactMethod
     public void stop(Promise promise) {
         Log.d(TAG, "Request stop recognition.");
+        markStopRequested();
+        runOnControlThread(promise, () -> stopImpl(promise));
+    }
+
+    private void stopImpl(@Nullable Promise promise) {
+        if (sessionState == SessionState.Idle) {
+            //The session already ended, e.g. after trailing silence or a start that failed.
+            Log.d(TAG, "No session to stop.");
+            if (promise != null) {
+                promise.resolve(true);
+            }
+            return;
+        }
+
+        setSessionState(SessionState.Stopping);
+        Exception error = null;
         if (this.currentRecognizer != null) {
             try {
                 this.currentRecognizer.stopContinuousRecognitionAsync().get();
-                this.currentRecognizer.close();
-                this.currentRecognizer = null;
-
-                this.accumulatedTextToPrevCycle = null;
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to stop the recognizer.", e);
+                error = e;
+            }
+        }
 
-                if (this.microphoneStream != null) {
-                    this.microphoneStream.close();
-                    this.microphoneStream = null;
-                }
+        if (!releaseSession()) {
+            if (promise != null) {
+                promise.reject(new Exception("SessionStopping"));
+            }
+            emitStopEvent("StopFailed");
+            return;
+        }
 
+        if (promise != null) {
+            if (error != null) {
+                promise.reject(error);
+            } else {
                 promise.resolve(true);
-            } catch (Exception e) {
-                promise.reject(e);
             }
-        } else {
-            promise.resolve(true);
         }
+        prepareStandby();
         emitStopEvent(null);
     }
 
+    //Closes the recognizer and stops the capture, then the session is Idle.
+    //Returns false and leaves the session as it is when the recognizer cannot be closed.
+    private boolean releaseSession() {
+        if (this.currentRecognizer != null) {
+            try {
+                this.currentRecognizer.close();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to close the recognizer.", e);
+                return false;
+            }
+            this.currentRecognizer = null;
+        }
 
-    //Handlers ==========
-    private void onSessionStarted() {
-
-    }
-
-    private void onStopped() {
-
+        this.transcript.reset();
+        if (this.microphoneStream != null) {
+            this.microphoneStream.stopCapture();
+            recordOverrun();
+        }
+        setSessionState(SessionState.Idle);
+        return true;
     }
-}
 
-//Forked from https://github.com/microsoft/botframework-solutions/blob/master/samples/android/clients/VirtualAssistantClient/directlinespeech/src/main/java/com/microsoft/bot/builder/solutions/directlinespeech/MicrophoneStream.java
-class MicrophoneStream extends PullAudioInputStreamCallback {
-
-    // CONSTANTS
-    private final static int SAMPLE_RATE = 16000;
-
-    // STATE
-    private final AudioStreamFormat format;
-    private AudioRecord recorder;
-
-    public MicrophoneStream() {
-        this.format = AudioStreamFormat.getWaveFormatPCM(SAMPLE_RATE, (short) 16, (short) 1);
-        this.initMic();
+    private void recordOverrun() {
+        getMetricsRegistry().recordOverrun(microphoneStream.getOverrunBytes() - overrunBytesAtStart);
+        overrunBytesAtStart = microphoneStream.getOverrunBytes();
     }
 
-    public AudioStreamFormat getFormat() {
-        return this.format;
+    //Releases the recognizer and the microphone without a stop event, because another backend carries on with the session.
+    private void abandonImpl() {
+        if (sessionState == SessionState.Idle) {
+            return;
+        }
+        setSessionState(SessionState.Stopping);
+        if (this.currentRecognizer != null) {
+            try {
+                this.currentRecognizer.stopContinuousRecognitionAsync().get();
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to stop the abandoned recognizer.", e);
+            }
+        }
+        if (releaseSession()) {
+            prepareStandby();
+        }
     }
 
     @Override
-    public int read(byte[] bytes) {
-        long ret = this.recorder.read(bytes, 0, bytes.length);
-        return (int) ret;
+    public void onCatalystInstanceDestroy() {
+        super.onCatalystInstanceDestroy();
+        runOnControlThread(null, () -> {
+            discardStandby();
+            releaseSession();
+            releaseMicrophoneStream();
+        });
     }
 
-    @Override
-    public void close() {
-        this.recorder.release();
-        this.recorder = null;
+    //Handlers ==========
+    private void onSessionStarted() {
+
     }
 
-    private void initMic() {
-        // Note: currently, the Speech SDK support 16 kHz sample rate, 16 bit samples, mono (single-channel) only.
-        if (Build.VERSION.SDK_INT >= 23) {
-            AudioFormat af = new AudioFormat.Builder()
-                    .setSampleRate(SAMPLE_RATE)
-                    .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
-                    .setChannelMask(AudioFormat.CHANNEL_IN_MONO)
-                    .build();
-
-            this.recorder = new AudioRecord.Builder()
-                    .setAudioSource(MediaRecorder.AudioSource.VOICE_RECOGNITION)
-                    .setAudioFormat(af)
-                    .build();
-        } else {
-            this.recorder = new AudioRecord(
-                    MediaRecorder.AudioSource.VOICE_RECOGNITION,
-                    SAMPLE_RATE,
-                    AudioFormat.CHANNEL_IN_MONO,
-                    AudioFormat.ENCODING_PCM_16BIT,
-                    AudioRecord.getMinBufferSize(SAMPLE_RATE,
-                            AudioFormat.CHANNEL_IN_MONO,
-                            AudioFormat.ENCODING_PCM_16BIT));
-        }
+    private void onStopped() {
 
-        this.recorder.startRecording();
     }
 }
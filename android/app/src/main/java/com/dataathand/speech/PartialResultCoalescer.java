@@ -0,0 +1,131 @@
+package com.dataathand.speech;
+
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Limits how often partial hypotheses cross the bridge.
+//Within a window only the latest partial survives, partials identical to the last emitted text are dropped,
+//and final results always go through immediately.
+class PartialResultCoalescer {
+
+    static final long DEFAULT_WINDOW_MILLIS = 80;
+
+    interface Sink {
+        void deliver(String text);
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final Sink sink;
+
+    private volatile long windowNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_WINDOW_MILLIS);
+
+    private String lastEmittedText = null;
+    private long lastEmittedAt = 0;
+
+    private String pendingText = null;
+    private ScheduledFuture<?> pendingFlush = null;
+
+    private final AtomicLong emittedCount = new AtomicLong(0);
+    private final AtomicLong suppressedCount = new AtomicLong(0);
+
+    private final Runnable flushTask = this::flush;
+
+    PartialResultCoalescer(ScheduledExecutorService scheduler, Sink sink) {
+        this.scheduler = scheduler;
+        this.sink = sink;
+    }
+
+    void setWindowMillis(long windowMillis) {
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, windowMillis));
+    }
+
+    long getWindowMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(windowNanos);
+    }
+
+    long getEmittedCount() {
+        return emittedCount.get();
+    }
+
+    long getSuppressedCount() {
+        return suppressedCount.get();
+    }
+
+    synchronized void offerPartial(@Nullable String text) {
+        if (pendingText != null) {
+            //The pending hypothesis is superseded before it was ever sent.
+            suppressedCount.incrementAndGet();
+            pendingText = text;
+            return;
+        }
+
+        if (equals(text, lastEmittedText)) {
+            suppressedCount.incrementAndGet();
+            return;
+        }
+
+        final long now = System.nanoTime();
+        final long elapsed = now - lastEmittedAt;
+        if (windowNanos == 0 || lastEmittedAt == 0 || elapsed >= windowNanos) {
+            emit(text, now);
+        } else {
+            pendingText = text;
+            pendingFlush = scheduler.schedule(flushTask, windowNanos - elapsed, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    synchronized void offerFinal(@Nullable String text) {
+        if (cancelPending()) {
+            suppressedCount.incrementAndGet();
+        }
+        emit(text, System.nanoTime());
+    }
+
+    //Sends out the pending partial, if any. Called when its window elapses and before a session ends.
+    synchronized void flush() {
+        if (pendingText == null) {
+            return;
+        }
+
+        final String text = pendingText;
+        cancelPending();
+
+        if (equals(text, lastEmittedText)) {
+            suppressedCount.incrementAndGet();
+        } else {
+            emit(text, System.nanoTime());
+        }
+    }
+
+    //Forgets the last emitted text so that a new session starts from scratch.
+    synchronized void reset() {
+        cancelPending();
+        lastEmittedText = null;
+        lastEmittedAt = 0;
+    }
+
+    private boolean cancelPending() {
+        final boolean hadPending = pendingText != null;
+        pendingText = null;
+        if (pendingFlush != null) {
+            pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+        return hadPending;
+    }
+
+    private void emit(String text, long now) {
+        lastEmittedText = text;
+        lastEmittedAt = now;
+        emittedCount.incrementAndGet();
+        sink.deliver(text);
+    }
+
+    private static boolean equals(@Nullable String a, @Nullable String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,166 @@
+package com.dataathand.speech;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+//Replays recorded audio in place of the microphone so that the speech path can be measured reproducibly.
+//In real time, bytes are handed out no earlier than they would have been recorded; otherwise as fast as they are read.
+//Every start() replays from the beginning. When each byte was handed out is kept for latency measurements.
+//It has no Android dependencies.
+class PcmReplaySource implements AudioSource {
+
+    //Delivery times are kept per 10 ms of audio.
+    static final int GRANULE_BYTES = MicrophoneStream.BYTES_PER_SECOND / 100;
+
+    private final byte[] pcm;
+    private final boolean isRealTime;
+
+    //Written by the capture thread only. Readers get them through the ring buffer cursors.
+    private final long[] deliveredAtNanos;
+    private int position = 0;
+    private long startedAtNanos = 0;
+
+    /**
+     * @param pcm 16 kHz, 16-bit, little-endian mono samples, e.g. from {@link #readPcm(InputStream)}.
+     */
+    PcmReplaySource(byte[] pcm, boolean isRealTime) {
+        this.pcm = pcm;
+        this.isRealTime = isRealTime;
+        this.deliveredAtNanos = new long[(pcm.length + GRANULE_BYTES - 1) / GRANULE_BYTES];
+    }
+
+    int getLength() {
+        return pcm.length;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} at which the byte at {@code offset} was handed out in the current replay, or 0.
+     */
+    long getDeliveredAtNanos(long offset) {
+        final int granule = (int) Math.min(offset / GRANULE_BYTES, deliveredAtNanos.length - 1);
+        return granule >= 0 ? deliveredAtNanos[granule] : 0;
+    }
+
+    @Override
+    public void start() {
+        position = 0;
+        Arrays.fill(deliveredAtNanos, 0);
+        startedAtNanos = System.nanoTime();
+    }
+
+    @Override
+    public boolean isPaced() {
+        return isRealTime;
+    }
+
+    @Override
+    public int read(ByteBuffer buffer, int length) {
+        final int count = Math.min(length, pcm.length - position) & ~1;
+        if (count <= 0) {
+            return END_OF_STREAM;
+        }
+
+        if (isRealTime) {
+            //The last byte of the chunk has to have been spoken before the chunk can be read.
+            final long dueAt = startedAtNanos + TimeUnit.SECONDS.toNanos(position + count) / MicrophoneStream.BYTES_PER_SECOND;
+            long wait;
+            while ((wait = dueAt - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, wait);
+            }
+        }
+
+        buffer.clear();
+        buffer.put(pcm, position, count);
+        buffer.clear();
+
+        final long now = System.nanoTime();
+        final int lastGranule = (position + count - 1) / GRANULE_BYTES;
+        for (int granule = position / GRANULE_BYTES; granule <= lastGranule; granule++) {
+            if (deliveredAtNanos[granule] == 0) {
+                deliveredAtNanos[granule] = now;
+            }
+        }
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public void release() {
+    }
+
+    static byte[] readPcm(File file) throws IOException {
+        try (InputStream input = new FileInputStream(file)) {
+            return readPcm(input);
+        }
+    }
+
+    /**
+     * Reads a WAV file, or raw PCM when the stream has no RIFF header. WAV input has to be 16 kHz, 16-bit PCM mono.
+     */
+    static byte[] readPcm(InputStream input) throws IOException {
+        final byte[] all = readAll(input);
+        if (all.length < 12 || !"RIFF".equals(new String(all, 0, 4, "US-ASCII")) || !"WAVE".equals(new String(all, 8, 4, "US-ASCII"))) {
+            return all;
+        }
+
+        final ByteBuffer wav = ByteBuffer.wrap(all).order(ByteOrder.LITTLE_ENDIAN);
+        wav.position(12);
+        boolean hasFormat = false;
+        while (wav.remaining() >= 8) {
+            final String chunkId = new String(all, wav.position(), 4, "US-ASCII");
+            wav.position(wav.position() + 4);
+            final int chunkSize = wav.getInt();
+            final int chunkStart = wav.position();
+            if (chunkSize < 0 || chunkSize > wav.remaining()) {
+                throw new EOFException("Truncated WAV chunk: " + chunkId);
+            }
+
+            if ("fmt ".equals(chunkId)) {
+                final int encoding = wav.getShort() & 0xffff;
+                final int channels = wav.getShort() & 0xffff;
+                final int sampleRate = wav.getInt();
+                wav.position(wav.position() + 6);
+                final int bitsPerSample = wav.getShort() & 0xffff;
+                if (encoding != 1 || channels != 1 || sampleRate != MicrophoneStream.SAMPLE_RATE || bitsPerSample != 16) {
+                    throw new IOException("Unsupported WAV format: encoding " + encoding + ", " + channels + " channels, "
+                            + sampleRate + " Hz, " + bitsPerSample + " bits");
+                }
+                hasFormat = true;
+            } else if ("data".equals(chunkId)) {
+                if (!hasFormat) {
+                    throw new IOException("WAV data before its format");
+                }
+                final byte[] pcm = new byte[chunkSize & ~1];
+                System.arraycopy(all, chunkStart, pcm, 0, pcm.length);
+                return pcm;
+            }
+
+            //Chunks are padded to an even size.
+            wav.position(Math.min(wav.limit(), chunkStart + chunkSize + (chunkSize & 1)));
+        }
+        throw new IOException("WAV without data");
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final byte[] chunk = new byte[8192];
+        int read;
+        while ((read = input.read(chunk)) > 0) {
+            output.write(chunk, 0, read);
+        }
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,223 @@
+package com.dataathand.speech;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//Decides which recognizer backend serves the next session.
+//Backends are tried in the order they were registered, with on-device ones first while on-device recognition is preferred.
+//A backend that fails is benched for a cool-down that doubles with every consecutive failure.
+//A healthy backend is also passed over when another one has been answering much faster.
+//It has no Android dependencies; times are elapsed milliseconds passed in by the caller.
+class RecognizerSelector {
+
+    static final long INITIAL_COOL_DOWN_MILLIS = 60 * 1000;
+    static final long MAX_COOL_DOWN_MILLIS = 30 * 60 * 1000;
+
+    //A backend needs this many measured sessions before its latency counts.
+    static final int MIN_LATENCY_SAMPLES = 3;
+
+    //The preferred backend is skipped when its time to first result is this many times that of another backend.
+    static final double LATENCY_SWITCH_RATIO = 2.0;
+
+    private static final double LATENCY_SMOOTHING = 0.3;
+
+    static class Backend {
+        final String name;
+        final boolean isOnDevice;
+
+        private boolean isAvailable = true;
+
+        private int selectedCount = 0;
+        private int succeededCount = 0;
+        private int failedCount = 0;
+        private int consecutiveFailures = 0;
+        private long benchedUntil = 0;
+
+        private int latencySamples = 0;
+        private long lastTimeToFirstResultMillis = 0;
+        private double smoothedTimeToFirstResultMillis = 0;
+
+        private Backend(String name, boolean isOnDevice) {
+            this.name = name;
+            this.isOnDevice = isOnDevice;
+        }
+
+        boolean isHealthyAt(long now) {
+            return now >= benchedUntil;
+        }
+    }
+
+    //A read-only copy of a backend's state for reporting.
+    static class BackendStats {
+        final String name;
+        final boolean isOnDevice;
+        final boolean isAvailable;
+        final boolean isHealthy;
+        final int selectedCount;
+        final int succeededCount;
+        final int failedCount;
+        final int consecutiveFailures;
+        final long retryInMillis;
+        final int latencySamples;
+        final long lastTimeToFirstResultMillis;
+        final double smoothedTimeToFirstResultMillis;
+
+        private BackendStats(Backend backend, long now) {
+            name = backend.name;
+            isOnDevice = backend.isOnDevice;
+            isAvailable = backend.isAvailable;
+            isHealthy = backend.isHealthyAt(now);
+            selectedCount = backend.selectedCount;
+            succeededCount = backend.succeededCount;
+            failedCount = backend.failedCount;
+            consecutiveFailures = backend.consecutiveFailures;
+            retryInMillis = Math.max(0, backend.benchedUntil - now);
+            latencySamples = backend.latencySamples;
+            lastTimeToFirstResultMillis = backend.lastTimeToFirstResultMillis;
+            smoothedTimeToFirstResultMillis = backend.smoothedTimeToFirstResultMillis;
+        }
+    }
+
+    private final List<Backend> backends = new ArrayList<>();
+
+    private boolean isOnDevicePreferred = true;
+
+    synchronized Backend register(String name, boolean isOnDevice) {
+        final Backend backend = new Backend(name, isOnDevice);
+        backends.add(backend);
+        return backend;
+    }
+
+    synchronized void setOnDevicePreferred(boolean preferred) {
+        this.isOnDevicePreferred = preferred;
+    }
+
+    synchronized void setAvailable(Backend backend, boolean available) {
+        backend.isAvailable = available;
+    }
+
+    synchronized boolean hasAvailableBackend() {
+        for (Backend backend : backends) {
+            if (backend.isAvailable) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Picks the backend for a new session and counts it as selected.
+     *
+     * @return null when no backend is available at all.
+     */
+    @Nullable
+    synchronized Backend select(long now) {
+        return selectExcept(null, now);
+    }
+
+    /**
+     * Picks a backend to take over a session that {@code failed} could not serve.
+     *
+     * @return null when there is no other healthy backend.
+     */
+    @Nullable
+    synchronized Backend selectFallback(Backend failed, long now) {
+        final Backend fallback = selectExcept(failed, now);
+        if (fallback == null || !fallback.isHealthyAt(now)) {
+            return null;
+        }
+        return fallback;
+    }
+
+    @Nullable
+    private Backend selectExcept(@Nullable Backend excluded, long now) {
+        Backend preferred = null;
+        Backend fastest = null;
+        Backend soonestHealthy = null;
+        for (Backend backend : orderedBackends()) {
+            if (backend == excluded || !backend.isAvailable) {
+                continue;
+            }
+
+            if (backend.isHealthyAt(now)) {
+                if (preferred == null) {
+                    preferred = backend;
+                }
+                if (backend.latencySamples >= MIN_LATENCY_SAMPLES
+                        && (fastest == null || backend.smoothedTimeToFirstResultMillis < fastest.smoothedTimeToFirstResultMillis)) {
+                    fastest = backend;
+                }
+            } else if (soonestHealthy == null || backend.benchedUntil < soonestHealthy.benchedUntil) {
+                soonestHealthy = backend;
+            }
+        }
+
+        Backend selected = preferred;
+        if (preferred != null && fastest != null && fastest != preferred && preferred.latencySamples >= MIN_LATENCY_SAMPLES
+                && preferred.smoothedTimeToFirstResultMillis > fastest.smoothedTimeToFirstResultMillis * LATENCY_SWITCH_RATIO) {
+            selected = fastest;
+        }
+
+        //Every backend is benched. Give the one that recovers first another chance rather than refusing to listen.
+        if (selected == null) {
+            selected = soonestHealthy;
+        }
+
+        if (selected != null) {
+            selected.selectedCount++;
+        }
+        return selected;
+    }
+
+    private List<Backend> orderedBackends() {
+        if (!isOnDevicePreferred) {
+            return backends;
+        }
+
+        final List<Backend> ordered = new ArrayList<>(backends.size());
+        for (Backend backend : backends) {
+            if (backend.isOnDevice) {
+                ordered.add(backend);
+            }
+        }
+        for (Backend backend : backends) {
+            if (!backend.isOnDevice) {
+                ordered.add(backend);
+            }
+        }
+        return ordered;
+    }
+
+    synchronized void recordFirstResult(Backend backend, long timeToFirstResultMillis) {
+        backend.lastTimeToFirstResultMillis = timeToFirstResultMillis;
+        if (backend.latencySamples == 0) {
+            backend.smoothedTimeToFirstResultMillis = timeToFirstResultMillis;
+        } else {
+            backend.smoothedTimeToFirstResultMillis += (timeToFirstResultMillis - backend.smoothedTimeToFirstResultMillis) * LATENCY_SMOOTHING;
+        }
+        backend.latencySamples++;
+    }
+
+    synchronized void recordSuccess(Backend backend) {
+        backend.succeededCount++;
+        backend.consecutiveFailures = 0;
+        backend.benchedUntil = 0;
+    }
+
+    synchronized void recordFailure(Backend backend, long now) {
+        backend.failedCount++;
+        backend.consecutiveFailures++;
+        final long coolDown = Math.min(MAX_COOL_DOWN_MILLIS, INITIAL_COOL_DOWN_MILLIS << Math.min(backend.consecutiveFailures - 1, 16));
+        backend.benchedUntil = now + coolDown;
+    }
+
+    synchronized List<BackendStats> getStats(long now) {
+        final List<BackendStats> stats = new ArrayList<>(backends.size());
+        for (Backend backend : backends) {
+            stats.add(new BackendStats(backend, now));
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,193 @@
+package com.dataathand.speech;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.PromiseImpl;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//Serves each session with the backend RecognizerSelector picks, preferring on-device recognition.
+//The backends emit their events themselves, so JS listens to them exactly as with a single module.
+//When a backend fails before its first result, another one takes over the session without JS noticing.
+public class SelectingSpeechToTextModule extends ReactContextBaseJavaModule implements ASpeechToTextModule.FallbackHandler {
+
+    private static final String TAG = "SelectingSpeech";
+
+    private final RecognizerSelector selector = new RecognizerSelector();
+
+    private final Map<RecognizerSelector.Backend, ASpeechToTextModule> modules = new LinkedHashMap<>();
+
+    private volatile ASpeechToTextModule currentModule = null;
+
+    @NonNull
+    @Override
+    public String getName() {
+        return "AndroidSelectingSpeechToText";
+    }
+
+    SelectingSpeechToTextModule(ReactApplicationContext reactContext, DefaultSpeechToTextModule onDeviceModule, MicrosoftSpeechToTextModule cloudModule) {
+        super(reactContext);
+        addBackend(onDeviceModule, true);
+        addBackend(cloudModule, false);
+    }
+
+    private void addBackend(ASpeechToTextModule module, boolean isOnDevice) {
+        final RecognizerSelector.Backend backend = selector.register(module.getName(), isOnDevice);
+        module.attachSelector(selector, backend, this);
+        modules.put(backend, module);
+    }
+
+    //The arguments go to every backend. A backend that cannot be installed, e.g. for missing credentials, is left out of the selection.
+    @ReactMethod
+    public void install(@Nullable final ReadableMap args, final Promise promise) {
+        selector.setOnDevicePreferred(args == null || !args.hasKey("preferOnDevice") || args.getBoolean("preferOnDevice"));
+
+        for (Map.Entry<RecognizerSelector.Backend, ASpeechToTextModule> entry : modules.entrySet()) {
+            final ASpeechToTextModule module = entry.getValue();
+            boolean isAvailable;
+            try {
+                if (module instanceof DefaultSpeechToTextModule) {
+                    ((DefaultSpeechToTextModule) module).setPreferOffline(entry.getKey().isOnDevice);
+                }
+                module.applyInstallArguments(args);
+                isAvailable = module.isAvailableForSelection();
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to install " + entry.getKey().name, e);
+                isAvailable = false;
+            }
+            selector.setAvailable(entry.getKey(), isAvailable);
+        }
+
+        promise.resolve(selector.hasAvailableBackend());
+    }
+
+    @ReactMethod
+    public void uninstall(Promise promise) {
+        for (ASpeechToTextModule module : modules.values()) {
+            module.uninstall(new PromiseImpl(args -> {
+            }, args -> Log.w(TAG, "Failed to uninstall " + module.getName())));
+        }
+        currentModule = null;
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void isAvailableInSystem(Promise promise) {
+        promise.resolve(selector.hasAvailableBackend());
+    }
+
+    @ReactMethod
+    public void start(Promise promise) {
+        final RecognizerSelector.Backend backend = selector.select(SystemClock.elapsedRealtime());
+        if (backend == null) {
+            Log.w(TAG, "No recognizer backend is available.");
+            promise.resolve(false);
+            return;
+        }
+
+        Log.d(TAG, "Start with " + backend.name);
+        final ASpeechToTextModule module = modules.get(backend);
+        currentModule = module;
+        module.start(promise);
+    }
+
+    @ReactMethod
+    public void stop(Promise promise) {
+        final ASpeechToTextModule module = currentModule;
+        if (module != null) {
+            module.stop(promise);
+        } else {
+            promise.resolve(true);
+        }
+    }
+
+    @Nullable
+    @Override
+    public ASpeechToTextModule takeOver(RecognizerSelector.Backend failed) {
+        if (currentModule != modules.get(failed)) {
+            return null;
+        }
+
+        final RecognizerSelector.Backend fallback = selector.selectFallback(failed, SystemClock.elapsedRealtime());
+        if (fallback == null) {
+            return null;
+        }
+
+        Log.d(TAG, "Fall back from " + failed.name + " to " + fallback.name);
+        final ASpeechToTextModule module = modules.get(fallback);
+        currentModule = module;
+        return module;
+    }
+
+    @ReactMethod
+    public void setPreprocessingContext(@Nullable final ReadableMap args, final Promise promise) {
+        try {
+            for (ASpeechToTextModule module : modules.values()) {
+                module.applyPreprocessingContext(args);
+            }
+            promise.resolve(true);
+        } catch (Exception e) {
+            promise.reject(e);
+        }
+    }
+
+    @ReactMethod
+    public void getEmissionStats(Promise promise) {
+        final ASpeechToTextModule module = currentModule;
+        if (module != null) {
+            module.getEmissionStats(promise);
+        } else {
+            promise.resolve(null);
+        }
+    }
+
+    //The metrics of every backend by module name.
+    @ReactMethod
+    public void getMetrics(Promise promise) {
+        final Map<String, Object> metrics = new LinkedHashMap<>();
+        for (ASpeechToTextModule module : modules.values()) {
+            metrics.put(module.getName(), module.getMetricsRegistry().snapshot());
+        }
+        promise.resolve(Arguments.makeNativeMap(metrics));
+    }
+
+    @ReactMethod
+    public void getBackendStats(Promise promise) {
+        final WritableArray backends = Arguments.createArray();
+        for (RecognizerSelector.BackendStats stats : selector.getStats(SystemClock.elapsedRealtime())) {
+            final WritableMap map = Arguments.createMap();
+            map.putString("name", stats.name);
+            map.putBoolean("onDevice", stats.isOnDevice);
+            map.putBoolean("available", stats.isAvailable);
+            map.putBoolean("healthy", stats.isHealthy);
+            map.putInt("selected", stats.selectedCount);
+            map.putInt("succeeded", stats.succeededCount);
+            map.putInt("failed", stats.failedCount);
+            map.putInt("consecutiveFailures", stats.consecutiveFailures);
+            map.putDouble("retryInMillis", stats.retryInMillis);
+            map.putInt("latencySamples", stats.latencySamples);
+            map.putDouble("lastTimeToFirstResultMillis", stats.lastTimeToFirstResultMillis);
+            map.putDouble("smoothedTimeToFirstResultMillis", stats.smoothedTimeToFirstResultMillis);
+            backends.pushMap(map);
+        }
+
+        final ASpeechToTextModule module = currentModule;
+        final WritableMap result = Arguments.createMap();
+        result.putString("current", module != null ? module.getName() : null);
+        result.putArray("backends", backends);
+        promise.resolve(result);
+    }
+}
@@ -0,0 +1,176 @@
+package com.dataathand.speech;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Counters and latency histograms of one recognizer module, kept for the lifetime of the process.
+//The module marks the points of a session as they happen, from whichever thread they happen on.
+//Marks that arrive twice, e.g. a stop reported by the recognizer and by the module, are counted once.
+class SpeechMetrics {
+
+    private static final Map<String, SpeechMetrics> s_registry = new ConcurrentHashMap<>();
+
+    final LatencyHistogram installMillis = new LatencyHistogram();
+    //From the start request to the recognizer session being started.
+    final LatencyHistogram startLatencyMillis = new LatencyHistogram();
+    final LatencyHistogram firstPartialMillis = new LatencyHistogram();
+    final LatencyHistogram partialIntervalMillis = new LatencyHistogram();
+    //From the stop request to the stop event.
+    final LatencyHistogram stopLatencyMillis = new LatencyHistogram();
+    //From the end of a dictation cycle to the next one being ready for speech.
+    final LatencyHistogram restartLatencyMillis = new LatencyHistogram();
+
+    private final AtomicLong sessionCount = new AtomicLong(0);
+    private final AtomicLong errorCount = new AtomicLong(0);
+    private final AtomicLong fallbackCount = new AtomicLong(0);
+    private final AtomicLong partialCount = new AtomicLong(0);
+    private final AtomicLong finalCount = new AtomicLong(0);
+    private final AtomicLong sessionMillis = new AtomicLong(0);
+    private final AtomicLong overrunBytes = new AtomicLong(0);
+    private final AtomicLong overrunSessionCount = new AtomicLong(0);
+    private final AtomicLong restartCount = new AtomicLong(0);
+
+    //Bumped by every mark, so that a reporter can tell whether anything happened since it last looked.
+    private final AtomicLong version = new AtomicLong(0);
+
+    //Uptime millis of the pending marks, 0 when none is pending.
+    private final AtomicLong startRequestedAt = new AtomicLong(0);
+    private final AtomicLong firstPartialPendingSince = new AtomicLong(0);
+    private final AtomicLong sessionStartedAt = new AtomicLong(0);
+    private final AtomicLong lastPartialAt = new AtomicLong(0);
+    private final AtomicLong stopRequestedAt = new AtomicLong(0);
+
+    //The same instance for every module of the name, so that a reload of the React instance does not reset the metrics.
+    static SpeechMetrics forModule(String moduleName) {
+        final SpeechMetrics metrics = new SpeechMetrics();
+        final SpeechMetrics existing = s_registry.putIfAbsent(moduleName, metrics);
+        return existing != null ? existing : metrics;
+    }
+
+    //Sorted by module name.
+    static Map<String, SpeechMetrics> getRegistered() {
+        return Collections.unmodifiableMap(new TreeMap<>(s_registry));
+    }
+
+    long getVersion() {
+        return version.get();
+    }
+
+    void recordInstall(long millis) {
+        installMillis.record(millis);
+        version.incrementAndGet();
+    }
+
+    void markStartRequested(long now) {
+        startRequestedAt.set(now);
+        firstPartialPendingSince.set(now);
+        lastPartialAt.set(0);
+        stopRequestedAt.set(0);
+        version.incrementAndGet();
+    }
+
+    void markSessionStarted(long now) {
+        final long requestedAt = startRequestedAt.getAndSet(0);
+        if (requestedAt > 0) {
+            startLatencyMillis.record(now - requestedAt);
+        }
+        if (sessionStartedAt.getAndSet(now) == 0) {
+            sessionCount.incrementAndGet();
+        }
+        version.incrementAndGet();
+    }
+
+    void markPartial(long now) {
+        partialCount.incrementAndGet();
+        final long pendingSince = firstPartialPendingSince.getAndSet(0);
+        if (pendingSince > 0) {
+            firstPartialMillis.record(now - pendingSince);
+        }
+        final long previous = lastPartialAt.getAndSet(now);
+        if (previous > 0) {
+            partialIntervalMillis.record(now - previous);
+        }
+        version.incrementAndGet();
+    }
+
+    void markFinal() {
+        finalCount.incrementAndGet();
+        version.incrementAndGet();
+    }
+
+    void markStopRequested(long now) {
+        stopRequestedAt.set(now);
+        version.incrementAndGet();
+    }
+
+    void markSessionEnded(long now, boolean isError) {
+        final long startedAt = sessionStartedAt.getAndSet(0);
+        final long stopAt = stopRequestedAt.getAndSet(0);
+        //A session that never started, e.g. one that failed to start, still ends with an error.
+        if (startedAt == 0 && !isError) {
+            return;
+        }
+        if (startedAt > 0) {
+            sessionMillis.addAndGet(now - startedAt);
+        }
+        if (stopAt > 0) {
+            stopLatencyMillis.record(now - stopAt);
+        }
+        if (isError) {
+            errorCount.incrementAndGet();
+        }
+        firstPartialPendingSince.set(0);
+        lastPartialAt.set(0);
+        version.incrementAndGet();
+    }
+
+    void recordFallback() {
+        fallbackCount.incrementAndGet();
+        version.incrementAndGet();
+    }
+
+    //Audio the capture path dropped during a session because the recognizer did not read it in time.
+    void recordOverrun(long bytes) {
+        if (bytes > 0) {
+            overrunBytes.addAndGet(bytes);
+            overrunSessionCount.incrementAndGet();
+            version.incrementAndGet();
+        }
+    }
+
+    void recordRestart(long latencyMillis) {
+        restartCount.incrementAndGet();
+        restartLatencyMillis.record(latencyMillis);
+        version.incrementAndGet();
+    }
+
+    /**
+     * Counters as numbers, histograms as maps of count, mean, p50, p90, p99 and max.
+     * The partial rate is per second of session time, which counts a running session only once it ends.
+     */
+    Map<String, Object> snapshot() {
+        final Map<String, Object> map = new LinkedHashMap<>();
+        map.put("sessions", sessionCount.get());
+        map.put("errors", errorCount.get());
+        map.put("fallbacks", fallbackCount.get());
+        map.put("partials", partialCount.get());
+        map.put("finals", finalCount.get());
+        final long millis = sessionMillis.get();
+        map.put("sessionMillis", millis);
+        map.put("partialRateHz", millis > 0 ? partialCount.get() * 1000.0 / millis : 0.0);
+        map.put("overrunBytes", overrunBytes.get());
+        map.put("overrunSessions", overrunSessionCount.get());
+        map.put("restarts", restartCount.get());
+        map.put("installMillis", installMillis.snapshot().toMap());
+        map.put("startLatencyMillis", startLatencyMillis.snapshot().toMap());
+        map.put("firstPartialMillis", firstPartialMillis.snapshot().toMap());
+        map.put("partialIntervalMillis", partialIntervalMillis.snapshot().toMap());
+        map.put("stopLatencyMillis", stopLatencyMillis.snapshot().toMap());
+        map.put("restartLatencyMillis", restartLatencyMillis.snapshot().toMap());
+        return map;
+    }
+}
@@ -0,0 +1,76 @@
+package com.dataathand.speech;
+
+import android.util.Log;
+
+import com.bugsnag.android.BreadcrumbType;
+import com.bugsnag.android.Bugsnag;
+import com.dataathand.utils.NamedThreadFactory;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+//Attaches summaries of the speech metrics to Bugsnag, so that its reports show how speech performed before them.
+//Every period, each module that had sessions since the last summary leaves a breadcrumb and replaces its metadata.
+public class SpeechMetricsReporter {
+
+    private static final String TAG = "SpeechMetricsReporter";
+
+    private static final String METADATA_SECTION = "speech";
+    private static final long PERIOD_MINUTES = 10;
+
+    private static final ScheduledExecutorService s_reportScheduler =
+            Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("speech-metrics", Thread.MIN_PRIORITY));
+
+    private static boolean s_isStarted = false;
+
+    //Versions of the metrics last summarized, by module name. Only touched on s_reportScheduler.
+    private static final Map<String, Long> s_reportedVersions = new HashMap<>();
+
+    //Bugsnag has to be started before.
+    public static synchronized void start() {
+        if (s_isStarted) {
+            return;
+        }
+        s_isStarted = true;
+        s_reportScheduler.scheduleAtFixedRate(SpeechMetricsReporter::report, PERIOD_MINUTES, PERIOD_MINUTES, TimeUnit.MINUTES);
+    }
+
+    private static void report() {
+        //An exception would cancel the following reports.
+        try {
+            for (Map.Entry<String, SpeechMetrics> entry : SpeechMetrics.getRegistered().entrySet()) {
+                final long version = entry.getValue().getVersion();
+                final Long reportedVersion = s_reportedVersions.get(entry.getKey());
+                if (version == (reportedVersion != null ? reportedVersion : 0)) {
+                    continue;
+                }
+                s_reportedVersions.put(entry.getKey(), version);
+
+                final Map<String, Object> summary = summarize(entry.getValue().snapshot());
+                Bugsnag.leaveBreadcrumb("Speech metrics of " + entry.getKey(), summary, BreadcrumbType.STATE);
+                Bugsnag.addMetadata(METADATA_SECTION, entry.getKey(), summary);
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Failed to report the speech metrics", e);
+        }
+    }
+
+    //Breadcrumb metadata is shown as a flat list, so the histograms are spread into keys such as "startLatencyMillis.p90".
+    static Map<String, Object> summarize(Map<String, Object> snapshot) {
+        final Map<String, Object> summary = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : snapshot.entrySet()) {
+            if (entry.getValue() instanceof Map) {
+                for (Map.Entry<?, ?> field : ((Map<?, ?>) entry.getValue()).entrySet()) {
+                    summary.put(entry.getKey() + "." + field.getKey(), field.getValue());
+                }
+            } else {
+                summary.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return summary;
+    }
+}
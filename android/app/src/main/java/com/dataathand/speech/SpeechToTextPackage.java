@@ -16,8 +16,11 @@ public class SpeechToTextPackage implements ReactPackage {
     @Override
     public List<NativeModule> createNativeModules(@NonNull ReactApplicationContext reactContext) {
         List<NativeModule> modules = new ArrayList<>();
-        modules.add(new DefaultSpeechToTextModule(reactContext));
-        modules.add(new MicrosoftSpeechToTextModule(reactContext));
+        final DefaultSpeechToTextModule defaultModule = new DefaultSpeechToTextModule(reactContext);
+        final MicrosoftSpeechToTextModule microsoftModule = new MicrosoftSpeechToTextModule(reactContext);
+        modules.add(defaultModule);
+        modules.add(microsoftModule);
+        modules.add(new SelectingSpeechToTextModule(reactContext, defaultModule, microsoftModule));
         return modules;
     }
 
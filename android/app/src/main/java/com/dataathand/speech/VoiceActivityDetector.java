@@ -0,0 +1,140 @@
+package com.dataathand.speech;
+
+import java.nio.ByteBuffer;
+
+//Lightweight energy + zero-crossing voice activity detector for 16-bit mono PCM.
+//Frames are classified against an adaptive noise floor. Speech starts after a few consecutive voiced frames
+//and ends after a configurable stretch of trailing silence.
+//It has no Android dependencies so it can be fed recorded PCM on a plain JVM.
+class VoiceActivityDetector {
+
+    interface Listener {
+        void onSpeechStarted();
+
+        void onSpeechEnded();
+    }
+
+    //Energy is the mean square of the samples normalized to [-1, 1].
+    private static final double MIN_SPEECH_ENERGY = 1e-5; // about -50 dBFS
+    private static final double SPEECH_TO_NOISE_RATIO = 4.0; // about 6 dB above the floor
+    private static final double FRICATIVE_TO_NOISE_RATIO = 2.0;
+    private static final double FRICATIVE_MIN_ZERO_CROSSING_RATE = 0.25;
+    private static final double NOISE_FLOOR_ADAPTATION = 0.05;
+    private static final double NOISE_FLOOR_ADAPTATION_IN_SPEECH = 0.002;
+    private static final int CALIBRATION_FRAMES = 5;
+    private static final int ONSET_FRAMES = 3;
+
+    private final int sampleRate;
+
+    private int endOfSpeechSilenceMillis = 800;
+
+    private double noiseFloor = 0;
+    private int processedFrames = 0;
+    private int consecutiveSpeechFrames = 0;
+    private int trailingSilenceMillis = 0;
+    private boolean isInSpeech = false;
+    private boolean hasDetectedSpeech = false;
+
+    private Listener listener = null;
+
+    VoiceActivityDetector(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    void setEndOfSpeechSilenceMillis(int endOfSpeechSilenceMillis) {
+        this.endOfSpeechSilenceMillis = endOfSpeechSilenceMillis;
+    }
+
+    boolean isInSpeech() {
+        return isInSpeech;
+    }
+
+    //Whether any speech was heard since the last reset.
+    boolean hasDetectedSpeech() {
+        return hasDetectedSpeech;
+    }
+
+    void reset() {
+        noiseFloor = 0;
+        processedFrames = 0;
+        consecutiveSpeechFrames = 0;
+        trailingSilenceMillis = 0;
+        isInSpeech = false;
+        hasDetectedSpeech = false;
+    }
+
+    /**
+     * Classifies one frame of 16-bit PCM stored from index 0 of {@code pcm}.
+     * The buffer must be set to {@link java.nio.ByteOrder#LITTLE_ENDIAN}, which is how AudioRecord writes samples.
+     *
+     * @return whether the frame is voiced.
+     */
+    boolean process(ByteBuffer pcm, int lengthInBytes) {
+        final int sampleCount = lengthInBytes / 2;
+        if (sampleCount == 0) {
+            return false;
+        }
+
+        double sumOfSquares = 0;
+        int zeroCrossings = 0;
+        short previous = pcm.getShort(0);
+        for (int i = 0; i < sampleCount; i++) {
+            final short sample = pcm.getShort(i * 2);
+            final double normalized = sample / 32768.0;
+            sumOfSquares += normalized * normalized;
+            if ((sample >= 0) != (previous >= 0)) {
+                zeroCrossings++;
+            }
+            previous = sample;
+        }
+
+        final double energy = sumOfSquares / sampleCount;
+        final double zeroCrossingRate = (double) zeroCrossings / sampleCount;
+
+        final boolean isVoiced;
+        if (processedFrames < CALIBRATION_FRAMES) {
+            //The first frames only seed the noise floor.
+            noiseFloor = (noiseFloor * processedFrames + energy) / (processedFrames + 1);
+            isVoiced = false;
+        } else {
+            isVoiced = energy >= MIN_SPEECH_ENERGY
+                    && (energy > noiseFloor * SPEECH_TO_NOISE_RATIO
+                    || (energy > noiseFloor * FRICATIVE_TO_NOISE_RATIO && zeroCrossingRate >= FRICATIVE_MIN_ZERO_CROSSING_RATE));
+
+            //The floor follows voiced frames only slowly so that long utterances barely raise it,
+            //while a persistent new noise source is still absorbed eventually.
+            noiseFloor += (energy - noiseFloor) * (isVoiced ? NOISE_FLOOR_ADAPTATION_IN_SPEECH : NOISE_FLOOR_ADAPTATION);
+        }
+        processedFrames++;
+
+        final int frameMillis = sampleCount * 1000 / sampleRate;
+        if (isVoiced) {
+            consecutiveSpeechFrames++;
+            trailingSilenceMillis = 0;
+            if (!isInSpeech && consecutiveSpeechFrames >= ONSET_FRAMES) {
+                isInSpeech = true;
+                hasDetectedSpeech = true;
+                if (listener != null) {
+                    listener.onSpeechStarted();
+                }
+            }
+        } else {
+            consecutiveSpeechFrames = 0;
+            if (isInSpeech) {
+                trailingSilenceMillis += frameMillis;
+                if (trailingSilenceMillis >= endOfSpeechSilenceMillis) {
+                    isInSpeech = false;
+                    if (listener != null) {
+                        listener.onSpeechEnded();
+                    }
+                }
+            }
+        }
+
+        return isVoiced;
+    }
+}
@@ -0,0 +1,91 @@
+package com.dataathand.speech.nlp;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+//US holidays understood by chrono-holidays.ts.
+enum Holiday {
+    NewYearsDay,
+    ValentinesDay,
+    MartinLutherKingDay,
+    PresidentsDay,
+    Easter,
+    MothersDay,
+    MemorialDay,
+    FathersDay,
+    IndependenceDay,
+    LaborDay,
+    ColumbusDay,
+    Halloween,
+    VeteransDay,
+    Thanksgiving,
+    Christmas;
+
+    LocalDate dateOf(int year) {
+        switch (this) {
+            case NewYearsDay:
+                return LocalDate.of(year, 1, 1);
+            case ValentinesDay:
+                return LocalDate.of(year, 2, 14);
+            case MartinLutherKingDay:
+                return nthWeekday(year, 1, 3, DayOfWeek.MONDAY);
+            case PresidentsDay:
+                return nthWeekday(year, 2, 3, DayOfWeek.MONDAY);
+            case Easter:
+                return easterSunday(year);
+            case MothersDay:
+                return nthWeekday(year, 5, 2, DayOfWeek.SUNDAY);
+            case MemorialDay:
+                return LocalDate.of(year, 5, 1).with(TemporalAdjusters.lastInMonth(DayOfWeek.MONDAY));
+            case FathersDay:
+                return nthWeekday(year, 6, 3, DayOfWeek.SUNDAY);
+            case IndependenceDay:
+                return LocalDate.of(year, 7, 4);
+            case LaborDay:
+                return nthWeekday(year, 9, 1, DayOfWeek.MONDAY);
+            case ColumbusDay:
+                return nthWeekday(year, 10, 2, DayOfWeek.MONDAY);
+            case Halloween:
+                return LocalDate.of(year, 10, 31);
+            case VeteransDay:
+                return LocalDate.of(year, 11, 11);
+            case Thanksgiving:
+                return nthWeekday(year, 11, 4, DayOfWeek.THURSDAY);
+            default:
+                return LocalDate.of(year, 12, 25);
+        }
+    }
+
+    //The latest occurrence on or before the reference date.
+    LocalDate latestUntil(LocalDate reference) {
+        int year = reference.getYear();
+        LocalDate date = dateOf(year);
+        while (date.isAfter(reference)) {
+            date = dateOf(--year);
+        }
+        return date;
+    }
+
+    private static LocalDate nthWeekday(int year, int month, int nth, DayOfWeek dayOfWeek) {
+        return LocalDate.of(year, month, 1).with(TemporalAdjusters.dayOfWeekInMonth(nth, dayOfWeek));
+    }
+
+    //Anonymous Gregorian algorithm.
+    private static LocalDate easterSunday(int year) {
+        final int a = year % 19;
+        final int b = year / 100;
+        final int c = year % 100;
+        final int d = b / 4;
+        final int e = b % 4;
+        final int f = (b + 8) / 25;
+        final int g = (b - f + 1) / 3;
+        final int h = (19 * a + b - d - g + 15) % 30;
+        final int i = c / 4;
+        final int k = c % 4;
+        final int l = (32 + 2 * e + 2 * i - h - k) % 7;
+        final int m = (a + 11 * h + 22 * l) / 451;
+        final int monthAndDay = h + l - 7 * m + 114;
+        return LocalDate.of(year, monthAndDay / 31, monthAndDay % 31 + 1);
+    }
+}
@@ -0,0 +1,231 @@
+package com.dataathand.speech.nlp;
+
+import androidx.annotation.Nullable;
+
+import com.dataathand.speech.nlp.SpeechTokenizer.Token;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the parse of the previous hypothesis so that a new partial result only re-parses what changed.
+ * Recognizers mostly append to or revise the tail of a hypothesis, so tokens and time expressions that end
+ * well before the first changed character are reused as they are. Refinement and the cheap regular expression
+ * passes still run over the whole text, since a new word can merge with or reinterpret an earlier expression.
+ * Not thread-safe.
+ */
+public final class IncrementalSpeechParser {
+
+    //No parser reads further than this many tokens past the end of what it matched, so expressions ending
+    //earlier cannot change when only later text does.
+    static final int MAX_LOOKAHEAD_TOKENS = 6;
+
+    //Number of consecutive hypotheses with the same intent for it to count as fully stable.
+    static final int STABLE_HYPOTHESIS_COUNT = 3;
+
+    public static final class SpeculativeIntent {
+        //One of the SpeechLexicon intent names, or null when no verb was heard yet.
+        @Nullable
+        public final String intent;
+        @Nullable
+        public final String dataSource;
+        @Nullable
+        public final String timeCycle;
+        //Numbered dates covering every date and period in the hypothesis, or 0 when there is none.
+        public final int rangeStart;
+        public final int rangeEnd;
+        public final int timeExpressionCount;
+        public final boolean isComplete;
+        //From 0 to 1. Grows as successive hypotheses agree and drops while the tail of the hypothesis may still extend an expression.
+        public final double stability;
+
+        SpeculativeIntent(@Nullable String intent, @Nullable String dataSource, @Nullable String timeCycle,
+                          int rangeStart, int rangeEnd, int timeExpressionCount, boolean isComplete, double stability) {
+            this.intent = intent;
+            this.dataSource = dataSource;
+            this.timeCycle = timeCycle;
+            this.rangeStart = rangeStart;
+            this.rangeEnd = rangeEnd;
+            this.timeExpressionCount = timeExpressionCount;
+            this.isComplete = isComplete;
+            this.stability = stability;
+        }
+
+        boolean isSameAs(SpeculativeIntent other) {
+            return equals(intent, other.intent) && equals(dataSource, other.dataSource) && equals(timeCycle, other.timeCycle)
+                    && rangeStart == other.rangeStart && rangeEnd == other.rangeEnd && timeExpressionCount == other.timeExpressionCount;
+        }
+
+        private static boolean equals(@Nullable String a, @Nullable String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    private final LocalDate today;
+    @Nullable
+    private final LocalDate dataInitialDate;
+
+    private String text = "";
+    private final List<Token> tokens = new ArrayList<>();
+    //Time expressions as scanned, before refinement.
+    private final List<TimeExpressionTagger.Parsed> scanned = new ArrayList<>();
+
+    @Nullable
+    private SpeechPreprocessor.Result result = null;
+    @Nullable
+    private SpeculativeIntent intent = null;
+    private int agreeingHypothesisCount = 0;
+
+    private int lastReparsedFromToken = 0;
+    private long parsedTokenCount = 0;
+    private long reusedTokenCount = 0;
+
+    /**
+     * @param dataInitialDate a numbered date, or 0 when unknown.
+     */
+    public IncrementalSpeechParser(LocalDate today, int dataInitialDate) {
+        this.today = today;
+        this.dataInitialDate = SpeechPreprocessor.toDataInitialDate(dataInitialDate);
+    }
+
+    public LocalDate getToday() {
+        return today;
+    }
+
+    /**
+     * Parses the next hypothesis of the same utterance.
+     * @return the same annotations as SpeechPreprocessor.preprocess() would return for the text.
+     */
+    public SpeechPreprocessor.Result update(String speech) {
+        final String normalized = SpeechTokenizer.normalize(speech);
+        final int divergence = commonPrefixLength(text, normalized);
+
+        //The tokenizer looks one character past a word for apostrophes and colons, so a token ending right before
+        //the first changed character may continue into it.
+        int firstChangedToken = 0;
+        while (firstChangedToken < tokens.size() && tokens.get(firstChangedToken).end + 1 < divergence) {
+            firstChangedToken++;
+        }
+        tokens.subList(firstChangedToken, tokens.size()).clear();
+        SpeechTokenizer.tokenize(normalized, firstChangedToken > 0 ? tokens.get(firstChangedToken - 1).end : 0, tokens);
+
+        int keptCount = 0;
+        while (keptCount < scanned.size() && scanned.get(keptCount).endToken + MAX_LOOKAHEAD_TOKENS < firstChangedToken) {
+            keptCount++;
+        }
+        scanned.subList(keptCount, scanned.size()).clear();
+        final int reparseFrom = keptCount > 0 ? scanned.get(keptCount - 1).endToken : 0;
+
+        final TimeExpressionTagger tagger = new TimeExpressionTagger(normalized, tokens, today, dataInitialDate);
+        tagger.scan(reparseFrom, scanned);
+
+        final List<TimeExpressionTagger.Parsed> refined = new ArrayList<>(scanned.size());
+        for (TimeExpressionTagger.Parsed parsed : scanned) {
+            refined.add(parsed.copy());
+        }
+
+        text = normalized;
+        result = SpeechPreprocessor.annotate(normalized, tokens, tagger, tagger.refine(refined), today);
+
+        lastReparsedFromToken = reparseFrom;
+        reusedTokenCount += reparseFrom;
+        parsedTokenCount += tokens.size() - reparseFrom;
+
+        updateIntent(result);
+        return result;
+    }
+
+    @Nullable
+    public SpeechPreprocessor.Result getResult() {
+        return result;
+    }
+
+    @Nullable
+    public SpeculativeIntent getSpeculativeIntent() {
+        return intent;
+    }
+
+    //The token from which the last update scanned for time expressions.
+    public int getLastReparsedFromToken() {
+        return lastReparsedFromToken;
+    }
+
+    //Ratio of tokens whose scan was reused across all updates since the last reset.
+    public double getReuseRatio() {
+        final long total = parsedTokenCount + reusedTokenCount;
+        return total > 0 ? (double) reusedTokenCount / total : 0;
+    }
+
+    public void reset() {
+        text = "";
+        tokens.clear();
+        scanned.clear();
+        result = null;
+        intent = null;
+        agreeingHypothesisCount = 0;
+        lastReparsedFromToken = 0;
+        parsedTokenCount = 0;
+        reusedTokenCount = 0;
+    }
+
+    private void updateIntent(SpeechPreprocessor.Result result) {
+        String verb = null;
+        String dataSource = null;
+        String timeCycle = null;
+        int rangeStart = 0;
+        int rangeEnd = 0;
+        int timeExpressionCount = 0;
+        int lastEnd = 0;
+        for (SpeechPreprocessor.Annotation annotation : result.annotations) {
+            switch (annotation.kind) {
+                case SpeechPreprocessor.KIND_DATE:
+                case SpeechPreprocessor.KIND_PERIOD:
+                    rangeStart = timeExpressionCount == 0 ? annotation.date : Math.min(rangeStart, annotation.date);
+                    rangeEnd = timeExpressionCount == 0 ? annotation.endDate : Math.max(rangeEnd, annotation.endDate);
+                    timeExpressionCount++;
+                    lastEnd = Math.max(lastEnd, annotation.end);
+                    break;
+                case SpeechPreprocessor.KIND_DATA_SOURCE:
+                    if (dataSource == null) {
+                        dataSource = annotation.value;
+                        lastEnd = Math.max(lastEnd, annotation.end);
+                    }
+                    break;
+                case SpeechPreprocessor.KIND_TIME_CYCLE:
+                    if (timeCycle == null) {
+                        timeCycle = annotation.value;
+                    }
+                    break;
+                case SpeechPreprocessor.KIND_VERB:
+                    verb = annotation.value;
+                    break;
+            }
+        }
+
+        final SpeculativeIntent previous = intent;
+        final SpeculativeIntent candidate = new SpeculativeIntent(verb, dataSource, timeCycle, rangeStart, rangeEnd,
+                timeExpressionCount, result.isComplete, 0);
+        agreeingHypothesisCount = previous != null && previous.isSameAs(candidate) ? agreeingHypothesisCount + 1 : 1;
+
+        double stability = Math.min(1.0, (double) agreeingHypothesisCount / STABLE_HYPOTHESIS_COUNT);
+        if (lastEnd >= result.normalizedText.trim().length()) {
+            //"january" may still become "january 15".
+            stability *= 0.5;
+        }
+        if (!result.isComplete) {
+            stability *= 0.5;
+        }
+
+        intent = new SpeculativeIntent(verb, dataSource, timeCycle, rangeStart, rangeEnd, timeExpressionCount, result.isComplete, stability);
+    }
+
+    private static int commonPrefixLength(String a, String b) {
+        final int length = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,105 @@
+package com.dataathand.speech.nlp;
+
+import java.util.HashMap;
+import java.util.Map;
+
+//Word lists shared by the time expression tagger and the preprocessor. Phrases are written as SpeechTokenizer normalizes them.
+final class SpeechLexicon {
+
+    static final String INTENT_ASSIGN_TRIVIAL = "AssignTrivial";
+    static final String INTENT_BROWSE = "Browse";
+    static final String INTENT_COMPARE = "Compare";
+    static final String INTENT_QUERY = "Query";
+
+    //1 is January.
+    static final TokenTrie<Integer> MONTHS = new TokenTrie<>();
+
+    //0 is Sunday, as in NumberedDates.getDayOfWeek().
+    static final TokenTrie<Integer> WEEKDAYS = new TokenTrie<>();
+
+    //Mapped to the month each season starts with.
+    static final TokenTrie<Integer> SEASONS = new TokenTrie<>();
+
+    static final TokenTrie<Holiday> HOLIDAYS = new TokenTrie<>();
+
+    static final TokenTrie<String> VERBS = new TokenTrie<>();
+
+    static final Map<String, Integer> NUMBER_WORDS = new HashMap<>();
+
+    private static final String[] MONTH_NAMES = {"january", "february", "march", "april", "may", "june", "july",
+            "august", "september", "october", "november", "december"};
+
+    private static final String[] WEEKDAY_NAMES = {"sunday", "monday", "tuesday", "wednesday", "thursday", "friday", "saturday"};
+
+    static {
+        for (int i = 0; i < MONTH_NAMES.length; i++) {
+            MONTHS.put(MONTH_NAMES[i], i + 1);
+        }
+
+        for (int i = 0; i < WEEKDAY_NAMES.length; i++) {
+            WEEKDAYS.put(WEEKDAY_NAMES[i], i);
+        }
+
+        SEASONS.put("spring", 3);
+        SEASONS.put("summer", 6);
+        SEASONS.put("fall", 9);
+        SEASONS.put("autumn", 9);
+        SEASONS.put("winter", 12);
+
+        putHolidayWithDay("new year", Holiday.NewYearsDay);
+        putHolidayWithDay("valentine", Holiday.ValentinesDay);
+        for (String king : new String[]{"", " king"}) {
+            for (String jr : new String[]{"", " jr"}) {
+                for (String junior : new String[]{"", " junior"}) {
+                    putHolidayWithDay("martin luther" + king + jr + junior, Holiday.MartinLutherKingDay);
+                }
+            }
+        }
+        putHolidayWithDay("president", Holiday.PresidentsDay);
+        HOLIDAYS.put("easter", Holiday.Easter);
+        putHolidayWithDay("mother", Holiday.MothersDay);
+        HOLIDAYS.put("memorial day", Holiday.MemorialDay);
+        putHolidayWithDay("father", Holiday.FathersDay);
+        HOLIDAYS.put("independence day", Holiday.IndependenceDay);
+        HOLIDAYS.put("labor day", Holiday.LaborDay);
+        putHolidayWithDay("columbus", Holiday.ColumbusDay);
+        HOLIDAYS.put("halloween", Holiday.Halloween);
+        putHolidayWithDay("veteran", Holiday.VeteransDay);
+        HOLIDAYS.put("thanksgiving", Holiday.Thanksgiving);
+        HOLIDAYS.put("thanksgiving day", Holiday.Thanksgiving);
+        HOLIDAYS.put("christmas", Holiday.Christmas);
+
+        //Roots and inflections of the verbs in preprocessor-verb.ts.
+        putVerbs(INTENT_ASSIGN_TRIVIAL, "set", "sets", "setting", "assign", "assigns", "assigned", "assigning",
+                "put", "puts", "putting", "change", "changes", "changed", "changing",
+                "modify", "modifies", "modified", "modifying", "edit", "edits", "edited", "editing",
+                "replace", "replaces", "replaced", "replacing");
+        putVerbs(INTENT_BROWSE, "browse", "browses", "browsed", "browsing", "go", "goes", "went", "going",
+                "show", "shows", "showed", "shown", "showing", "explore", "explores", "explored", "exploring");
+        putVerbs(INTENT_COMPARE, "compare", "compares", "compared", "comparing");
+        putVerbs(INTENT_QUERY, "highlight", "highlights", "highlighted", "highlighting",
+                "count", "counts", "counted", "counting", "find", "finds", "found", "finding");
+
+        final String[] numbers = {"one", "two", "three", "four", "five", "six", "seven", "eight", "nine", "ten"};
+        for (int i = 0; i < numbers.length; i++) {
+            NUMBER_WORDS.put(numbers[i], i + 1);
+        }
+    }
+
+    private SpeechLexicon() {
+    }
+
+    //Same variations as sdayFormat() in chrono-holidays.ts: "mother", "mothers", "mother's day" and so on.
+    private static void putHolidayWithDay(String name, Holiday holiday) {
+        for (String suffix : new String[]{"", "s"}) {
+            HOLIDAYS.put(name + suffix, holiday);
+            HOLIDAYS.put(name + suffix + " day", holiday);
+        }
+    }
+
+    private static void putVerbs(String intent, String... verbs) {
+        for (String verb : verbs) {
+            VERBS.put(verb, intent);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.dataathand.speech.nlp;
+
+import androidx.annotation.Nullable;
+
+import com.dataathand.speech.nlp.SpeechTokenizer.Token;
+import com.dataathand.time.NumberedDates;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tags the time expressions, data sources, time cycles and the main verb of a transcript natively,
+ * so that preprocessor.ts can skip chrono and the regular expression passes when the tags are complete.
+ * Offsets refer to the normalized text, which is what preprocess() in preprocessor.ts works on.
+ */
+public final class SpeechPreprocessor {
+
+    public static final String KIND_DATE = "date";
+    public static final String KIND_PERIOD = "period";
+    public static final String KIND_DATA_SOURCE = "dataSource";
+    public static final String KIND_TIME_CYCLE = "timeCycle";
+    public static final String KIND_VERB = "verb";
+
+    private static final char MASK = '\u0001';
+
+    private static final class Rule {
+        final Pattern pattern;
+        final String value;
+
+        Rule(String regex, String value) {
+            this.pattern = Pattern.compile(regex);
+            this.value = value;
+        }
+    }
+
+    //Same patterns and order as DATASOURCE_VARIABLE_RULES in preprocessor-templates.ts.
+    private static final Rule[] DATA_SOURCE_RULES = {
+            new Rule("(step count(s|er)?)|(steps?)|(walk)", "StepCount"),
+            new Rule("((resting\\s+)?heart rate)|(bpm)|(beats? per minutes?)", "HeartRate"),
+            new Rule("(h?ours?(\\s?)+(i|(of))?(\\s?)+((slept)|(sleep)))|(sleep length)|((length|duration) of ([a-z]+\\s)?sleep)|(sleep duration)|(sleep h?ours?)|(i (slept|sleep))", "HoursSlept"),
+            new Rule("(sleep(\\srange)?)|(range of ([a-z]+\\s)?sleep)|(sleep schedules?)", "SleepRange"),
+            new Rule("((body\\s+)?weight)|(wait)|(how heavy i (was|am))", "Weight"),
+    };
+
+    //Same patterns and order as CYCLIC_TIME_RULES in preprocessor-templates.ts.
+    private static final Rule[] TIME_CYCLE_RULES = {
+            new Rule("(by\\s+)?days?\\s+of\\s+(the\\s+)?weeks?", "DayOfWeek"),
+            new Rule("(by\\s+)?weekly(\\s+(data|pattern))?(\\s|$)?", "DayOfWeek"),
+            new Rule("(by months?)", "MonthOfYear"),
+            new Rule("(by\\s+)?(months?\\s+of\\s+(the\\s+)?years?)|(monthly(\\s+(data|pattern))?)", "MonthOfYear"),
+            new Rule("(by\\s+)?yearly(\\s+(data|pattern))?(\\s|$)?", "MonthOfYear"),
+    };
+
+    //Words that chrono parsers not ported here would pick up. When one is left untagged, the JavaScript side falls back to chrono.
+    private static final Set<String> UNHANDLED_TIME_CUES = new HashSet<>(Arrays.asList(
+            "ago", "within", "later", "earlier", "between", "around", "near", "before", "after",
+            "weekend", "fortnight", "morning", "afternoon", "evening", "noon", "midnight",
+            "jan", "feb", "mar", "apr", "jun", "jul", "aug", "sep", "sept", "oct", "nov", "dec",
+            "mon", "tue", "tues", "wed", "thu", "thur", "thurs", "fri", "sat", "sun"));
+
+    private static final Set<String> DURATION_UNITS = new HashSet<>(Arrays.asList(
+            "day", "days", "week", "weeks", "month", "months", "year", "years"));
+
+    public static final class Annotation {
+        public final String kind;
+        public final int start;
+        public final int end;
+        public final String text;
+
+        //A numbered date for dates, the start of periods.
+        public final int date;
+        //The end of periods.
+        public final int endDate;
+        //The category for data sources, time cycles and verbs.
+        @Nullable
+        public final String value;
+
+        @Nullable
+        public final String preposition;
+        public final boolean isPeriodCertain;
+        public final boolean conjunctionTo;
+        @Nullable
+        public final String beforeConjunction;
+        @Nullable
+        public final String afterConjunction;
+
+        private Annotation(String kind, int start, int end, String text, int date, int endDate, @Nullable String value,
+                           @Nullable String preposition, boolean isPeriodCertain, boolean conjunctionTo,
+                           @Nullable String beforeConjunction, @Nullable String afterConjunction) {
+            this.kind = kind;
+            this.start = start;
+            this.end = end;
+            this.text = text;
+            this.date = date;
+            this.endDate = endDate;
+            this.value = value;
+            this.preposition = preposition;
+            this.isPeriodCertain = isPeriodCertain;
+            this.conjunctionTo = conjunctionTo;
+            this.beforeConjunction = beforeConjunction;
+            this.afterConjunction = afterConjunction;
+        }
+
+        static Annotation category(String kind, int start, int end, String text, String value) {
+            return new Annotation(kind, start, end, text, 0, 0, value, null, false, false, null, null);
+        }
+    }
+
+    public static final class Result {
+        public final String normalizedText;
+        public final int today;
+        //Whether every time cue in the text was understood. Only then the annotations can replace chrono.
+        public final boolean isComplete;
+        //Time expressions first, then data sources, time cycles and the verb, in the order preprocessor.ts declares variables.
+        public final List<Annotation> annotations;
+
+        Result(String normalizedText, int today, boolean isComplete, List<Annotation> annotations) {
+            this.normalizedText = normalizedText;
+            this.today = today;
+            this.isComplete = isComplete;
+            this.annotations = annotations;
+        }
+    }
+
+    private SpeechPreprocessor() {
+    }
+
+    /**
+     * @param dataInitialDate a numbered date, or 0 when unknown.
+     */
+    public static Result preprocess(String speech, LocalDate today, int dataInitialDate) {
+        final String normalized = SpeechTokenizer.normalize(speech);
+        final List<Token> tokens = SpeechTokenizer.tokenize(normalized);
+        final TimeExpressionTagger tagger = new TimeExpressionTagger(normalized, tokens, today, toDataInitialDate(dataInitialDate));
+        return annotate(normalized, tokens, tagger, tagger.tag(), today);
+    }
+
+    @Nullable
+    static LocalDate toDataInitialDate(int dataInitialDate) {
+        return dataInitialDate != 0 ? NumberedDates.toLocalDate(dataInitialDate) : null;
+    }
+
+    //Runs the remaining passes over time expressions that were already tagged and refined.
+    static Result annotate(String normalized, List<Token> tokens, TimeExpressionTagger tagger,
+                           List<TimeExpressionTagger.Parsed> timeExpressions, LocalDate today) {
+        final List<Annotation> annotations = new ArrayList<>();
+        final char[] masked = normalized.toCharArray();
+
+        for (TimeExpressionTagger.Parsed parsed : timeExpressions) {
+            final Annotation annotation = toAnnotation(parsed, tagger.textOf(parsed));
+            if (annotation != null) {
+                annotations.add(annotation);
+                mask(masked, parsed.index, parsed.endIndex);
+            }
+        }
+
+        //Each rule takes only its first match, as the template pass does.
+        for (Rule rule : DATA_SOURCE_RULES) {
+            applyRule(rule, KIND_DATA_SOURCE, normalized, masked, annotations);
+        }
+        for (Rule rule : TIME_CYCLE_RULES) {
+            applyRule(rule, KIND_TIME_CYCLE, normalized, masked, annotations);
+        }
+
+        boolean isComplete = true;
+        boolean hasVerb = false;
+        for (int i = 0; i < tokens.size(); i++) {
+            final Token token = tokens.get(i);
+            if (masked[token.start] == MASK) {
+                continue;
+            }
+
+            if (!hasVerb && token.kind == SpeechTokenizer.KIND_WORD) {
+                final String intent = SpeechLexicon.VERBS.get(tokens, i);
+                if (intent != null) {
+                    annotations.add(Annotation.category(KIND_VERB, token.start, token.end, normalized.substring(token.start, token.end), intent));
+                    hasVerb = true;
+                }
+            }
+
+            if (isComplete && isUnhandledTimeCue(tokens, i)) {
+                isComplete = false;
+            }
+        }
+
+        return new Result(normalized, NumberedDates.fromLocalDate(today), isComplete, Collections.unmodifiableList(annotations));
+    }
+
+    @Nullable
+    private static Annotation toAnnotation(TimeExpressionTagger.Parsed parsed, String text) {
+        final TimeExpressionTagger.Components start = parsed.start;
+        if (parsed.end != null) {
+            final LocalDate from = start.startByPrecision();
+            final LocalDate to = parsed.end.endByPrecision();
+            final boolean isOrdered = !from.isAfter(to);
+            return new Annotation(KIND_PERIOD, parsed.index, parsed.endIndex, text,
+                    NumberedDates.fromLocalDate(isOrdered ? from : to), NumberedDates.fromLocalDate(isOrdered ? to : from), null,
+                    parsed.preposition, parsed.isRangeCertain, parsed.conjunctionTo, parsed.beforeConjunction, parsed.afterConjunction);
+        } else if (start.knowsDay || (!start.knowsMonth && !start.knowsYear && start.weekday >= 0)) {
+            final int date = NumberedDates.fromLocalDate(start.date());
+            return new Annotation(KIND_DATE, parsed.index, parsed.endIndex, text, date, date, null,
+                    parsed.preposition, false, false, null, null);
+        } else if (start.knowsMonth || start.knowsYear) {
+            return new Annotation(KIND_PERIOD, parsed.index, parsed.endIndex, text,
+                    NumberedDates.fromLocalDate(start.startByPrecision()), NumberedDates.fromLocalDate(start.endByPrecision()), null,
+                    parsed.preposition, false, false, null, null);
+        } else {
+            return null;
+        }
+    }
+
+    private static void applyRule(Rule rule, String kind, String normalized, char[] masked, List<Annotation> annotations) {
+        final Matcher matcher = rule.pattern.matcher(new String(masked));
+        if (matcher.find() && matcher.end() > matcher.start()) {
+            annotations.add(Annotation.category(kind, matcher.start(), matcher.end(),
+                    normalized.substring(matcher.start(), matcher.end()), rule.value));
+            mask(masked, matcher.start(), matcher.end());
+        }
+    }
+
+    private static boolean isUnhandledTimeCue(List<Token> tokens, int i) {
+        final Token token = tokens.get(i);
+        if (token.kind == SpeechTokenizer.KIND_WORD) {
+            return UNHANDLED_TIME_CUES.contains(token.norm)
+                    || (SpeechLexicon.NUMBER_WORDS.containsKey(token.norm) && i + 1 < tokens.size() && DURATION_UNITS.contains(tokens.get(i + 1).norm));
+        } else if (token.kind == SpeechTokenizer.KIND_NUMBER) {
+            if (token.hasColon) {
+                return true;
+            }
+            //Slash or ISO dates like 3/1 or 2020-03-01.
+            if (i + 2 < tokens.size() && (tokens.get(i + 1).isPunctuation('/') || tokens.get(i + 1).isPunctuation('-'))
+                    && tokens.get(i + 2).kind == SpeechTokenizer.KIND_NUMBER) {
+                return true;
+            }
+            //Durations like "in 3 days" or "2 weeks ago".
+            return i + 1 < tokens.size() && DURATION_UNITS.contains(tokens.get(i + 1).norm);
+        } else {
+            return false;
+        }
+    }
+
+    private static void mask(char[] masked, int start, int end) {
+        for (int i = start; i < end; i++) {
+            masked[i] = MASK;
+        }
+    }
+}
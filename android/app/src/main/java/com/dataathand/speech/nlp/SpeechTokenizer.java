@@ -0,0 +1,136 @@
+package com.dataathand.speech.nlp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+//Splits a normalized transcript into words, numbers and single punctuation marks, keeping their character offsets.
+final class SpeechTokenizer {
+
+    static final int KIND_WORD = 0;
+    static final int KIND_NUMBER = 1;
+    static final int KIND_PUNCTUATION = 2;
+
+    private static final Pattern COMMA_IN_NUMBER = Pattern.compile("(\\d),(\\d)");
+
+    static final class Token {
+        final int kind;
+        //Lower case without apostrophes, so that "mother's" and "mothers" look the same to the lexicons.
+        final String norm;
+        final int start;
+        final int end;
+
+        //Only for numbers. "20:19" is read as 2019 and "12th" as 12.
+        final int number;
+        final int digitCount;
+        final boolean isOrdinal;
+        final boolean hasColon;
+
+        Token(int kind, String norm, int start, int end, int number, int digitCount, boolean isOrdinal, boolean hasColon) {
+            this.kind = kind;
+            this.norm = norm;
+            this.start = start;
+            this.end = end;
+            this.number = number;
+            this.digitCount = digitCount;
+            this.isOrdinal = isOrdinal;
+            this.hasColon = hasColon;
+        }
+
+        boolean isPunctuation(char c) {
+            return kind == KIND_PUNCTUATION && norm.charAt(0) == c;
+        }
+    }
+
+    private SpeechTokenizer() {
+    }
+
+    //Same normalization as preprocess() in preprocessor.ts: "10,000" becomes "10000" and the text is lower-cased.
+    static String normalize(String speech) {
+        return COMMA_IN_NUMBER.matcher(speech).replaceAll("$1$2").toLowerCase(Locale.ROOT);
+    }
+
+    static List<Token> tokenize(String text) {
+        final List<Token> tokens = new ArrayList<>();
+        tokenize(text, 0, tokens);
+        return tokens;
+    }
+
+    //Appends the tokens found from the given character offset, which must not be inside a word.
+    static void tokenize(String text, int from, List<Token> tokens) {
+        final int length = text.length();
+        int i = from;
+        while (i < length) {
+            final char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (isWordChar(c)) {
+                final int start = i;
+                while (i < length && (isWordChar(text.charAt(i))
+                        || (isApostrophe(text.charAt(i)) && i + 1 < length && isWordChar(text.charAt(i + 1)))
+                        || (text.charAt(i) == ':' && i > start && isDigits(text, start, i) && i + 1 < length && Character.isDigit(text.charAt(i + 1))))) {
+                    i++;
+                }
+                tokens.add(makeToken(text, start, i));
+            } else {
+                tokens.add(new Token(KIND_PUNCTUATION, String.valueOf(isApostrophe(c) ? '\'' : c), i, i + 1, 0, 0, false, false));
+                i++;
+            }
+        }
+    }
+
+    private static Token makeToken(String text, int start, int end) {
+        final StringBuilder norm = new StringBuilder(end - start);
+        int digitCount = 0;
+        int letterCount = 0;
+        boolean hasColon = false;
+        long number = 0;
+        for (int i = start; i < end; i++) {
+            final char c = text.charAt(i);
+            if (Character.isDigit(c)) {
+                if (letterCount == 0) {
+                    digitCount++;
+                    number = Math.min(Integer.MAX_VALUE, number * 10 + (c - '0'));
+                }
+                norm.append(c);
+            } else if (c == ':') {
+                hasColon = true;
+                norm.append(c);
+            } else if (!isApostrophe(c)) {
+                letterCount++;
+                norm.append(c);
+            }
+        }
+
+        final String normalized = norm.toString();
+        if (digitCount > 0 && letterCount == 0) {
+            return new Token(KIND_NUMBER, normalized, start, end, (int) number, digitCount, false, hasColon);
+        } else if (digitCount > 0 && !hasColon && digitCount + 2 == normalized.length() && isOrdinalSuffix(normalized.substring(digitCount))) {
+            return new Token(KIND_NUMBER, normalized, start, end, (int) number, digitCount, true, false);
+        } else {
+            return new Token(KIND_WORD, normalized, start, end, 0, 0, false, false);
+        }
+    }
+
+    private static boolean isOrdinalSuffix(String suffix) {
+        return suffix.equals("st") || suffix.equals("nd") || suffix.equals("rd") || suffix.equals("th");
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c);
+    }
+
+    private static boolean isApostrophe(char c) {
+        return c == '\'' || c == '\u2019';
+    }
+
+    private static boolean isDigits(String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!Character.isDigit(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,935 @@
+package com.dataathand.speech.nlp;
+
+import androidx.annotation.Nullable;
+
+import com.dataathand.speech.nlp.SpeechTokenizer.Token;
+import com.dataathand.time.NumberedDates;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the time expressions that the chrono setup in preprocessor-time.ts understands:
+ * the custom parsers of chrono-extension.ts and chrono-holidays.ts plus the casual days,
+ * followed by the same refiners in the same order.
+ * Matching walks the token list once; at each token the longest expression wins, as chrono's overlap removal does.
+ */
+final class TimeExpressionTagger {
+
+    private static final Pattern RANGE_CONJUNCTION = Pattern.compile("^[,.]?\\s*(until|to|through|two|-|2)\\s*$");
+    private static final Pattern TO_CONJUNCTION = Pattern.compile("to|two|2");
+    private static final Pattern DICTATION_GAP = Pattern.compile("^[,.]?\\s*$");
+    private static final Pattern ENDS_WITH_TWO = Pattern.compile("(2|2nd)$");
+    private static final Pattern AND_CONJUNCTION = Pattern.compile("^[,.]?\\s*(and|-)\\s*$");
+
+    private static final List<String> RELATIVE_PREFIXES = Arrays.asList("last", "lost", "past", "recent", "this", "current", "present");
+    private static final List<String> WEEKDAY_PREFIXES = Arrays.asList("this", "last", "past", "next");
+
+    static final String PREPOSITION_FROM = "from";
+    static final String PREPOSITION_TO = "to";
+
+    //Same semantics as chrono's ParsedComponents: values are either known or implied from the reference date.
+    static final class Components {
+        int year;
+        int month;
+        int day;
+        boolean knowsYear;
+        boolean knowsMonth;
+        boolean knowsDay;
+        //-1 unless a weekday was said. 0 is Sunday.
+        int weekday = -1;
+
+        static Components implied(LocalDate date) {
+            final Components components = new Components();
+            components.imply(date);
+            return components;
+        }
+
+        static Components known(LocalDate date) {
+            final Components components = implied(date);
+            components.knowsYear = true;
+            components.knowsMonth = true;
+            components.knowsDay = true;
+            return components;
+        }
+
+        void imply(LocalDate date) {
+            year = date.getYear();
+            month = date.getMonthValue();
+            day = date.getDayOfMonth();
+        }
+
+        LocalDate date() {
+            final LocalDate firstDay = LocalDate.of(year, month, 1);
+            return firstDay.withDayOfMonth(Math.min(day, firstDay.lengthOfMonth()));
+        }
+
+        int knownCount() {
+            return (knowsYear ? 1 : 0) + (knowsMonth ? 1 : 0) + (knowsDay ? 1 : 0);
+        }
+
+        boolean isOnlyWeekday() {
+            return weekday >= 0 && !knowsDay && !knowsMonth;
+        }
+
+        Components copy() {
+            final Components copy = new Components();
+            copy.year = year;
+            copy.month = month;
+            copy.day = day;
+            copy.knowsYear = knowsYear;
+            copy.knowsMonth = knowsMonth;
+            copy.knowsDay = knowsDay;
+            copy.weekday = weekday;
+            return copy;
+        }
+
+        //Copies what the other side knows and this side does not, as mergeResult() in chrono-utils.ts.
+        void learnFrom(Components other) {
+            if (other.knowsYear && !knowsYear) {
+                year = other.year;
+                knowsYear = true;
+            }
+            if (other.knowsMonth && !knowsMonth) {
+                month = other.month;
+                knowsMonth = true;
+            }
+            if (other.knowsDay && !knowsDay) {
+                day = other.day;
+                knowsDay = true;
+            }
+        }
+
+        LocalDate startByPrecision() {
+            if (knowsDay) {
+                return date();
+            } else if (knowsMonth) {
+                return LocalDate.of(year, month, 1);
+            } else if (knowsYear) {
+                return LocalDate.of(year, 1, 1);
+            } else {
+                return date();
+            }
+        }
+
+        LocalDate endByPrecision() {
+            if (knowsDay) {
+                return date();
+            } else if (knowsMonth) {
+                return LocalDate.of(year, month, 1).with(TemporalAdjusters.lastDayOfMonth());
+            } else if (knowsYear) {
+                return LocalDate.of(year, 12, 31);
+            } else {
+                return date();
+            }
+        }
+    }
+
+    static final class Parsed {
+        int startToken;
+        int endToken;
+        int index;
+        int endIndex;
+
+        Components start;
+        @Nullable
+        Components end;
+
+        boolean isRangeCertain = false;
+        @Nullable
+        String preposition = null;
+        boolean conjunctionTo = false;
+        @Nullable
+        String beforeConjunction = null;
+        @Nullable
+        String afterConjunction = null;
+
+        Parsed copy() {
+            final Parsed copy = new Parsed();
+            copy.startToken = startToken;
+            copy.endToken = endToken;
+            copy.index = index;
+            copy.endIndex = endIndex;
+            copy.start = start.copy();
+            copy.end = end != null ? end.copy() : null;
+            copy.isRangeCertain = isRangeCertain;
+            copy.preposition = preposition;
+            copy.conjunctionTo = conjunctionTo;
+            copy.beforeConjunction = beforeConjunction;
+            copy.afterConjunction = afterConjunction;
+            return copy;
+        }
+    }
+
+    private interface Parser {
+        @Nullable
+        Parsed parse(int i);
+    }
+
+    private final String text;
+    private final List<Token> tokens;
+    private final LocalDate reference;
+    @Nullable
+    private final LocalDate dataInitialDate;
+
+    private final Parser[] parsers = {
+            this::parseDataInitialDate,
+            this::parseEntirePeriod,
+            this::parseSeason,
+            this::parseYear,
+            this::parseRecentDuration,
+            this::parseRelativePeriod,
+            this::parseWeekday,
+            this::parseMonthName,
+            this::parseMonthDay,
+            this::parseHoliday,
+            this::parseCasualDay
+    };
+
+    TimeExpressionTagger(String text, List<Token> tokens, LocalDate reference, @Nullable LocalDate dataInitialDate) {
+        this.text = text;
+        this.tokens = tokens;
+        this.reference = reference;
+        this.dataInitialDate = dataInitialDate;
+    }
+
+    List<Parsed> tag() {
+        final List<Parsed> results = new ArrayList<>();
+        scan(0, results);
+        return refine(results);
+    }
+
+    //Appends the expressions found from the given token on, before any refinement.
+    void scan(int fromToken, List<Parsed> results) {
+        int i = fromToken;
+        while (i < tokens.size()) {
+            Parsed best = null;
+            for (Parser parser : parsers) {
+                final Parsed parsed = parser.parse(i);
+                if (parsed != null && (best == null || parsed.endIndex > best.endIndex)) {
+                    best = parsed;
+                }
+            }
+
+            if (best != null) {
+                results.add(best);
+                i = best.endToken;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    //Refiners modify the results in place, so pass copies when the scanned results are kept.
+    List<Parsed> refine(List<Parsed> results) {
+        results = mergeRanges(results);
+        refineAround(results);
+        refineDayBeforeAfter(results);
+        refineWeekOf(results);
+        refineSince(results);
+        refinePreposition(results);
+        results = refineBetween(results);
+        refineOptimizedConjunction(results);
+        return results;
+    }
+
+    String textOf(Parsed parsed) {
+        return text.substring(parsed.index, parsed.endIndex);
+    }
+
+    //Parsers =====================================================================================
+
+    @Nullable
+    private Parsed parseDataInitialDate(int i) {
+        if (dataInitialDate == null) {
+            return null;
+        }
+
+        int j = i;
+        if (isWord(j, "the")) j++;
+        if (isWord(j, "fitbit")) j++;
+        if (!isOneOf(j, "initial", "first")) return null;
+        j++;
+        if (!isOneOf(j, "day", "date")) return null;
+        j++;
+        if (isWord(j, "of") && isWord(j + 1, "fitbit")) j += 2;
+
+        return make(i, j, Components.known(dataInitialDate), null);
+    }
+
+    @Nullable
+    private Parsed parseEntirePeriod(int i) {
+        if (dataInitialDate == null) {
+            return null;
+        }
+
+        int j = i;
+        if (isOneOf(j, "the", "a", "an")) j++;
+        if (!isOneOf(j, "entire", "all", "whole")) return null;
+        j++;
+        if (!isOneOf(j, "period", "range", "data", "dataset")) return null;
+        j++;
+
+        final Parsed parsed = make(i, j, Components.known(dataInitialDate), Components.known(reference));
+        parsed.isRangeCertain = true;
+        return parsed;
+    }
+
+    @Nullable
+    private Parsed parseSeason(int i) {
+        int j = i;
+        int year = 0;
+        int lastCount = 0;
+
+        final int leadingYear = yearAt(j, false);
+        if (leadingYear > 0) {
+            if (seasonAt(j + 1) < 0) return null;
+            year = leadingYear;
+            j++;
+        } else {
+            while (isWord(j, "last")) {
+                lastCount++;
+                j++;
+                if (isPunctuation(j, ',')) j++;
+            }
+        }
+
+        final int startMonth = seasonAt(j);
+        if (startMonth < 0) return null;
+        j++;
+
+        if (year == 0) {
+            int k = j;
+            if (isOneOf(k, "of", "in")) k++;
+            final int trailingYear = yearAt(k, false);
+            if (trailingYear > 0) {
+                year = trailingYear;
+                j = k + 1;
+            }
+        }
+
+        LocalDate start;
+        if (year > 0) {
+            start = LocalDate.of(year, startMonth, 1);
+        } else {
+            start = LocalDate.of(reference.getYear(), startMonth, 1);
+            while (reference.isBefore(start)) {
+                start = start.minusYears(1);
+            }
+
+            if (lastCount > 0) {
+                //A season that is still going on is "this" season, not the last one.
+                final LocalDate end = start.plusMonths(3).minusDays(1);
+                start = start.minusYears(reference.isBefore(end) ? lastCount : lastCount - 1);
+            }
+        }
+
+        return make(i, j, Components.known(start), Components.known(start.plusMonths(3).minusDays(1)));
+    }
+
+    @Nullable
+    private Parsed parseYear(int i) {
+        int j = i;
+        if (isWord(j, "year") && yearAt(j + 1, false) > 0) {
+            j++;
+        } else if (tokens.get(j).start > 0 && !Character.isWhitespace(text.charAt(tokens.get(j).start - 1))) {
+            return null;
+        }
+
+        final int year = yearAt(j, false);
+        if (year == 0) return null;
+        final int end = tokens.get(j).end;
+        if (end < text.length() && !Character.isWhitespace(text.charAt(end))) return null;
+        //"more than 2000 steps"
+        if (isWord(i - 1, "than")) return null;
+
+        final Components components = Components.implied(reference);
+        components.year = year;
+        components.knowsYear = true;
+        return make(i, j + 1, components, null);
+    }
+
+    @Nullable
+    private Parsed parseRecentDuration(int i) {
+        if (!isOneOf(i, "recent", "resent", "resend", "past", "last")) return null;
+        final int count = countAt(i + 1);
+        if (count <= 0) return null;
+        final String unit = unitAt(i + 2);
+        if (unit == null) return null;
+
+        final LocalDate start;
+        switch (unit) {
+            case "day":
+                start = reference.minusDays(count - 1);
+                break;
+            case "week":
+                start = reference.minusWeeks(count).plusDays(1);
+                break;
+            case "month":
+                start = reference.minusMonths(count).plusDays(1);
+                break;
+            default:
+                start = reference.minusYears(count).plusDays(1);
+                break;
+        }
+
+        final Parsed parsed = make(i, i + 3, Components.known(start), Components.known(reference));
+        parsed.isRangeCertain = true;
+        return parsed;
+    }
+
+    @Nullable
+    private Parsed parseRelativePeriod(int i) {
+        int j = i;
+        final List<String> prefixes = new ArrayList<>();
+        while (j < tokens.size() && RELATIVE_PREFIXES.contains(tokens.get(j).norm)) {
+            prefixes.add(tokens.get(j).norm);
+            j++;
+        }
+        if (prefixes.isEmpty() || !isOneOf(j, "month", "week", "year")) return null;
+        final String unit = tokens.get(j).norm;
+
+        boolean isAllLast = true;
+        for (String prefix : prefixes) {
+            isAllLast &= prefix.equals("last") || prefix.equals("lost");
+        }
+
+        final int shift;
+        if (isAllLast) {
+            shift = -prefixes.size();
+        } else {
+            final String lastPrefix = prefixes.get(prefixes.size() - 1);
+            shift = lastPrefix.equals("this") || lastPrefix.equals("current") || lastPrefix.equals("present") ? 0 : -1;
+        }
+
+        switch (unit) {
+            case "week": {
+                final LocalDate monday = reference.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).plusWeeks(shift);
+                return make(i, j + 1, Components.known(monday), Components.known(monday.plusDays(6)));
+            }
+            case "month": {
+                final LocalDate firstDay = reference.withDayOfMonth(1).plusMonths(shift);
+                final Components components = Components.implied(firstDay);
+                components.knowsYear = true;
+                components.knowsMonth = true;
+                return make(i, j + 1, components, null);
+            }
+            default: {
+                final Components components = Components.implied(reference);
+                components.year = reference.getYear() + shift;
+                components.knowsYear = true;
+                return make(i, j + 1, components, null);
+            }
+        }
+    }
+
+    @Nullable
+    private Parsed parseWeekday(int i) {
+        int j = i;
+        if (isWord(j, "on")) j++;
+        final List<String> prefixes = new ArrayList<>();
+        while (j < tokens.size() && WEEKDAY_PREFIXES.contains(tokens.get(j).norm)) {
+            prefixes.add(tokens.get(j).norm);
+            j++;
+        }
+
+        final Integer weekday = j < tokens.size() ? SpeechLexicon.WEEKDAYS.get(tokens, j) : null;
+        if (weekday == null) return null;
+        j++;
+
+        final String norm = String.join(" ", prefixes);
+        final Components components;
+        if (norm.isEmpty() || norm.equals("past")) {
+            final int current = NumberedDates.getDayOfWeek(reference);
+            components = Components.implied(reference.minusDays((current - weekday + 7) % 7));
+        } else {
+            //Weeks start on Monday here, so Sunday is the last day of a week.
+            final int offsetFromMonday = weekday == 0 ? 6 : weekday - 1;
+            final LocalDate monday = reference.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            final LocalDate date;
+            if (norm.equals("this")) {
+                date = monday.plusDays(offsetFromMonday);
+            } else if (norm.equals("next")) {
+                date = monday.plusDays(offsetFromMonday + 7);
+            } else {
+                date = monday.minusWeeks(prefixes.size()).plusDays(offsetFromMonday);
+            }
+            components = Components.known(date);
+        }
+        components.weekday = weekday;
+        return make(i, j, components, null);
+    }
+
+    @Nullable
+    private Parsed parseMonthName(int i) {
+        int j = i;
+        if (isWord(j, "in")) j++;
+        if (isWord(j, "the")) j++;
+        if (isWord(j, "a")) j++;
+
+        final List<String> prefixes = new ArrayList<>();
+        while (j < tokens.size() && WEEKDAY_PREFIXES.contains(tokens.get(j).norm)) {
+            prefixes.add(tokens.get(j).norm);
+            j++;
+        }
+        boolean isYearInPrefix = false;
+        if (!prefixes.isEmpty() && isOneOf(j, "year", "years")) {
+            isYearInPrefix = true;
+            j++;
+        }
+
+        final Integer month = j < tokens.size() ? SpeechLexicon.MONTHS.get(tokens, j) : null;
+        if (month == null) return null;
+        j++;
+
+        if (isOneOf(j, "of", "in")) j++;
+        if (isWord(j, "the")) j++;
+        if (isWord(j, "a")) j++;
+        final List<String> suffixes = new ArrayList<>();
+        while (j < tokens.size() && WEEKDAY_PREFIXES.contains(tokens.get(j).norm)) {
+            suffixes.add(tokens.get(j).norm);
+            j++;
+        }
+        boolean isYearInSuffix = false;
+        if (!suffixes.isEmpty() && isOneOf(j, "year", "years")) {
+            isYearInSuffix = true;
+            j++;
+        }
+
+        int year = yearAt(j, true);
+        if (year > 0) j++;
+
+        if (!prefixes.isEmpty() || !suffixes.isEmpty()) {
+            final List<String> words = prefixes.isEmpty() ? suffixes : prefixes;
+            final String norm = String.join(" ", words);
+            if (prefixes.isEmpty() ? isYearInSuffix : isYearInPrefix) {
+                if (norm.equals("past") || norm.equals("last")) {
+                    year = reference.getYear() - 1;
+                } else if (norm.equals("this")) {
+                    year = reference.getYear();
+                } else if (norm.equals("next")) {
+                    year = reference.getYear() + 1;
+                }
+            } else if (norm.equals("this")) {
+                year = reference.getYear();
+            } else if (!norm.equals("next")) {
+                //"past" is the latest month that has ended, "last" counts back from it.
+                LocalDate pivot = LocalDate.of(reference.getYear(), month, 1).with(TemporalAdjusters.lastDayOfMonth());
+                if (pivot.isAfter(reference)) {
+                    pivot = pivot.minusYears(1);
+                }
+                year = pivot.getYear() - (norm.equals("past") ? 0 : words.size() - 1);
+            }
+        }
+
+        final Components components;
+        if (year > 0) {
+            components = Components.implied(LocalDate.of(year, month, 1));
+            components.knowsYear = true;
+        } else {
+            components = Components.implied(LocalDate.of(closestYear(month, 1), month, 1));
+        }
+        components.knowsMonth = true;
+        return make(i, j, components, null);
+    }
+
+    @Nullable
+    private Parsed parseMonthDay(int i) {
+        int j = i;
+        if (isWord(j, "on")) j++;
+        final Integer month = j < tokens.size() ? SpeechLexicon.MONTHS.get(tokens, j) : null;
+        if (month == null) return null;
+        j++;
+        if (isPunctuation(j, ',')) j++;
+
+        final int day = dayAt(j);
+        if (day == 0) return null;
+        j++;
+        if (isOneOf(j, "am", "pm")) return null;
+
+        int endDay = 0;
+        if ((isWord(j, "to") || isPunctuation(j, '-')) && dayAt(j + 1) > 0) {
+            endDay = dayAt(j + 1);
+            j += 2;
+        }
+
+        int year = 0;
+        {
+            int k = j;
+            if (isPunctuation(k, ',')) k++;
+            final int trailingYear = yearAt(k, false);
+            if (trailingYear > 0) {
+                year = trailingYear;
+                j = k + 1;
+            }
+        }
+
+        final boolean knowsYear = year > 0;
+        if (!knowsYear) {
+            year = closestYear(month, day);
+        }
+
+        final LocalDate firstDay = LocalDate.of(year, month, 1);
+        if (day > firstDay.lengthOfMonth() || endDay > firstDay.lengthOfMonth()) return null;
+
+        final Components start = Components.known(firstDay.withDayOfMonth(day));
+        start.knowsYear = knowsYear;
+
+        Components end = null;
+        if (endDay > 0) {
+            end = Components.known(firstDay.withDayOfMonth(endDay));
+            end.knowsYear = knowsYear;
+        }
+        return make(i, j, start, end);
+    }
+
+    @Nullable
+    private Parsed parseHoliday(int i) {
+        int j = i;
+        if (isOneOf(j, "a", "an", "the", "recent", "last")) j++;
+        int year = yearAt(j, false);
+        if (year > 0) j++;
+
+        final TokenTrie.Match<Holiday> match = j < tokens.size() ? SpeechLexicon.HOLIDAYS.match(tokens, j) : null;
+        if (match == null) return null;
+        j += match.length;
+
+        if (year == 0) {
+            int k = j;
+            if (isOneOf(k, "of", "in")) k++;
+            final int trailingYear = yearAt(k, false);
+            if (trailingYear > 0) {
+                year = trailingYear;
+                j = k + 1;
+            }
+        }
+
+        final LocalDate date = year > 0 ? match.value.dateOf(year) : match.value.latestUntil(reference);
+        return make(i, j, Components.known(date), null);
+    }
+
+    @Nullable
+    private Parsed parseCasualDay(int i) {
+        if (isWord(i, "last") && isWord(i + 1, "night")) {
+            return make(i, i + 2, Components.known(reference.minusDays(1)), null);
+        } else if (isOneOf(i, "today", "tonight", "now")) {
+            return make(i, i + 1, Components.known(reference), null);
+        } else if (isWord(i, "yesterday")) {
+            return make(i, i + 1, Components.known(reference.minusDays(1)), null);
+        } else if (isWord(i, "tomorrow")) {
+            return make(i, i + 1, Components.known(reference.plusDays(1)), null);
+        } else {
+            return null;
+        }
+    }
+
+    //Refiners ====================================================================================
+
+    //chrono-replacers/mergedates.ts
+    private List<Parsed> mergeRanges(List<Parsed> results) {
+        if (results.size() < 2) {
+            return results;
+        }
+
+        final List<Parsed> merged = new ArrayList<>(results.size());
+        int k = 0;
+        while (k < results.size()) {
+            final Parsed previous = results.get(k);
+            final Parsed current = k + 1 < results.size() ? results.get(k + 1) : null;
+            if (current != null && previous.end == null && current.end == null) {
+                final String between = text.substring(previous.endIndex, current.index);
+                boolean shouldMerge = RANGE_CONJUNCTION.matcher(between).matches();
+                if (!shouldMerge && DICTATION_GAP.matcher(between).matches()
+                        && ENDS_WITH_TWO.matcher(text.substring(0, previous.endIndex)).find()) {
+                    shouldMerge = repairMisheardTwo(previous.start);
+                }
+
+                if (shouldMerge) {
+                    final String previousText = textOf(previous);
+                    final String currentText = textOf(current);
+                    final Parsed range = mergeResult(previous, current);
+                    range.isRangeCertain = true;
+                    if (TO_CONJUNCTION.matcher(between).find()) {
+                        range.conjunctionTo = true;
+                        range.beforeConjunction = previousText;
+                        range.afterConjunction = currentText;
+                    }
+                    merged.add(range);
+                    k += 2;
+                    continue;
+                }
+            }
+            merged.add(previous);
+            k++;
+        }
+        return merged;
+    }
+
+    //"from 2012 march" is a misheard "from 2010 to march": the trailing 2 is the conjunction.
+    private boolean repairMisheardTwo(Components components) {
+        final boolean isYearSuspicious = components.knowsYear && components.year % 10 == 2 && components.year > 20;
+        final boolean isDaySuspicious = components.knowsDay && components.day % 10 == 2 && components.day > 20;
+        if (isYearSuspicious && isDaySuspicious) {
+            if (components.year > reference.getYear()) {
+                components.year -= 2;
+            } else {
+                components.day -= 2;
+            }
+        } else if (isYearSuspicious) {
+            components.year -= 2;
+        } else if (isDaySuspicious) {
+            components.day -= 2;
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    //mergeResult() in chrono-utils.ts
+    private Parsed mergeResult(Parsed from, Parsed to) {
+        Components fromComponents = from.start;
+        Components toComponents = to.start;
+
+        if (!fromComponents.isOnlyWeekday() && !toComponents.isOnlyWeekday()) {
+            fromComponents.learnFrom(toComponents);
+            toComponents.learnFrom(fromComponents);
+        }
+
+        if (fromComponents.date().isAfter(toComponents.date())) {
+            if (fromComponents.isOnlyWeekday() && fromComponents.date().minusDays(7).isBefore(toComponents.date())) {
+                fromComponents.imply(fromComponents.date().minusDays(7));
+            } else if (toComponents.isOnlyWeekday() && toComponents.date().plusDays(7).isAfter(fromComponents.date())) {
+                toComponents.imply(toComponents.date().plusDays(7));
+            } else if (!toComponents.knowsYear) {
+                LocalDate date = toComponents.date();
+                while (fromComponents.date().isAfter(date)) {
+                    date = date.plusYears(1);
+                }
+                toComponents.imply(date);
+            } else {
+                final Components swap = fromComponents;
+                fromComponents = toComponents;
+                toComponents = swap;
+            }
+        }
+
+        from.start = fromComponents;
+        from.end = toComponents;
+        from.isRangeCertain |= to.isRangeCertain;
+        from.index = Math.min(from.index, to.index);
+        from.endIndex = Math.max(from.endIndex, to.endIndex);
+        from.startToken = Math.min(from.startToken, to.startToken);
+        from.endToken = Math.max(from.endToken, to.endToken);
+        return from;
+    }
+
+    private void refineAround(List<Parsed> results) {
+        if (results.size() != 1) {
+            return;
+        }
+
+        final Parsed parsed = results.get(0);
+        if (parsed.end == null && parsed.start.knowsDay && isOneOf(parsed.startToken - 1, "around", "near")) {
+            final LocalDate date = parsed.start.date();
+            parsed.start = Components.known(date.minusDays(3));
+            parsed.end = Components.known(date.plusDays(3));
+            extendToToken(parsed, parsed.startToken - 1);
+        }
+    }
+
+    private void refineDayBeforeAfter(List<Parsed> results) {
+        for (Parsed parsed : results) {
+            final int t = parsed.startToken;
+            if (parsed.end == null && parsed.start.knowsDay && isOneOf(t - 1, "before", "after")
+                    && isWord(t - 2, "day") && isOneOf(t - 3, "a", "the")) {
+                final LocalDate date = parsed.start.date();
+                parsed.start = Components.known(isWord(t - 1, "before") ? date.minusDays(1) : date.plusDays(1));
+                extendToToken(parsed, t - 3);
+            }
+        }
+    }
+
+    private void refineWeekOf(List<Parsed> results) {
+        for (Parsed parsed : results) {
+            final int t = parsed.startToken;
+            if (parsed.end == null && parsed.start.knowsDay && isWord(t - 1, "of") && isWord(t - 2, "week")) {
+                final LocalDate monday = parsed.start.date().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                parsed.start = Components.known(monday);
+                parsed.end = Components.known(monday.plusDays(6));
+                extendToToken(parsed, isOneOf(t - 3, "the", "a") ? t - 3 : t - 2);
+            }
+        }
+    }
+
+    private void refineSince(List<Parsed> results) {
+        for (Parsed parsed : results) {
+            if (isWord(parsed.startToken - 1, "since")) {
+                parsed.end = Components.known(reference);
+                parsed.isRangeCertain = true;
+                extendToToken(parsed, parsed.startToken - 1);
+            }
+        }
+    }
+
+    private void refinePreposition(List<Parsed> results) {
+        for (Parsed parsed : results) {
+            final int t = parsed.startToken;
+            if (isWord(t - 1, "from") || (isWord(t - 1, "with") && isWord(t - 2, "start"))) {
+                parsed.preposition = PREPOSITION_FROM;
+            } else if (isWord(t - 1, "to")) {
+                parsed.preposition = PREPOSITION_TO;
+            }
+        }
+    }
+
+    private List<Parsed> refineBetween(List<Parsed> results) {
+        if (results.size() < 2) {
+            return results;
+        }
+
+        final Parsed first = results.get(0);
+        final Parsed second = results.get(1);
+        if (first.end == null && second.end == null && isWord(first.startToken - 1, "between")
+                && AND_CONJUNCTION.matcher(text.substring(first.endIndex, second.index)).matches()) {
+            final Parsed range = mergeResult(first, second);
+            range.isRangeCertain = true;
+            extendToToken(range, range.startToken - 1);
+
+            final List<Parsed> refined = new ArrayList<>(results.size() - 1);
+            refined.add(range);
+            refined.addAll(results.subList(2, results.size()));
+            return refined;
+        }
+        return results;
+    }
+
+    //"January 2018 and 2019" means January of both years.
+    private void refineOptimizedConjunction(List<Parsed> results) {
+        if (results.size() < 2) {
+            return;
+        }
+
+        final Parsed first = results.get(0);
+        final Parsed second = results.get(1);
+        if (first.end == null && second.end == null
+                && AND_CONJUNCTION.matcher(text.substring(first.endIndex, second.index)).matches()
+                && first.start.knowsYear && second.start.knowsYear
+                && first.start.knownCount() > 1 && second.start.knownCount() == 1) {
+            final Components components = first.start.copy();
+            components.year = second.start.year;
+            second.start = components;
+        }
+    }
+
+    //Helpers =====================================================================================
+
+    private Parsed make(int startToken, int endToken, Components start, @Nullable Components end) {
+        final Parsed parsed = new Parsed();
+        parsed.startToken = startToken;
+        parsed.endToken = endToken;
+        parsed.index = tokens.get(startToken).start;
+        parsed.endIndex = tokens.get(endToken - 1).end;
+        parsed.start = start;
+        parsed.end = end;
+        return parsed;
+    }
+
+    private void extendToToken(Parsed parsed, int startToken) {
+        parsed.startToken = startToken;
+        parsed.index = tokens.get(startToken).start;
+    }
+
+    private boolean isWord(int i, String word) {
+        return i >= 0 && i < tokens.size() && tokens.get(i).norm.equals(word) && tokens.get(i).kind != SpeechTokenizer.KIND_PUNCTUATION;
+    }
+
+    private boolean isOneOf(int i, String... words) {
+        for (String word : words) {
+            if (isWord(i, word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isPunctuation(int i, char c) {
+        return i >= 0 && i < tokens.size() && tokens.get(i).isPunctuation(c);
+    }
+
+    //A four-digit year from 1000 to 2999. Dictation sometimes renders years like times, as in "20:19".
+    private int yearAt(int i, boolean allowColon) {
+        if (i < 0 || i >= tokens.size()) {
+            return 0;
+        }
+        final Token token = tokens.get(i);
+        if (token.kind != SpeechTokenizer.KIND_NUMBER || token.isOrdinal || (token.hasColon && !allowColon)) {
+            return 0;
+        }
+        final int digitCount = token.hasColon ? token.norm.length() - 1 : token.digitCount;
+        if (digitCount != 4 || token.number < 1000 || token.number >= 3000) {
+            return 0;
+        }
+        return token.number;
+    }
+
+    private int dayAt(int i) {
+        if (i < 0 || i >= tokens.size()) {
+            return 0;
+        }
+        final Token token = tokens.get(i);
+        if (token.kind != SpeechTokenizer.KIND_NUMBER || token.hasColon || token.digitCount > 2 || token.number < 1 || token.number > 31) {
+            return 0;
+        }
+        return token.number;
+    }
+
+    private int countAt(int i) {
+        if (i < 0 || i >= tokens.size()) {
+            return 0;
+        }
+        final Token token = tokens.get(i);
+        if (token.kind == SpeechTokenizer.KIND_NUMBER) {
+            return token.isOrdinal || token.hasColon ? 0 : token.number;
+        }
+        final Integer number = SpeechLexicon.NUMBER_WORDS.get(token.norm);
+        return number != null ? number : 0;
+    }
+
+    @Nullable
+    private String unitAt(int i) {
+        if (isOneOf(i, "day", "days")) return "day";
+        if (isOneOf(i, "week", "weeks")) return "week";
+        if (isOneOf(i, "month", "months")) return "month";
+        if (isOneOf(i, "year", "years")) return "year";
+        return null;
+    }
+
+    private int seasonAt(int i) {
+        if (i < 0 || i >= tokens.size()) {
+            return -1;
+        }
+        final Integer startMonth = SpeechLexicon.SEASONS.get(tokens, i);
+        return startMonth != null ? startMonth : -1;
+    }
+
+    //The year in which the month and day last occurred on or before the reference date.
+    private int closestYear(int month, int day) {
+        int year = reference.getYear();
+        if (day > Month.of(month).maxLength()) {
+            return year;
+        }
+        while (true) {
+            final LocalDate firstDay = LocalDate.of(year, month, 1);
+            if (day <= firstDay.lengthOfMonth() && !firstDay.withDayOfMonth(day).isAfter(reference)) {
+                return year;
+            }
+            year--;
+        }
+    }
+}
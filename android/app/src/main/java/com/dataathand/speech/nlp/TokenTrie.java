@@ -0,0 +1,68 @@
+package com.dataathand.speech.nlp;
+
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Maps phrases of one or more words to values and finds the longest phrase that starts at a token.
+final class TokenTrie<V> {
+
+    static final class Match<V> {
+        final V value;
+        final int length;
+
+        Match(V value, int length) {
+            this.value = value;
+            this.length = length;
+        }
+    }
+
+    private static final class Node<V> {
+        final Map<String, Node<V>> children = new HashMap<>(4);
+        V value = null;
+    }
+
+    private final Node<V> root = new Node<>();
+
+    //The phrase is split on single spaces and must be written the way SpeechTokenizer normalizes words.
+    void put(String phrase, V value) {
+        Node<V> node = root;
+        for (String word : phrase.split(" ")) {
+            Node<V> child = node.children.get(word);
+            if (child == null) {
+                child = new Node<>();
+                node.children.put(word, child);
+            }
+            node = child;
+        }
+        node.value = value;
+    }
+
+    @Nullable
+    Match<V> match(List<SpeechTokenizer.Token> tokens, int from) {
+        Node<V> node = root;
+        Match<V> longest = null;
+        for (int i = from; i < tokens.size(); i++) {
+            final SpeechTokenizer.Token token = tokens.get(i);
+            if (token.kind == SpeechTokenizer.KIND_PUNCTUATION) {
+                break;
+            }
+            node = node.children.get(token.norm);
+            if (node == null) {
+                break;
+            }
+            if (node.value != null) {
+                longest = new Match<>(node.value, i - from + 1);
+            }
+        }
+        return longest;
+    }
+
+    @Nullable
+    V get(List<SpeechTokenizer.Token> tokens, int index) {
+        final Match<V> match = match(tokens, index);
+        return match != null && match.length == 1 ? match.value : null;
+    }
+}
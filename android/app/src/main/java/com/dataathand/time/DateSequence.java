@@ -0,0 +1,152 @@
+package com.dataathand.time;
+
+import java.time.LocalDate;
+
+/**
+ * A contiguous run of days kept as numbered dates in an int array.
+ * Since every day is present, the index of a date is its epoch day minus the first one, so lookups take O(1).
+ * The run grows on either side with doubling so that scrolling over years does not rebuild it on every step.
+ */
+public class DateSequence {
+
+    public static final int CYCLE_DAY_OF_WEEK = 0;
+    public static final int CYCLE_MONTH = 1;
+    public static final int CYCLE_YEAR = 2;
+
+    private int[] dates = new int[0];
+
+    //dates[offset] is the first day, which falls on firstEpochDay.
+    private int offset = 0;
+    private int length = 0;
+    private long firstEpochDay = 0;
+
+    public int size() {
+        return length;
+    }
+
+    public boolean contains(int numberedDate) {
+        final long index = NumberedDates.toEpochDay(numberedDate) - firstEpochDay;
+        return length > 0 && index >= 0 && index < length;
+    }
+
+    //The position of the date relative to the first day. It is out of [0, size()) if the date is not covered.
+    public long indexOf(int numberedDate) {
+        return NumberedDates.toEpochDay(numberedDate) - firstEpochDay;
+    }
+
+    public int get(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of " + length);
+        }
+        return dates[offset + index];
+    }
+
+    /**
+     * Extends the sequence so that it covers both dates, filling any gap in between.
+     */
+    public void ensure(int startDate, int endDate) {
+        final long startEpochDay = NumberedDates.toEpochDay(startDate);
+        final long endEpochDay = NumberedDates.toEpochDay(endDate);
+        if (startEpochDay > endEpochDay) {
+            throw new IllegalArgumentException("The start date " + startDate + " is after the end date " + endDate);
+        }
+
+        if (length == 0) {
+            dates = new int[(int) (endEpochDay - startEpochDay + 1)];
+            offset = 0;
+            firstEpochDay = startEpochDay;
+            fill(0, startEpochDay, dates.length);
+            length = dates.length;
+            return;
+        }
+
+        final long lastEpochDay = firstEpochDay + length - 1;
+        final int prepend = (int) Math.max(0, firstEpochDay - startEpochDay);
+        final int append = (int) Math.max(0, endEpochDay - lastEpochDay);
+        if (prepend == 0 && append == 0) {
+            return;
+        }
+
+        if (prepend > offset || offset + length + append > dates.length) {
+            //Leave room on the side that is growing so that further scrolling does not reallocate right away.
+            final int newLength = length + prepend + append;
+            final int newCapacity = Math.max(newLength, Math.min(length * 2, length + 366 * 4) + prepend + append);
+            final int newOffset = prepend > 0 ? newCapacity - newLength : 0;
+            final int[] grown = new int[newCapacity];
+            System.arraycopy(dates, offset, grown, newOffset + prepend, length);
+            dates = grown;
+            offset = newOffset;
+        } else {
+            offset -= prepend;
+        }
+
+        if (prepend > 0) {
+            fill(offset, startEpochDay, prepend);
+            firstEpochDay = startEpochDay;
+        }
+        length += prepend;
+        if (append > 0) {
+            fill(offset + length, lastEpochDay + 1, append);
+            length += append;
+        }
+    }
+
+    /**
+     * @return the dates from startDate to endDate inclusive. The sequence must cover both.
+     */
+    public int[] slice(int startDate, int endDate) {
+        final int start = checkedIndexOf(startDate);
+        final int end = checkedIndexOf(endDate);
+        final int[] result = new int[end - start + 1];
+        System.arraycopy(dates, offset + start, result, 0, result.length);
+        return result;
+    }
+
+    /**
+     * @return for each date from startDate to endDate inclusive, the day of week (0 is Sunday), the month (1-12), or the year.
+     */
+    public int[] cycleKeys(int startDate, int endDate, int cycle) {
+        final LocalDate start = NumberedDates.toLocalDate(startDate);
+        final int count = checkedIndexOf(endDate) - checkedIndexOf(startDate) + 1;
+        final int[] keys = new int[count];
+        switch (cycle) {
+            case CYCLE_DAY_OF_WEEK: {
+                //Days of week simply rotate.
+                final int first = NumberedDates.getDayOfWeek(start);
+                for (int i = 0; i < count; i++) {
+                    keys[i] = (first + i) % 7;
+                }
+                break;
+            }
+            case CYCLE_MONTH:
+            case CYCLE_YEAR: {
+                final int from = checkedIndexOf(startDate);
+                for (int i = 0; i < count; i++) {
+                    final int date = dates[offset + from + i];
+                    keys[i] = cycle == CYCLE_MONTH ? NumberedDates.getMonth(date) : NumberedDates.getYear(date);
+                }
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unsupported cycle: " + cycle);
+        }
+        return keys;
+    }
+
+    private int checkedIndexOf(int numberedDate) {
+        final long index = indexOf(numberedDate);
+        if (length == 0 || index < 0 || index >= length) {
+            throw new IllegalArgumentException(numberedDate + " is not in the sequence.");
+        }
+        return (int) index;
+    }
+
+    private void fill(int position, long fromEpochDay, int count) {
+        //Walk with the calendar fields instead of converting every epoch day.
+        LocalDate date = LocalDate.ofEpochDay(fromEpochDay);
+        for (int i = 0; i < count; i++) {
+            dates[position + i] = NumberedDates.fromLocalDate(date);
+            date = date.plusDays(1);
+        }
+    }
+}
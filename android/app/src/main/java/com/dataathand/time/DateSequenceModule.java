@@ -0,0 +1,62 @@
+package com.dataathand.time;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+//Serves day sequences for the chart scales. The methods are synchronous because the scales are built during rendering.
+public class DateSequenceModule extends ReactContextBaseJavaModule {
+
+    private final DateSequence sequence = new DateSequence();
+
+    DateSequenceModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return "DateSequence";
+    }
+
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public WritableArray getSequence(int startDate, int endDate) {
+        return toArray(prepareAndSlice(startDate, endDate));
+    }
+
+    /**
+     * Returns {numberedDate, dayOfWeek, month, year}, each an array with one entry per day of the range.
+     */
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public WritableMap getSequenceWithCycles(int startDate, int endDate) {
+        final WritableMap result = Arguments.createMap();
+        synchronized (sequence) {
+            result.putArray("numberedDate", toArray(prepareAndSlice(startDate, endDate)));
+            result.putArray("dayOfWeek", toArray(sequence.cycleKeys(startDate, endDate, DateSequence.CYCLE_DAY_OF_WEEK)));
+            result.putArray("month", toArray(sequence.cycleKeys(startDate, endDate, DateSequence.CYCLE_MONTH)));
+            result.putArray("year", toArray(sequence.cycleKeys(startDate, endDate, DateSequence.CYCLE_YEAR)));
+        }
+        return result;
+    }
+
+    private int[] prepareAndSlice(int startDate, int endDate) {
+        synchronized (sequence) {
+            //Cache whole years, as DateSequenceCache does.
+            sequence.ensure(NumberedDates.getYear(startDate) * 10000 + 101, NumberedDates.getYear(endDate) * 10000 + 1231);
+            return sequence.slice(startDate, endDate);
+        }
+    }
+
+    private static WritableArray toArray(int[] values) {
+        final WritableArray array = Arguments.createArray();
+        for (int value : values) {
+            array.pushInt(value);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,44 @@
+package com.dataathand.time;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+
+//Conversions for numbered dates, the yyyyMMdd integers used throughout the JavaScript side.
+public final class NumberedDates {
+
+    private NumberedDates() {
+    }
+
+    public static LocalDate toLocalDate(int numberedDate) {
+        return LocalDate.of(numberedDate / 10000, (numberedDate / 100) % 100, numberedDate % 100);
+    }
+
+    public static int fromLocalDate(LocalDate date) {
+        return date.getYear() * 10000 + date.getMonthValue() * 100 + date.getDayOfMonth();
+    }
+
+    public static long toEpochDay(int numberedDate) {
+        return toLocalDate(numberedDate).toEpochDay();
+    }
+
+    public static int fromEpochDay(long epochDay) {
+        return fromLocalDate(LocalDate.ofEpochDay(epochDay));
+    }
+
+    public static int getYear(int numberedDate) {
+        return numberedDate / 10000;
+    }
+
+    public static int getMonth(int numberedDate) {
+        return (numberedDate / 100) % 100;
+    }
+
+    //0 is Sunday, as Date.getDay() in JavaScript.
+    public static int getDayOfWeek(LocalDate date) {
+        return date.getDayOfWeek() == DayOfWeek.SUNDAY ? 0 : date.getDayOfWeek().getValue();
+    }
+
+    public static int getDayOfWeek(int numberedDate) {
+        return getDayOfWeek(toLocalDate(numberedDate));
+    }
+}
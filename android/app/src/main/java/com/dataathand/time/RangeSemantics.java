@@ -0,0 +1,60 @@
+package com.dataathand.time;
+
+import androidx.annotation.Nullable;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+
+//Native counterpart of DateTimeHelper.rangeSemantic(): recognizes ranges that are exactly one calendar unit
+//and tells how many of those units the reference date lies after the range.
+public final class RangeSemantics {
+
+    public static final String SUNDAY_WEEK = "sundayWeek";
+    public static final String MONDAY_WEEK = "mondayWeek";
+    public static final String MONTH = "month";
+    public static final String YEAR = "year";
+
+    public static final class Result {
+        public final String semantic;
+        public final long differenceToRef;
+
+        Result(String semantic, long differenceToRef) {
+            this.semantic = semantic;
+            this.differenceToRef = differenceToRef;
+        }
+    }
+
+    private RangeSemantics() {
+    }
+
+    /**
+     * @return null if the range is not a whole week, month, or year.
+     */
+    @Nullable
+    public static Result rangeSemantic(int startDate, int endDate, LocalDate reference) {
+        final LocalDate start = NumberedDates.toLocalDate(startDate);
+        final LocalDate end = NumberedDates.toLocalDate(endDate);
+
+        if (start.getDayOfYear() == 1 && end.equals(start.with(TemporalAdjusters.lastDayOfYear()))) {
+            return new Result(YEAR, reference.getYear() - start.getYear());
+        }
+
+        if (start.getDayOfMonth() == 1 && end.equals(start.with(TemporalAdjusters.lastDayOfMonth()))) {
+            return new Result(MONTH, ChronoUnit.MONTHS.between(start, reference.withDayOfMonth(1)));
+        }
+
+        if (ChronoUnit.DAYS.between(start, end) == 6) {
+            if (start.getDayOfWeek() == DayOfWeek.SUNDAY) {
+                return new Result(SUNDAY_WEEK, ChronoUnit.WEEKS.between(start,
+                        reference.with(TemporalAdjusters.previousOrSame(DayOfWeek.SUNDAY))));
+            } else if (start.getDayOfWeek() == DayOfWeek.MONDAY) {
+                return new Result(MONDAY_WEEK, ChronoUnit.WEEKS.between(start,
+                        reference.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))));
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,30 @@
+package com.dataathand.utils;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class NamedThreadFactory implements ThreadFactory {
+
+    private final String namePrefix;
+    private final int priority;
+    private final AtomicInteger threadCount = new AtomicInteger(0);
+
+    public NamedThreadFactory(String namePrefix) {
+        this(namePrefix, Thread.NORM_PRIORITY);
+    }
+
+    public NamedThreadFactory(String namePrefix, int priority) {
+        this.namePrefix = namePrefix;
+        this.priority = priority;
+    }
+
+    @Override
+    public Thread newThread(@NonNull Runnable runnable) {
+        final Thread thread = new Thread(runnable, namePrefix + "-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        thread.setPriority(priority);
+        return thread;
+    }
+}
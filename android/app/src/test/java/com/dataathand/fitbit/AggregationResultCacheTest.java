@@ -0,0 +1,95 @@
+package com.dataathand.fitbit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class AggregationResultCacheTest {
+
+    private static AggregationResultCache.Key key(String tableName, int startDate, int endDate) {
+        return new AggregationResultCache.Key("values", tableName, "value", startDate, endDate, "year", "month", 3);
+    }
+
+    private static AggregationResultCache.Result result(int rowCount) {
+        final double[][] columns = new double[5][rowCount];
+        return new AggregationResultCache.Result(new String[]{"min", "max", "sum", "avg", "n"}, columns, rowCount);
+    }
+
+    @Test
+    public void servesRepeatedLookupsFromMemory() {
+        final AggregationResultCache cache = new AggregationResultCache(1024 * 1024);
+        assertNull(cache.get(key("StepCount", 20200101, 20200131)));
+
+        final AggregationResultCache.Result result = result(31);
+        cache.put(key("StepCount", 20200101, 20200131), result, cache.getGeneration());
+        assertSame(result, cache.get(key("StepCount", 20200101, 20200131)));
+        assertNull(cache.get(new AggregationResultCache.Key("values", "StepCount", "value", 20200101, 20200131, "year", "month", 4)));
+
+        final AggregationResultCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.hits);
+        assertEquals(2, stats.misses);
+        assertEquals(1, stats.entries);
+        assertEquals(result.estimateBytes(), stats.bytes);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedBeyondTheBudget() {
+        final long entryBytes = result(100).estimateBytes();
+        final AggregationResultCache cache = new AggregationResultCache(entryBytes * 3);
+        cache.put(key("StepCount", 1, 1), result(100), cache.getGeneration());
+        cache.put(key("StepCount", 2, 2), result(100), cache.getGeneration());
+        cache.put(key("StepCount", 3, 3), result(100), cache.getGeneration());
+        assertNotNull(cache.get(key("StepCount", 1, 1)));
+
+        cache.put(key("StepCount", 4, 4), result(100), cache.getGeneration());
+        assertNull(cache.get(key("StepCount", 2, 2)));
+        assertNotNull(cache.get(key("StepCount", 1, 1)));
+        assertNotNull(cache.get(key("StepCount", 3, 3)));
+        assertNotNull(cache.get(key("StepCount", 4, 4)));
+        assertEquals(1, cache.getStats().evictions);
+        assertEquals(entryBytes * 3, cache.getStats().bytes);
+
+        //Too large to be cached at all.
+        cache.put(key("StepCount", 5, 5), result(1000), cache.getGeneration());
+        assertNull(cache.get(key("StepCount", 5, 5)));
+        assertEquals(3, cache.getStats().entries);
+    }
+
+    @Test
+    public void invalidatesOverlappingRangesOfTheWrittenTable() {
+        final AggregationResultCache cache = new AggregationResultCache(1024 * 1024);
+        cache.put(key("StepCount", 20200101, 20200131), result(1), cache.getGeneration());
+        cache.put(key("StepCount", 20200201, 20200229), result(1), cache.getGeneration());
+        cache.put(key("StepCount", 20200131, 20200201), result(1), cache.getGeneration());
+        cache.put(key("RestingHeartRate", 20200101, 20200131), result(1), cache.getGeneration());
+
+        cache.invalidate("StepCount", 20200125, 20200131);
+        assertNull(cache.get(key("StepCount", 20200101, 20200131)));
+        assertNull(cache.get(key("StepCount", 20200131, 20200201)));
+        assertNotNull(cache.get(key("StepCount", 20200201, 20200229)));
+        assertNotNull(cache.get(key("RestingHeartRate", 20200101, 20200131)));
+        assertEquals(2, cache.getStats().invalidations);
+    }
+
+    @Test
+    public void dropsResultsQueriedBeforeAWrite() {
+        final AggregationResultCache cache = new AggregationResultCache(1024 * 1024);
+        final long generation = cache.getGeneration();
+        cache.invalidate("StepCount", 20200101, 20200101);
+
+        cache.put(key("StepCount", 20200101, 20200131), result(1), generation);
+        assertNull(cache.get(key("StepCount", 20200101, 20200131)));
+
+        cache.put(key("RestingHeartRate", 20200101, 20200131), result(1), generation);
+        assertNotNull(cache.get(key("RestingHeartRate", 20200101, 20200131)));
+
+        final long beforeClear = cache.getGeneration();
+        cache.clear();
+        assertEquals(0, cache.getStats().entries);
+        cache.put(key("RestingHeartRate", 20200101, 20200131), result(1), beforeClear);
+        assertNull(cache.get(key("RestingHeartRate", 20200101, 20200131)));
+    }
+}
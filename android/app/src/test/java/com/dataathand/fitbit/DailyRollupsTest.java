@@ -0,0 +1,135 @@
+package com.dataathand.fitbit;
+
+import com.dataathand.time.NumberedDates;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DailyRollupsTest {
+
+    private static final String[][] GROUPINGS = {
+            {null, null},
+            {"year", null},
+            {"dayOfWeek", null},
+            {"month", null},
+            {"season", null},
+            {"year", "dayOfWeek"},
+            {"year", "month"},
+            {"season", "dayOfWeek"},
+    };
+
+    @Test
+    public void planUsesTheLargestPeriodsTheKeysAllow() {
+        assertEquals("[day 20180315-20180317, week 20180318-20180325, month 20180401-20181201, year 20190101-20200101, " +
+                        "month 20210101-20210501, day 20210601-20210605, week 20210606-20210613, day 20210620-20210620]",
+                DailyRollups.plan(20180315, 20210620, null, null).toString());
+        assertEquals("[day 20180315-20180331, month 20180401-20181201, year 20190101-20200101, month 20210101-20210501, day 20210601-20210620]",
+                DailyRollups.plan(20180315, 20210620, "year", "dayOfWeek").toString());
+        assertEquals("[day 20180315-20180317, week 20180318-20180325, month 20180401-20210501, day 20210601-20210605, " +
+                        "week 20210606-20210613, day 20210620-20210620]",
+                DailyRollups.plan(20180315, 20210620, "season", null).toString());
+        assertTrue(DailyRollups.plan(20200102, 20200101, null, null).isEmpty());
+    }
+
+    @Test
+    public void cellKeysRoundTrip() {
+        for (int level : DailyRollups.LEVELS) {
+            for (int dayOfWeek = DailyRollups.ALL_DAYS; dayOfWeek < 7; dayOfWeek++) {
+                final long key = DailyRollups.makeCellKey(level, 20201227, dayOfWeek);
+                assertEquals(level, DailyRollups.getLevelOfKey(key));
+                assertEquals(20201227, DailyRollups.getPeriodStartOfKey(key));
+                assertEquals(dayOfWeek, DailyRollups.getDayOfWeekOfKey(key));
+            }
+        }
+        assertEquals(20201227, DailyRollups.getPeriodStart(DailyRollups.LEVEL_WEEK, 20210102));
+        assertEquals(20210102, DailyRollups.getPeriodEnd(DailyRollups.LEVEL_WEEK, 20201227));
+        assertEquals(20200229, DailyRollups.getPeriodEnd(DailyRollups.LEVEL_MONTH, 20200201));
+    }
+
+    //Aggregating the planned cells has to give what aggregating every day gives, for any range and grouping.
+    @Test
+    public void plannedCellsMatchEveryDay() {
+        final Random random = new Random(11);
+        final Map<Integer, Double> days = new HashMap<>();
+        final Map<Long, DailyRollups.Cell> cells = new HashMap<>();
+        for (LocalDate date = LocalDate.of(2014, 11, 20); date.isBefore(LocalDate.of(2021, 2, 10)); date = date.plusDays(1)) {
+            if (random.nextInt(10) > 0) {
+                final int numberedDate = NumberedDates.fromLocalDate(date);
+                final double value = random.nextInt(20000);
+                days.put(numberedDate, value);
+                DailyRollups.addDay(cells, numberedDate, value);
+            }
+        }
+
+        for (int i = 0; i < 300; i++) {
+            final LocalDate start = LocalDate.of(2014, 10, 1).plusDays(random.nextInt(2400));
+            final int startDate = NumberedDates.fromLocalDate(start);
+            final int endDate = NumberedDates.fromLocalDate(start.plusDays(random.nextInt(2000)));
+            for (String[] grouping : GROUPINGS) {
+                final int filterKey = "month".equals(grouping[1]) ? 1 + random.nextInt(12) : random.nextInt(7);
+                final String message = startDate + "-" + endDate + " by " + grouping[0] + " where " + grouping[1] + "=" + filterKey;
+
+                final Map<Integer, DailyRollups.Cell> expected = new TreeMap<>();
+                for (int date = startDate; date <= endDate; date = NumberedDates.fromLocalDate(NumberedDates.toLocalDate(date).plusDays(1))) {
+                    final Double value = days.get(date);
+                    if (value != null) {
+                        group(expected, date, NumberedDates.getDayOfWeek(date), grouping, filterKey).add(value);
+                    }
+                }
+
+                final Map<Integer, DailyRollups.Cell> actual = new TreeMap<>();
+                for (DailyRollups.Segment segment : DailyRollups.plan(startDate, endDate, grouping[0], grouping[1])) {
+                    if (segment.level == null) {
+                        for (int date = segment.startDate; date <= segment.endDate; date = NumberedDates.fromLocalDate(NumberedDates.toLocalDate(date).plusDays(1))) {
+                            final Double value = days.get(date);
+                            if (value != null) {
+                                group(actual, date, NumberedDates.getDayOfWeek(date), grouping, filterKey).add(value);
+                            }
+                        }
+                    } else {
+                        for (Map.Entry<Long, DailyRollups.Cell> cell : cells.entrySet()) {
+                            final int periodStart = DailyRollups.getPeriodStartOfKey(cell.getKey());
+                            if (DailyRollups.getLevelOfKey(cell.getKey()) == segment.level
+                                    && periodStart >= segment.startDate && periodStart <= segment.endDate) {
+                                group(actual, periodStart, DailyRollups.getDayOfWeekOfKey(cell.getKey()), grouping, filterKey).add(cell.getValue());
+                            }
+                        }
+                    }
+                }
+
+                actual.values().removeIf(cell -> cell.n == 0);
+                expected.values().removeIf(cell -> cell.n == 0);
+                assertEquals(message, expected.keySet(), actual.keySet());
+                for (Map.Entry<Integer, DailyRollups.Cell> entry : expected.entrySet()) {
+                    final DailyRollups.Cell cell = actual.get(entry.getKey());
+                    assertEquals(message, entry.getValue().n, cell.n);
+                    assertEquals(message, entry.getValue().sum, cell.sum, 0);
+                    assertEquals(message, entry.getValue().min, cell.min, 0);
+                    assertEquals(message, entry.getValue().max, cell.max, 0);
+                }
+            }
+        }
+    }
+
+    //Cells the filter leaves out are added to a cell that is thrown away.
+    private static DailyRollups.Cell group(Map<Integer, DailyRollups.Cell> groups, int periodStart, int dayOfWeek, String[] grouping, int filterKey) {
+        if (grouping[1] != null && DailyRollups.getTimeKey(grouping[1], periodStart, dayOfWeek) != filterKey) {
+            return new DailyRollups.Cell();
+        }
+        final int key = grouping[0] != null ? DailyRollups.getTimeKey(grouping[0], periodStart, dayOfWeek) : 0;
+        DailyRollups.Cell cell = groups.get(key);
+        if (cell == null) {
+            cell = new DailyRollups.Cell();
+            groups.put(key, cell);
+        }
+        return cell;
+    }
+}
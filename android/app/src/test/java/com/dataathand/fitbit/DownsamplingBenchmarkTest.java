@@ -0,0 +1,184 @@
+package com.dataathand.fitbit;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+//Compares what a chart receives from the full-resolution path, every stored point of the range, with the downsampled one.
+//Both decode the stored blobs as FitbitIntradayStorageModule and FitbitDownsamplingModule do. The bridge is stood in for
+//by writing the points out as JSON, which is what the payload of a resolved promise becomes.
+//The unit suite checks the sizes only. With -Pbenchmark, the paths are also timed and reported.
+public class DownsamplingBenchmarkTest {
+
+    private static final int WARM_UP_ROUNDS = 3;
+    private static final int ROUNDS = 10;
+    private static final int PIXEL_WIDTH = 320;
+    private static final int SECONDS_PER_DAY = 24 * 3600;
+
+    //Per-minute heart rate blobs of consecutive days, with a workout each afternoon.
+    private static List<byte[]> makeBlobs(int dayCount) {
+        final Random random = new Random(dayCount);
+        final List<byte[]> blobs = new ArrayList<>();
+        for (int day = 0; day < dayCount; day++) {
+            final int[] seconds = new int[1440];
+            final short[] values = new short[1440];
+            for (int minute = 0; minute < 1440; minute++) {
+                seconds[minute] = minute * 60;
+                values[minute] = (short) (60 + random.nextInt(15) + (minute >= 960 && minute < 1020 ? 70 : 0));
+            }
+            blobs.add(IntradaySeriesCodec.encodePoints(new IntradaySeriesCodec.Points(seconds, values)));
+        }
+        return blobs;
+    }
+
+    private static void read(List<byte[]> blobs, Downsampling.PointSink sink) {
+        for (int day = 0; day < blobs.size(); day++) {
+            sink.addPoints(IntradaySeriesCodec.decodePoints(blobs.get(day)), (long) day * SECONDS_PER_DAY);
+        }
+    }
+
+    private static Downsampling.Series read(List<byte[]> blobs) {
+        final Downsampling.Series series = new Downsampling.Series(blobs.size() * 1440);
+        read(blobs, series);
+        return series;
+    }
+
+    private static Downsampling.Series reduce(List<byte[]> blobs, Downsampling.Method method, int zoomLevel) {
+        final Downsampling.Reducer reducer = new Downsampling.Reducer(method, zoomLevel, 0, (long) blobs.size() * SECONDS_PER_DAY);
+        read(blobs, reducer);
+        return reducer.finish();
+    }
+
+    private static String toJson(Downsampling.Series series) {
+        final StringBuilder json = new StringBuilder("{\"x\":[");
+        for (int i = 0; i < series.size; i++) {
+            json.append(i > 0 ? "," : "").append((long) series.x[i]);
+        }
+        json.append("],\"value\":[");
+        for (int i = 0; i < series.size; i++) {
+            json.append(i > 0 ? "," : "").append((long) series.y[i]);
+        }
+        return json.append("]}").toString();
+    }
+
+    private interface Path {
+        Downsampling.Series run(List<byte[]> blobs);
+    }
+
+    private static final class Report {
+        final String name;
+        final int pointCount;
+        final int payloadChars;
+        final double medianMillis;
+
+        Report(String name, int pointCount, int payloadChars, double medianMillis) {
+            this.name = name;
+            this.pointCount = pointCount;
+            this.payloadChars = payloadChars;
+            this.medianMillis = medianMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-10s %8d points %10d chars %9.3f ms", name, pointCount, payloadChars, medianMillis);
+        }
+    }
+
+    private static Report measure(String name, List<byte[]> blobs, Path path, boolean isTimed) {
+        if (!isTimed) {
+            final Downsampling.Series series = path.run(blobs);
+            return new Report(name, series.size, toJson(series).length(), Double.NaN);
+        }
+
+        for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+            toJson(path.run(blobs));
+        }
+        final double[] millis = new double[ROUNDS];
+        Downsampling.Series series = null;
+        String payload = null;
+        for (int i = 0; i < ROUNDS; i++) {
+            final long start = System.nanoTime();
+            series = path.run(blobs);
+            payload = toJson(series);
+            millis[i] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(millis);
+        return new Report(name, series.size, payload.length(), millis[ROUNDS / 2]);
+    }
+
+    private static List<Report> compare(int dayCount, boolean isTimed) {
+        final List<byte[]> blobs = makeBlobs(dayCount);
+        final int zoomLevel = Downsampling.toZoomLevel(PIXEL_WIDTH);
+        final AggregationResultCache cache = new AggregationResultCache(2 * 1024 * 1024);
+        final AggregationResultCache.Key key = new AggregationResultCache.Key(Downsampling.Method.Lttb.key + "@" + zoomLevel,
+                IntradayColumn.HeartRatePoints.tableName, IntradayColumn.HeartRatePoints.columnName, 0, dayCount - 1, null, null, 0);
+        final Downsampling.Series cached = reduce(blobs, Downsampling.Method.Lttb, zoomLevel);
+        cache.put(key, new AggregationResultCache.Result(new String[]{"x", "value"},
+                new double[][]{Arrays.copyOf(cached.x, cached.size), Arrays.copyOf(cached.y, cached.size)}, cached.size), cache.getGeneration());
+
+        final List<Report> reports = new ArrayList<>();
+        reports.add(measure("full", blobs, DownsamplingBenchmarkTest::read, isTimed));
+        reports.add(measure("lttb", blobs, b -> reduce(b, Downsampling.Method.Lttb, zoomLevel), isTimed));
+        reports.add(measure("minmax", blobs, b -> reduce(b, Downsampling.Method.MinMax, zoomLevel), isTimed));
+        reports.add(measure("cached", blobs, b -> {
+            final AggregationResultCache.Result result = cache.get(key);
+            final Downsampling.Series series = new Downsampling.Series(result.rowCount);
+            for (int i = 0; i < result.rowCount; i++) {
+                series.add(result.columns[0][i], result.columns[1][i]);
+            }
+            return series;
+        }, isTimed));
+        return reports;
+    }
+
+    private static void assertBounded(List<Report> reports, int dayCount) {
+        final int maxPoints = 1 << Downsampling.toZoomLevel(PIXEL_WIDTH);
+        assertEquals(dayCount * 1440, reports.get(0).pointCount);
+        for (Report report : reports.subList(1, reports.size())) {
+            assertTrue(report.name, report.pointCount <= maxPoints);
+            assertTrue(report.name, report.payloadChars < reports.get(0).payloadChars);
+        }
+        //The cache hands out what LTTB computed.
+        assertEquals(reports.get(1).pointCount, reports.get(3).pointCount);
+        assertEquals(reports.get(1).payloadChars, reports.get(3).payloadChars);
+    }
+
+    @Test
+    public void oneDay() {
+        assertBounded(compare(1, false), 1);
+    }
+
+    @Test
+    public void oneWeek() {
+        assertBounded(compare(7, false), 7);
+    }
+
+    @Test
+    public void oneYear() {
+        final List<Report> reports = compare(365, false);
+        assertBounded(reports, 365);
+        //The downsampled payload stays the same size however long the range is.
+        assertEquals(1 << Downsampling.toZoomLevel(PIXEL_WIDTH), reports.get(1).pointCount);
+    }
+
+    @Test
+    public void benchmark() {
+        Assume.assumeTrue("Run with -Pbenchmark", Boolean.getBoolean("benchmark"));
+        for (int dayCount : new int[]{1, 7, 365}) {
+            final List<Report> reports = compare(dayCount, true);
+            assertBounded(reports, dayCount);
+            System.out.println(dayCount + " days of per-minute heart rate at " + PIXEL_WIDTH + " px:");
+            for (Report report : reports) {
+                System.out.println("  " + report);
+            }
+        }
+    }
+}
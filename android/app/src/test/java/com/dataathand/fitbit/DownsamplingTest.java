@@ -0,0 +1,170 @@
+package com.dataathand.fitbit;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DownsamplingTest {
+
+    //A day of per-minute heart rate around 70 bpm, without the night between 1am and 6am.
+    private static Downsampling.Series makeDay(Random random) {
+        final Downsampling.Series series = new Downsampling.Series(0);
+        for (int minute = 0; minute < 1440; minute++) {
+            if (minute < 60 || minute >= 360) {
+                series.add(minute * 60, 70 + random.nextInt(10));
+            }
+        }
+        return series;
+    }
+
+    private static void assertAscending(int[] indices) {
+        for (int i = 1; i < indices.length; i++) {
+            assertTrue(indices[i - 1] < indices[i]);
+        }
+    }
+
+    private static Downsampling.Series reduce(Downsampling.Series series, Downsampling.Method method, int zoomLevel) {
+        final Downsampling.Reducer reducer = new Downsampling.Reducer(method, zoomLevel, 0, 24 * 3600);
+        for (int i = 0; i < series.size; i++) {
+            reducer.add(series.x[i], series.y[i]);
+        }
+        return reducer.finish();
+    }
+
+    private static void assertAscending(Downsampling.Series series) {
+        for (int i = 1; i < series.size; i++) {
+            assertTrue(series.x[i - 1] < series.x[i]);
+        }
+    }
+
+    @Test
+    public void zoomLevelsArePowersOfTwoNotAboveTheWidth() {
+        assertEquals(8, Downsampling.toZoomLevel(300));
+        assertEquals(9, Downsampling.toZoomLevel(512));
+        assertEquals(Downsampling.MIN_LEVEL, Downsampling.toZoomLevel(0));
+        assertEquals(Downsampling.MAX_LEVEL, Downsampling.toZoomLevel(100000));
+    }
+
+    @Test
+    public void lttbKeepsTheEndsAndTheSpikes() {
+        final Downsampling.Series series = makeDay(new Random(1));
+        final int spike = 700;
+        series.y[spike] = 180;
+
+        final int[] indices = Downsampling.lttb(series.x, series.y, series.size, 64);
+        assertEquals(64, indices.length);
+        assertEquals(0, indices[0]);
+        assertEquals(series.size - 1, indices[63]);
+        assertAscending(indices);
+        boolean hasSpike = false;
+        for (int index : indices) {
+            hasSpike |= index == spike;
+        }
+        assertTrue(hasSpike);
+    }
+
+    @Test
+    public void minMaxKeepsTheExtremesOfEachBucketAndTheGaps() {
+        final Downsampling.Series series = makeDay(new Random(2));
+        //Two points for each of 64 buckets of 22.5 minutes, of which the night ones are empty.
+        final int bucketCount = 64;
+        final Downsampling.Series reduced = reduce(series, Downsampling.Method.MinMax, 7);
+        assertTrue(reduced.size <= bucketCount * 2);
+        assertAscending(reduced);
+
+        final double bucketSeconds = 24.0 * 3600 / bucketCount;
+        final double[] min = new double[bucketCount];
+        final double[] max = new double[bucketCount];
+        final double[] keptMin = new double[bucketCount];
+        final double[] keptMax = new double[bucketCount];
+        for (int b = 0; b < bucketCount; b++) {
+            min[b] = keptMin[b] = Double.POSITIVE_INFINITY;
+            max[b] = keptMax[b] = Double.NEGATIVE_INFINITY;
+        }
+        for (int i = 0; i < series.size; i++) {
+            final int b = (int) (series.x[i] / bucketSeconds);
+            min[b] = Math.min(min[b], series.y[i]);
+            max[b] = Math.max(max[b], series.y[i]);
+        }
+        for (int i = 0; i < reduced.size; i++) {
+            final int b = (int) (reduced.x[i] / bucketSeconds);
+            keptMin[b] = Math.min(keptMin[b], reduced.y[i]);
+            keptMax[b] = Math.max(keptMax[b], reduced.y[i]);
+        }
+        assertArrayEquals(min, keptMin, 0);
+        assertArrayEquals(max, keptMax, 0);
+        for (int i = 0; i < reduced.size; i++) {
+            assertTrue(reduced.x[i] < 3600 || reduced.x[i] >= 6 * 3600);
+        }
+    }
+
+    @Test
+    public void reducedLttbKeepsTheSpikes() {
+        final Downsampling.Series series = makeDay(new Random(3));
+        series.y[700] = 180;
+        series.y[900] = 30;
+
+        final Downsampling.Series reduced = reduce(series, Downsampling.Method.Lttb, 6);
+        assertEquals(64, reduced.size);
+        assertAscending(reduced);
+        boolean hasPeak = false;
+        boolean hasDip = false;
+        for (int i = 0; i < reduced.size; i++) {
+            hasPeak |= reduced.x[i] == series.x[700] && reduced.y[i] == 180;
+            hasDip |= reduced.x[i] == series.x[900] && reduced.y[i] == 30;
+        }
+        assertTrue(hasPeak);
+        assertTrue(hasDip);
+    }
+
+    @Test
+    public void sparseSeriesAreLeftAsTheyAre() {
+        //Ten points over the day, at most two in any of the eight buckets of the smallest level.
+        final Downsampling.Series series = new Downsampling.Series(0);
+        for (int i = 0; i < 10; i++) {
+            series.add(i * 8640, i);
+        }
+        assertEquals(10, reduce(series, Downsampling.Method.Lttb, Downsampling.MIN_LEVEL).size);
+        assertEquals(10, reduce(series, Downsampling.Method.MinMax, Downsampling.MIN_LEVEL).size);
+    }
+
+    @Test
+    public void daysFollowOneAnotherOnTheTimeAxis() {
+        final Downsampling.Series series = new Downsampling.Series(0);
+        series.addHourly(new int[]{5, 0, 12}, 0);
+        series.addPoints(new IntradaySeriesCodec.Points(new int[]{30, 90}, new short[]{60, 62}), 24 * 3600);
+        assertEquals(5, series.size);
+        assertEquals(7200, series.x[2], 0);
+        assertEquals(12, series.y[2], 0);
+        assertEquals(24 * 3600 + 90, series.x[4], 0);
+        assertEquals(62, series.y[4], 0);
+    }
+
+    @Test
+    public void periodsAreSplitAtGapsAndPassEveryPointOn() {
+        final Downsampling.Series day = makeDay(new Random(7));
+        //A lone point in the night is no period.
+        final Downsampling.Series passed = new Downsampling.Series(0);
+        final Downsampling.Periods periods = new Downsampling.Periods(passed, 900, 2);
+        for (int i = 0; i < day.size; i++) {
+            periods.add(day.x[i], day.y[i]);
+            if (day.x[i] == 59 * 60) {
+                periods.add(3 * 3600, 55);
+            }
+        }
+        periods.finish();
+
+        assertEquals(day.size + 1, passed.size);
+        assertEquals(2, periods.starts.size);
+        assertEquals(0, periods.starts.x[0], 0);
+        assertEquals(59 * 60, periods.ends.x[0], 0);
+        assertEquals(day.y[59], periods.ends.y[0], 0);
+        assertEquals(6 * 3600, periods.starts.x[1], 0);
+        assertEquals(day.y[60], periods.starts.y[1], 0);
+        assertEquals(1439 * 60, periods.ends.x[1], 0);
+    }
+}
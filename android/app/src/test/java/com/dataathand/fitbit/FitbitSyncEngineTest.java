@@ -0,0 +1,234 @@
+package com.dataathand.fitbit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+//Runs the engine against a local stand-in for both the Fitbit API and the prefetch backend.
+//Robolectric provides android.util.JsonReader.
+@RunWith(RobolectricTestRunner.class)
+public class FitbitSyncEngineTest {
+
+    private static final String ACCESS_TOKEN = "test-token";
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private ExecutorService executor;
+
+    private final List<String> apiRequests = new CopyOnWriteArrayList<>();
+    private final AtomicInteger concurrentRequests = new AtomicInteger(0);
+    private final AtomicInteger maxConcurrentRequests = new AtomicInteger(0);
+    private volatile int apiStatus = 200;
+    private volatile int prefetchedUntil = 0;
+
+    private final Map<Integer, Double> storedSteps = new ConcurrentHashMap<>();
+    private final DailySummaryStore store = (measure, chunk) -> {
+        for (int i = 0; i < chunk.size(); i++) {
+            storedSteps.put(chunk.getNumberedDate(i), chunk.getValue(i));
+        }
+    };
+
+    //Every day has a distinct step count except the first of each month, which Fitbit reports as 0.
+    private static double stepsOf(LocalDate date) {
+        return date.getDayOfMonth() == 1 ? 0 : date.toEpochDay() % 10000;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        serverExecutor = Executors.newFixedThreadPool(8);
+        server.setExecutor(serverExecutor);
+        server.createContext("/1/user/-/", this::handleApiRequest);
+        server.createContext("/prefetch/", this::handlePrefetchRequest);
+        server.start();
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private void handleApiRequest(HttpExchange exchange) throws IOException {
+        final int concurrent = concurrentRequests.incrementAndGet();
+        maxConcurrentRequests.accumulateAndGet(concurrent, Math::max);
+        try {
+            apiRequests.add(exchange.getRequestURI().getPath());
+            if (!("Bearer " + ACCESS_TOKEN).equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                respond(exchange, 401, "{}");
+                return;
+            }
+
+            exchange.getResponseHeaders().add("Fitbit-Rate-Limit-Remaining", String.valueOf(150 - apiRequests.size()));
+            exchange.getResponseHeaders().add("Fitbit-Rate-Limit-Reset", "1200");
+            if (apiStatus != 200) {
+                respond(exchange, apiStatus, "{}");
+                return;
+            }
+
+            //.../activities/steps/date/2019-01-01/2019-12-31.json
+            final String[] segments = exchange.getRequestURI().getPath().split("/");
+            final LocalDate start = LocalDate.parse(segments[segments.length - 2]);
+            final LocalDate end = LocalDate.parse(segments[segments.length - 1].replace(".json", ""));
+
+            Thread.sleep(20);
+
+            final StringBuilder body = new StringBuilder("{\"activities-steps\":[");
+            for (LocalDate date = start; !date.isAfter(end); date = date.plusDays(1)) {
+                if (!date.equals(start)) {
+                    body.append(',');
+                }
+                body.append("{\"dateTime\":\"").append(date).append("\",\"value\":\"").append((long) stepsOf(date)).append("\"}");
+            }
+            body.append("]}");
+            respond(exchange, 200, body.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            concurrentRequests.decrementAndGet();
+        }
+    }
+
+    private void handlePrefetchRequest(HttpExchange exchange) throws IOException {
+        final String body = "{\"crawlLog\":{\"queried_by_numbered_date\":" + prefetchedUntil + "},\"data\":["
+                + "{\"dateTime\":\"2019-01-02\",\"value\":\"-1\"}]}";
+        respond(exchange, 200, body);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream stream = exchange.getResponseBody()) {
+            stream.write(bytes);
+        }
+    }
+
+    private FitbitSyncEngine makeEngine(boolean withPrefetch) {
+        final FitbitSyncEngine.Config config = new FitbitSyncEngine.Config();
+        config.apiBaseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        config.accessToken = ACCESS_TOKEN;
+        if (withPrefetch) {
+            config.prefetchBaseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/prefetch";
+            config.fitbitUserId = "USER";
+        }
+        return new FitbitSyncEngine(config, executor, new TokenBucket(100, 100), store);
+    }
+
+    @Test
+    public void splitRangeKeepsChunksWithinTheLimit() {
+        final List<int[]> ranges = FitbitSyncEngine.splitRange(20190101, 20201231, 365);
+        assertEquals(3, ranges.size());
+        assertEquals(20190101, ranges.get(0)[0]);
+        assertEquals(20191231, ranges.get(0)[1]);
+        assertEquals(20200101, ranges.get(1)[0]);
+        assertEquals(20201230, ranges.get(1)[1]);
+        assertEquals(20201231, ranges.get(2)[0]);
+        assertEquals(20201231, ranges.get(2)[1]);
+
+        assertEquals(1, FitbitSyncEngine.splitRange(20200301, 20200301, 365).size());
+    }
+
+    @Test
+    public void fetchesChunksInParallelAndStoresEveryDay() throws Exception {
+        final List<int[]> progress = new CopyOnWriteArrayList<>();
+        final FitbitSyncEngine engine = makeEngine(false);
+        engine.setProgressListener((measure, completed, total, rows) -> progress.add(new int[]{completed, total, rows}));
+
+        final FitbitSyncEngine.Result result = engine.run(Collections.singletonList(
+                new FitbitSyncEngine.Job(DailySummaryMeasure.DailyStep, 20170101, 20201231, false)));
+
+        assertEquals(5, apiRequests.size());
+        assertEquals(5, result.storedChunks);
+        assertTrue("Chunks should be fetched concurrently", maxConcurrentRequests.get() > 1);
+
+        //Zero step days are dropped as in FitbitSummaryLogMeasure.
+        final int days = (int) (LocalDate.of(2021, 1, 1).toEpochDay() - LocalDate.of(2017, 1, 1).toEpochDay());
+        assertEquals(days - 48, result.storedRows);
+        assertEquals(days - 48, storedSteps.size());
+        assertEquals(stepsOf(LocalDate.of(2020, 2, 29)), storedSteps.get(20200229), 0);
+
+        assertEquals(145, result.quotaRemaining);
+        assertEquals(1200, result.quotaResetSeconds);
+
+        assertEquals(5, progress.size());
+        assertEquals(5, progress.get(4)[0]);
+        assertEquals(5, progress.get(4)[1]);
+        assertEquals(days - 48, progress.get(4)[2]);
+    }
+
+    @Test
+    public void fetchesOnlyWhatThePrefetchBackendLacks() throws Exception {
+        prefetchedUntil = 20200601;
+
+        final FitbitSyncEngine.Result result = makeEngine(true).run(Collections.singletonList(
+                new FitbitSyncEngine.Job(DailySummaryMeasure.DailyStep, 20190101, 20201231, true)));
+
+        assertEquals(Collections.singletonList("/1/user/-/activities/steps/date/2020-06-01/2020-12-31.json"), apiRequests);
+        assertEquals(2, result.storedChunks);
+        assertEquals(-1, storedSteps.get(20190102), 0);
+        assertEquals(stepsOf(LocalDate.of(2020, 12, 31)), storedSteps.get(20201231), 0);
+    }
+
+    @Test
+    public void skipsTheApiWhenThePrefetchBackendCoversTheRange() throws Exception {
+        prefetchedUntil = 20201231;
+
+        final FitbitSyncEngine.Result result = makeEngine(true).run(Collections.singletonList(
+                new FitbitSyncEngine.Job(DailySummaryMeasure.DailyStep, 20190101, 20201231, true)));
+
+        assertTrue(apiRequests.isEmpty());
+        assertEquals(1, result.storedRows);
+        assertEquals(-1, result.quotaRemaining);
+    }
+
+    @Test
+    public void reportsQuotaLimit() throws Exception {
+        apiStatus = 429;
+        try {
+            makeEngine(false).run(Collections.singletonList(
+                    new FitbitSyncEngine.Job(DailySummaryMeasure.DailyStep, 20170101, 20201231, false)));
+            fail("The sync should fail");
+        } catch (FitbitSyncEngine.SyncException e) {
+            assertEquals(FitbitSyncEngine.ERROR_QUOTA_LIMIT, e.code);
+        }
+    }
+
+    @Test
+    public void reportsInvalidCredentials() throws Exception {
+        final FitbitSyncEngine.Config config = new FitbitSyncEngine.Config();
+        config.apiBaseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        config.accessToken = "expired";
+        try {
+            new FitbitSyncEngine(config, executor, new TokenBucket(100, 100), store).run(Collections.singletonList(
+                    new FitbitSyncEngine.Job(DailySummaryMeasure.DailyStep, 20200101, 20200131, false)));
+            fail("The sync should fail");
+        } catch (FitbitSyncEngine.SyncException e) {
+            assertEquals(FitbitSyncEngine.ERROR_CREDENTIAL, e.code);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.dataathand.fitbit;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+//Migrates intraday rows cached as delimited strings, as react-native-sqlite-storage wrote them, to blobs.
+//Robolectric provides SQLite.
+@RunWith(RobolectricTestRunner.class)
+public class IntradayCompactionTest {
+
+    private static final int FIRST_DATE = 20200101;
+    private static final int DAY_COUNT = 250;
+
+    private SQLiteDatabase database;
+    //The legacy text of each day, which every read has to reproduce.
+    private final Map<Integer, String> pointsByDate = new TreeMap<>();
+    private final Map<Integer, String> stepsByDate = new TreeMap<>();
+
+    @Before
+    public void setUp() {
+        database = SQLiteDatabase.create(null);
+        database.execSQL("CREATE TABLE HeartRateIntraDayInfo (numberedDate INTEGER PRIMARY KEY, restingHeartRate INTEGER, points TEXT, zones TEXT)");
+        database.execSQL("CREATE TABLE StepCountIntraDay (numberedDate INTEGER PRIMARY KEY, hourlySteps TEXT)");
+
+        final Random random = new Random(9);
+        for (int i = 0; i < DAY_COUNT; i++) {
+            final int date = FIRST_DATE + i;
+            final StringBuilder points = new StringBuilder();
+            for (int minute = 0; minute < 1440; minute += 1 + random.nextInt(3)) {
+                points.append(points.length() > 0 ? "|" : "").append(minute * 60).append('&').append(55 + random.nextInt(120));
+            }
+            final StringBuilder steps = new StringBuilder();
+            for (int hour = 0; hour < 24; hour++) {
+                steps.append(hour > 0 ? "|" : "").append(hour < 7 ? 0 : random.nextInt(2000));
+            }
+            pointsByDate.put(date, points.toString());
+            stepsByDate.put(date, steps.toString());
+            database.execSQL("INSERT INTO HeartRateIntraDayInfo VALUES (?, 60, ?, '[]')", new Object[]{date, points.toString()});
+            database.execSQL("INSERT INTO StepCountIntraDay VALUES (?, ?)", new Object[]{date, steps.toString()});
+        }
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    private int countRowsOfType(IntradayColumn column, String type) {
+        try (Cursor cursor = database.rawQuery("SELECT COUNT(*) FROM " + column.tableName +
+                " WHERE typeof(" + column.columnName + ") = ?", new String[]{type})) {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        }
+    }
+
+    //Reads every day as the module does, whichever format it is stored in.
+    private void assertEveryDayReadsAsBefore() {
+        for (Map.Entry<Integer, String> day : pointsByDate.entrySet()) {
+            final Object stored = FitbitIntradayStorageModule.readCell(database, IntradayColumn.HeartRatePoints, day.getKey());
+            final IntradaySeriesCodec.Points expected = IntradaySeriesCodec.parseLegacyPoints(day.getValue());
+            final IntradaySeriesCodec.Points actual = stored instanceof byte[]
+                    ? IntradaySeriesCodec.decodePoints((byte[]) stored) : IntradaySeriesCodec.parseLegacyPoints((String) stored);
+            assertArrayEquals(expected.secondsOfDay, actual.secondsOfDay);
+            assertArrayEquals(expected.values, actual.values);
+        }
+        for (Map.Entry<Integer, String> day : stepsByDate.entrySet()) {
+            final Object stored = FitbitIntradayStorageModule.readCell(database, IntradayColumn.HourlySteps, day.getKey());
+            final int[] actual = stored instanceof byte[]
+                    ? IntradaySeriesCodec.decodeSeries((byte[]) stored) : IntradaySeriesCodec.parseLegacySeries((String) stored);
+            assertArrayEquals(IntradaySeriesCodec.parseLegacySeries(day.getValue()), actual);
+        }
+    }
+
+    @Test
+    public void convertsEveryRowAndKeepsItsContent() {
+        assertEquals(DAY_COUNT, FitbitIntradayStorageModule.compact(database, IntradayColumn.HeartRatePoints));
+        assertEquals(DAY_COUNT, FitbitIntradayStorageModule.compact(database, IntradayColumn.HourlySteps));
+
+        assertEquals(DAY_COUNT, countRowsOfType(IntradayColumn.HeartRatePoints, "blob"));
+        assertEquals(DAY_COUNT, countRowsOfType(IntradayColumn.HourlySteps, "blob"));
+        assertEveryDayReadsAsBefore();
+
+        //The other columns are untouched.
+        try (Cursor cursor = database.rawQuery("SELECT COUNT(*) FROM HeartRateIntraDayInfo WHERE restingHeartRate = 60 AND zones = '[]'", null)) {
+            cursor.moveToFirst();
+            assertEquals(DAY_COUNT, cursor.getInt(0));
+        }
+    }
+
+    @Test
+    public void aSecondRunFindsNothingToConvert() {
+        FitbitIntradayStorageModule.compact(database, IntradayColumn.HeartRatePoints);
+        assertEquals(0, FitbitIntradayStorageModule.compact(database, IntradayColumn.HeartRatePoints));
+    }
+
+    @Test
+    public void convertsOnlyTheRowsOfTheRange() {
+        assertEquals(11, FitbitIntradayStorageModule.compact(database, IntradayColumn.HeartRatePoints, FIRST_DATE + 120, FIRST_DATE + 130));
+        assertEquals(11, countRowsOfType(IntradayColumn.HeartRatePoints, "blob"));
+        assertTrue(FitbitIntradayStorageModule.readCell(database, IntradayColumn.HeartRatePoints, FIRST_DATE + 119) instanceof String);
+        assertTrue(FitbitIntradayStorageModule.readCell(database, IntradayColumn.HeartRatePoints, FIRST_DATE + 130) instanceof byte[]);
+        assertTrue(FitbitIntradayStorageModule.readCell(database, IntradayColumn.HeartRatePoints, FIRST_DATE + 131) instanceof String);
+        assertEveryDayReadsAsBefore();
+
+        assertEquals(DAY_COUNT - 11, FitbitIntradayStorageModule.compact(database, IntradayColumn.HeartRatePoints));
+    }
+
+    @Test
+    public void leavesMalformedRowsAsText() {
+        database.execSQL("UPDATE HeartRateIntraDayInfo SET points = '0&70|60' WHERE numberedDate = ?", new Object[]{FIRST_DATE + 3});
+        assertEquals(DAY_COUNT - 1, FitbitIntradayStorageModule.compact(database, IntradayColumn.HeartRatePoints));
+        assertEquals(1, countRowsOfType(IntradayColumn.HeartRatePoints, "text"));
+        assertTrue(FitbitIntradayStorageModule.readCell(database, IntradayColumn.HeartRatePoints, FIRST_DATE + 3) instanceof String);
+    }
+
+    @Test
+    public void anInterruptedMigrationResumesWhereItStopped() {
+        //Fails the third batch, as if the process died while writing it.
+        final int failingDate = FIRST_DATE + 2 * 100 + 10;
+        database.execSQL("CREATE TRIGGER interrupt BEFORE UPDATE ON HeartRateIntraDayInfo WHEN NEW.numberedDate = " + failingDate +
+                " BEGIN SELECT RAISE(ABORT, 'interrupted'); END");
+        try {
+            FitbitIntradayStorageModule.compact(database, IntradayColumn.HeartRatePoints);
+            fail("The migration was not interrupted");
+        } catch (SQLiteException expected) {
+        }
+
+        //The first two batches are committed, and the failed one rolled back as a whole.
+        assertEquals(200, countRowsOfType(IntradayColumn.HeartRatePoints, "blob"));
+        assertEquals(DAY_COUNT - 200, countRowsOfType(IntradayColumn.HeartRatePoints, "text"));
+        assertEveryDayReadsAsBefore();
+
+        database.execSQL("DROP TRIGGER interrupt");
+        assertEquals(DAY_COUNT - 200, FitbitIntradayStorageModule.compact(database, IntradayColumn.HeartRatePoints));
+        assertEquals(DAY_COUNT, countRowsOfType(IntradayColumn.HeartRatePoints, "blob"));
+        assertEveryDayReadsAsBefore();
+    }
+}
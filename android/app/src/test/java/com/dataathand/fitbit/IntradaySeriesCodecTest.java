@@ -0,0 +1,115 @@
+package com.dataathand.fitbit;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IntradaySeriesCodecTest {
+
+    //A day of per-minute heart rate with gaps, as the Fitbit API returns it.
+    private static IntradaySeriesCodec.Points makePoints(Random random) {
+        final int[] seconds = new int[1440];
+        final short[] values = new short[1440];
+        int count = 0;
+        for (int minute = 0; minute < 1440; minute++) {
+            if (random.nextInt(10) > 0) {
+                seconds[count] = minute * 60;
+                values[count] = (short) (50 + random.nextInt(130));
+                count++;
+            }
+        }
+        return new IntradaySeriesCodec.Points(Arrays.copyOf(seconds, count), Arrays.copyOf(values, count));
+    }
+
+    private static void assertPointsEqual(IntradaySeriesCodec.Points expected, IntradaySeriesCodec.Points actual) {
+        assertArrayEquals(expected.secondsOfDay, actual.secondsOfDay);
+        assertArrayEquals(expected.values, actual.values);
+    }
+
+    @Test
+    public void pointsRoundTrip() {
+        final Random random = new Random(3);
+        for (int day = 0; day < 50; day++) {
+            final IntradaySeriesCodec.Points points = makePoints(random);
+            final byte[] blob = IntradaySeriesCodec.encodePoints(points);
+            assertTrue(IntradaySeriesCodec.isEncoded(blob, IntradaySeriesCodec.FORMAT_POINTS));
+            assertPointsEqual(points, IntradaySeriesCodec.decodePoints(blob));
+        }
+    }
+
+    @Test
+    public void seriesRoundTripAcrossTheWholeIntRange() {
+        final int[] values = {0, 5, Integer.MAX_VALUE, Integer.MIN_VALUE, -1, 12000, Integer.MIN_VALUE, Integer.MAX_VALUE};
+        assertArrayEquals(values, IntradaySeriesCodec.decodeSeries(IntradaySeriesCodec.encodeSeries(values)));
+        assertArrayEquals(new int[0], IntradaySeriesCodec.decodeSeries(IntradaySeriesCodec.encodeSeries(new int[0])));
+    }
+
+    @Test
+    public void legacyTextRoundTripsThroughTheBlobs() {
+        final IntradaySeriesCodec.Points points = makePoints(new Random(4));
+        final String pointsText = IntradaySeriesCodec.toLegacyText(points);
+        assertEquals(pointsText, IntradayColumn.HeartRatePoints.decodeToLegacyText(IntradayColumn.HeartRatePoints.encodeLegacyText(pointsText)));
+
+        final String stepsText = "0|0|12|340|-0|7";
+        assertArrayEquals(new int[]{0, 0, 12, 340, 0, 7}, IntradaySeriesCodec.parseLegacySeries(stepsText));
+        assertEquals("0|0|12|340|0|7", IntradayColumn.HourlySteps.decodeToLegacyText(IntradayColumn.HourlySteps.encodeLegacyText(stepsText)));
+        assertEquals("", IntradayColumn.HourlySteps.decodeToLegacyText(IntradayColumn.HourlySteps.encodeLegacyText("")));
+    }
+
+    @Test
+    public void parsesTheEndsOfTheIntRange() {
+        assertArrayEquals(new int[]{Integer.MAX_VALUE, Integer.MIN_VALUE},
+                IntradaySeriesCodec.parseLegacySeries(Integer.MAX_VALUE + "|" + Integer.MIN_VALUE));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void rejectsAnIntOverflow() {
+        IntradaySeriesCodec.parseLegacySeries("1|2147483648");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void rejectsAnIntUnderflow() {
+        IntradaySeriesCodec.parseLegacySeries("-2147483649");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void rejectsALongOverflowThatWrapsIntoRange() {
+        //Without the check, this wraps to 1.
+        IntradaySeriesCodec.parseLegacySeries("4294967297");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void rejectsAPointValueBeyondAShort() {
+        IntradaySeriesCodec.parseLegacyPoints("0&70|60&40000");
+    }
+
+    @Test
+    public void rejectsMalformedText() {
+        for (String text : new String[]{"0&70|60", "0&70||60&71", "-", "12a", "0&-"}) {
+            try {
+                IntradaySeriesCodec.parseLegacyPoints(text);
+                throw new AssertionError("Parsed " + text);
+            } catch (NumberFormatException expected) {
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsATruncatedBlob() {
+        final byte[] blob = IntradaySeriesCodec.encodePoints(makePoints(new Random(5)));
+        IntradaySeriesCodec.decodePoints(Arrays.copyOf(blob, blob.length / 2));
+    }
+
+    @Test
+    public void tellsTheFormatsApart() {
+        final byte[] series = IntradaySeriesCodec.encodeSeries(new int[]{1, 2});
+        assertFalse(IntradaySeriesCodec.isEncoded(series, IntradaySeriesCodec.FORMAT_POINTS));
+        assertFalse(IntradaySeriesCodec.isEncoded(new byte[0], IntradaySeriesCodec.FORMAT_SERIES));
+    }
+}
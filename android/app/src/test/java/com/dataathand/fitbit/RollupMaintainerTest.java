@@ -0,0 +1,239 @@
+package com.dataathand.fitbit;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.dataathand.time.NumberedDates;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+//Checks the rollups against the GROUP BY queries of AggregationQueries over ten years of synthetic days.
+//Robolectric provides SQLite.
+@RunWith(RobolectricTestRunner.class)
+public class RollupMaintainerTest {
+
+    private static final LocalDate FIRST_DAY = LocalDate.of(2011, 1, 1);
+    private static final LocalDate LAST_DAY = LocalDate.of(2020, 12, 31);
+
+    private static final String[][] GROUPINGS = {
+            {null, null},
+            {"year", null},
+            {"dayOfWeek", null},
+            {"month", null},
+            {"season", null},
+            {"year", "dayOfWeek"},
+            {"year", "month"},
+    };
+
+    private SQLiteDatabase database;
+    private RollupMaintainer rollups;
+    private final Random random = new Random(5);
+
+    @Before
+    public void setUp() {
+        database = SQLiteDatabase.create(null);
+        database.execSQL("CREATE TABLE StepCount (numberedDate INTEGER PRIMARY KEY, year INTEGER, month INTEGER, dayOfWeek INTEGER, value INTEGER)");
+        database.execSQL("CREATE TABLE SleepLog (numberedDate INTEGER PRIMARY KEY, year INTEGER, month INTEGER, dayOfWeek INTEGER, " +
+                "lengthInSeconds INTEGER, bedTimeDiffSeconds INTEGER, wakeTimeDiffSeconds INTEGER)");
+
+        database.beginTransaction();
+        try (SQLiteStatement steps = database.compileStatement("INSERT INTO StepCount VALUES (?, ?, ?, ?, ?)");
+             SQLiteStatement sleep = database.compileStatement("INSERT INTO SleepLog VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            for (LocalDate date = FIRST_DAY; !date.isAfter(LAST_DAY); date = date.plusDays(1)) {
+                bindDay(steps, date);
+                steps.bindLong(5, 2000 + random.nextInt(15000));
+                steps.executeInsert();
+                //Some nights go unrecorded.
+                if (random.nextInt(8) > 0) {
+                    bindDay(sleep, date);
+                    final int bedTime = random.nextInt(7200) - 3600;
+                    final int wakeTime = bedTime + 21600 + random.nextInt(10800);
+                    sleep.bindLong(5, wakeTime - bedTime);
+                    sleep.bindLong(6, bedTime);
+                    sleep.bindLong(7, wakeTime);
+                    sleep.executeInsert();
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        rollups = new RollupMaintainer(database);
+        rollups.ensureBuilt("StepCount");
+        rollups.ensureBuilt("SleepLog");
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    private static void bindDay(SQLiteStatement statement, LocalDate date) {
+        statement.bindLong(1, NumberedDates.fromLocalDate(date));
+        statement.bindLong(2, date.getYear());
+        statement.bindLong(3, date.getMonthValue());
+        statement.bindLong(4, NumberedDates.getDayOfWeek(date));
+    }
+
+    @Test
+    public void aggregatesLikeGroupBy() {
+        for (int i = 0; i < 40; i++) {
+            final LocalDate start = FIRST_DAY.plusDays(random.nextInt(1000));
+            final int startDate = NumberedDates.fromLocalDate(start);
+            final int endDate = NumberedDates.fromLocalDate(start.plusDays(365 * 3 + random.nextInt(2200)));
+            for (String[] grouping : GROUPINGS) {
+                final int filterKey = "month".equals(grouping[1]) ? 1 + random.nextInt(12) : random.nextInt(7);
+                final String message = startDate + "-" + endDate + " by " + grouping[0] + " where " + grouping[1] + "=" + filterKey;
+
+                final Map<Integer, double[]> expected = query(AggregationQueries.makeValueQuery("StepCount", "value", grouping[0], grouping[1]),
+                        startDate, endDate, grouping, filterKey);
+                final TreeMap<Integer, DailyRollups.Cell[]> actual = rollups.aggregate("StepCount", new String[]{"value"},
+                        startDate, endDate, grouping[0], grouping[1], filterKey);
+
+                assertEquals(message, expected.keySet(), actual.keySet());
+                for (Map.Entry<Integer, double[]> row : expected.entrySet()) {
+                    final DailyRollups.Cell cell = actual.get(row.getKey())[0];
+                    assertEquals(message, row.getValue()[0], cell.min, 0);
+                    assertEquals(message, row.getValue()[1], cell.max, 0);
+                    assertEquals(message, row.getValue()[2], cell.sum, 1e-6);
+                    assertEquals(message, row.getValue()[4], cell.n, 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rangesOfSleepMatchGroupBy() {
+        final String[] columns = {"bedTimeDiffSeconds", "wakeTimeDiffSeconds"};
+        final Map<Integer, double[]> expected = query(AggregationQueries.makeRangeQuery("SleepLog", columns[0], columns[1], "month", null),
+                20110215, 20190710, new String[]{"month", null}, 0);
+        final TreeMap<Integer, DailyRollups.Cell[]> actual = rollups.aggregate("SleepLog", columns, 20110215, 20190710, "month", null, 0);
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<Integer, double[]> row : expected.entrySet()) {
+            final DailyRollups.Cell[] cells = actual.get(row.getKey());
+            assertEquals(row.getValue()[0], cells[0].sum / cells[0].n, 1e-6);
+            assertEquals(row.getValue()[1], cells[0].min, 0);
+            assertEquals(row.getValue()[5], cells[1].max, 0);
+            assertEquals(row.getValue()[6], cells[0].n, 0);
+        }
+    }
+
+    @Test
+    public void staysConsistentThroughWrites() {
+        final SqliteDailySummaryStore store = new SqliteDailySummaryStore(database, new AggregationResultCache(1024), rollups);
+
+        //New days after the last one, then days that replace earlier values.
+        final DailySummaryChunk appended = new DailySummaryChunk(60);
+        for (LocalDate date = LAST_DAY.plusDays(1); date.isBefore(LAST_DAY.plusDays(61)); date = date.plusDays(1)) {
+            appended.add(NumberedDates.fromLocalDate(date), random.nextInt(10000));
+        }
+        store.writeChunk(DailySummaryMeasure.DailyStep, appended);
+        assertConsistent("StepCount");
+
+        final DailySummaryChunk replaced = new DailySummaryChunk(10);
+        for (int i = 0; i < 10; i++) {
+            replaced.add(NumberedDates.fromLocalDate(LocalDate.of(2015, 12, 25).plusDays(i)), 0);
+        }
+        store.writeChunk(DailySummaryMeasure.DailyStep, replaced);
+        assertConsistent("StepCount");
+
+        //Writes made elsewhere are refreshed afterwards.
+        database.execSQL("DELETE FROM SleepLog WHERE numberedDate BETWEEN 20131220 AND 20140110");
+        rollups.refresh("SleepLog", 20131220, 20140110);
+        assertConsistent("SleepLog");
+    }
+
+    @Test
+    public void writesAfterARestartKeepTheRollupsCurrent() {
+        //A new process finds the rollups built by an earlier one.
+        final RollupMaintainer restarted = new RollupMaintainer(database);
+        final SqliteDailySummaryStore store = new SqliteDailySummaryStore(database, new AggregationResultCache(1024), restarted);
+
+        final DailySummaryChunk replaced = new DailySummaryChunk(40);
+        for (int i = 0; i < 40; i++) {
+            replaced.add(NumberedDates.fromLocalDate(LocalDate.of(2018, 3, 1).plusDays(i)), 50000);
+        }
+        store.writeChunk(DailySummaryMeasure.DailyStep, replaced);
+
+        //As the JavaScript side writes and then reports the rows, before anything is aggregated.
+        final RollupMaintainer restartedAgain = new RollupMaintainer(database);
+        database.execSQL("UPDATE StepCount SET value = 1 WHERE numberedDate BETWEEN 20121225 AND 20130105");
+        restartedAgain.refresh("StepCount", 20121225, 20130105);
+
+        restartedAgain.ensureBuilt("StepCount");
+        for (String[] grouping : GROUPINGS) {
+            final Map<Integer, double[]> expected = query(AggregationQueries.makeValueQuery("StepCount", "value", grouping[0], grouping[1]),
+                    20110101, 20201231, grouping, 3);
+            final TreeMap<Integer, DailyRollups.Cell[]> actual = restartedAgain.aggregate("StepCount", new String[]{"value"},
+                    20110101, 20201231, grouping[0], grouping[1], 3);
+            assertEquals(expected.keySet(), actual.keySet());
+            for (Map.Entry<Integer, double[]> row : expected.entrySet()) {
+                final DailyRollups.Cell cell = actual.get(row.getKey())[0];
+                assertEquals(row.getValue()[0], cell.min, 0);
+                assertEquals(row.getValue()[1], cell.max, 0);
+                assertEquals(row.getValue()[2], cell.sum, 1e-6);
+                assertEquals(row.getValue()[4], cell.n, 0);
+            }
+        }
+    }
+
+    @Test
+    public void datesRecordedAsDirtyAreRefreshedByALaterProcess() {
+        //As the JavaScript side writes rows and records their dates in one transaction, and the process dies before reporting them.
+        database.beginTransaction();
+        try {
+            database.execSQL("UPDATE SleepLog SET lengthInSeconds = 60 WHERE numberedDate BETWEEN 20161228 AND 20170103");
+            database.execSQL("INSERT INTO " + RollupMaintainer.DIRTY_TABLE_NAME + " VALUES ('SleepLog', 20161228, 20170103)");
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        rollups = new RollupMaintainer(database);
+        rollups.ensureBuilt("SleepLog");
+        assertConsistent("SleepLog");
+        try (Cursor cursor = database.rawQuery("SELECT COUNT(*) FROM " + RollupMaintainer.DIRTY_TABLE_NAME, null)) {
+            cursor.moveToFirst();
+            assertEquals(0, cursor.getInt(0));
+        }
+    }
+
+    private void assertConsistent(String tableName) {
+        final RollupConsistencyChecker.Report report = new RollupConsistencyChecker(rollups).check(tableName);
+        assertTrue(report.mismatches.toString(), report.isConsistent());
+        assertTrue(report.checkedCells > 0);
+    }
+
+    //Rows of the query by time key, without the key column.
+    private Map<Integer, double[]> query(String query, int startDate, int endDate, String[] grouping, int filterKey) {
+        final String[] arguments = grouping[1] != null
+                ? new String[]{Integer.toString(startDate), Integer.toString(endDate), Integer.toString(filterKey)}
+                : new String[]{Integer.toString(startDate), Integer.toString(endDate)};
+        final Map<Integer, double[]> rows = new TreeMap<>();
+        try (Cursor cursor = database.rawQuery(query, arguments)) {
+            final int offset = grouping[0] != null ? 1 : 0;
+            while (cursor.moveToNext()) {
+                final double[] row = new double[cursor.getColumnCount() - offset];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = cursor.isNull(i + offset) ? Double.NaN : cursor.getDouble(i + offset);
+                }
+                rows.put(offset > 0 ? cursor.getInt(0) : 0, row);
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,223 @@
+package com.dataathand.fitbit;
+
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SeriesStreamTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    //Rows of (index, index * 10).
+    private static final class CountingSource implements SeriesStream.Source {
+        private final int rowCount;
+        private int next = 0;
+        volatile boolean isClosed = false;
+
+        CountingSource(int rowCount) {
+            this.rowCount = rowCount;
+        }
+
+        @Override
+        public boolean next(double[] row) {
+            if (next == rowCount) {
+                return false;
+            }
+            row[0] = next;
+            row[1] = next * 10;
+            next++;
+            return true;
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @Override
+        public void close() {
+            isClosed = true;
+        }
+    }
+
+    //Blocks in its first read until cancelled, as a long query does.
+    private static final class StalledSource implements SeriesStream.Source {
+        private final CountDownLatch cancelled = new CountDownLatch(1);
+
+        @Override
+        public boolean next(double[] row) {
+            try {
+                cancelled.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("Query cancelled");
+        }
+
+        @Override
+        public void cancel() {
+            cancelled.countDown();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class Chunk {
+        final int sequence;
+        final double[] first;
+        final int rowCount;
+        final boolean isLast;
+
+        Chunk(int sequence, double[] first, int rowCount, boolean isLast) {
+            this.sequence = sequence;
+            this.first = first;
+            this.rowCount = rowCount;
+            this.isLast = isLast;
+        }
+    }
+
+    private static final class QueueSink implements SeriesStream.Sink {
+        final BlockingQueue<Chunk> chunks = new LinkedBlockingQueue<>();
+        final BlockingQueue<String> errors = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onChunk(int streamId, int sequence, double[][] columns, int rowCount, boolean isLast) {
+            chunks.add(new Chunk(sequence, rowCount > 0 ? new double[]{columns[0][0], columns[1][0]} : null, rowCount, isLast));
+        }
+
+        @Override
+        public void onError(int streamId, String code, String message) {
+            errors.add(code);
+        }
+    }
+
+    private static Thread start(SeriesStream stream) {
+        final Thread thread = new Thread(stream);
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    public void staysWithinTheWindowOfAcknowledgements() throws InterruptedException {
+        final CountingSource source = new CountingSource(1050);
+        final QueueSink sink = new QueueSink();
+        final SeriesStream stream = new SeriesStream(1, source, 2, 100, 2, TIMEOUT_MILLIS, sink);
+        final Thread thread = start(stream);
+
+        assertEquals(0, sink.chunks.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).sequence);
+        assertEquals(1, sink.chunks.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).sequence);
+        //Nothing more until the consumer catches up.
+        assertNull(sink.chunks.poll(200, TimeUnit.MILLISECONDS));
+
+        int rows = 200;
+        int expectedSequence = 2;
+        stream.acknowledge(0);
+        while (true) {
+            final Chunk chunk = sink.chunks.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            assertEquals(expectedSequence, chunk.sequence);
+            assertEquals(rows, chunk.first[0], 0);
+            assertEquals(rows * 10, chunk.first[1], 0);
+            rows += chunk.rowCount;
+            if (chunk.isLast) {
+                break;
+            }
+            stream.acknowledge(expectedSequence - 1);
+            expectedSequence++;
+        }
+        assertEquals(1050, rows);
+        assertEquals(10, expectedSequence);
+
+        thread.join(TIMEOUT_MILLIS);
+        assertTrue(source.isClosed);
+        assertTrue(sink.errors.isEmpty());
+    }
+
+    @Test
+    public void aLaterAcknowledgementCoversEarlierOnes() throws InterruptedException {
+        final QueueSink sink = new QueueSink();
+        final SeriesStream stream = new SeriesStream(1, new CountingSource(500), 2, 100, 2, TIMEOUT_MILLIS, sink);
+        final Thread thread = start(stream);
+        sink.chunks.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        sink.chunks.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        stream.acknowledge(1);
+        assertEquals(2, sink.chunks.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).sequence);
+        assertEquals(3, sink.chunks.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).sequence);
+        //A repeated acknowledgement frees nothing.
+        stream.acknowledge(1);
+        assertNull(sink.chunks.poll(200, TimeUnit.MILLISECONDS));
+
+        stream.cancel();
+        thread.join(TIMEOUT_MILLIS);
+    }
+
+    @Test
+    public void cancellingWakesTheReaderAndClosesTheSource() throws InterruptedException {
+        final CountingSource source = new CountingSource(10000);
+        final QueueSink sink = new QueueSink();
+        final SeriesStream stream = new SeriesStream(1, source, 2, 100, 1, TIMEOUT_MILLIS, sink);
+        final Thread thread = start(stream);
+        sink.chunks.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        stream.cancel();
+        assertEquals(SeriesStream.ERROR_CANCELLED, sink.errors.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        thread.join(TIMEOUT_MILLIS);
+        assertFalse(thread.isAlive());
+        assertTrue(source.isClosed);
+        assertTrue(sink.chunks.isEmpty());
+    }
+
+    @Test
+    public void cancellingAbortsAReadInProgress() throws InterruptedException {
+        final QueueSink sink = new QueueSink();
+        final SeriesStream stream = new SeriesStream(1, new StalledSource(), 2, 100, 2, TIMEOUT_MILLIS, sink);
+        final Thread thread = start(stream);
+
+        stream.cancel();
+        assertEquals(SeriesStream.ERROR_CANCELLED, sink.errors.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        thread.join(TIMEOUT_MILLIS);
+        assertFalse(thread.isAlive());
+    }
+
+    @Test
+    public void aStreamCancelledBeforeItRunsReadsNothing() {
+        final CountingSource source = new CountingSource(1000);
+        final QueueSink sink = new QueueSink();
+        final SeriesStream stream = new SeriesStream(1, source, 2, 100, 2, TIMEOUT_MILLIS, sink);
+        stream.cancel();
+        stream.run();
+
+        assertEquals(SeriesStream.ERROR_CANCELLED, sink.errors.poll());
+        assertTrue(sink.chunks.isEmpty());
+        assertTrue(source.isClosed);
+    }
+
+    @Test
+    public void givesUpOnASilentConsumer() throws InterruptedException {
+        final CountingSource source = new CountingSource(1000);
+        final QueueSink sink = new QueueSink();
+        start(new SeriesStream(1, source, 2, 100, 1, 100, sink));
+
+        assertEquals(SeriesStream.ERROR_ACK_TIMEOUT, sink.errors.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(1, sink.chunks.size());
+    }
+
+    @Test
+    public void anEmptySeriesIsOneEmptyLastChunk() throws InterruptedException {
+        final QueueSink sink = new QueueSink();
+        start(new SeriesStream(1, new CountingSource(0), 2, 100, 2, TIMEOUT_MILLIS, sink));
+
+        final Chunk chunk = sink.chunks.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertEquals(0, chunk.rowCount);
+        assertTrue(chunk.isLast);
+    }
+}
@@ -0,0 +1,137 @@
+package com.dataathand.fitbit;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SummaryStatisticsTest {
+
+    //What findPercentileValue() of the JavaScript side returns: ORDER BY value ASC with NULLs first,
+    //at OFFSET ROUND(COUNT(*) * ratio) - 1, where SQLite treats a negative offset as zero.
+    private static Double referencePercentile(Double[] sortedWithNullsFirst, double ratio) {
+        if (sortedWithNullsFirst.length == 0) {
+            return null;
+        }
+        final long offset = Math.max(0, Math.round(sortedWithNullsFirst.length * Double.parseDouble(String.format(Locale.US, "%.2f", ratio))) - 1);
+        return offset < sortedWithNullsFirst.length ? sortedWithNullsFirst[(int) offset] : null;
+    }
+
+    private static Double[] sortWithNullsFirst(double[] values, int nullCount) {
+        final double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        final Double[] rows = new Double[values.length + nullCount];
+        for (int i = 0; i < sorted.length; i++) {
+            rows[nullCount + i] = sorted[i];
+        }
+        return rows;
+    }
+
+    @Test
+    public void selectsLikeSorting() {
+        final Random random = new Random(3);
+        for (int round = 0; round < 500; round++) {
+            final int size = 1 + random.nextInt(300);
+            final double[] values = new double[size];
+            //Few distinct values, so that duplicates are common.
+            final int range = random.nextBoolean() ? 5 : 100000;
+            for (int i = 0; i < size; i++) {
+                values[i] = random.nextInt(range);
+            }
+            if (round % 5 == 0) {
+                Arrays.sort(values);
+            }
+            final double[] sorted = values.clone();
+            Arrays.sort(sorted);
+
+            final int k = random.nextInt(size);
+            assertEquals(sorted[k], SummaryStatistics.select(values.clone(), 0, size, k), 0);
+        }
+    }
+
+    @Test
+    public void boxPlotsMatchTheJavaScriptQueries() {
+        final Random random = new Random(9);
+        for (int round = 0; round < 300; round++) {
+            final int count = random.nextInt(200);
+            final int nullCount = round % 4 == 0 ? random.nextInt(count + 1) : 0;
+            final double[] values = new double[count];
+            for (int i = 0; i < count; i++) {
+                //Mostly a normal spread with a few outliers.
+                values[i] = Math.round(8000 + random.nextGaussian() * 3000 + (random.nextInt(20) == 0 ? 30000 : 0));
+            }
+
+            final Double[] rows = sortWithNullsFirst(values, nullCount);
+            final Double median = referencePercentile(rows, 0.5);
+            final Double percentile25 = referencePercentile(rows, 0.25);
+            final Double percentile75 = referencePercentile(rows, 0.75);
+
+            final SummaryStatistics.BoxPlot boxPlot = SummaryStatistics.BoxPlot.compute(values.clone(), count, nullCount);
+            final String message = count + " values, " + nullCount + " nulls";
+            assertEquals(message, median, boxPlot.median);
+            assertEquals(message, percentile25, boxPlot.percentile25);
+            assertEquals(message, percentile75, boxPlot.percentile75);
+
+            if (percentile25 == null || percentile75 == null) {
+                assertNull(message, boxPlot.iqr);
+                continue;
+            }
+            final double iqr = percentile75 - percentile25;
+            assertEquals(message, iqr, boxPlot.iqr, 0);
+            //findValueClosestTo(bound, table, 'larger') and 'smaller'.
+            Double minWithoutOutlier = null;
+            Double maxWithoutOutlier = null;
+            for (double value : values) {
+                if (value >= percentile25 - iqr && (minWithoutOutlier == null || value < minWithoutOutlier)) {
+                    minWithoutOutlier = value;
+                }
+                if (value <= percentile75 + iqr && (maxWithoutOutlier == null || value > maxWithoutOutlier)) {
+                    maxWithoutOutlier = value;
+                }
+            }
+            assertEquals(message, minWithoutOutlier, boxPlot.minWithoutOutlier);
+            assertEquals(message, maxWithoutOutlier, boxPlot.maxWithoutOutlier);
+        }
+    }
+
+    @Test
+    public void heartRateZonesAddUpThePointsInThem() {
+        //As FitbitIntraDayHeartRateMeasure stores them.
+        final List<HeartRateStatistics.Zone> zones = HeartRateStatistics.parseZones(
+                "1532.5&30&94&1260&out|612.25&94&131&95&fat_burn|120.5&131&159&12&cardio|0&159&220&0&peak");
+        assertEquals(4, zones.size());
+        assertEquals("fat_burn", zones.get(1).name);
+        assertEquals(95, zones.get(1).minutes);
+
+        //A point a minute, except for a half-hour gap and a few seconds-apart points.
+        final int[] seconds = {0, 60, 120, 180, 1980, 1990, 2000, 2060, 3590, 3650, 3710};
+        final short[] values = {60, 94, 100, 131, 140, 159, 93, 70, 75, 80, 200};
+        final HeartRateStatistics statistics = new HeartRateStatistics(new IntradaySeriesCodec.Points(seconds, values), zones);
+
+        assertEquals(11, statistics.count);
+        assertEquals(60, statistics.min, 0);
+        assertEquals(200, statistics.max, 0);
+        //Gaps count for a minute at most, and the last point lasts as long as the one before it.
+        assertEquals(60 + 60 + 60 + 60 + 60, statistics.zoneSeconds[0]);
+        assertEquals(60 + 60, statistics.zoneSeconds[1]);
+        assertEquals(60 + 10, statistics.zoneSeconds[2]);
+        assertEquals(10 + 60, statistics.zoneSeconds[3]);
+        assertEquals(240, statistics.hourlyZoneSeconds[0][0]);
+        assertEquals(60, statistics.hourlyZoneSeconds[0][1]);
+
+        assertEquals(9, statistics.hourlyCount[0]);
+        assertEquals(2, statistics.hourlyCount[1]);
+        assertEquals(80, statistics.hourlyMin[1], 0);
+        assertEquals(140, statistics.hourlyMean[1], 0);
+        assertEquals(Double.NaN, statistics.hourlyMean[2], 0);
+
+        final Double[] rows = sortWithNullsFirst(new double[]{60, 94, 100, 131, 140, 159, 93, 70, 75, 80, 200}, 0);
+        assertEquals(referencePercentile(rows, 0.5), statistics.boxPlot.median);
+        assertEquals(referencePercentile(rows, 0.25), statistics.boxPlot.percentile25);
+    }
+}
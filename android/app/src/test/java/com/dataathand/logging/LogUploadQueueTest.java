@@ -0,0 +1,230 @@
+package com.dataathand.logging;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+//Runs the queue against a local stand-in for the logging backend.
+public class LogUploadQueueTest {
+
+    private static final String FILE_NAME = "speech_command.jsonl";
+    private static final Map<String, String> HEADERS = Collections.singletonMap("sessionId", "session-1");
+
+    private static final class Request {
+        final long receivedAt = System.currentTimeMillis();
+        final String body;
+        final String sessionId;
+        final String contentEncoding;
+
+        Request(String body, String sessionId, String contentEncoding) {
+            this.body = body;
+            this.sessionId = sessionId;
+            this.contentEncoding = contentEncoding;
+        }
+    }
+
+    private HttpServer server;
+    private File spoolDirectory;
+    private final List<ScheduledExecutorService> schedulers = new ArrayList<>();
+
+    private final List<Request> requests = new CopyOnWriteArrayList<>();
+    //Statuses to answer with, one per request. 200 once they run out.
+    private final List<Integer> statuses = new CopyOnWriteArrayList<>();
+    private final AtomicInteger requestCount = new AtomicInteger(0);
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/logs", this::handleLogs);
+        server.start();
+        spoolDirectory = Files.createTempDirectory("log_uploads").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        for (ScheduledExecutorService scheduler : schedulers) {
+            scheduler.shutdownNow();
+        }
+        deleteRecursively(spoolDirectory);
+    }
+
+    private void handleLogs(HttpExchange exchange) throws IOException {
+        final int index = requestCount.getAndIncrement();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream input = new GZIPInputStream(exchange.getRequestBody())) {
+            final byte[] buffer = new byte[1024];
+            int read;
+            while ((read = input.read(buffer)) > 0) {
+                body.write(buffer, 0, read);
+            }
+        }
+        requests.add(new Request(new String(body.toByteArray(), StandardCharsets.UTF_8),
+                exchange.getRequestHeaders().getFirst("sessionId"), exchange.getRequestHeaders().getFirst("Content-Encoding")));
+
+        final int status = index < statuses.size() ? statuses.get(index) : 200;
+        exchange.sendResponseHeaders(status, -1);
+        exchange.close();
+    }
+
+    private String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/logs";
+    }
+
+    private LogUploadQueue newQueue(LogUploadQueue.Config config) {
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        schedulers.add(scheduler);
+        return new LogUploadQueue(spoolDirectory, scheduler, config);
+    }
+
+    private static LogUploadQueue.Config fastConfig() {
+        final LogUploadQueue.Config config = new LogUploadQueue.Config();
+        config.coalescingDelayMillis = 100;
+        config.initialBackoffMillis = 100;
+        return config;
+    }
+
+    private static String bodyOf(String... lines) throws IOException {
+        final StringBuilder body = new StringBuilder("{\"fileName\":\"" + FILE_NAME + "\",\"lines\":[");
+        for (int i = 0; i < lines.length; i++) {
+            if (i > 0) {
+                body.append(',');
+            }
+            UploadSpool.writeJsonString(body, lines[i]);
+        }
+        return body.append("]}").toString();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void coalescesBatchesIntoOneGzippedRequest() throws Exception {
+        final LogUploadQueue queue = newQueue(fastConfig());
+        queue.enqueue(getUrl(), FILE_NAME, HEADERS, Arrays.asList("{\"id\":1,\"inputText\":\"steps \\\"last\\\" winter\"}", "{\"id\":2}"));
+        queue.enqueue(getUrl(), FILE_NAME, HEADERS, Collections.singletonList("{\"id\":3,\"inputText\":\"\u00e9\\n\"}"));
+
+        await(() -> queue.getStats().pendingBatches == 0);
+        assertEquals(1, requests.size());
+        assertEquals("gzip", requests.get(0).contentEncoding);
+        assertEquals("session-1", requests.get(0).sessionId);
+        assertEquals(bodyOf("{\"id\":1,\"inputText\":\"steps \\\"last\\\" winter\"}", "{\"id\":2}", "{\"id\":3,\"inputText\":\"\u00e9\\n\"}"),
+                requests.get(0).body);
+        assertEquals(3, queue.getStats().uploadedLines);
+    }
+
+    @Test
+    public void retriesWithExponentialBackoff() throws Exception {
+        statuses.addAll(Arrays.asList(503, 503, 503));
+        final LogUploadQueue queue = newQueue(fastConfig());
+        queue.enqueue(getUrl(), FILE_NAME, HEADERS, Collections.singletonList("{\"id\":1}"));
+
+        await(() -> queue.getStats().pendingBatches == 0);
+        assertEquals(4, requests.size());
+        for (Request request : requests) {
+            assertEquals(bodyOf("{\"id\":1}"), request.body);
+        }
+
+        //100, 200 and 400 ms, less up to a fifth of jitter.
+        for (int i = 1; i < requests.size(); i++) {
+            final long gap = requests.get(i).receivedAt - requests.get(i - 1).receivedAt;
+            assertTrue("Retry " + i + " after " + gap + " ms", gap >= (100L << (i - 1)) * 8 / 10 - 10);
+        }
+
+        final LogUploadQueue.Stats stats = queue.getStats();
+        assertEquals(3, stats.failedAttempts);
+        assertEquals(0, stats.consecutiveFailures);
+        assertEquals(1, stats.uploadedLines);
+    }
+
+    @Test
+    public void dropsBatchesTheBackendRejects() throws Exception {
+        statuses.add(400);
+        final LogUploadQueue queue = newQueue(fastConfig());
+        queue.enqueue(getUrl(), FILE_NAME, HEADERS, Arrays.asList("{\"id\":1}", "{\"id\":2}"));
+
+        await(() -> queue.getStats().pendingBatches == 0);
+        assertEquals(1, requests.size());
+        assertEquals(2, queue.getStats().droppedLines);
+    }
+
+    @Test
+    public void keepsBatchesAcrossRestarts() throws Exception {
+        final LogUploadQueue.Config config = fastConfig();
+        config.coalescingDelayMillis = 60000;
+        final LogUploadQueue first = newQueue(config);
+        first.enqueue(getUrl(), FILE_NAME, HEADERS, Collections.singletonList("{\"id\":1}"));
+        first.enqueue(getUrl(), "interaction_state_transition.jsonl", HEADERS, Collections.singletonList("{\"id\":2}"));
+        schedulers.get(0).shutdownNow();
+        assertEquals(0, requests.size());
+
+        final LogUploadQueue second = newQueue(fastConfig());
+        assertEquals(2, second.getStats().pendingBatches);
+        await(() -> second.getStats().pendingBatches == 0);
+        assertEquals(2, requests.size());
+        assertEquals(bodyOf("{\"id\":1}"), requests.get(0).body);
+        assertEquals("session-1", requests.get(1).sessionId);
+        assertEquals(0, spoolDirectory.list().length);
+    }
+
+    @Test
+    public void boundsTheSpool() throws Exception {
+        final LogUploadQueue.Config config = fastConfig();
+        config.coalescingDelayMillis = 60000;
+        config.maxSpoolBatches = 3;
+        final LogUploadQueue queue = newQueue(config);
+        for (int i = 1; i <= 5; i++) {
+            queue.enqueue(getUrl(), FILE_NAME, HEADERS, Arrays.asList("{\"id\":" + i + "}", "{\"id\":" + i + "}"));
+        }
+
+        LogUploadQueue.Stats stats = queue.getStats();
+        assertEquals(3, stats.pendingBatches);
+        assertEquals(6, stats.pendingLines);
+        assertEquals(4, stats.droppedLines);
+
+        queue.flush();
+        await(() -> queue.getStats().pendingBatches == 0);
+        assertEquals(1, requests.size());
+        assertEquals(bodyOf("{\"id\":3}", "{\"id\":3}", "{\"id\":4}", "{\"id\":4}", "{\"id\":5}", "{\"id\":5}"), requests.get(0).body);
+    }
+
+    private static void deleteRecursively(File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
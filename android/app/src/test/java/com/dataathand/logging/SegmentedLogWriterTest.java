@@ -0,0 +1,141 @@
+package com.dataathand.logging;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentedLogWriterTest {
+
+    private static final String FILE_NAME = "speech_command.jsonl";
+
+    private File directory;
+    private ExecutorService executor;
+    private SegmentCompressor compressor;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("logs").toFile();
+        executor = Executors.newSingleThreadExecutor();
+        compressor = new SegmentCompressor(executor);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static List<String> makeLines(int from, int count) {
+        final List<String> lines = new ArrayList<>();
+        for (int i = from; i < from + count; i++) {
+            lines.add("{\"id\":" + i + ",\"inputText\":\"steps of last winter \u00e9\u4e2d\ud83d\ude00\"}");
+        }
+        return lines;
+    }
+
+    private List<File> listSegments() {
+        final File[] files = directory.listFiles((dir, name) -> name.endsWith(SegmentCompressor.COMPRESSED_SUFFIX));
+        final List<File> segments = new ArrayList<>(Arrays.asList(files));
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private static List<String> readLines(File segment) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(segment)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    @Test
+    public void rotatesAndCompressesSegments() throws Exception {
+        final SegmentedLogWriter writer = new SegmentedLogWriter(directory, FILE_NAME, 4 * 1024, compressor);
+        final List<String> expected = new ArrayList<>();
+        for (int batch = 0; batch < 20; batch++) {
+            final List<String> lines = makeLines(batch * 10, 10);
+            writer.append(lines);
+            expected.addAll(lines);
+        }
+        writer.seal();
+        compressor.awaitIdle(5000);
+
+        final List<File> segments = listSegments();
+        assertTrue(segments.size() > 1);
+        assertEquals("speech_command.000001.jsonl.gz", segments.get(0).getName());
+        assertFalse(writer.getActiveFile().exists());
+
+        final List<String> actual = new ArrayList<>();
+        for (File segment : segments) {
+            actual.addAll(readLines(segment));
+        }
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void encodesLinesLongerThanTheBuffer() throws Exception {
+        final StringBuilder builder = new StringBuilder();
+        while (builder.length() < 200 * 1024) {
+            builder.append("\u00e9\ud83d\ude00 steps ");
+        }
+        final List<String> lines = Arrays.asList("first", builder.toString(), "last");
+
+        final SegmentedLogWriter writer = new SegmentedLogWriter(directory, FILE_NAME, 1024 * 1024, compressor);
+        writer.append(lines);
+        writer.seal();
+        compressor.awaitIdle(5000);
+
+        assertEquals(lines, readLines(listSegments().get(0)));
+    }
+
+    @Test
+    public void recoversSegmentsOfAnEarlierProcess() throws Exception {
+        try (FileOutputStream output = new FileOutputStream(new File(directory, "speech_command.000003.jsonl"))) {
+            output.write("{\"id\":1}\n".getBytes(StandardCharsets.UTF_8));
+        }
+        try (FileOutputStream output = new FileOutputStream(new File(directory, FILE_NAME))) {
+            output.write("{\"id\":2}\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        final SegmentedLogWriter writer = new SegmentedLogWriter(directory, FILE_NAME, 1024 * 1024, compressor);
+        writer.append(Collections.singletonList("{\"id\":3}"));
+        writer.seal();
+        compressor.awaitIdle(5000);
+
+        final List<File> segments = listSegments();
+        assertEquals(2, segments.size());
+        assertEquals(Collections.singletonList("{\"id\":1}"), readLines(segments.get(0)));
+        assertEquals("speech_command.000004.jsonl.gz", segments.get(1).getName());
+        assertEquals(Arrays.asList("{\"id\":2}", "{\"id\":3}"), readLines(segments.get(1)));
+    }
+}
@@ -0,0 +1,101 @@
+package com.dataathand.speech;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MicrophoneStreamTest {
+
+    //Hands out a few chunks of silence, then fails like a microphone taken away by another app.
+    private static final class FailingSource implements AudioSource {
+        static final int ERROR = -6;
+
+        final AtomicInteger startCount = new AtomicInteger(0);
+        final AtomicInteger stopCount = new AtomicInteger(0);
+        private int chunksLeft;
+
+        @Override
+        public void start() {
+            startCount.incrementAndGet();
+            chunksLeft = 3;
+        }
+
+        @Override
+        public boolean isPaced() {
+            return false;
+        }
+
+        @Override
+        public int read(ByteBuffer buffer, int length) {
+            if (chunksLeft-- > 0) {
+                return length;
+            }
+            return ERROR;
+        }
+
+        @Override
+        public void stop() {
+            stopCount.incrementAndGet();
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+
+    private static int drain(MicrophoneStream stream) {
+        final byte[] bytes = new byte[MicrophoneStream.BYTES_PER_SECOND / 10];
+        int total = 0;
+        int read;
+        while ((read = stream.read(bytes)) > 0) {
+            total += read;
+        }
+        return total;
+    }
+
+    @Test
+    public void aFailedReadEndsTheStreamAndIsReported() throws InterruptedException {
+        final FailingSource source = new FailingSource();
+        final MicrophoneStream stream = new MicrophoneStream(source);
+        final AtomicInteger reportedError = new AtomicInteger(0);
+        final CountDownLatch reported = new CountDownLatch(1);
+        stream.setCaptureErrorListener(errorCode -> {
+            reportedError.set(errorCode);
+            reported.countDown();
+        });
+
+        stream.startCapture();
+
+        //The reader would block forever if the buffer were left open.
+        assertEquals(3 * MicrophoneStream.BYTES_PER_SECOND / 50, drain(stream));
+        assertTrue(reported.await(5, TimeUnit.SECONDS));
+        assertEquals(FailingSource.ERROR, reportedError.get());
+
+        stream.stopCapture();
+        assertEquals(1, source.stopCount.get());
+    }
+
+    @Test
+    public void captureRestartsAfterAFailedRead() {
+        final FailingSource source = new FailingSource();
+        final MicrophoneStream stream = new MicrophoneStream(source);
+
+        stream.startCapture();
+        drain(stream);
+
+        //The failed capture is cleaned up by the next start.
+        stream.startCapture();
+        assertEquals(2, source.startCount.get());
+        assertEquals(1, source.stopCount.get());
+        assertEquals(3 * MicrophoneStream.BYTES_PER_SECOND / 50, drain(stream));
+
+        stream.release();
+        assertEquals(2, source.stopCount.get());
+    }
+}
@@ -0,0 +1,182 @@
+package com.dataathand.speech;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RecognizerSelectorTest {
+
+    //Drives the selector the way a recognizer module does, with a scripted outcome per session.
+    private static class FakeRecognizer {
+        final RecognizerSelector.Backend backend;
+        long timeToFirstResultMillis = 500;
+        boolean isFailing = false;
+
+        FakeRecognizer(RecognizerSelector selector, String name, boolean isOnDevice) {
+            backend = selector.register(name, isOnDevice);
+        }
+
+        void serve(RecognizerSelector selector, long now) {
+            if (isFailing) {
+                selector.recordFailure(backend, now);
+            } else {
+                selector.recordFirstResult(backend, timeToFirstResultMillis);
+                selector.recordSuccess(backend);
+            }
+        }
+    }
+
+    private RecognizerSelector selector;
+    private FakeRecognizer cloud;
+    private FakeRecognizer onDevice;
+
+    @Before
+    public void setUp() {
+        selector = new RecognizerSelector();
+        //Registered cloud first to check that on-device preference reorders them.
+        cloud = new FakeRecognizer(selector, "cloud", false);
+        onDevice = new FakeRecognizer(selector, "onDevice", true);
+    }
+
+    //Selects a backend and lets it serve the session, falling back once like SelectingSpeechToTextModule does.
+    private RecognizerSelector.Backend runSession(long now) {
+        final RecognizerSelector.Backend selected = selector.select(now);
+        final FakeRecognizer recognizer = selected == onDevice.backend ? onDevice : cloud;
+        recognizer.serve(selector, now);
+        if (recognizer.isFailing) {
+            final RecognizerSelector.Backend fallback = selector.selectFallback(selected, now);
+            if (fallback != null) {
+                (fallback == onDevice.backend ? onDevice : cloud).serve(selector, now);
+                return fallback;
+            }
+        }
+        return selected;
+    }
+
+    @Test
+    public void prefersOnDeviceRecognition() {
+        assertSame(onDevice.backend, selector.select(0));
+
+        selector.setOnDevicePreferred(false);
+        assertSame(cloud.backend, selector.select(0));
+    }
+
+    @Test
+    public void skipsUnavailableBackends() {
+        selector.setAvailable(onDevice.backend, false);
+        assertSame(cloud.backend, selector.select(0));
+
+        selector.setAvailable(cloud.backend, false);
+        assertFalse(selector.hasAvailableBackend());
+        assertNull(selector.select(0));
+    }
+
+    @Test
+    public void fallsBackAndBenchesAFailingBackend() {
+        onDevice.isFailing = true;
+
+        assertSame(cloud.backend, runSession(0));
+
+        //Benched for the cool-down, so the next sessions go straight to the cloud.
+        assertSame(cloud.backend, selector.select(1000));
+        assertSame(cloud.backend, selector.select(RecognizerSelector.INITIAL_COOL_DOWN_MILLIS - 1));
+
+        //Tried again once the cool-down is over.
+        assertSame(onDevice.backend, selector.select(RecognizerSelector.INITIAL_COOL_DOWN_MILLIS));
+    }
+
+    @Test
+    public void coolDownDoublesWithConsecutiveFailures() {
+        onDevice.isFailing = true;
+        long now = 0;
+        runSession(now);
+
+        now += RecognizerSelector.INITIAL_COOL_DOWN_MILLIS;
+        assertSame(onDevice.backend, selector.select(now));
+        onDevice.serve(selector, now);
+
+        assertSame(cloud.backend, selector.select(now + RecognizerSelector.INITIAL_COOL_DOWN_MILLIS));
+        assertSame(onDevice.backend, selector.select(now + 2 * RecognizerSelector.INITIAL_COOL_DOWN_MILLIS));
+
+        //A success clears the record.
+        onDevice.isFailing = false;
+        now += 2 * RecognizerSelector.INITIAL_COOL_DOWN_MILLIS;
+        assertSame(onDevice.backend, runSession(now));
+        onDevice.isFailing = true;
+        runSession(now);
+        assertSame(onDevice.backend, selector.select(now + RecognizerSelector.INITIAL_COOL_DOWN_MILLIS));
+    }
+
+    @Test
+    public void coolDownIsCapped() {
+        for (int i = 0; i < 40; i++) {
+            selector.recordFailure(onDevice.backend, 0);
+        }
+        assertEquals(RecognizerSelector.MAX_COOL_DOWN_MILLIS, selector.getStats(0).get(1).retryInMillis);
+    }
+
+    @Test
+    public void noFallbackWhenTheOtherBackendIsBenchedToo() {
+        onDevice.isFailing = true;
+        cloud.isFailing = true;
+        runSession(0);
+
+        assertNull(selector.selectFallback(onDevice.backend, 1000));
+
+        //Still listens with whichever recovers first rather than refusing.
+        assertSame(onDevice.backend, selector.select(1000));
+    }
+
+    @Test
+    public void switchesToAMuchFasterBackend() {
+        onDevice.timeToFirstResultMillis = 2500;
+        cloud.timeToFirstResultMillis = 600;
+
+        //The cloud backend has no latency record yet, so on-device stays.
+        for (int i = 0; i < RecognizerSelector.MIN_LATENCY_SAMPLES; i++) {
+            assertSame(onDevice.backend, runSession(i));
+        }
+
+        for (int i = 0; i < RecognizerSelector.MIN_LATENCY_SAMPLES; i++) {
+            cloud.serve(selector, i);
+        }
+        assertSame(cloud.backend, runSession(10));
+
+        //A backend that is only somewhat slower keeps its preference.
+        onDevice.timeToFirstResultMillis = 900;
+        for (int i = 0; i < 20; i++) {
+            onDevice.serve(selector, i);
+        }
+        assertSame(onDevice.backend, runSession(20));
+    }
+
+    @Test
+    public void reportsStats() {
+        onDevice.isFailing = true;
+        cloud.timeToFirstResultMillis = 700;
+        runSession(0);
+
+        final List<RecognizerSelector.BackendStats> stats = selector.getStats(1000);
+        assertEquals(2, stats.size());
+
+        final RecognizerSelector.BackendStats cloudStats = stats.get(0);
+        assertEquals("cloud", cloudStats.name);
+        assertTrue(cloudStats.isHealthy);
+        assertEquals(1, cloudStats.selectedCount);
+        assertEquals(1, cloudStats.succeededCount);
+        assertEquals(700, cloudStats.lastTimeToFirstResultMillis);
+
+        final RecognizerSelector.BackendStats onDeviceStats = stats.get(1);
+        assertTrue(onDeviceStats.isOnDevice);
+        assertFalse(onDeviceStats.isHealthy);
+        assertEquals(1, onDeviceStats.failedCount);
+        assertEquals(RecognizerSelector.INITIAL_COOL_DOWN_MILLIS - 1000, onDeviceStats.retryInMillis);
+    }
+}
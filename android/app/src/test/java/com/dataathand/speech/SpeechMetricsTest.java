@@ -0,0 +1,114 @@
+package com.dataathand.speech;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SpeechMetricsTest {
+
+    @Test
+    public void bucketsCoverEveryValueInOrder() {
+        assertEquals(0, LatencyHistogram.indexOf(0));
+        assertEquals(31, LatencyHistogram.indexOf(31));
+        for (long value = 0; value < 1 << 20; value++) {
+            final int index = LatencyHistogram.indexOf(value);
+            assertTrue("Value " + value, value <= LatencyHistogram.highestEquivalentValue(index));
+            assertTrue("Value " + value, index == 0 || value > LatencyHistogram.highestEquivalentValue(index - 1));
+        }
+        assertEquals(LatencyHistogram.MAX_VALUE, LatencyHistogram.highestEquivalentValue(LatencyHistogram.indexOf(LatencyHistogram.MAX_VALUE)));
+    }
+
+    @Test
+    public void percentilesStayWithinASixteenth() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final List<Long> values = new ArrayList<>();
+        final Random random = new Random(7);
+        for (int i = 0; i < 10000; i++) {
+            final long value = (long) Math.exp(random.nextDouble() * Math.log(60000));
+            values.add(value);
+            histogram.record(value);
+        }
+        values.sort(Long::compare);
+
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(10000, snapshot.count);
+        assertEquals(values.get(values.size() - 1).longValue(), snapshot.max);
+        for (double percentile : new double[]{50, 90, 99, 100}) {
+            final long exact = values.get((int) Math.ceil(percentile / 100 * values.size()) - 1);
+            final long estimate = snapshot.getPercentile(percentile);
+            assertTrue(percentile + ": " + estimate + " for " + exact, estimate >= exact && estimate <= exact + exact / 16);
+        }
+    }
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        final LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+        assertEquals(0, snapshot.getPercentile(99));
+        assertEquals(0, snapshot.getMean(), 0);
+    }
+
+    @Test
+    public void recordsOneSessionOnce() {
+        final SpeechMetrics metrics = new SpeechMetrics();
+        metrics.markStartRequested(1000);
+        metrics.markSessionStarted(1300);
+        metrics.markPartial(1800);
+        metrics.markPartial(2000);
+        metrics.markFinal();
+        metrics.markStopRequested(3000);
+        metrics.markSessionEnded(3100, false);
+        //Recognizers may report the stop again.
+        metrics.markSessionEnded(3200, false);
+
+        final Map<String, Object> snapshot = metrics.snapshot();
+        assertEquals(1L, snapshot.get("sessions"));
+        assertEquals(0L, snapshot.get("errors"));
+        assertEquals(2L, snapshot.get("partials"));
+        assertEquals(1800L, snapshot.get("sessionMillis"));
+        assertEquals(2 * 1000.0 / 1800, (double) snapshot.get("partialRateHz"), 1e-9);
+        assertEquals(300L, histogram(snapshot, "startLatencyMillis").get("p50"));
+        assertEquals(800L, histogram(snapshot, "firstPartialMillis").get("p50"));
+        assertEquals(200L, histogram(snapshot, "partialIntervalMillis").get("max"));
+        assertEquals(1L, histogram(snapshot, "stopLatencyMillis").get("count"));
+        assertEquals(100L, histogram(snapshot, "stopLatencyMillis").get("max"));
+    }
+
+    @Test
+    public void countsSessionsThatFailToStartAsErrors() {
+        final SpeechMetrics metrics = new SpeechMetrics();
+        metrics.markStartRequested(1000);
+        metrics.markSessionEnded(1500, true);
+        metrics.recordOverrun(0);
+        metrics.recordOverrun(640);
+
+        final Map<String, Object> snapshot = metrics.snapshot();
+        assertEquals(0L, snapshot.get("sessions"));
+        assertEquals(1L, snapshot.get("errors"));
+        assertEquals(640L, snapshot.get("overrunBytes"));
+        assertEquals(1L, snapshot.get("overrunSessions"));
+        assertEquals(0L, histogram(snapshot, "firstPartialMillis").get("count"));
+    }
+
+    @Test
+    public void summariesAreFlat() {
+        final SpeechMetrics metrics = new SpeechMetrics();
+        metrics.recordRestart(120);
+        final Map<String, Object> summary = SpeechMetricsReporter.summarize(metrics.snapshot());
+        assertEquals(1L, summary.get("restarts"));
+        assertEquals(120L, summary.get("restartLatencyMillis.p99"));
+        for (Object value : summary.values()) {
+            assertTrue(value instanceof Number);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> histogram(Map<String, Object> snapshot, String name) {
+        return (Map<String, Object>) snapshot.get(name);
+    }
+}
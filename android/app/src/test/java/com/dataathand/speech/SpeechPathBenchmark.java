@@ -0,0 +1,285 @@
+package com.dataathand.speech;
+
+import com.dataathand.speech.nlp.IncrementalSpeechParser;
+import com.dataathand.speech.text.SpeechTexts;
+import com.dataathand.speech.text.TranscriptAccumulator;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+//Replays a recording through the speech path of each recognizer module and reports latency and cost per session.
+//The modules need a React context, so their pipelines are assembled here from the same parts:
+//- Microsoft: MicrophoneStream pulled by the recognizer, TranscriptAccumulator(true), PartialResultCoalescer.
+//- Default: the recognizer records by itself in cycles, TranscriptAccumulator(false), PartialResultCoalescer.
+//Both end in the incremental preprocessing that ASpeechToTextModule runs on every emitted hypothesis.
+//Latencies run from when the audio of the newest word was captured to when its hypothesis was ready to cross the bridge.
+//Partials are also measured as offered to the coalescer, so that every hypothesis counts and not only those it lets through.
+class SpeechPathBenchmark {
+
+    enum Pipeline {
+        Microsoft, Default
+    }
+
+    static class Options {
+        boolean isRealTime = false;
+        long decodeMicros = 0;
+        //The restart gap of the default recognizer between cycles.
+        int restartGapMillis = 300;
+        long coalescingWindowMillis = PartialResultCoalescer.DEFAULT_WINDOW_MILLIS;
+        boolean isPreprocessing = true;
+    }
+
+    static class SessionReport {
+        final Pipeline pipeline;
+        final double[] captureToOfferedPartialMillis;
+        final double[] captureToPartialMillis;
+        final double[] captureToFinalMillis;
+        final int offeredCount;
+        final int emittedCount;
+        final double durationMillis;
+        //-1 when the JVM cannot count allocations per thread.
+        final long allocatedBytes;
+        final long overrunBytes;
+        final int lostWordCount;
+        final String transcript;
+
+        private SessionReport(Pipeline pipeline, List<Double> captureToOfferedPartialMillis, List<Double> captureToPartialMillis, List<Double> captureToFinalMillis,
+                              int offeredCount, int emittedCount, double durationMillis, long allocatedBytes,
+                              long overrunBytes, int lostWordCount, String transcript) {
+            this.pipeline = pipeline;
+            this.captureToOfferedPartialMillis = toSortedArray(captureToOfferedPartialMillis);
+            this.captureToPartialMillis = toSortedArray(captureToPartialMillis);
+            this.captureToFinalMillis = toSortedArray(captureToFinalMillis);
+            this.offeredCount = offeredCount;
+            this.emittedCount = emittedCount;
+            this.durationMillis = durationMillis;
+            this.allocatedBytes = allocatedBytes;
+            this.overrunBytes = overrunBytes;
+            this.lostWordCount = lostWordCount;
+            this.transcript = transcript;
+        }
+
+        double getEventsPerSecond() {
+            return durationMillis > 0 ? emittedCount * 1000 / durationMillis : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%-9s offered partial p50 %6.2f p95 %6.2f max %6.2f ms | emitted partial p50 %6.2f p95 %6.2f max %6.2f ms | final p50 %6.2f max %6.2f ms | %d/%d events, %.1f/s | %d KiB allocated | %d bytes overrun, %d words lost",
+                    pipeline,
+                    percentile(captureToOfferedPartialMillis, 0.5), percentile(captureToOfferedPartialMillis, 0.95), percentile(captureToOfferedPartialMillis, 1),
+                    percentile(captureToPartialMillis, 0.5), percentile(captureToPartialMillis, 0.95), percentile(captureToPartialMillis, 1),
+                    percentile(captureToFinalMillis, 0.5), percentile(captureToFinalMillis, 1),
+                    emittedCount, offeredCount, getEventsPerSecond(),
+                    allocatedBytes >= 0 ? allocatedBytes / 1024 : -1,
+                    overrunBytes, lostWordCount);
+        }
+    }
+
+    private static final LocalDate TODAY = LocalDate.of(2020, 3, 1);
+
+    private final SyntheticSpeech speech;
+    private final Options options;
+
+    SpeechPathBenchmark(SyntheticSpeech speech, Options options) {
+        this.speech = speech;
+        this.options = options;
+    }
+
+    SessionReport run(Pipeline pipeline) throws InterruptedException {
+        final Thread[] emissionThread = new Thread[1];
+        final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            final Thread thread = new Thread(r, "benchmark-emission");
+            thread.setDaemon(true);
+            emissionThread[0] = thread;
+            return thread;
+        });
+        //Starts the thread up front so that its allocations can be counted from the beginning.
+        scheduler.prestartCoreThread();
+
+        try {
+            return run(pipeline, scheduler, emissionThread[0]);
+        } finally {
+            scheduler.shutdownNow();
+            scheduler.awaitTermination(1, TimeUnit.SECONDS);
+        }
+    }
+
+    private SessionReport run(Pipeline pipeline, ScheduledExecutorService scheduler, Thread emissionThread) throws InterruptedException {
+        final PcmReplaySource replay = new PcmReplaySource(speech.pcm, options.isRealTime);
+        final IncrementalSpeechParser parser = options.isPreprocessing ? new IncrementalSpeechParser(TODAY, 0) : null;
+
+        //Guarded by itself. Hypotheses are offered on the recognizer thread and may be emitted on the emission thread.
+        final Map<String, Integer> audioOffsets = new HashMap<>();
+        final Set<String> finals = new HashSet<>();
+        //Only touched on the recognizer thread.
+        final List<Double> captureToOfferedPartialMillis = new ArrayList<>();
+        final List<Double> captureToPartialMillis = new ArrayList<>();
+        final List<Double> captureToFinalMillis = new ArrayList<>();
+
+        final PartialResultCoalescer coalescer = new PartialResultCoalescer(scheduler, text -> {
+            if (parser != null) {
+                parser.update(text);
+            }
+            final long readyAt = System.nanoTime();
+            synchronized (audioOffsets) {
+                final Integer offset = audioOffsets.get(text);
+                if (offset != null) {
+                    final double latency = (readyAt - replay.getDeliveredAtNanos(offset - 1)) / 1e6;
+                    (finals.contains(text) ? captureToFinalMillis : captureToPartialMillis).add(latency);
+                }
+            }
+        });
+        coalescer.setWindowMillis(options.coalescingWindowMillis);
+
+        final int[] offeredCount = new int[1];
+        final String[] committed = new String[1];
+        final TranscriptAccumulator transcript = new TranscriptAccumulator(pipeline == Pipeline.Microsoft);
+        final StandInRecognizer recognizer = new StandInRecognizer(speech, options.decodeMicros, new StandInRecognizer.Listener() {
+            @Override
+            public void onPartial(String hypothesis, int audioOffset) {
+                final String stitched = transcript.stitch(hypothesis);
+                synchronized (audioOffsets) {
+                    audioOffsets.put(stitched, audioOffset);
+                }
+                offeredCount[0]++;
+                captureToOfferedPartialMillis.add((System.nanoTime() - replay.getDeliveredAtNanos(audioOffset - 1)) / 1e6);
+                coalescer.offerPartial(stitched);
+            }
+
+            @Override
+            public void onFinal(String text, int audioOffset) {
+                transcript.commit(pipeline == Pipeline.Microsoft ? SpeechTexts.toSegment(text) : text);
+                final String stitched = transcript.getCommitted();
+                synchronized (audioOffsets) {
+                    audioOffsets.put(stitched, audioOffset);
+                    finals.add(stitched);
+                }
+                offeredCount[0]++;
+                committed[0] = stitched;
+                coalescer.offerFinal(stitched);
+            }
+        });
+
+        final long[] threadAllocatedBytes = new long[2];
+        final long emissionAllocatedAtStart = allocatedBytes(emissionThread);
+        final MicrophoneStream stream;
+        final Thread recognizerThread;
+        if (pipeline == Pipeline.Microsoft) {
+            stream = new MicrophoneStream(new AudioSource() {
+                private long allocatedAtStart = -1;
+
+                @Override
+                public void start() {
+                    replay.start();
+                }
+
+                @Override
+                public boolean isPaced() {
+                    return replay.isPaced();
+                }
+
+                @Override
+                public int read(ByteBuffer buffer, int length) {
+                    if (allocatedAtStart < 0) {
+                        allocatedAtStart = allocatedBytes(Thread.currentThread());
+                    }
+                    final int read = replay.read(buffer, length);
+                    if (read == END_OF_STREAM) {
+                        threadAllocatedBytes[1] = allocatedBytes(Thread.currentThread()) - allocatedAtStart;
+                    }
+                    return read;
+                }
+
+                @Override
+                public void stop() {
+                    replay.stop();
+                }
+
+                @Override
+                public void release() {
+                    replay.release();
+                }
+            });
+            recognizerThread = new Thread(() -> {
+                final long allocatedAtStart = allocatedBytes(Thread.currentThread());
+                recognizer.pull(stream);
+                threadAllocatedBytes[0] = allocatedBytes(Thread.currentThread()) - allocatedAtStart;
+            }, "benchmark-recognizer");
+        } else {
+            stream = null;
+            recognizerThread = new Thread(() -> {
+                final long allocatedAtStart = allocatedBytes(Thread.currentThread());
+                replay.start();
+                recognizer.listenInCycles(replay, options.restartGapMillis);
+                replay.stop();
+                threadAllocatedBytes[0] = allocatedBytes(Thread.currentThread()) - allocatedAtStart;
+            }, "benchmark-recognizer");
+        }
+
+        final long startedAt = System.nanoTime();
+        if (stream != null) {
+            stream.startCapture();
+        }
+        recognizerThread.start();
+        recognizerThread.join();
+        coalescer.flush();
+        final double durationMillis = (System.nanoTime() - startedAt) / 1e6;
+
+        long overrunBytes = 0;
+        if (stream != null) {
+            stream.stopCapture();
+            overrunBytes = stream.getOverrunBytes();
+        }
+
+        final long emissionAllocated = allocatedBytes(emissionThread) - emissionAllocatedAtStart;
+        final long allocated = emissionAllocatedAtStart < 0 ? -1 : threadAllocatedBytes[0] + threadAllocatedBytes[1] + emissionAllocated;
+
+        synchronized (audioOffsets) {
+            return new SessionReport(pipeline, captureToOfferedPartialMillis, captureToPartialMillis, captureToFinalMillis, offeredCount[0],
+                    (int) coalescer.getEmittedCount(), durationMillis, allocated, overrunBytes, recognizer.getLostWordCount(), committed[0]);
+        }
+    }
+
+    private static long allocatedBytes(Thread thread) {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean hotSpotBean = (com.sun.management.ThreadMXBean) bean;
+            if (hotSpotBean.isThreadAllocatedMemorySupported() && hotSpotBean.isThreadAllocatedMemoryEnabled()) {
+                return hotSpotBean.getThreadAllocatedBytes(thread.getId());
+            }
+        }
+        return -1;
+    }
+
+    private static double[] toSortedArray(List<Double> values) {
+        final double[] array = new double[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        Arrays.sort(array);
+        return array;
+    }
+
+    static double percentile(double[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        final int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
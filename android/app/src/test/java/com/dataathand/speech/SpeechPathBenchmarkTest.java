@@ -0,0 +1,95 @@
+package com.dataathand.speech;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+//The unit suite replays as fast as possible and only checks that every session arrives whole.
+//With -Pbenchmark, the sessions are replayed in real time, as a user would speak, and their latencies are reported.
+public class SpeechPathBenchmarkTest {
+
+    private static final int WARM_UP_SESSIONS = 2;
+
+    private static final SyntheticSpeech SPEECH = SyntheticSpeech.of(7,
+            "compare steps of last winter with this winter",
+            "show me hours slept from january to march",
+            "weight since last monday by day of week");
+
+    private static SpeechPathBenchmark.SessionReport replay(SpeechPathBenchmark.Pipeline pipeline, boolean isRealTime) throws InterruptedException {
+        final SpeechPathBenchmark.Options options = new SpeechPathBenchmark.Options();
+        options.isRealTime = isRealTime;
+        return new SpeechPathBenchmark(SPEECH, options).run(pipeline);
+    }
+
+    private static SpeechPathBenchmark.SessionReport benchmark(SpeechPathBenchmark.Pipeline pipeline) throws InterruptedException {
+        Assume.assumeTrue("Run with -Pbenchmark", Boolean.getBoolean("benchmark"));
+        for (int i = 0; i < WARM_UP_SESSIONS; i++) {
+            replay(pipeline, false);
+        }
+        final SpeechPathBenchmark.SessionReport report = replay(pipeline, true);
+        System.out.println(report);
+        return report;
+    }
+
+    private static void assertCompleteSession(SpeechPathBenchmark.SessionReport report) {
+        assertEquals(SPEECH.getTranscript(), report.transcript);
+        assertEquals(0, report.overrunBytes);
+        assertEquals(0, report.lostWordCount);
+        assertEquals(SPEECH.utterances.size(), report.captureToFinalMillis.length);
+        assertEquals(report.offeredCount - SPEECH.utterances.size(), report.captureToOfferedPartialMillis.length);
+        assertTrue(report.captureToPartialMillis.length > 0);
+        assertTrue(report.emittedCount <= report.offeredCount);
+        assertTrue(report.captureToOfferedPartialMillis[0] >= 0);
+        assertTrue(report.captureToPartialMillis[0] >= 0);
+        assertTrue(report.captureToFinalMillis[0] >= 0);
+    }
+
+    @Test
+    public void microsoftPipeline() throws InterruptedException {
+        assertCompleteSession(replay(SpeechPathBenchmark.Pipeline.Microsoft, false));
+    }
+
+    @Test
+    public void defaultPipeline() throws InterruptedException {
+        assertCompleteSession(replay(SpeechPathBenchmark.Pipeline.Default, false));
+    }
+
+    @Test
+    public void benchmarkMicrosoftPipeline() throws InterruptedException {
+        assertCompleteSession(benchmark(SpeechPathBenchmark.Pipeline.Microsoft));
+    }
+
+    @Test
+    public void benchmarkDefaultPipeline() throws InterruptedException {
+        assertCompleteSession(benchmark(SpeechPathBenchmark.Pipeline.Default));
+    }
+
+    @Test
+    public void replaysWavFiles() throws Exception {
+        final byte[] wav = new byte[44 + 8];
+        final ByteBuffer header = ByteBuffer.wrap(wav).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("RIFF".getBytes("US-ASCII")).putInt(wav.length - 8).put("WAVE".getBytes("US-ASCII"));
+        header.put("fmt ".getBytes("US-ASCII")).putInt(16).putShort((short) 1).putShort((short) 1)
+                .putInt(MicrophoneStream.SAMPLE_RATE).putInt(MicrophoneStream.BYTES_PER_SECOND).putShort((short) 2).putShort((short) 16);
+        header.put("data".getBytes("US-ASCII")).putInt(8).putShort((short) 1).putShort((short) 2).putShort((short) 3).putShort((short) 4);
+
+        final byte[] pcm = PcmReplaySource.readPcm(new ByteArrayInputStream(wav));
+        assertEquals(8, pcm.length);
+        assertEquals(3, pcm[4]);
+
+        final PcmReplaySource source = new PcmReplaySource(pcm, false);
+        final ByteBuffer buffer = ByteBuffer.allocate(6);
+        source.start();
+        assertEquals(6, source.read(buffer, 6));
+        assertEquals(2, source.read(buffer, 6));
+        assertEquals(4, buffer.get(0));
+        assertEquals(AudioSource.END_OF_STREAM, source.read(buffer, 6));
+        assertTrue(source.getDeliveredAtNanos(7) > 0);
+    }
+}
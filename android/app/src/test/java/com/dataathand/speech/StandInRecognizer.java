@@ -0,0 +1,121 @@
+package com.dataathand.speech;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+//A local stand-in for a recognition backend. Instead of decoding, it follows the script of a SyntheticSpeech:
+//a partial hypothesis as soon as the audio of a word has been consumed,
+//and a final result once the utterance has been followed by ENDPOINT_MILLIS of audio.
+class StandInRecognizer {
+
+    static final int ENDPOINT_MILLIS = 500;
+
+    interface Listener {
+        //audioOffset is where the audio of the newest word ends.
+        void onPartial(String hypothesis, int audioOffset);
+
+        void onFinal(String text, int audioOffset);
+    }
+
+    private final SyntheticSpeech speech;
+    private final long decodeNanos;
+    private final Listener listener;
+
+    private int utteranceIndex = 0;
+    private int wordCount = 0;
+    private long lostUntil = 0;
+    private int lostWordCount = 0;
+
+    /**
+     * @param decodeMicros simulated decoding work per hypothesis.
+     */
+    StandInRecognizer(SyntheticSpeech speech, long decodeMicros, Listener listener) {
+        this.speech = speech;
+        this.decodeNanos = TimeUnit.MICROSECONDS.toNanos(decodeMicros);
+        this.listener = listener;
+    }
+
+    int getLostWordCount() {
+        return lostWordCount;
+    }
+
+    //Pulls audio until the stream ends, the way the Speech SDK reads a PullAudioInputStreamCallback.
+    void pull(MicrophoneStream stream) {
+        final byte[] buffer = new byte[MicrophoneStream.BYTES_PER_SECOND / 10];
+        long consumed = 0;
+        int read;
+        while ((read = stream.read(buffer)) > 0) {
+            consumed += read;
+            advance(consumed, false);
+        }
+        finish();
+    }
+
+    /**
+     * Reads the source itself in 20 ms chunks, the way the platform recognizer records on its own.
+     * After every end of speech, {@code restartGapMillis} of audio go unheard while the next cycle starts.
+     */
+    void listenInCycles(AudioSource source, int restartGapMillis) {
+        final int chunkBytes = MicrophoneStream.BYTES_PER_SECOND / 50;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(chunkBytes).order(ByteOrder.LITTLE_ENDIAN);
+        final long gapBytes = (long) MicrophoneStream.BYTES_PER_SECOND * restartGapMillis / 1000;
+        long consumed = 0;
+        int read;
+        while ((read = source.read(buffer, chunkBytes)) > 0) {
+            consumed += read;
+            if (advance(consumed, true)) {
+                lostUntil = consumed + gapBytes;
+            }
+        }
+        finish();
+    }
+
+    //Returns whether an utterance was finalized.
+    private boolean advance(long consumed, boolean canLoseWords) {
+        boolean hasFinalized = false;
+        while (utteranceIndex < speech.utterances.size()) {
+            final SyntheticSpeech.Utterance utterance = speech.utterances.get(utteranceIndex);
+            if (wordCount < utterance.words.size()) {
+                final SyntheticSpeech.Word word = utterance.words.get(wordCount);
+                if (consumed < word.endOffset) {
+                    break;
+                }
+                wordCount++;
+                if (canLoseWords && word.endOffset - MicrophoneStream.BYTES_PER_SECOND / 1000 * SyntheticSpeech.WORD_MILLIS < lostUntil) {
+                    lostWordCount++;
+                    continue;
+                }
+                decode();
+                listener.onPartial(utterance.getText(wordCount), word.endOffset);
+            } else {
+                if (consumed < utterance.getEndOffset() + MicrophoneStream.BYTES_PER_SECOND / 1000 * ENDPOINT_MILLIS) {
+                    break;
+                }
+                decode();
+                listener.onFinal(utterance.getText(wordCount), utterance.getEndOffset());
+                utteranceIndex++;
+                wordCount = 0;
+                hasFinalized = true;
+            }
+        }
+        return hasFinalized;
+    }
+
+    //The stream ended in the middle of an utterance.
+    private void finish() {
+        if (utteranceIndex < speech.utterances.size() && wordCount > 0) {
+            final SyntheticSpeech.Utterance utterance = speech.utterances.get(utteranceIndex);
+            listener.onFinal(utterance.getText(wordCount), utterance.words.get(wordCount - 1).endOffset);
+            utteranceIndex++;
+            wordCount = 0;
+        }
+    }
+
+    private void decode() {
+        if (decodeNanos > 0) {
+            LockSupport.parkNanos(this, decodeNanos);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.dataathand.speech;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+//Builds a recording of tone bursts, one per word, together with where each word ends.
+//The voice activity detector takes the bursts for speech and the quiet stretches between utterances for silence.
+class SyntheticSpeech {
+
+    static final int WORD_MILLIS = 260;
+    static final int WORD_GAP_MILLIS = 90;
+    static final int UTTERANCE_GAP_MILLIS = 1400;
+    static final int LEADING_SILENCE_MILLIS = 500;
+    static final int TRAILING_SILENCE_MILLIS = 1500;
+
+    static class Word {
+        final String text;
+        //Byte offset just past the word's audio.
+        final int endOffset;
+
+        Word(String text, int endOffset) {
+            this.text = text;
+            this.endOffset = endOffset;
+        }
+    }
+
+    static class Utterance {
+        final List<Word> words = new ArrayList<>();
+
+        int getEndOffset() {
+            return words.get(words.size() - 1).endOffset;
+        }
+
+        String getText(int wordCount) {
+            final StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < wordCount; i++) {
+                if (i > 0) {
+                    builder.append(' ');
+                }
+                builder.append(words.get(i).text);
+            }
+            return builder.toString();
+        }
+    }
+
+    final byte[] pcm;
+    final List<Utterance> utterances;
+
+    private SyntheticSpeech(byte[] pcm, List<Utterance> utterances) {
+        this.pcm = pcm;
+        this.utterances = utterances;
+    }
+
+    String getTranscript() {
+        final StringBuilder builder = new StringBuilder();
+        for (Utterance utterance : utterances) {
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            builder.append(utterance.getText(utterance.words.size()));
+        }
+        return builder.toString();
+    }
+
+    static SyntheticSpeech of(long seed, String... sentences) {
+        final Random random = new Random(seed);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final List<Utterance> utterances = new ArrayList<>();
+
+        appendNoise(output, LEADING_SILENCE_MILLIS, random);
+        for (int s = 0; s < sentences.length; s++) {
+            if (s > 0) {
+                appendNoise(output, UTTERANCE_GAP_MILLIS, random);
+            }
+
+            final Utterance utterance = new Utterance();
+            final List<String> words = Arrays.asList(sentences[s].split("\\s+"));
+            for (int w = 0; w < words.size(); w++) {
+                if (w > 0) {
+                    appendNoise(output, WORD_GAP_MILLIS, random);
+                }
+                appendTone(output, WORD_MILLIS, 180 + random.nextInt(300), random);
+                utterance.words.add(new Word(words.get(w), output.size()));
+            }
+            utterances.add(utterance);
+        }
+        appendNoise(output, TRAILING_SILENCE_MILLIS, random);
+
+        return new SyntheticSpeech(output.toByteArray(), utterances);
+    }
+
+    private static int bytesOf(int millis) {
+        return MicrophoneStream.BYTES_PER_SECOND / 1000 * millis;
+    }
+
+    private static void appendNoise(ByteArrayOutputStream output, int millis, Random random) {
+        final ByteBuffer samples = ByteBuffer.allocate(bytesOf(millis)).order(ByteOrder.LITTLE_ENDIAN);
+        while (samples.hasRemaining()) {
+            samples.putShort((short) (random.nextGaussian() * 30));
+        }
+        output.write(samples.array(), 0, samples.capacity());
+    }
+
+    private static void appendTone(ByteArrayOutputStream output, int millis, int frequency, Random random) {
+        final ByteBuffer samples = ByteBuffer.allocate(bytesOf(millis)).order(ByteOrder.LITTLE_ENDIAN);
+        final int count = samples.capacity() / 2;
+        for (int i = 0; i < count; i++) {
+            //Ramps at both ends keep the onset from clicking.
+            final double envelope = Math.min(1, Math.min(i, count - i) / 160.0);
+            final double tone = Math.sin(2 * Math.PI * frequency * i / MicrophoneStream.SAMPLE_RATE) * 9000 * envelope;
+            samples.putShort((short) (tone + random.nextGaussian() * 30));
+        }
+        output.write(samples.array(), 0, samples.capacity());
+    }
+}
@@ -0,0 +1,147 @@
+package com.dataathand.speech;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+//Replays the 16 kHz PCM fixtures in src/test/resources/speech in 20 ms frames, as MicrophoneStream captures them:
+//- vad-speech.wav: room tone, an utterance of voiced syllables and a fricative from 500 to 2100 ms, then room tone.
+//- vad-silence.wav: a muted microphone.
+//- vad-noise.wav: a fan, steady low-passed noise under a hum.
+public class VoiceActivityDetectorTest {
+
+    private static final int FRAME_BYTES = MicrophoneStream.BYTES_PER_SECOND / 50;
+    private static final int FRAME_MILLIS = 20;
+
+    private static final int UTTERANCE_START_MILLIS = 500;
+    private static final int UTTERANCE_END_MILLIS = 2100;
+
+    private static final class Replay {
+        final List<Integer> startedAtMillis = new ArrayList<>();
+        final List<Integer> endedAtMillis = new ArrayList<>();
+        int voicedFrames = 0;
+        int frames = 0;
+        int lastVoicedAtMillis = 0;
+    }
+
+    private static byte[] readFixture(String name) throws IOException {
+        try (InputStream input = VoiceActivityDetectorTest.class.getResourceAsStream("/speech/" + name)) {
+            return PcmReplaySource.readPcm(input);
+        }
+    }
+
+    //Times are at the end of the frame that caused the event.
+    private static Replay replay(byte[] pcm, int endOfSpeechSilenceMillis) {
+        final Replay replay = new Replay();
+        final VoiceActivityDetector detector = new VoiceActivityDetector(MicrophoneStream.SAMPLE_RATE);
+        if (endOfSpeechSilenceMillis > 0) {
+            detector.setEndOfSpeechSilenceMillis(endOfSpeechSilenceMillis);
+        }
+        detector.setListener(new VoiceActivityDetector.Listener() {
+            @Override
+            public void onSpeechStarted() {
+                replay.startedAtMillis.add((replay.frames + 1) * FRAME_MILLIS);
+            }
+
+            @Override
+            public void onSpeechEnded() {
+                replay.endedAtMillis.add((replay.frames + 1) * FRAME_MILLIS);
+            }
+        });
+
+        final ByteBuffer frame = ByteBuffer.allocateDirect(FRAME_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int offset = 0; offset + FRAME_BYTES <= pcm.length; offset += FRAME_BYTES) {
+            frame.clear();
+            frame.put(pcm, offset, FRAME_BYTES);
+            if (detector.process(frame, FRAME_BYTES)) {
+                replay.voicedFrames++;
+                replay.lastVoicedAtMillis = (replay.frames + 1) * FRAME_MILLIS;
+            }
+            replay.frames++;
+        }
+        return replay;
+    }
+
+    //Adds the noise, looped and scaled, under the speech.
+    private static byte[] mix(byte[] speech, byte[] noise, double noiseGain) {
+        final ByteBuffer speechSamples = ByteBuffer.wrap(speech).order(ByteOrder.LITTLE_ENDIAN);
+        final ByteBuffer noiseSamples = ByteBuffer.wrap(noise).order(ByteOrder.LITTLE_ENDIAN);
+        final ByteBuffer mixed = ByteBuffer.allocate(speech.length).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < speech.length; i += 2) {
+            final int sum = (int) (speechSamples.getShort(i) + noiseSamples.getShort(i % noise.length) * noiseGain);
+            mixed.putShort(i, (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sum)));
+        }
+        return mixed.array();
+    }
+
+    @Test
+    public void detectsTheUtteranceAndEndsAfterTrailingSilence() throws IOException {
+        final Replay replay = replay(readFixture("vad-speech.wav"), 0);
+
+        //The pauses between syllables do not end the utterance.
+        assertEquals(1, replay.startedAtMillis.size());
+        assertEquals(1, replay.endedAtMillis.size());
+        final int startedAt = replay.startedAtMillis.get(0);
+        assertTrue("started at " + startedAt, startedAt > UTTERANCE_START_MILLIS && startedAt <= UTTERANCE_START_MILLIS + 120);
+        assertEndedAfterSilence(replay, 800);
+    }
+
+    private static void assertEndedAfterSilence(Replay replay, int silenceMillis) {
+        //The fade-out of the last syllable is the last voiced audio.
+        assertTrue("last voiced at " + replay.lastVoicedAtMillis,
+                replay.lastVoicedAtMillis > UTTERANCE_END_MILLIS - 100 && replay.lastVoicedAtMillis <= UTTERANCE_END_MILLIS);
+        assertEquals(replay.lastVoicedAtMillis + silenceMillis, (int) replay.endedAtMillis.get(0));
+    }
+
+    @Test
+    public void endsSoonerWithAShorterSilence() throws IOException {
+        final Replay replay = replay(readFixture("vad-speech.wav"), 300);
+
+        assertEquals(1, replay.endedAtMillis.size());
+        assertEndedAfterSilence(replay, 300);
+    }
+
+    @Test
+    public void marksTheRoomToneAroundTheUtteranceAsSilence() throws IOException {
+        final Replay replay = replay(readFixture("vad-speech.wav"), 0);
+        final int utteranceFrames = (UTTERANCE_END_MILLIS - UTTERANCE_START_MILLIS) / FRAME_MILLIS;
+        //The louder half of the utterance is voiced, but nothing beyond it.
+        assertTrue(replay.voicedFrames + " voiced frames", replay.voicedFrames >= utteranceFrames / 2);
+        assertTrue(replay.voicedFrames + " voiced frames", replay.voicedFrames <= utteranceFrames);
+    }
+
+    @Test
+    public void staysQuietOnSilence() throws IOException {
+        final Replay replay = replay(readFixture("vad-silence.wav"), 0);
+        assertEquals(0, replay.voicedFrames);
+        assertTrue(replay.startedAtMillis.isEmpty());
+    }
+
+    @Test
+    public void takesSteadyNoiseForTheFloor() throws IOException {
+        final Replay replay = replay(readFixture("vad-noise.wav"), 0);
+        assertTrue(replay.startedAtMillis.isEmpty());
+        assertFalse(replay.voicedFrames + " voiced frames", replay.voicedFrames > replay.frames / 20);
+    }
+
+    @Test
+    public void detectsTheUtteranceOverNoise() throws IOException {
+        //About 15 dB below the syllables.
+        final Replay replay = replay(mix(readFixture("vad-speech.wav"), readFixture("vad-noise.wav"), 0.25), 0);
+
+        assertEquals(1, replay.startedAtMillis.size());
+        final int startedAt = replay.startedAtMillis.get(0);
+        assertTrue("started at " + startedAt, startedAt > UTTERANCE_START_MILLIS && startedAt <= UTTERANCE_START_MILLIS + 200);
+        assertEquals(1, replay.endedAtMillis.size());
+        assertTrue(replay.endedAtMillis.get(0) > UTTERANCE_END_MILLIS);
+    }
+}
@@ -0,0 +1,119 @@
+package com.dataathand.speech.nlp;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IncrementalSpeechParserTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2020, 3, 1);
+    private static final int DATA_INITIAL_DATE = 20151013;
+
+    private static final String[] SENTENCES = {
+            "compare step count of from February 1 to March 10 with january of the last year",
+            "show me hours slept from January 2022. February 2020 and heart rate since last winter",
+            "Date for december 12th, two december 16th",
+            "weight on Martin Luther King Junior Day and mother's day 2018",
+            "highlight days with steps over 10,000 during the entire period by month",
+            "the range of January 20th 2 February 10th",
+            "from last Monday to this Wednesday sleep range",
+            "between march 5 and march 20, 2019 weight",
+    };
+
+    private static void assertSameResult(String message, SpeechPreprocessor.Result expected, SpeechPreprocessor.Result actual) {
+        assertEquals(message, expected.normalizedText, actual.normalizedText);
+        assertEquals(message, expected.isComplete, actual.isComplete);
+        assertEquals(message, expected.annotations.size(), actual.annotations.size());
+        for (int i = 0; i < expected.annotations.size(); i++) {
+            final SpeechPreprocessor.Annotation e = expected.annotations.get(i);
+            final SpeechPreprocessor.Annotation a = actual.annotations.get(i);
+            assertEquals(message, e.kind, a.kind);
+            assertEquals(message, e.start, a.start);
+            assertEquals(message, e.end, a.end);
+            assertEquals(message, e.date, a.date);
+            assertEquals(message, e.endDate, a.endDate);
+            assertEquals(message, e.value, a.value);
+            assertEquals(message, e.preposition, a.preposition);
+            assertEquals(message, e.isPeriodCertain, a.isPeriodCertain);
+        }
+    }
+
+    @Test
+    public void growingHypothesesMatchFullParse() {
+        for (String sentence : SENTENCES) {
+            final IncrementalSpeechParser parser = new IncrementalSpeechParser(TODAY, DATA_INITIAL_DATE);
+            //Character by character covers words that are cut off in the middle, as in "mother'" before "mother's".
+            for (int length = 1; length <= sentence.length(); length++) {
+                final String hypothesis = sentence.substring(0, length);
+                assertSameResult(hypothesis, SpeechPreprocessor.preprocess(hypothesis, TODAY, DATA_INITIAL_DATE), parser.update(hypothesis));
+            }
+        }
+    }
+
+    @Test
+    public void revisedTailMatchesFullParse() {
+        final IncrementalSpeechParser parser = new IncrementalSpeechParser(TODAY, DATA_INITIAL_DATE);
+        final String[] hypotheses = {
+                "show steps from february",
+                "show steps from february 1 to march",
+                "show steps from february 1 to march 10",
+                "show step count from february 1 to march 10",
+                "show step count from february 1st two march 10th",
+                "show step count",
+        };
+        for (String hypothesis : hypotheses) {
+            assertSameResult(hypothesis, SpeechPreprocessor.preprocess(hypothesis, TODAY, DATA_INITIAL_DATE), parser.update(hypothesis));
+        }
+    }
+
+    @Test
+    public void earlyExpressionsAreNotRescanned() {
+        final IncrementalSpeechParser parser = new IncrementalSpeechParser(TODAY, DATA_INITIAL_DATE);
+        parser.update("compare steps of last winter with the average weight of the days i walked more than");
+        parser.update("compare steps of last winter with the average weight of the days i walked more than 10000 steps");
+        assertEquals(5, parser.getLastReparsedFromToken());
+        assertTrue(parser.getReuseRatio() > 0);
+    }
+
+    @Test
+    public void stabilityGrowsWhileHypothesesAgree() {
+        final IncrementalSpeechParser parser = new IncrementalSpeechParser(TODAY, DATA_INITIAL_DATE);
+        parser.update("show steps of last month");
+        final IncrementalSpeechParser.SpeculativeIntent first = parser.getSpeculativeIntent();
+        assertEquals(SpeechLexicon.INTENT_BROWSE, first.intent);
+        assertEquals("StepCount", first.dataSource);
+        assertEquals(20200201, first.rangeStart);
+        assertEquals(20200229, first.rangeEnd);
+
+        parser.update("show steps of last month please");
+        parser.update("show steps of last month please now");
+        final IncrementalSpeechParser.SpeculativeIntent changed = parser.getSpeculativeIntent();
+        //"now" adds a date, so the intent starts over.
+        assertEquals(2, changed.timeExpressionCount);
+
+        parser.update("show steps of last month please");
+        parser.update("show steps of last month please ");
+        parser.update("show steps of last month please  ");
+        final IncrementalSpeechParser.SpeculativeIntent stable = parser.getSpeculativeIntent();
+        assertEquals(1.0, stable.stability, 1e-9);
+        assertTrue(first.stability < stable.stability);
+
+        parser.reset();
+        assertEquals(null, parser.getSpeculativeIntent());
+    }
+
+    @Test
+    public void expressionAtTheEndIsLessStable() {
+        final IncrementalSpeechParser parser = new IncrementalSpeechParser(TODAY, DATA_INITIAL_DATE);
+        for (int i = 0; i < IncrementalSpeechParser.STABLE_HYPOTHESIS_COUNT; i++) {
+            parser.update("steps of january");
+        }
+        assertEquals(0.5, parser.getSpeculativeIntent().stability, 1e-9);
+        final List<SpeechPreprocessor.Annotation> annotations = parser.getResult().annotations;
+        assertEquals(SpeechPreprocessor.KIND_PERIOD, annotations.get(0).kind);
+    }
+}
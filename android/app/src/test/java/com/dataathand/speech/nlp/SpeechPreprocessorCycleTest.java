@@ -0,0 +1,62 @@
+package com.dataathand.speech.nlp;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+//Mirrors __tests__/test-speech-preprocessing-cycle.ts.
+public class SpeechPreprocessorCycleTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2020, 3, 1);
+    private static final int DATA_INITIAL_DATE = 20151013;
+
+    private static final String[][] EXPRESSIONS = {
+            {"Show by month", "MonthOfYear"},
+            {"Show by month of the year", "MonthOfYear"},
+            {"Show by months of the year", "MonthOfYear"},
+            {"Show the monthly pattern", "MonthOfYear"},
+            {"Show monthly", "MonthOfYear"},
+
+            {"Show by day of the week", "DayOfWeek"},
+            {"Show by days of the week", "DayOfWeek"},
+            {"Show by days of week", "DayOfWeek"},
+            {"Show by day of week", "DayOfWeek"},
+            {"Show by day of the week pattern", "DayOfWeek"},
+            {"Get me the weekly pattern", "DayOfWeek"},
+            {"Weekly pattern", "DayOfWeek"},
+            {"Get me the Weekly data", "DayOfWeek"},
+            {"Weekly data", "DayOfWeek"},
+            {"Yearly data", "MonthOfYear"},
+            {"Yearly pattern", "MonthOfYear"},
+            {"Get me the yearly data", "MonthOfYear"},
+            {"Get me the yearly pattern", "MonthOfYear"},
+    };
+
+    @Test
+    public void cyclicTimeFrames() {
+        for (String[] expression : EXPRESSIONS) {
+            final SpeechPreprocessor.Result result = SpeechPreprocessor.preprocess(expression[0], TODAY, DATA_INITIAL_DATE);
+            SpeechPreprocessor.Annotation cycle = null;
+            for (SpeechPreprocessor.Annotation annotation : result.annotations) {
+                if (annotation.kind.equals(SpeechPreprocessor.KIND_TIME_CYCLE)) {
+                    cycle = annotation;
+                }
+            }
+            assertTrue(expression[0], cycle != null);
+            assertEquals(expression[0], expression[1], cycle.value);
+            assertTrue(expression[0], result.isComplete);
+        }
+    }
+
+    @Test
+    public void verbIsTagged() {
+        final SpeechPreprocessor.Result result = SpeechPreprocessor.preprocess("Show by month", TODAY, DATA_INITIAL_DATE);
+        final SpeechPreprocessor.Annotation verb = result.annotations.get(result.annotations.size() - 1);
+        assertEquals(SpeechPreprocessor.KIND_VERB, verb.kind);
+        assertEquals(SpeechLexicon.INTENT_BROWSE, verb.value);
+        assertEquals("show", result.normalizedText.substring(verb.start, verb.end));
+    }
+}
@@ -0,0 +1,152 @@
+package com.dataathand.speech.nlp;
+
+import com.dataathand.time.NumberedDates;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+//Mirrors __tests__/test-speech-preprocessing-date.ts.
+public class SpeechPreprocessorDateTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2020, 3, 1);
+    private static final int DATA_INITIAL_DATE = 20151013;
+
+    static final Object[][] DATA_SOURCES = {
+            {"step count", "StepCount"},
+            {"steps", "StepCount"},
+            {"weight", "Weight"},
+            {"heart rate", "HeartRate"},
+            {"sleep range", "SleepRange"},
+            {"sleep schedule", "SleepRange"},
+            {"hours slept", "HoursSlept"},
+            {"sleep length", "HoursSlept"},
+    };
+
+    private static final Object[][] SPECIFIC_DAYS = {
+            {"january 1", 20200101},
+            {"january 15", 20200115},
+            {"february 1", 20200201},
+            {"march 5", 20190305},
+            {"may 1", 20190501},
+            {"june 1", 20190601},
+            {"july 1", 20190701},
+            {"august 1", 20190801},
+            {"september 1", 20190901},
+            {"october 1", 20191001},
+            {"november 1", 20191101},
+            {"december 1", 20191201},
+
+            {"the day before yesterday", 20200228},
+            {"the day before Christmas", 20191224},
+            {"the day after Christmas", 20191226},
+    };
+
+    private static final Object[][] DAYS_OF_WEEK = {
+            {"sunday", 20200301},
+            {"monday", 20200224},
+            {"tuesday", 20200225},
+            {"wednesday", 20200226},
+            {"thursday", 20200227},
+            {"friday", 20200228},
+            {"saturday", 20200229},
+    };
+
+    private static final Object[][] HOLIDAYS = {
+            {"New Year's Day", 20200101},
+            {"Valentine Day", 20200214},
+            {"Martin Luther King Junior Day", 20200120},
+            {"Presidents Day", 20200217},
+            {"Easter", 20190421},
+            {"Columbus Day", 20191014},
+            {"Mother's Day", 20190512},
+            {"Memorial Day", 20190527},
+            {"Father's Day", 20190616},
+            {"Independence Day", 20190704},
+            {"Labor Day", 20190902},
+            {"Halloween", 20191031},
+            {"Veterans Day", 20191111},
+            {"Thanksgiving Day", 20191128},
+            {"Christmas", 20191225},
+    };
+
+    private static List<Object[]> dayExpressions() {
+        final List<Object[]> expressions = new ArrayList<>();
+        for (Object[] day : DAYS_OF_WEEK) {
+            expressions.add(day);
+        }
+        for (String prefix : new String[]{"last ", "last last "}) {
+            final int weeks = prefix.length() / "last ".length();
+            for (Object[] day : DAYS_OF_WEEK) {
+                final LocalDate date = NumberedDates.toLocalDate((Integer) day[1]).minusWeeks(weeks);
+                expressions.add(new Object[]{prefix + day[0], NumberedDates.fromLocalDate(date)});
+            }
+        }
+        for (Object[] day : SPECIFIC_DAYS) {
+            expressions.add(day);
+        }
+        for (Object[] day : HOLIDAYS) {
+            expressions.add(day);
+        }
+        return expressions;
+    }
+
+    @Test
+    public void dayOnlySentences() {
+        for (Object[] expression : dayExpressions()) {
+            final String sentence = (String) expression[0];
+            final SpeechPreprocessor.Result result = SpeechPreprocessor.preprocess(sentence, TODAY, DATA_INITIAL_DATE);
+            assertEquals(sentence, 1, result.annotations.size());
+            assertEquals(sentence, SpeechPreprocessor.KIND_DATE, result.annotations.get(0).kind);
+            assertEquals(sentence, (int) (Integer) expression[1], result.annotations.get(0).date);
+            assertTrue(sentence, result.isComplete);
+        }
+    }
+
+    @Test
+    public void dataSourceOnDate() {
+        for (Object[] expression : dayExpressions()) {
+            for (Object[] dataSource : DATA_SOURCES) {
+                final String sentence = dataSource[0] + " on " + expression[0];
+                final SpeechPreprocessor.Result result = SpeechPreprocessor.preprocess(sentence, TODAY, DATA_INITIAL_DATE);
+                assertEquals(sentence, 2, result.annotations.size());
+
+                SpeechPreprocessor.Annotation date = null;
+                SpeechPreprocessor.Annotation source = null;
+                for (SpeechPreprocessor.Annotation annotation : result.annotations) {
+                    if (annotation.kind.equals(SpeechPreprocessor.KIND_DATE)) {
+                        date = annotation;
+                    } else if (annotation.kind.equals(SpeechPreprocessor.KIND_DATA_SOURCE)) {
+                        source = annotation;
+                    }
+                }
+                assertTrue(sentence, date != null && source != null);
+                assertEquals(sentence, dataSource[1], source.value);
+                assertEquals(sentence, (int) (Integer) expression[1], date.date);
+            }
+        }
+    }
+
+    @Test
+    public void offsetsPointIntoNormalizedText() {
+        final SpeechPreprocessor.Result result = SpeechPreprocessor.preprocess("Steps on Mother's Day", TODAY, DATA_INITIAL_DATE);
+        assertEquals("steps on mother's day", result.normalizedText);
+        assertEquals("mother's day", result.annotations.get(0).text);
+        assertEquals("steps", result.annotations.get(1).text);
+        assertEquals(20200301, result.today);
+    }
+
+    @Test
+    public void unhandledTimeCuesAreReported() {
+        assertFalse(SpeechPreprocessor.preprocess("steps 3 days ago", TODAY, DATA_INITIAL_DATE).isComplete);
+        assertFalse(SpeechPreprocessor.preprocess("weight on 2/14", TODAY, DATA_INITIAL_DATE).isComplete);
+        assertFalse(SpeechPreprocessor.preprocess("heart rate on sat", TODAY, DATA_INITIAL_DATE).isComplete);
+        assertTrue(SpeechPreprocessor.preprocess("steps on saturday", TODAY, DATA_INITIAL_DATE).isComplete);
+    }
+}
@@ -0,0 +1,270 @@
+package com.dataathand.speech.nlp;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+//Mirrors __tests__/test-speech-preprocessing-range.ts.
+public class SpeechPreprocessorRangeTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2020, 3, 1);
+    private static final int TODAY_NUMBERED = 20200301;
+    private static final int DATA_INITIAL_DATE = 20151013;
+
+    private static final Object[][] RELATIVES = {
+            {"this month", 20200301, 20200331},
+            {"last month", 20200201, 20200229},
+            {"last last month", 20200101, 20200131},
+            {"this week", 20200224, 20200301},
+            {"last week", 20200217, 20200223},
+            {"last last week", 20200210, 20200216},
+            {"this year", 20200101, 20201231},
+            {"last year", 20190101, 20191231},
+            {"2019", 20190101, 20191231},
+            {"2020", 20200101, 20201231},
+            {"year 2020", 20200101, 20201231},
+            {"recent 10 days", 20200221, 20200301},
+            {"resent 10 days", 20200221, 20200301},
+            {"past 10 days", 20200221, 20200301},
+            {"last 10 days", 20200221, 20200301},
+            {"last seven days", 20200224, 20200301},
+    };
+
+    private static final Object[][] MONTHS = {
+            {"january", 20200101, 20200131},
+            {"february", 20200201, 20200229},
+            {"march", 20200301, 20200331},
+            {"april", 20190401, 20190430},
+            {"may", 20190501, 20190531},
+            {"june", 20190601, 20190630},
+            {"july", 20190701, 20190731},
+            {"august", 20190801, 20190831},
+            {"september", 20190901, 20190930},
+            {"october", 20191001, 20191031},
+            {"november", 20191101, 20191130},
+            {"december", 20191201, 20191231},
+            {"last january", 20200101, 20200131},
+            {"last february", 20200201, 20200229},
+            {"last march", 20190301, 20190331},
+            {"last april", 20190401, 20190430},
+            {"last may", 20190501, 20190531},
+            {"last june", 20190601, 20190630},
+            {"last july", 20190701, 20190731},
+            {"last august", 20190801, 20190831},
+            {"last september", 20190901, 20190930},
+            {"last october", 20191001, 20191031},
+            {"last november", 20191101, 20191130},
+            {"last december", 20191201, 20191231},
+            {"past january", 20200101, 20200131},
+            {"january 2018", 20180101, 20180131},
+            {"january 20:19", 20190101, 20190131},
+            {"january of the last year", 20190101, 20190131},
+            {"january of this year", 20200101, 20200131},
+            {"january of last year", 20190101, 20190131},
+    };
+
+    private static final Object[][] SEASONS = {
+            {"spring", 20200301, 20200531},
+            {"summer", 20190601, 20190831},
+            {"autumn", 20190901, 20191130},
+            {"fall", 20190901, 20191130},
+            {"winter", 20191201, 20200229},
+            {"last spring", 20190301, 20190531},
+            {"last summer", 20190601, 20190831},
+            {"last autumn", 20190901, 20191130},
+            {"last fall", 20190901, 20191130},
+            {"last winter", 20191201, 20200229},
+            {"spring 2017", 20170301, 20170531},
+            {"summer 2017", 20170601, 20170831},
+            {"autumn 2017", 20170901, 20171130},
+            {"fall 2017", 20170901, 20171130},
+            {"winter 2017", 20171201, 20180228},
+            {"spring of 2017", 20170301, 20170531},
+            {"summer of 2017", 20170601, 20170831},
+            {"autumn of 2017", 20170901, 20171130},
+            {"fall of 2017", 20170901, 20171130},
+            {"winter of 2017", 20171201, 20180228},
+    };
+
+    private static final Object[][] MANUAL_PERIODS = {
+            {"from February 1 to March 10", 20200201, 20200310},
+            {"from February 1 through March 10", 20200201, 20200310},
+            {"from February 1 two March 10", 20200201, 20200310},
+            {"from October 10 to January 20", 20191010, 20200120},
+            {"from October 10 two January 20", 20191010, 20200120},
+            {"from October 10 through January 20", 20191010, 20200120},
+            {"from February to April", 20200201, 20200430},
+            {"from November to March", 20191101, 20200331},
+            {"from Sunday to Thursday", 20200223, 20200227},
+            {"from Thursday to Tuesday", 20200220, 20200225},
+            {"from Monday to Wednesday", 20200224, 20200226},
+            {"from last Monday to this Wednesday", 20200217, 20200226},
+            {"from 2019 to 2020", 20190101, 20201231},
+            {"the entire period", DATA_INITIAL_DATE, TODAY_NUMBERED},
+    };
+
+    private static final Object[][] DICTATION_ERROR_PERIODS = {
+            {"the range of January 20th 2 February 10th", 20200120, 20200210},
+            {"the range of January 2 2 February 10th", 20200102, 20200210},
+            {"Date for december 12th, two december 16th", 20191212, 20191216},
+            {"from January 2022. February 2020", 20200101, 20200229},
+            {"from February 22, February 28", 20200220, 20200228},
+    };
+
+    private static List<Object[]> concat(Object[][]... groups) {
+        final List<Object[]> list = new ArrayList<>();
+        for (Object[][] group : groups) {
+            list.addAll(Arrays.asList(group));
+        }
+        return list;
+    }
+
+    private static List<Object[]> since() {
+        final List<Object[]> list = new ArrayList<>();
+        for (Object[] entry : concat(MONTHS, SEASONS)) {
+            list.add(new Object[]{"since " + entry[0], entry[1], TODAY_NUMBERED});
+        }
+        return list;
+    }
+
+    private static SpeechPreprocessor.Result preprocess(String sentence) {
+        return SpeechPreprocessor.preprocess(sentence, TODAY, DATA_INITIAL_DATE);
+    }
+
+    private static List<SpeechPreprocessor.Annotation> ofKind(SpeechPreprocessor.Result result, String kind) {
+        final List<SpeechPreprocessor.Annotation> list = new ArrayList<>();
+        for (SpeechPreprocessor.Annotation annotation : result.annotations) {
+            if (annotation.kind.equals(kind)) {
+                list.add(annotation);
+            }
+        }
+        return list;
+    }
+
+    private static void assertFirstPeriod(Object[] expected) {
+        final String sentence = (String) expected[0];
+        final SpeechPreprocessor.Result result = preprocess(sentence);
+        assertTrue(sentence, result.annotations.size() >= 1);
+        final SpeechPreprocessor.Annotation first = result.annotations.get(0);
+        assertEquals(sentence, SpeechPreprocessor.KIND_PERIOD, first.kind);
+        assertEquals(sentence, (int) (Integer) expected[1], first.date);
+        assertEquals(sentence, (int) (Integer) expected[2], first.endDate);
+        assertTrue(sentence, result.isComplete);
+    }
+
+    @Test
+    public void normalPeriods() {
+        for (Object[] expected : concat(RELATIVES, MONTHS, SEASONS, MANUAL_PERIODS)) {
+            assertFirstPeriod(expected);
+        }
+    }
+
+    @Test
+    public void dictationErrorPeriods() {
+        for (Object[] expected : DICTATION_ERROR_PERIODS) {
+            assertFirstPeriod(expected);
+        }
+    }
+
+    @Test
+    public void sincePeriods() {
+        for (Object[] expected : since()) {
+            assertFirstPeriod(expected);
+        }
+    }
+
+    @Test
+    public void dataSourceOfPeriod() {
+        final List<Object[]> periods = concat(RELATIVES, MONTHS, SEASONS, MANUAL_PERIODS, DICTATION_ERROR_PERIODS);
+        periods.addAll(since());
+        for (String preposition : new String[]{"of", "in", "during"}) {
+            for (Object[] period : periods) {
+                for (Object[] dataSource : SpeechPreprocessorDateTest.DATA_SOURCES) {
+                    final String sentence = dataSource[0] + " " + preposition + " " + period[0];
+                    final SpeechPreprocessor.Result result = preprocess(sentence);
+
+                    final List<SpeechPreprocessor.Annotation> sources = ofKind(result, SpeechPreprocessor.KIND_DATA_SOURCE);
+                    final List<SpeechPreprocessor.Annotation> ranges = ofKind(result, SpeechPreprocessor.KIND_PERIOD);
+                    assertEquals(sentence, 1, sources.size());
+                    assertEquals(sentence, dataSource[1], sources.get(0).value);
+                    assertEquals(sentence, 1, ranges.size());
+                    assertEquals(sentence, (int) (Integer) period[1], ranges.get(0).date);
+                    assertEquals(sentence, (int) (Integer) period[2], ranges.get(0).endDate);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void comparisonBetweenRanges() {
+        final List<Object[]> ranges = concat(MANUAL_PERIODS);
+        for (Object[] month : MONTHS) {
+            if (!((String) month[0]).contains("20:19")) {
+                ranges.add(month);
+            }
+        }
+
+        final List<String> formats = new ArrayList<>();
+        for (String conjunction : new String[]{"with", "and"}) {
+            formats.add("compare {rangeA} " + conjunction + " {rangeB}");
+            for (String dataSourcePreposition : new String[]{" of", ""}) {
+                formats.add("compare {dataSource}" + dataSourcePreposition + " {rangeA} " + conjunction + " {rangeB}");
+                formats.add("compare {rangeA} " + conjunction + " {rangeB}" + dataSourcePreposition + " {dataSource}");
+            }
+        }
+
+        for (int a = 0; a < ranges.size(); a++) {
+            for (int b = 0; b < a; b++) {
+                final Object[] rangeA = ranges.get(a);
+                final Object[] rangeB = ranges.get(b);
+                for (String format : formats) {
+                    final Object[][] dataSources = format.contains("{dataSource}") ? SpeechPreprocessorDateTest.DATA_SOURCES : new Object[][]{{"", null}};
+                    for (Object[] dataSource : dataSources) {
+                        final String sentence = format.replace("{rangeA}", (String) rangeA[0])
+                                .replace("{rangeB}", (String) rangeB[0])
+                                .replace("{dataSource}", (String) dataSource[0]);
+                        final SpeechPreprocessor.Result result = preprocess(sentence);
+
+                        final List<SpeechPreprocessor.Annotation> verbs = ofKind(result, SpeechPreprocessor.KIND_VERB);
+                        assertEquals(sentence, 1, verbs.size());
+                        assertEquals(sentence, SpeechLexicon.INTENT_COMPARE, verbs.get(0).value);
+
+                        final List<SpeechPreprocessor.Annotation> periods = ofKind(result, SpeechPreprocessor.KIND_PERIOD);
+                        assertEquals(sentence, 2, periods.size());
+                        assertTrue(sentence, containsPeriod(periods, rangeA));
+                        assertTrue(sentence, containsPeriod(periods, rangeB));
+
+                        if (dataSource[1] != null) {
+                            final List<SpeechPreprocessor.Annotation> sources = ofKind(result, SpeechPreprocessor.KIND_DATA_SOURCE);
+                            assertEquals(sentence, dataSource[1], sources.get(0).value);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void mergedRangeKeepsConjunctionTexts() {
+        final SpeechPreprocessor.Annotation range = preprocess("steps from february 1 to march 10").annotations.get(0);
+        assertTrue(range.isPeriodCertain);
+        assertTrue(range.conjunctionTo);
+        assertEquals("february 1", range.beforeConjunction);
+        assertEquals("march 10", range.afterConjunction);
+    }
+
+    private static boolean containsPeriod(List<SpeechPreprocessor.Annotation> periods, Object[] expected) {
+        for (SpeechPreprocessor.Annotation period : periods) {
+            if (period.date == (Integer) expected[1] && period.endDate == (Integer) expected[2]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
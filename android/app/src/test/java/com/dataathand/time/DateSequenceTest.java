@@ -0,0 +1,73 @@
+package com.dataathand.time;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DateSequenceTest {
+
+    private static int[] makeSequence(int start, int end) {
+        final LocalDate startDate = NumberedDates.toLocalDate(start);
+        final int count = (int) (NumberedDates.toEpochDay(end) - startDate.toEpochDay()) + 1;
+        final int[] sequence = new int[count];
+        for (int i = 0; i < count; i++) {
+            sequence[i] = NumberedDates.fromLocalDate(startDate.plusDays(i));
+        }
+        return sequence;
+    }
+
+    @Test
+    public void sliceCrossesMonthAndLeapDay() {
+        final DateSequence sequence = new DateSequence();
+        sequence.ensure(20200101, 20201231);
+        assertEquals(366, sequence.size());
+        assertArrayEquals(new int[]{20200227, 20200228, 20200229, 20200301}, sequence.slice(20200227, 20200301));
+    }
+
+    @Test
+    public void growsOnBothSides() {
+        final DateSequence sequence = new DateSequence();
+        sequence.ensure(20200101, 20201231);
+        sequence.ensure(20180101, 20181231);
+        sequence.ensure(20210101, 20221231);
+        sequence.ensure(20150301, 20150301);
+
+        assertEquals(20150301, sequence.get(0));
+        assertArrayEquals(makeSequence(20150301, 20221231), sequence.slice(20150301, 20221231));
+    }
+
+    @Test
+    public void indexOfIsTheDayOffset() {
+        final DateSequence sequence = new DateSequence();
+        sequence.ensure(20191201, 20200131);
+        assertEquals(0, sequence.indexOf(20191201));
+        assertEquals(31, sequence.indexOf(20200101));
+        assertEquals(20200101, sequence.get((int) sequence.indexOf(20200101)));
+        assertTrue(sequence.contains(20200131));
+        assertFalse(sequence.contains(20200201));
+        assertFalse(sequence.contains(20191130));
+    }
+
+    @Test
+    public void cycleKeys() {
+        final DateSequence sequence = new DateSequence();
+        sequence.ensure(20191201, 20200131);
+
+        //2019-12-29 is a Sunday.
+        assertArrayEquals(new int[]{6, 0, 1, 2, 3}, sequence.cycleKeys(20191228, 20200101, DateSequence.CYCLE_DAY_OF_WEEK));
+        assertArrayEquals(new int[]{12, 12, 1}, sequence.cycleKeys(20191230, 20200101, DateSequence.CYCLE_MONTH));
+        assertArrayEquals(new int[]{2019, 2019, 2020}, sequence.cycleKeys(20191230, 20200101, DateSequence.CYCLE_YEAR));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sliceOutsideOfTheSequenceFails() {
+        final DateSequence sequence = new DateSequence();
+        sequence.ensure(20200101, 20201231);
+        sequence.slice(20191231, 20200105);
+    }
+}
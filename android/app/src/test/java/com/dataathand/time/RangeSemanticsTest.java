@@ -0,0 +1,41 @@
+package com.dataathand.time;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+//Mirrors __tests__/test-datetime-helper.ts.
+public class RangeSemanticsTest {
+
+    private static final Object[][] FIT_RANGE_TEST_SET = {
+            {20200202, 20200208, LocalDate.of(2020, 2, 2), RangeSemantics.SUNDAY_WEEK, 0},
+            {20200202, 20200208, LocalDate.of(2020, 2, 1), RangeSemantics.SUNDAY_WEEK, -1},
+            {20200202, 20200208, LocalDate.of(2020, 1, 25), RangeSemantics.SUNDAY_WEEK, -2},
+            {20200202, 20200208, LocalDate.of(2020, 2, 9), RangeSemantics.SUNDAY_WEEK, 1},
+            {20200202, 20200208, LocalDate.of(2020, 2, 18), RangeSemantics.SUNDAY_WEEK, 2},
+            {20200301, 20200331, LocalDate.of(2019, 11, 5), RangeSemantics.MONTH, -4},
+            {20200301, 20200331, LocalDate.of(2021, 2, 5), RangeSemantics.MONTH, 11},
+            {20200101, 20201231, LocalDate.of(2019, 6, 2), RangeSemantics.YEAR, -1},
+            {20190101, 20191231, LocalDate.of(2020, 6, 2), RangeSemantics.YEAR, 1},
+    };
+
+    @Test
+    public void semanticRange() {
+        for (Object[] testElm : FIT_RANGE_TEST_SET) {
+            final String name = testElm[0] + " - " + testElm[1] + " at " + testElm[2];
+            final RangeSemantics.Result result = RangeSemantics.rangeSemantic((int) testElm[0], (int) testElm[1], (LocalDate) testElm[2]);
+            assertNotNull(name, result);
+            assertEquals(name, testElm[3], result.semantic);
+            assertEquals(name, (long) (int) testElm[4], result.differenceToRef);
+        }
+    }
+
+    @Test
+    public void arbitraryRangeHasNoSemantic() {
+        assertNull(RangeSemantics.rangeSemantic(20200203, 20200215, LocalDate.of(2020, 2, 2)));
+    }
+}
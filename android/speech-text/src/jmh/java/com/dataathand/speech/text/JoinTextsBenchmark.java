@@ -0,0 +1,56 @@
+package com.dataathand.speech.text;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//Joins one partial hypothesis to the text committed so far, which happens for every partial result.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JoinTextsBenchmark {
+
+    @Param({"1", "10", "50", "200"})
+    public int committedWords;
+
+    @Param({"8"})
+    public int hypothesisWords;
+
+    private String committed;
+    private String hypothesis;
+    private TranscriptAccumulator accumulator;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(Transcripts.SEED);
+        committed = Transcripts.join(Transcripts.words(random, committedWords), committedWords);
+        hypothesis = Transcripts.join(Transcripts.words(random, hypothesisWords), hypothesisWords);
+
+        accumulator = new TranscriptAccumulator(false);
+        accumulator.commit(committed);
+    }
+
+    @Benchmark
+    public String joinTexts() {
+        return SpeechTexts.joinTexts(committed, hypothesis);
+    }
+
+    @Benchmark
+    public String stitch() {
+        return accumulator.stitch(hypothesis);
+    }
+}
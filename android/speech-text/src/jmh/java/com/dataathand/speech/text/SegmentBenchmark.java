@@ -0,0 +1,53 @@
+package com.dataathand.speech.text;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//Post-processing of a final result of the Microsoft recognizer: the sentence-to-segment conversion and the regex clean-up.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SegmentBenchmark {
+
+    @Param({"1", "10", "50", "200"})
+    public int words;
+
+    private String sentence;
+    private String segment;
+
+    @Setup
+    public void setUp() {
+        sentence = Transcripts.sentence(new Random(Transcripts.SEED), words);
+        segment = SpeechTexts.toSegment(sentence);
+    }
+
+    @Benchmark
+    public String toSegment() {
+        return SpeechTexts.toSegment(sentence);
+    }
+
+    @Benchmark
+    public String cleanUp() {
+        return TranscriptAccumulator.cleanUp(segment);
+    }
+
+    @Benchmark
+    public String toSegmentAndCleanUp() {
+        return TranscriptAccumulator.cleanUp(SpeechTexts.toSegment(sentence));
+    }
+}
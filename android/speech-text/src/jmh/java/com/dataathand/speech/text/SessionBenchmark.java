@@ -0,0 +1,95 @@
+package com.dataathand.speech.text;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//A whole dictation session per operation: a partial result for every word, then the final result of each sentence.
+//Compares chaining joinTexts() over the whole transcript with the TranscriptAccumulator that the modules use.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SessionBenchmark {
+
+    private static final int MIN_SENTENCE_WORDS = 4;
+    private static final int MAX_SENTENCE_WORDS = 12;
+
+    @Param({"10", "50", "200"})
+    public int sessionWords;
+
+    //true for the Microsoft recognizer, false for the platform recognizer.
+    @Param({"true", "false"})
+    public boolean cleanUpCommits;
+
+    private final List<String[]> partials = new ArrayList<>();
+    private final List<String> finals = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(Transcripts.SEED);
+        partials.clear();
+        finals.clear();
+
+        int remaining = sessionWords;
+        while (remaining > 0) {
+            final int count = Math.min(remaining, MIN_SENTENCE_WORDS + random.nextInt(MAX_SENTENCE_WORDS - MIN_SENTENCE_WORDS + 1));
+            final List<String> words = Transcripts.words(random, count);
+            final String[] hypotheses = new String[count];
+            for (int i = 0; i < count; i++) {
+                hypotheses[i] = Transcripts.join(words, i + 1);
+            }
+            partials.add(hypotheses);
+            finals.add(cleanUpCommits ? Transcripts.sentence(random, words) : hypotheses[count - 1]);
+            remaining -= count;
+        }
+    }
+
+    @Benchmark
+    public String chainedJoinTexts(Blackhole blackhole) {
+        String committed = null;
+        for (int s = 0; s < finals.size(); s++) {
+            for (String hypothesis : partials.get(s)) {
+                blackhole.consume(SpeechTexts.joinTexts(committed, hypothesis));
+            }
+
+            if (cleanUpCommits) {
+                committed = TranscriptAccumulator.cleanUp(SpeechTexts.joinTexts(committed, SpeechTexts.toSegment(finals.get(s))));
+            } else {
+                committed = SpeechTexts.joinTexts(committed, finals.get(s));
+            }
+            blackhole.consume(committed);
+        }
+        return committed;
+    }
+
+    @Benchmark
+    public String accumulator(Blackhole blackhole) {
+        final TranscriptAccumulator transcript = new TranscriptAccumulator(cleanUpCommits);
+        for (int s = 0; s < finals.size(); s++) {
+            for (String hypothesis : partials.get(s)) {
+                blackhole.consume(transcript.stitch(hypothesis));
+            }
+
+            transcript.commit(cleanUpCommits ? SpeechTexts.toSegment(finals.get(s)) : finals.get(s));
+            blackhole.consume(transcript.getCommitted());
+        }
+        return transcript.getCommitted();
+    }
+}
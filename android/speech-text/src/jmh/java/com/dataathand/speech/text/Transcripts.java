@@ -0,0 +1,66 @@
+package com.dataathand.speech.text;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+//Deterministic dictation text in the shape the recognizers return it: queries about the app's data sources and periods,
+//with the capitals, commas, full stops and misheard year ranges that the Microsoft recognizer produces.
+final class Transcripts {
+
+    static final long SEED = 20200301;
+
+    private static final String[][] PHRASES = {
+            {"compare"}, {"show", "me"}, {"steps"}, {"step", "count"}, {"hours", "slept"}, {"sleep", "range"},
+            {"weight"}, {"heart", "rate"}, {"resting", "heart", "rate"}, {"from"}, {"to"}, {"with"}, {"and"},
+            {"last", "winter"}, {"this", "winter"}, {"since", "last", "Monday"}, {"by", "day", "of", "week"},
+            {"January"}, {"February", "1"}, {"March", "10"}, {"of", "the", "last", "year"}, {"over", "10,000"},
+            {"during", "the", "entire", "period"}, {"by", "month"}, {"2019"}, {"2022", "February"},
+    };
+
+    private Transcripts() {
+    }
+
+    //Spoken words without punctuation, as in partial hypotheses.
+    static List<String> words(Random random, int count) {
+        final List<String> words = new ArrayList<>(count);
+        while (words.size() < count) {
+            for (String word : PHRASES[random.nextInt(PHRASES.length)]) {
+                if (words.size() < count) {
+                    words.add(word);
+                }
+            }
+        }
+        return words;
+    }
+
+    static String join(List<String> words, int count) {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            builder.append(words.get(i));
+        }
+        return builder.toString();
+    }
+
+    //A final result of the Microsoft recognizer: capitalized, a comma every few words and a full stop at the end.
+    static String sentence(Random random, List<String> words) {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < words.size(); i++) {
+            final String word = words.get(i);
+            if (i > 0) {
+                builder.append(random.nextInt(6) == 0 && Character.isLetter(words.get(i - 1).charAt(0)) ? ", " : " ");
+                builder.append(word);
+            } else {
+                builder.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+            }
+        }
+        return builder.append('.').toString();
+    }
+
+    static String sentence(Random random, int wordCount) {
+        return sentence(random, words(random, wordCount));
+    }
+}
@@ -0,0 +1,40 @@
+package com.dataathand.speech.text;
+
+import androidx.annotation.Nullable;
+
+import java.util.regex.Pattern;
+
+//Text transforms applied to every recognition result. Kept free of Android dependencies so that they can be benchmarked on the JVM.
+public final class SpeechTexts {
+
+    private static final Pattern PRONOUN_I = Pattern.compile("I\\s+");
+
+    private SpeechTexts() {
+    }
+
+    @Nullable
+    public static String joinTexts(@Nullable String left, @Nullable String right) {
+        if (left == null && right == null) {
+            return null;
+        } else if (left != null && right == null) {
+            return left;
+        } else if (left == null && right != null) {
+            return right;
+        } else {
+            return (left + " " + right).trim().replaceAll("\\s+", " ");
+        }
+    }
+
+    //The Microsoft recognizer finalizes each segment as a sentence. Drops the full stop and the capital so that segments join up.
+    public static String toSegment(String sentence) {
+        String s = sentence;
+        if (s.lastIndexOf('.') == s.length() - 1) {
+            s = s.substring(0, s.length() - 1);
+        }
+
+        if (s.length() > 1 && !PRONOUN_I.matcher(s).matches()) {
+            s = s.substring(0, 1).toLowerCase() + s.substring(1);
+        }
+        return s;
+    }
+}
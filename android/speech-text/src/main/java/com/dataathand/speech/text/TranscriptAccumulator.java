@@ -0,0 +1,171 @@
+package com.dataathand.speech.text;
+
+import androidx.annotation.Nullable;
+
+import java.util.regex.Pattern;
+
+//Keeps the text committed by previous recognition cycles apart from the current hypothesis.
+//The output is identical to chaining SpeechTexts.joinTexts() over the whole transcript,
+//but only the newly added segment is normalized, so long dictations do not pay for the whole string on every result.
+public class TranscriptAccumulator {
+
+    private static final Pattern PUNCTUATION_AFTER_WORD = Pattern.compile("([a-zA-Z])([,.])(\\s+|$)");
+    private static final Pattern MISHEARD_YEAR_RANGE = Pattern.compile("(\\s+)(2022)(\\s+)");
+    private static final String MISHEARD_YEAR = " 2022";
+
+    private final boolean cleanUpCommits;
+
+    private final StringBuilder committed = new StringBuilder();
+    private boolean hasCommitted = false;
+
+    //Whether the committed text is already trimmed with single spaces, so that appending only needs to look at the new segment.
+    private boolean isNormalized = true;
+
+    //Nothing before this index can be touched by the clean-up patterns anymore.
+    private int cleanUpFrom = 0;
+
+    /**
+     * @param cleanUpCommits whether committed text goes through the punctuation and year clean-up
+     *                       that the Microsoft recognizer output needs.
+     */
+    public TranscriptAccumulator(boolean cleanUpCommits) {
+        this.cleanUpCommits = cleanUpCommits;
+    }
+
+    @Nullable
+    public String getCommitted() {
+        return hasCommitted ? committed.toString() : null;
+    }
+
+    /**
+     * @return the same string as {@code joinTexts(getCommitted(), hypothesis)}.
+     */
+    @Nullable
+    public String stitch(@Nullable String hypothesis) {
+        if (!hasCommitted) {
+            return hypothesis;
+        } else if (hypothesis == null) {
+            return committed.toString();
+        } else if (!isNormalized || committed.length() == 0) {
+            return SpeechTexts.joinTexts(committed.toString(), hypothesis);
+        } else {
+            final int committedLength = committed.length();
+            appendNormalized(committed, hypothesis);
+            final String stitched = committed.toString();
+            committed.setLength(committedLength);
+            return stitched;
+        }
+    }
+
+    public void commit(@Nullable String segment) {
+        if (!hasCommitted) {
+            if (segment == null) {
+                return;
+            }
+            replaceCommitted(cleanUpCommits ? cleanUp(segment) : segment);
+            isNormalized = isNormalized(committed);
+        } else if (!isNormalized || committed.length() == 0) {
+            final String joined = SpeechTexts.joinTexts(committed.toString(), segment);
+            replaceCommitted(cleanUpCommits ? cleanUp(joined) : joined);
+            //joinTexts() only normalizes when both sides are present.
+            isNormalized = segment != null || isNormalized(committed);
+        } else {
+            final int segmentStart = committed.length();
+            if (segment != null) {
+                appendNormalized(committed, segment);
+            }
+
+            if (cleanUpCommits) {
+                final int regionStart = Math.min(cleanUpFrom, segmentStart);
+                final String cleaned = cleanUp(committed.substring(regionStart));
+                committed.setLength(regionStart);
+                committed.append(cleaned);
+                cleanUpFrom = findMisheardYear(committed, regionStart);
+            }
+        }
+    }
+
+    public void reset() {
+        committed.setLength(0);
+        hasCommitted = false;
+        isNormalized = true;
+        cleanUpFrom = 0;
+    }
+
+    private void replaceCommitted(String text) {
+        committed.setLength(0);
+        committed.append(text);
+        hasCommitted = true;
+        cleanUpFrom = cleanUpCommits ? findMisheardYear(committed, 0) : 0;
+    }
+
+    static String cleanUp(String text) {
+        final String withoutPunctuation = PUNCTUATION_AFTER_WORD.matcher(text).replaceAll("$1$3");
+        return MISHEARD_YEAR_RANGE.matcher(withoutPunctuation).replaceAll("$12020 to$3");
+    }
+
+    //The year pattern needs whitespace on both sides, so an occurrence at the very end may still match once more text arrives.
+    private static int findMisheardYear(StringBuilder text, int from) {
+        int index = text.indexOf(MISHEARD_YEAR, from);
+        while (index >= 0) {
+            final int after = index + MISHEARD_YEAR.length();
+            if (after == text.length() || isWhitespace(text.charAt(after))) {
+                return index;
+            }
+            index = text.indexOf(MISHEARD_YEAR, index + 1);
+        }
+        return text.length();
+    }
+
+    //Appends what joinTexts() would add after an already normalized, non-empty left side:
+    //a single space followed by the segment with its whitespace runs collapsed, trailing blanks dropped.
+    private static void appendNormalized(StringBuilder target, String segment) {
+        int end = segment.length();
+        while (end > 0 && segment.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        if (end == 0) {
+            return;
+        }
+
+        target.append(' ');
+        boolean isInWhitespace = true;
+        for (int i = 0; i < end; i++) {
+            final char c = segment.charAt(i);
+            if (isWhitespace(c)) {
+                if (!isInWhitespace) {
+                    target.append(' ');
+                    isInWhitespace = true;
+                }
+            } else {
+                target.append(c);
+                isInWhitespace = false;
+            }
+        }
+    }
+
+    private static boolean isNormalized(CharSequence text) {
+        final int length = text.length();
+        if (length == 0) {
+            return true;
+        }
+
+        if (text.charAt(0) <= ' ' || text.charAt(length - 1) <= ' ') {
+            return false;
+        }
+
+        for (int i = 1; i < length - 1; i++) {
+            final char c = text.charAt(i);
+            if (isWhitespace(c) && (c != ' ' || isWhitespace(text.charAt(i - 1)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //Same character class as \s in java.util.regex.
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
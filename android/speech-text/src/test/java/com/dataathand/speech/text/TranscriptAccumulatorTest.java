@@ -0,0 +1,166 @@
+package com.dataathand.speech.text;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TranscriptAccumulatorTest {
+
+    private static final String[] SEGMENTS = {
+            "compare steps of last winter", "  with this winter ", "hours slept from January 2022", "February 2020",
+            "heart rate\tsince last Monday.", "", "weight, by day of week", "2022", " to March", "I  ", "Show me steps.",
+    };
+
+    //Replays random segments and hypotheses, comparing against chaining joinTexts() the way the modules did before.
+    private static void assertSameAsChainedJoin(boolean cleanUpCommits) {
+        final Random random = new Random(7);
+        for (int session = 0; session < 200; session++) {
+            final TranscriptAccumulator transcript = new TranscriptAccumulator(cleanUpCommits);
+            String committed = null;
+            for (int i = 0; i < 6; i++) {
+                final String hypothesis = random.nextInt(8) == 0 ? null : SEGMENTS[random.nextInt(SEGMENTS.length)];
+                assertEquals(SpeechTexts.joinTexts(committed, hypothesis), transcript.stitch(hypothesis));
+
+                final String segment = random.nextInt(8) == 0 ? null : SEGMENTS[random.nextInt(SEGMENTS.length)];
+                transcript.commit(segment);
+                if (committed != null || segment != null) {
+                    final String joined = SpeechTexts.joinTexts(committed, segment);
+                    committed = cleanUpCommits ? TranscriptAccumulator.cleanUp(joined) : joined;
+                }
+                assertEquals(committed, transcript.getCommitted());
+            }
+        }
+    }
+
+    @Test
+    public void matchesChainedJoinTexts() {
+        assertSameAsChainedJoin(false);
+    }
+
+    @Test
+    public void matchesChainedJoinTextsWithCleanUp() {
+        assertSameAsChainedJoin(true);
+    }
+
+    //The result handlers of the modules before TranscriptAccumulator, verbatim, including their uncompiled regexes.
+    private static final class BaselineModules {
+        private String accumulatedTextToPrevCycle = null;
+
+        private static String joinTexts(String left, String right) {
+            if (left == null && right == null) {
+                return null;
+            } else if (left != null && right == null) {
+                return left;
+            } else if (left == null && right != null) {
+                return right;
+            } else {
+                return (left + " " + right).trim().replaceAll("\\s+", " ");
+            }
+        }
+
+        //MicrosoftSpeechToTextModule, recognizer.recognizing.
+        String onMicrosoftRecognizing(String s) {
+            return joinTexts(accumulatedTextToPrevCycle, s);
+        }
+
+        //MicrosoftSpeechToTextModule, recognizer.recognized.
+        String onMicrosoftRecognized(String s) {
+            if (s.lastIndexOf('.') == s.length() - 1) {
+                s = s.substring(0, s.length() - 1);
+            }
+
+            if (s.length() > 1 && !s.matches("I\\s+")) {
+                s = s.substring(0, 1).toLowerCase() + s.substring(1);
+            }
+
+            accumulatedTextToPrevCycle = joinTexts(accumulatedTextToPrevCycle, s)
+                    .replaceAll("([a-zA-Z])([,.])(\\s+|$)", "$1$3")
+                    .replaceAll("(\\s+)(2022)(\\s+)", "$12020 to$3");
+            return accumulatedTextToPrevCycle;
+        }
+
+        //DefaultSpeechToTextModule, a cycle starting over with what the previous one recognized.
+        void onDefaultStartOver(String currentCycleRecognizedText) {
+            accumulatedTextToPrevCycle = joinTexts(accumulatedTextToPrevCycle, currentCycleRecognizedText);
+        }
+
+        //DefaultSpeechToTextModule, onResults and onPartialResults.
+        String onDefaultResult(String match) {
+            return accumulatedTextToPrevCycle != null ? joinTexts(accumulatedTextToPrevCycle, match) : match;
+        }
+    }
+
+    //Sentences as the Microsoft recognizer finalizes them. The baseline fails on an empty one, which it never reports.
+    private static final String[] SENTENCES = {
+            "Compare steps of last winter.", "With this winter.", "Hours slept from January 2022.", "March, 2019.",
+            "I ", "I.", "Heart rate since last Monday, by day of week.", "A", "Show me  steps\tof 2022 months.", "2022",
+    };
+
+    @Test
+    public void reproducesTheMicrosoftModuleOutput() {
+        final Random random = new Random(11);
+        for (int session = 0; session < 300; session++) {
+            final BaselineModules baseline = new BaselineModules();
+            final TranscriptAccumulator transcript = new TranscriptAccumulator(true);
+            final List<String> expected = new ArrayList<>();
+            final List<String> actual = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                final String sentence = SENTENCES[random.nextInt(SENTENCES.length)];
+                final String partial = sentence.substring(0, random.nextInt(sentence.length() + 1));
+                expected.add(baseline.onMicrosoftRecognizing(partial));
+                actual.add(transcript.stitch(partial));
+
+                expected.add(baseline.onMicrosoftRecognized(sentence));
+                transcript.commit(SpeechTexts.toSegment(sentence));
+                actual.add(transcript.getCommitted());
+            }
+            assertArrayEquals(expected.toArray(), actual.toArray());
+        }
+    }
+
+    @Test
+    public void reproducesTheDefaultModuleOutput() {
+        final Random random = new Random(13);
+        for (int session = 0; session < 300; session++) {
+            final BaselineModules baseline = new BaselineModules();
+            final TranscriptAccumulator transcript = new TranscriptAccumulator(false);
+            final List<String> expected = new ArrayList<>();
+            final List<String> actual = new ArrayList<>();
+            for (int cycle = 0; cycle < 6; cycle++) {
+                String recognized = null;
+                for (int i = random.nextInt(4); i > 0; i--) {
+                    recognized = SEGMENTS[random.nextInt(SEGMENTS.length)];
+                    expected.add(baseline.onDefaultResult(recognized));
+                    actual.add(transcript.stitch(recognized));
+                }
+                baseline.onDefaultStartOver(recognized);
+                transcript.commit(recognized);
+            }
+            assertArrayEquals(expected.toArray(), actual.toArray());
+        }
+    }
+
+    @Test
+    public void cleansUpYearRangeAcrossSegments() {
+        final TranscriptAccumulator transcript = new TranscriptAccumulator(true);
+        transcript.commit(SpeechTexts.toSegment("From January 2022"));
+        transcript.commit(SpeechTexts.toSegment("March, 2019."));
+        assertEquals("from January 2020 to march 2019", transcript.getCommitted());
+
+        transcript.reset();
+        assertNull(transcript.getCommitted());
+    }
+
+    @Test
+    public void convertsSentencesToSegments() {
+        assertEquals("show me steps", SpeechTexts.toSegment("Show me steps."));
+        assertEquals("I ", SpeechTexts.toSegment("I ."));
+        assertEquals("a", SpeechTexts.toSegment("a"));
+    }
+}
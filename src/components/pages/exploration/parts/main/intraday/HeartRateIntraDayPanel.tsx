@@ -1,4 +1,4 @@
-import React, { useState } from 'react';
+import React, { useState, useMemo } from 'react';
 import { useSelector } from 'react-redux';
 import { ReduxAppState } from '@state/types';
 import { HeartRateIntraDayData, IIntraDayHeartRatePoint, HeartRateZone } from '@core/exploration/data/types';
@@ -74,6 +74,24 @@ export const HeartRateIntraDayPanel = React.memo(() => {
     const [chartContainerHeight, setChartContainerHeight] = useState(-1)
     const [maxZoneBarWidth, setMaxZoneBarWidth] = useState(0)
 
+    //Each wearing period is drawn as a line of its own.
+    const periodLines: Array<Array<IIntraDayHeartRatePoint>> = useMemo(() => {
+        if (data == null || data.points.length === 0) {
+            return []
+        } else if (data.wearingPeriods != null) {
+            //The points are downsampled, so each period is drawn from the points within it between its own ends.
+            return data.wearingPeriods.map(period => [
+                period.start,
+                ...data.points.filter(d => d.secondOfDay > period.start.secondOfDay && d.secondOfDay < period.end.secondOfDay),
+                period.end
+            ])
+        } else {
+            const clustering = require('density-clustering');
+            const dbscan = new clustering.DBSCAN();
+            return dbscan.run(data.points, 900, 2, (a: any, b: any) => b.secondOfDay - a.secondOfDay).map((cluster: Array<number>) => cluster.map(index => data.points[index]))
+        }
+    }, [data])
+
     if (data != null && data.points.length > 0) {
 
         const chartArea: LayoutRectangle = {
@@ -83,7 +101,7 @@ export const HeartRateIntraDayPanel = React.memo(() => {
             height: chartContainerHeight - xAxisHeight - topPadding
         }
         const scaleX = scaleLinear().domain([0, 24]).range([0, chartArea.width])
-        const scaleY = scaleLinear().domain([min(data.points, d => d.value), max(data.points, d => d.value)])
+        const scaleY = scaleLinear().domain(data.statistics != null ? [data.statistics.min, data.statistics.max] : [min(data.points, d => d.value), max(data.points, d => d.value)])
             .range([chartArea.height, 0]).nice()
 
 
@@ -91,10 +109,6 @@ export const HeartRateIntraDayPanel = React.memo(() => {
             .x((d) => scaleX(d.secondOfDay / 3600))
             .y((d) => scaleY(d.value))
 
-        const clustering = require('density-clustering');
-        const dbscan = new clustering.DBSCAN();
-        const clusters = dbscan.run(data.points, 900, 2, (a: any, b: any) => b.secondOfDay - a.secondOfDay).map((cluster: Array<number>) => cluster.map(index => data.points[index]))
-
         const exerciseZones = data.zones.filter(zone => zone.name != HeartRateZone.OutOfRange)
         const exerciseZoneMinutes = sum(exerciseZones, zone => zone.minutes)
         const exerciseHrs = Math.floor(exerciseZoneMinutes / 60)
@@ -112,7 +126,7 @@ export const HeartRateIntraDayPanel = React.memo(() => {
                 <Svg width={chartContainerWidth} height={chartContainerHeight}>
                     <G {...chartArea}>
                         {
-                            clusters.map((cluster: any, index: number) => 
+                            periodLines.map((cluster, index) =>
                                 <Path key={index.toString()} d={line(cluster)} fill="transparent" stroke={Colors.accent} strokeWidth={1} />)
                         }
                         <Line x1={0} x2={chartArea.width} y={scaleY(data.restingHeartRate)} stroke={Colors.chartAvgLineColor} strokeWidth={2} strokeDasharray={"4"} />
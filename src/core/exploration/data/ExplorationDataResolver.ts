@@ -27,13 +27,14 @@ class ExplorationDataResolver {
     prevInfo?: ExplorationInfo,
     prevServiceKey?: string,
     prevData?: any,
+    loadId?: string,
   ): Promise<any> {
     const usePrevData = selectedServiceKey === prevServiceKey
     switch (explorationInfo.type) {
       case ExplorationType.B_Overview:
-        return this.loadOverviewData(explorationInfo, selectedServiceKey, usePrevData === true ? prevInfo : undefined, usePrevData === true ? prevData : null);
+        return this.loadOverviewData(explorationInfo, selectedServiceKey, usePrevData === true ? prevInfo : undefined, usePrevData === true ? prevData : null, loadId);
       case ExplorationType.B_Range:
-        return this.loadBrowseRangeData(explorationInfo, selectedServiceKey, usePrevData === true ? prevInfo : undefined, usePrevData === true ? prevData : null);
+        return this.loadBrowseRangeData(explorationInfo, selectedServiceKey, usePrevData === true ? prevInfo : undefined, usePrevData === true ? prevData : null, loadId);
       case ExplorationType.B_Day:
         return this.loadIntraDayData(explorationInfo, selectedServiceKey)
       case ExplorationType.C_Cyclic:
@@ -51,7 +52,7 @@ class ExplorationDataResolver {
     return Promise.resolve(null)
   }
 
-  private async loadBrowseRangeData(info: ExplorationInfo, selectedServiceKey: string, prevInfo?: ExplorationInfo, prevData?: any): Promise<DataSourceBrowseData> {
+  private async loadBrowseRangeData(info: ExplorationInfo, selectedServiceKey: string, prevInfo?: ExplorationInfo, prevData?: any, loadId?: string): Promise<DataSourceBrowseData> {
     const range = explorationInfoHelper.getParameterValue<[number, number]>(
       info,
       ParameterType.Range,
@@ -74,14 +75,14 @@ class ExplorationDataResolver {
       }
     }
 
-    const data = await this.loadBrowseRangeDataImpl(range, source, selectedService, prevSourceRowData!)
+    const data = await this.loadBrowseRangeDataImpl(range, source, selectedService, prevSourceRowData!, loadId)
     return {
       ...data,
       highlightedDays: info.dataDrivenQuery ? (await selectedService.fetchFilteredDates(info.dataDrivenQuery!, range[0], range[1])) : undefined
     }
   }
 
-  private async loadBrowseRangeDataImpl(range: [number, number], source: DataSourceType, service: DataService, prevData?: OverviewSourceRow): Promise<OverviewSourceRow> {
+  private async loadBrowseRangeDataImpl(range: [number, number], source: DataSourceType, service: DataService, prevData?: OverviewSourceRow, loadId?: string): Promise<OverviewSourceRow> {
     if (prevData) {
       const benchmarkStart = Date.now()
       const newQueryRegion = DateTimeHelper.subtract(range, prevData.range as [number, number])
@@ -96,7 +97,7 @@ class ExplorationDataResolver {
         //Query new parts to query
         let newPart: OverviewSourceRow | null = null
         if (newQueryRegion.rest.length > 0) {
-          newPart = await service.fetchData(source, newQueryRegion.rest[0][0], newQueryRegion.rest[0][1], false, false)
+          newPart = await service.fetchData(source, newQueryRegion.rest[0][0], newQueryRegion.rest[0][1], false, false, loadId)
         }
 
         switch (source) {
@@ -238,7 +239,7 @@ class ExplorationDataResolver {
       }
     }
 
-    const data = await service.fetchData(source, range[0], range[1])
+    const data = await service.fetchData(source, range[0], range[1], true, true, loadId)
     data.preferredValueRange = await service.getPreferredValueRange(source)
 
     data.goal = await service.getGoalValue(source)
@@ -246,7 +247,7 @@ class ExplorationDataResolver {
     return data
   }
 
-  private loadOverviewData(info: ExplorationInfo, selectedServiceKey: string, prevInfo?: ExplorationInfo, prevData?: any): Promise<OverviewData> {
+  private loadOverviewData(info: ExplorationInfo, selectedServiceKey: string, prevInfo?: ExplorationInfo, prevData?: any, loadId?: string): Promise<OverviewData> {
     const range = explorationInfoHelper.getParameterValue<[number, number]>(
       info,
       ParameterType.Range,
@@ -270,7 +271,7 @@ class ExplorationDataResolver {
           }
         }
 
-        return this.loadBrowseRangeDataImpl(range, source.type, selectedService, prevSourceRowData!)
+        return this.loadBrowseRangeDataImpl(range, source.type, selectedService, prevSourceRowData!, loadId)
       }))
       .then(async dataPerSource => ({ 
         range,
@@ -134,11 +134,27 @@ export enum HeartRateZone {
   OutOfRange = 'out',
 }
 
+export interface HeartRateIntraDayStatistics {
+  count: number;
+  min: number | null;
+  max: number | null;
+  mean: number | null;
+  boxPlot: BoxPlotInfo;
+  //Time in each zone as measured from the points, next to the minutes Fitbit reported.
+  zones: Array<{ name: HeartRateZone, seconds: number, reportedMinutes: number, hourlySeconds: Array<number> }>;
+  hourly: Array<{ hourOfDay: number, count: number, min: number | null, max: number | null, mean: number | null }>;
+}
+
 export interface HeartRateIntraDayData {
+  //Downsampled to about the width of the screen where the periods are computed natively.
   points: Array<IIntraDayHeartRatePoint>;
+  //The first and last point of each span in which the tracker was worn, found on the full series.
+  wearingPeriods?: Array<{ start: IIntraDayHeartRatePoint, end: IIntraDayHeartRatePoint }>;
   restingHeartRate: number;
   zones: Array<HeartRateZoneInfo>;
   customZones: Array<HeartRateZoneInfo>;
+  //Computed natively where available.
+  statistics?: HeartRateIntraDayStatistics;
 }
 
 export interface WeightRangedData extends OverviewSourceRow {
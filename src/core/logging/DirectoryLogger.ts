@@ -6,6 +6,8 @@ import { getVersion, getUniqueId } from 'react-native-device-info';
 import { Platform } from 'react-native';
 import { getUploadServerHostUrl } from './common';
 import { notifyError } from "./ErrorReportingService"
+import * as NativeLogWriter from "./native-log-writer"
+import * as NativeLogUpload from "./native-log-upload"
 
 export class DirectoryLogger {
 
@@ -37,27 +39,30 @@ export class DirectoryLogger {
     }
 
     async removeAllFilesInDirectory(): Promise<void> {
-        if (await exists(this.fullDirectoryPath) === true) {
+        if (NativeLogWriter.isNativeLogWriterAvailable() === true) {
+            await NativeLogWriter.removeDirectory(this.fullDirectoryPath)
+        } else if (await exists(this.fullDirectoryPath) === true) {
             await unlink(this.fullDirectoryPath)
         }
     }
 
-    async zipLogs(): Promise<{ filePath: string, mimeType: string } | null> {
-        if (await exists(this.fullDirectoryPath) === true) {
+    //On Android, the logs are already gzipped by the native writer and are shared as they are.
+    async prepareExport(): Promise<{ filePaths: Array<string>, mimeType: string } | null> {
+        if (NativeLogWriter.isNativeLogWriterAvailable() === true) {
+            const filePaths = await NativeLogWriter.exportLogs(this.fullDirectoryPath, this.sessionInfo)
+            return filePaths.length > 0 ? {
+                filePaths,
+                mimeType: '*/*'
+            } : null
+        } else if (await exists(this.fullDirectoryPath) === true) {
             await writeFile(
                 path.resolve(this.fullDirectoryPath, "info.json"),
-                JSON.stringify({
-                    sessionId: this.sessionId,
-                    platform: Platform.OS,
-                    instanceUID: getUniqueId(),
-                    appVersion: getVersion(),
-                    environment: __DEV__ ? "development" : "production"
-                }),
+                JSON.stringify(this.sessionInfo),
                 'utf8')
             let finalFilePath = path.resolve(CachesDirectoryPath, 'logs_' + path.basename(this.fullDirectoryPath) + '.zip')
             finalFilePath = await zip(this.fullDirectoryPath, finalFilePath)
             return {
-                filePath: finalFilePath,
+                filePaths: [finalFilePath],
                 mimeType: 'application/zip'
             }
         } else return null
@@ -132,6 +137,13 @@ class DebouncedFileLogger {
     async writeQueueToFile(): Promise<void> {
         console.log("write a queue to file - ", this.queue.length)
         if (this.queue.length > 0) {
+            if (NativeLogWriter.isNativeLogWriterAvailable() === true) {
+                const lines = this.queue.splice(0)
+                await NativeLogWriter.appendLines(this.fullDirectoryPath, this.fileName, lines)
+                await this.writeQueueToFile()
+                return
+            }
+
             const directoryPrepared = await this.prepareDirectory()
             if (directoryPrepared === true) {
                 const content = "\n" + this.queue.join("\n")
@@ -152,6 +164,11 @@ class DebouncedFileLogger {
     async writeQueueToBackend(host: string): Promise<void> {
         console.log("send a queue to backend - ", this.queue.length)
         if (this.queue.length > 0) {
+            if (NativeLogUpload.isNativeLogUploadAvailable() === true) {
+                const lines = this.queue.splice(0)
+                await NativeLogUpload.enqueueLines(path.resolve(host, "logs"), this.fileName, this.sessionInfo, lines)
+                return
+            }
 
             const result = await fetch(path.resolve(host, "logs"), {
                 method: 'POST',
@@ -165,12 +165,12 @@ export class SystemLogger {
 
     async exportLogs(): Promise<boolean> {
         if (this.currentLogger) {
-            const zipResult = await this.currentLogger.zipLogs()
-            if (zipResult) {
+            const exportResult = await this.currentLogger.prepareExport()
+            if (exportResult) {
                 try {
                     const shareResult = await Share.open({
-                        url: "file://" + zipResult.filePath,
-                        type: zipResult.mimeType,
+                        urls: exportResult.filePaths.map(filePath => "file://" + filePath),
+                        type: exportResult.mimeType,
                         showAppsToView: true
                     })
                     console.log(shareResult)
@@ -0,0 +1,38 @@
+import { NativeModules, Platform } from 'react-native';
+
+/**
+ * Bridge to LogUploadModule on Android, which spools log batches to disk gzipped
+ * and uploads them in the background with coalescing and exponential backoff.
+ */
+
+const nativeModule = Platform.OS === 'android' ? NativeModules.LogUpload : null
+
+export interface LogUploadStats {
+  pendingBatches: number,
+  pendingLines: number,
+  pendingBytes: number,
+  uploadedLines: number,
+  uploadedRequests: number,
+  failedAttempts: number,
+  droppedLines: number,
+  consecutiveFailures: number,
+  //Epoch millis of the next scheduled upload, or 0 if none is scheduled.
+  nextAttemptAt: number
+}
+
+export function isNativeLogUploadAvailable(): boolean {
+  return nativeModule != null
+}
+
+//Resolves once the lines are spooled, not once they are uploaded.
+export function enqueueLines(url: string, fileName: string, headers: { [key: string]: string }, lines: Array<string>): Promise<void> {
+  return nativeModule.enqueue(url, fileName, headers, lines)
+}
+
+export function flush(): Promise<void> {
+  return nativeModule.flush()
+}
+
+export function getStats(): Promise<LogUploadStats> {
+  return nativeModule.getStats()
+}
@@ -0,0 +1,26 @@
+import { NativeModules, Platform } from 'react-native';
+
+/**
+ * Bridge to LogWriterModule on Android, which appends log lines through a FileChannel and keeps rotated segments gzipped.
+ * Once a directory is written through this module, it must also be exported and removed through it.
+ */
+
+const nativeModule = Platform.OS === 'android' ? NativeModules.LogWriter : null
+
+export function isNativeLogWriterAvailable(): boolean {
+  return nativeModule != null
+}
+
+//Appends the lines, each followed by a line break, in one bridge call.
+export function appendLines(directoryPath: string, fileName: string, lines: Array<string>): Promise<void> {
+  return nativeModule.append(directoryPath, fileName, lines)
+}
+
+//Seals the logs and writes the session info. Resolves the absolute paths of every file in the directory to share.
+export function exportLogs(directoryPath: string, sessionInfo: any): Promise<Array<string>> {
+  return nativeModule.export(directoryPath, JSON.stringify(sessionInfo))
+}
+
+export function removeDirectory(directoryPath: string): Promise<void> {
+  return nativeModule.removeDirectory(directoryPath)
+}
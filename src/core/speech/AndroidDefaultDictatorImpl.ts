@@ -5,7 +5,7 @@ import { AndroidDictatorImplBase } from './AndroidDictatorImplBase';
 
 export class AndroidDictatorImpl extends AndroidDictatorImplBase {
   protected getInstallArgs(): { [key: string]: any; } | null {
-    return null
+    return { continuousDictation: true }
   }
 
   constructor() {
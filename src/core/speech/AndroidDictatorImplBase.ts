@@ -2,6 +2,8 @@ import {
   IVoiceDictatorNative,
   DictationResult,
   SpeechRecognitionEventType,
+  SpeculativeIntent,
+  SpeechMetrics,
 } from './types';
 import {
   NativeEventEmitter,
@@ -57,6 +59,15 @@ export abstract class AndroidDictatorImplBase implements IVoiceDictatorNative {
     return subscription
   }
 
+  registerIntentEventListener(listener: (intent: SpeculativeIntent) => void): EventSubscription {
+    const subscription = this.eventEmitter.addListener(
+      SpeechRecognitionEventType.EVENT_INTENT,
+      listener,
+    )
+    this.subscriptions.push(subscription);
+    return subscription
+  }
+
   start(): Promise<boolean> {
     return this.bridge.start()
   }
@@ -64,4 +75,12 @@ export abstract class AndroidDictatorImplBase implements IVoiceDictatorNative {
   stop(): Promise<boolean> {
     return this.bridge.stop()
   }
+
+  setPreprocessingContext(today: number, dataInitialDate?: number): Promise<boolean> {
+    return this.bridge.setPreprocessingContext({ today, dataInitialDate })
+  }
+
+  getMetrics(): Promise<{ [moduleName: string]: SpeechMetrics }> {
+    return this.bridge.getMetrics()
+  }
 }
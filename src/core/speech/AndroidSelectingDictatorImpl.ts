@@ -0,0 +1,24 @@
+import {
+    NativeModules,
+} from 'react-native';
+import { AndroidDictatorImplBase } from './AndroidDictatorImplBase';
+import { RecognizerBackendStats } from './types';
+
+//Prefers on-device recognition and falls back to the Microsoft service when the device cannot serve.
+export class AndroidSelectingDictatorImpl extends AndroidDictatorImplBase {
+    protected getInstallArgs(): { [key: string]: any; } | null {
+        return {
+            ...require('@credentials/microsoft_cognitive_service_speech.json'),
+            preferOnDevice: true,
+            continuousDictation: true
+        }
+    }
+
+    constructor() {
+        super(NativeModules.AndroidSelectingSpeechToText)
+    }
+
+    getBackendStats(): Promise<RecognizerBackendStats> {
+        return this.bridge.getBackendStats()
+    }
+}
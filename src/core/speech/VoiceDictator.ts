@@ -1,5 +1,5 @@
 import { Platform } from "react-native";
-import { DictationResult, IVoiceDictatorNative } from "./types";
+import { DictationResult, IVoiceDictatorNative, SpeculativeIntent, RecognizerBackendStats, SpeechMetrics } from "./types";
 
 export class VoiceDictator {
 
@@ -15,12 +15,13 @@ export class VoiceDictator {
     private voiceDictatorNative: IVoiceDictatorNative
 
     private constructor() {
-        this.voiceDictatorNative = Platform.OS === 'ios' ? new (require("./IOSDictatorImpl").IOSDictatorImpl)() : new (require("./AndroidMicrosoftDictatorImpl").AndroidMicrosoftDictatorImpl)()
+        this.voiceDictatorNative = Platform.OS === 'ios' ? new (require("./IOSDictatorImpl").IOSDictatorImpl)() : new (require("./AndroidSelectingDictatorImpl").AndroidSelectingDictatorImpl)()
     }
 
     private startEventListener: () => void = null
     private receivedEventListener: (result: DictationResult) => void = null
     private stopEventListener: (error: any) => void = null
+    private intentEventListener: (intent: SpeculativeIntent) => void = null
 
     async install(): Promise<boolean> {
         const installed = await this.voiceDictatorNative.install()
@@ -33,6 +34,14 @@ export class VoiceDictator {
                 }
             })
 
+            if (this.voiceDictatorNative.registerIntentEventListener != null) {
+                this.voiceDictatorNative.registerIntentEventListener((intent) => {
+                    if (this.intentEventListener) {
+                        this.intentEventListener(intent)
+                    }
+                })
+            }
+
             this.voiceDictatorNative.registerStartEventListener(() => {
                 if (this.startEventListener) {
                     this.startEventListener()
@@ -59,6 +68,7 @@ export class VoiceDictator {
         this.startEventListener = null
         this.stopEventListener = null
         this.receivedEventListener = null
+        this.intentEventListener = null
     }
 
     isAvailableInSystem(): Promise<boolean> {
@@ -74,6 +84,10 @@ export class VoiceDictator {
     registerStopEventListener(listener: (error: any) => void) {
         this.stopEventListener = listener
     }
+    //Only fired on platforms that parse hypotheses natively.
+    registerIntentEventListener(listener: (intent: SpeculativeIntent) => void) {
+        this.intentEventListener = listener
+    }
 
     async start(): Promise<boolean> {
         console.log("Start voice dictator.")
@@ -84,6 +98,27 @@ export class VoiceDictator {
             return false
         }
     }
+    //Lets the native side annotate transcripts for the preprocessor. Ignored on platforms without native preprocessing.
+    async setPreprocessingContext(today: number, dataInitialDate?: number): Promise<boolean> {
+        if (this.voiceDictatorNative.setPreprocessingContext != null) {
+            return this.voiceDictatorNative.setPreprocessingContext(today, dataInitialDate)
+        } else return false
+    }
+
+    //Null on platforms with a single recognizer.
+    async getBackendStats(): Promise<RecognizerBackendStats | null> {
+        if (this.voiceDictatorNative.getBackendStats != null) {
+            return this.voiceDictatorNative.getBackendStats()
+        } else return null
+    }
+
+    //Keyed by native module name. Null on platforms without native speech metrics.
+    async getMetrics(): Promise<{ [moduleName: string]: SpeechMetrics } | null> {
+        if (this.voiceDictatorNative.getMetrics != null) {
+            return this.voiceDictatorNative.getMetrics()
+        } else return null
+    }
+
     async stop(): Promise<boolean> {
         const stopped = await this.voiceDictatorNative.stop()
         if (stopped === true) {
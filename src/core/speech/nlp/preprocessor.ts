@@ -8,6 +8,7 @@ import { VariableType, PreProcessedInputText, VerbInfo, Intent } from "@data-at-
 import { inferHighlight } from "./preprocessors/preprocessor-condition";
 import { NumericConditionType } from "@data-at-hand/core/exploration/ExplorationInfo";
 import { DataSourceType } from "@data-at-hand/core";
+import { getUsableNativeAnnotations, convertNativeAnnotation } from "./preprocessors/preprocessor-native";
 
 compromise.extend(require('compromise-numbers'))
 
@@ -37,10 +38,37 @@ export async function preprocess(speech: string, options: NLUOptions, guidedData
         return quickPassWithTemplate
     }
 
+    //Annotations made natively during dictation stand in for chrono and the template rules.
+    const nativeAnnotations = getUsableNativeAnnotations(speech, options)
+
     //Find time========================================================================================
 
     const pipeResult = await runPipe(speech,
         definePipe("extract-time-expressions", async (input) => {
+            if (nativeAnnotations != null) {
+                const replacements = new Array<{ id: string, start: number, end: number }>()
+                nativeAnnotations.items.forEach(item => {
+                    const converted = convertNativeAnnotation(item)
+                    if (converted != null) {
+                        const id = makeVariableId()
+                        input.variables[id] = {
+                            id,
+                            originalText: item.text,
+                            type: converted.type,
+                            value: converted.value,
+                            additionalInfo: converted.additionalInfo
+                        }
+                        replacements.push({ id, start: item.start, end: item.end })
+                    }
+                })
+
+                //Replace from the back so that the native offsets stay valid.
+                replacements.sort((a, b) => b.start - a.start).forEach(r => {
+                    input.processedSpeech = input.processedSpeech.substr(0, r.start) + r.id + input.processedSpeech.substring(r.end, input.processedSpeech.length)
+                })
+                return input
+            }
+
             const parsedTimeVariables = extractTimeExpressions(input.processedSpeech, options.getToday(), options)
             let indexShift = 0
             parsedTimeVariables.forEach(variable => {
@@ -58,6 +86,11 @@ export async function preprocess(speech: string, options: NLUOptions, guidedData
             return input
         }),
         definePipe("extract-data-sources", (input) => {
+            if (nativeAnnotations != null) {
+                //Already extracted with the time expressions.
+                return input
+            }
+
             DATASOURCE_VARIABLE_RULES.concat(CYCLIC_TIME_RULES).forEach(rule => {
                 input.processedSpeech = input.processedSpeech.replace((rule.regex as any).test != null ? rule.regex : (rule.regex as any)(), (match) => {
                     const id = makeVariableId()
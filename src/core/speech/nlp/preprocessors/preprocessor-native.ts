@@ -0,0 +1,56 @@
+import { NLUOptions } from "../types";
+import { DateTimeHelper } from "@data-at-hand/core/utils/time";
+import { DataSourceType } from "@data-at-hand/core/measure/DataSourceSpec";
+import { CyclicTimeFrame } from "@data-at-hand/core/exploration/CyclicTimeFrame";
+import { VariableType } from '@data-at-hand/core/speech/types';
+import { NativeSpeechAnnotations, NativeSpeechAnnotation } from "../../types";
+
+const DATA_SOURCE_VALUES: { [key: string]: DataSourceType } = {
+    "StepCount": DataSourceType.StepCount,
+    "HeartRate": DataSourceType.HeartRate,
+    "HoursSlept": DataSourceType.HoursSlept,
+    "SleepRange": DataSourceType.SleepRange,
+    "Weight": DataSourceType.Weight
+}
+
+const TIME_CYCLE_VALUES: { [key: string]: CyclicTimeFrame } = {
+    "DayOfWeek": CyclicTimeFrame.DayOfWeek,
+    "MonthOfYear": CyclicTimeFrame.MonthOfYear
+}
+
+/**
+ * The native annotations replace chrono and the template rules only when they were made for the same text and the same day,
+ * and the native side understood every time cue in it.
+ */
+export function getUsableNativeAnnotations(normalizedSpeech: string, options: NLUOptions): NativeSpeechAnnotations | null {
+    const annotations = options.nativeAnnotations
+    if (annotations != null && annotations.complete === true
+        && annotations.normalizedText === normalizedSpeech
+        && annotations.today === DateTimeHelper.toNumberedDateFromDate(options.getToday())) {
+        return annotations
+    } else return null
+}
+
+//Verbs are left to compromise, which also feeds the highlight inference.
+export function convertNativeAnnotation(item: NativeSpeechAnnotation): { type: VariableType, value: any, additionalInfo?: any } | null {
+    switch (item.kind) {
+        case "date":
+            return { type: VariableType.Date, value: item.value, additionalInfo: item.preposition || undefined }
+        case "period":
+            return {
+                type: VariableType.Period,
+                value: item.value,
+                additionalInfo: {
+                    "isPeriodCertain": item.isPeriodCertain || undefined,
+                    "conjunctionTo": item.conjunctionTo || undefined,
+                    "beforeConjunction": item.beforeConjunction || undefined,
+                    "afterConjunction": item.afterConjunction || undefined
+                }
+            }
+        case "dataSource":
+            return DATA_SOURCE_VALUES[item.value as string] != null ? { type: VariableType.DataSource, value: DATA_SOURCE_VALUES[item.value as string] } : null
+        case "timeCycle":
+            return TIME_CYCLE_VALUES[item.value as string] != null ? { type: VariableType.TimeCycle, value: TIME_CYCLE_VALUES[item.value as string] } : null
+        default: return null
+    }
+}
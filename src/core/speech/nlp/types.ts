@@ -4,12 +4,14 @@ import { SpeechContext } from "@data-at-hand/core/speech/SpeechContext"
 import { NLUResult } from "@data-at-hand/core/speech/types"
 import { STRING_SET_ALPHABETS, randomString, STRING_SET_NUMBERS } from "@data-at-hand/core/utils"
 import { DataSourceType } from "@data-at-hand/core"
+import { NativeSpeechAnnotations } from "../types"
 
 export interface NLUOptions {
     getToday: () => Date,
     getGoal: (dataSource: DataSourceType) => Promise<number | undefined>,
     dataInitialDate?: number,
-    measureUnit: MeasureUnitType
+    measureUnit: MeasureUnitType,
+    nativeAnnotations?: NativeSpeechAnnotations
 }
 
 export function makeVariableId() {
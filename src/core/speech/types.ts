@@ -7,7 +7,96 @@ export enum Command{
 export interface DictationResult{
     text: string,
     segments: Array<{text: string, confidence: number}>,
-    diffResult?: Array<{value: string, added?: boolean, removed?: boolean}>
+    diffResult?: Array<{value: string, added?: boolean, removed?: boolean}>,
+    annotations?: NativeSpeechAnnotations
+}
+
+//Time expressions, data sources, time cycles and the verb tagged natively while dictating.
+//Offsets refer to normalizedText, which is the text preprocess() works on.
+export interface NativeSpeechAnnotations{
+    normalizedText: string,
+    today: number,
+    complete: boolean,
+    items: Array<NativeSpeechAnnotation>
+}
+
+export interface NativeSpeechAnnotation{
+    kind: "date" | "period" | "dataSource" | "timeCycle" | "verb",
+    start: number,
+    end: number,
+    text: string,
+    value: number | [number, number] | string,
+    preposition?: string,
+    isPeriodCertain?: boolean,
+    conjunctionTo?: boolean,
+    beforeConjunction?: string,
+    afterConjunction?: string
+}
+
+//The likely intent of the current hypothesis, parsed natively while dictating.
+//stability grows from 0 to 1 as consecutive hypotheses agree, so callers can decide how early to act on it.
+export interface SpeculativeIntent{
+    normalizedText: string,
+    intent: string | null,
+    dataSource: string | null,
+    timeCycle: string | null,
+    range?: [number, number],
+    timeExpressionCount: number,
+    complete: boolean,
+    stability: number,
+    isFinal: boolean,
+    parseMicros?: number,
+    reuseRatio?: number,
+    sinceLastAudioFrameMillis?: number
+}
+
+//Health and time to the first result of each recognizer the native side can choose from.
+export interface RecognizerBackendStats{
+    current: string | null,
+    backends: Array<{
+        name: string,
+        onDevice: boolean,
+        available: boolean,
+        healthy: boolean,
+        selected: number,
+        succeeded: number,
+        failed: number,
+        consecutiveFailures: number,
+        retryInMillis: number,
+        latencySamples: number,
+        lastTimeToFirstResultMillis: number,
+        smoothedTimeToFirstResultMillis: number
+    }>
+}
+
+//Percentiles are upper bounds of histogram buckets, within a sixteenth of the exact value.
+export interface LatencyHistogramSnapshot{
+    count: number,
+    mean: number,
+    p50: number,
+    p90: number,
+    p99: number,
+    max: number
+}
+
+//Counters and latency histograms of one recognizer module since the app process started.
+export interface SpeechMetrics{
+    sessions: number,
+    errors: number,
+    fallbacks: number,
+    partials: number,
+    finals: number,
+    sessionMillis: number,
+    partialRateHz: number,
+    overrunBytes: number,
+    overrunSessions: number,
+    restarts: number,
+    installMillis: LatencyHistogramSnapshot,
+    startLatencyMillis: LatencyHistogramSnapshot,
+    firstPartialMillis: LatencyHistogramSnapshot,
+    partialIntervalMillis: LatencyHistogramSnapshot,
+    stopLatencyMillis: LatencyHistogramSnapshot,
+    restartLatencyMillis: LatencyHistogramSnapshot
 }
 
 export interface IVoiceDictatorNative{
@@ -19,12 +108,18 @@ export interface IVoiceDictatorNative{
     registerStopEventListener(listener: (error: any)=>void): EventSubscription
     start(): Promise<boolean>
     stop(): Promise<boolean>
+    setPreprocessingContext?(today: number, dataInitialDate?: number): Promise<boolean>
+    registerIntentEventListener?(listener: (intent: SpeculativeIntent) => void): EventSubscription
+    getBackendStats?(): Promise<RecognizerBackendStats>
+    getMetrics?(): Promise<{ [moduleName: string]: SpeechMetrics }>
 }
 
 export enum SpeechRecognitionEventType {
     EVENT_STARTED = "speech.started",
     EVENT_STOPPED = "speech.stopped",
     EVENT_RECEIVED = "speech.received",
+    EVENT_LEVEL = "speech.level",
+    EVENT_INTENT = "speech.intent",
 }
 
 export const CHRONO_TAG_RANGE_CERTAIN = "RangeCertain"
\ No newline at end of file
@@ -19,6 +19,11 @@ export enum ServiceApiErrorType {
   QuotaLimitReached = "quota-limit",
 }
 
+export const LOAD_CANCELLED = 'CANCELLED'
+
+//A prefetched row is handed to a load only this soon after it was requested, so that it does not outlive a sync.
+const PREFETCH_LIFETIME_MILLIS = 30000
+
 export abstract class DataService {
   static readonly STORAGE_PREFIX = "@source_service:"
 
@@ -51,7 +56,14 @@ export abstract class DataService {
 
   abstract isDataSourceSupported(dataSource: DataSourceType): boolean
 
-  fetchData(dataSource: DataSourceType, start: number, end: number, includeStatistics: boolean = true, includeToday: boolean = true): Promise<OverviewSourceRow> {
+  private readonly prefetches = new Map<string, { promise: Promise<OverviewSourceRow>, requestedAt: number }>()
+
+  private static makePrefetchKey(dataSource: DataSourceType, start: number, end: number): string {
+    return dataSource + "|" + start + "|" + end
+  }
+
+  //loadId names the load the data is for, so that cancelPendingLoads() can cut it short.
+  fetchData(dataSource: DataSourceType, start: number, end: number, includeStatistics: boolean = true, includeToday: boolean = true, loadId?: string): Promise<OverviewSourceRow> {
     /*
     const today = DateTimeHelper.toNumberedDateFromDate(new Date())
     if(start > today) {
@@ -59,7 +71,46 @@ export abstract class DataService {
     }else{
       return this.fetchDataImpl(dataSource, level, start, Math.min(end, today))
     }*/
-    return this.fetchDataImpl(dataSource, start, end, includeStatistics, includeToday)
+    if (includeStatistics === true && includeToday === true) {
+      const key = DataService.makePrefetchKey(dataSource, start, end)
+      const prefetch = this.prefetches.get(key)
+      if (prefetch != null) {
+        this.prefetches.delete(key)
+        if (Date.now() - prefetch.requestedAt < PREFETCH_LIFETIME_MILLIS) {
+          //A prefetch cancelled in the meantime does not cancel this load.
+          return prefetch.promise.catch(err => err != null && err.code === LOAD_CANCELLED ?
+            this.fetchDataImpl(dataSource, start, end, includeStatistics, includeToday, loadId) : Promise.reject(err))
+        }
+      }
+    }
+    return this.fetchDataImpl(dataSource, start, end, includeStatistics, includeToday, loadId)
+  }
+
+  /**
+   * Starts loading a range that is likely to be asked for soon, e.g. while the user is still speaking.
+   * The next fetchData() of the same range with statistics and today takes over the result instead of loading it again.
+   * Cancel it with cancelPendingLoads(loadId) once it is no longer likely.
+   */
+  prefetchData(dataSource: DataSourceType, start: number, end: number, loadId: string): void {
+    const now = Date.now()
+    this.prefetches.forEach((prefetch, prefetchKey) => {
+      if (now - prefetch.requestedAt >= PREFETCH_LIFETIME_MILLIS) {
+        this.prefetches.delete(prefetchKey)
+      }
+    })
+
+    const key = DataService.makePrefetchKey(dataSource, start, end)
+    const promise = this.fetchDataImpl(dataSource, start, end, true, true, loadId)
+    this.prefetches.set(key, { promise, requestedAt: now })
+    promise.catch(err => {
+      const current = this.prefetches.get(key)
+      if (current != null && current.promise === promise) {
+        this.prefetches.delete(key)
+      }
+      if (err == null || err.code !== LOAD_CANCELLED) {
+        console.log("Prefetch failed - ", err)
+      }
+    })
   }
 
   async refreshDataToReflectRecentInfo(): Promise<void> {
@@ -74,7 +125,7 @@ export abstract class DataService {
 
   abstract fetchIntraDayData(intraDayDataSource: IntraDayDataSourceType, date: number): Promise<any>
 
-  protected abstract fetchDataImpl(dataSource: DataSourceType, start: number, end: number, includeStatistics: boolean, includeToday: boolean): Promise<OverviewSourceRow>
+  protected abstract fetchDataImpl(dataSource: DataSourceType, start: number, end: number, includeStatistics: boolean, includeToday: boolean, loadId?: string): Promise<OverviewSourceRow>
 
   abstract fetchCyclicAggregatedData(dataSource: DataSourceType, start: number, end: number, cycle: CyclicTimeFrame): Promise<GroupedData | GroupedRangeData>
 
@@ -153,6 +204,10 @@ export abstract class DataService {
 
   abstract onSystemExit(): Promise<void>
 
+  //Called when the load of loadId is superseded before it finished, e.g., because the user navigated away.
+  //Its pending fetches may then reject with an error of code LOAD_CANCELLED.
+  cancelPendingLoads(loadId: string): void { }
+
   abstract isQuotaLimited: boolean
   abstract getLeftQuota(): Promise<number>
   abstract getQuotaResetEpoch(): Promise<number>
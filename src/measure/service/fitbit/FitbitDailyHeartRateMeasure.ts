@@ -23,8 +23,8 @@ export class FitbitDailyHeartRateMeasure extends FitbitSummaryLogMeasure<FitbitD
     return queryResultEntry.value.restingHeartRate;
   }
 
-  async fetchData(startDate: number, endDate: number, includeStatistics: boolean, includeToday: boolean): Promise<any> {
-    const rangedData = await super.fetchPreliminaryData(startDate, endDate, includeStatistics);
+  async fetchData(startDate: number, endDate: number, includeStatistics: boolean, includeToday: boolean, loadId?: string): Promise<any> {
+    const rangedData = await super.fetchPreliminaryData(startDate, endDate, includeStatistics, loadId);
     const base = {
       source: DataSourceType.HeartRate,
       data: rangedData.list,
@@ -29,8 +29,8 @@ export class FitbitDailyStepMeasure extends FitbitSummaryLogMeasure<FitbitDailyA
     return Number.parseInt(queryResultEntry.value)
   }
 
-  async fetchData(startDate: number, endDate: number, includeStatistics: boolean, includeToday: boolean): Promise<StepCountRangedData> {
-    const rangedData = await super.fetchPreliminaryData(startDate, endDate, includeStatistics)
+  async fetchData(startDate: number, endDate: number, includeStatistics: boolean, includeToday: boolean, loadId?: string): Promise<StepCountRangedData> {
+    const rangedData = await super.fetchPreliminaryData(startDate, endDate, includeStatistics, loadId)
     const base = {
       source: DataSourceType.StepCount,
       data: rangedData.list,
@@ -1,8 +1,15 @@
 import { FitbitIntraDayMeasure } from './FitbitIntraDayMeasure';
 import { FitbitHeartRateIntraDayQueryResult } from './types';
 import { FitbitLocalTableName, HeartRateIntraDayInfo, INTRADAY_SEPARATOR_WITHIN, INTRADAY_SEPARATOR_BETWEEN } from './sqlite/database';
-import { IIntraDayHeartRatePoint, HeartRateIntraDayData, HeartRateZone } from '@core/exploration/data/types';
+import { IIntraDayHeartRatePoint, HeartRateIntraDayData, HeartRateIntraDayStatistics, HeartRateZone } from '@core/exploration/data/types';
 import { DateTimeHelper } from '@data-at-hand/core/utils/time';
+import { Dimensions } from 'react-native';
+import * as NativeIntradayStorage from './sqlite/native-intraday-storage';
+import * as NativeStatistics from './sqlite/native-statistics';
+import * as NativeDownsampling from './sqlite/native-downsampling';
+
+//Points further apart than this belong to different wearing periods.
+const WEARING_PERIOD_GAP_SECONDS = 900
 
 export class FitbitIntraDayHeartRateMeasure extends FitbitIntraDayMeasure<HeartRateIntraDayData, FitbitHeartRateIntraDayQueryResult> {
   displayName: string = "Heart rate intraday"
@@ -71,6 +78,8 @@ export class FitbitIntraDayHeartRateMeasure extends FitbitIntraDayMeasure<HeartR
 
     if (dbEntries.length > 0) {
       await this.core.fitbitLocalDbManager.insert(FitbitLocalTableName.HeartRateIntraDayInfo, dbEntries)
+      const dates = dbEntries.map(d => d.numberedDate)
+      await this.core.fitbitLocalDbManager.compactIntradayTable(FitbitLocalTableName.HeartRateIntraDayInfo, Math.min(...dates), Math.max(...dates))
     }
 
     return dbEntries.map(d => d.numberedDate)
@@ -82,14 +91,43 @@ export class FitbitIntraDayHeartRateMeasure extends FitbitIntraDayMeasure<HeartR
 
   protected async fetchLocalData(date: number): Promise<HeartRateIntraDayData> {
 
-    const summaries = await this.core.fitbitLocalDbManager.fetchData<HeartRateIntraDayInfo>(FitbitLocalTableName.HeartRateIntraDayInfo, "`numberedDate` = ?", [date])
+    const isNative = NativeIntradayStorage.isNativeIntradayStorageAvailable()
+    const summaries = await this.core.fitbitLocalDbManager.fetchData<HeartRateIntraDayInfo>(FitbitLocalTableName.HeartRateIntraDayInfo, "`numberedDate` = ?", [date],
+      isNative ? ["numberedDate", "restingHeartRate", "customZones", "zones"] : undefined)
     const summary: HeartRateIntraDayInfo = summaries.length > 0 ? summaries[0] : null
 
+    let points: Array<IIntraDayHeartRatePoint> = []
+    let wearingPeriods: HeartRateIntraDayData["wearingPeriods"] = undefined
+    let statistics: HeartRateIntraDayStatistics = undefined
+    if (summary != null) {
+      if (isNative && NativeDownsampling.isNativeDownsamplingAvailable()) {
+        //The chart spans about the width of the screen, so no more points than that cross the bridge.
+        const [series, nativeStatistics] = await Promise.all([
+          NativeDownsampling.downsample(this.key, date, date, Dimensions.get('window').width, 'lttb', WEARING_PERIOD_GAP_SECONDS),
+          NativeStatistics.isNativeStatisticsAvailable() ? NativeStatistics.getHeartRateStatistics(date) : Promise.resolve(undefined)
+        ])
+        points = series.x.map((secondOfDay, i) => ({ secondOfDay, value: series.value[i] }))
+        wearingPeriods = series.periodStartX.map((secondOfDay, i) => ({
+          start: { secondOfDay, value: series.periodStartValue[i] },
+          end: { secondOfDay: series.periodEndX[i], value: series.periodEndValue[i] }
+        }))
+        statistics = nativeStatistics
+      } else if (isNative) {
+        [points, statistics] = await Promise.all([
+          NativeIntradayStorage.readHeartRatePoints(date).then(p => p || []),
+          NativeStatistics.isNativeStatisticsAvailable() ? NativeStatistics.getHeartRateStatistics(date) : Promise.resolve(undefined)
+        ])
+      } else if (summary.points) {
+        points = (summary.points as any as string).split(INTRADAY_SEPARATOR_BETWEEN).map(pointString => {
+          const split = pointString.split(INTRADAY_SEPARATOR_WITHIN)
+          return { secondOfDay: Number.parseInt(split[0]), value: Number.parseInt(split[1]) }
+        })
+      }
+    }
+
     return summary ? {
-      points: summary.points ? (summary.points as any as string).split(INTRADAY_SEPARATOR_BETWEEN).map(pointString => {
-        const split = pointString.split(INTRADAY_SEPARATOR_WITHIN)
-        return { secondOfDay: Number.parseInt(split[0]), value: Number.parseInt(split[1]) }
-      }) : [],
+      points,
+      wearingPeriods,
       customZones: summary.customZones ? JSON.parse(summary.customZones) : [],
       zones: summary.zones ? (summary.zones as any as string).split(INTRADAY_SEPARATOR_BETWEEN).map(zoneString => {
         const split = zoneString.split(INTRADAY_SEPARATOR_WITHIN)
@@ -101,7 +139,8 @@ export class FitbitIntraDayHeartRateMeasure extends FitbitIntraDayMeasure<HeartR
           name: split[4] as any
         }
       }) : [],
-      restingHeartRate: summary.restingHeartRate
+      restingHeartRate: summary.restingHeartRate,
+      statistics: statistics || undefined
     } : null
   }
 }
@@ -5,6 +5,7 @@ import * as d3Array from 'd3-array';
 import { FitbitLocalTableName, INTRADAY_SEPARATOR_BETWEEN } from "./sqlite/database";
 import { DateTimeHelper } from "@data-at-hand/core/utils/time";
 import { getNumberSequence } from "@data-at-hand/core/utils";
+import * as NativeIntradayStorage from "./sqlite/native-intraday-storage";
 
 const HOUR_OF_DAY_SEQUENCE = getNumberSequence(0, 23)
 
@@ -54,6 +55,8 @@ export class FitbitIntraDayStepMeasure extends FitbitIntraDayMeasure<StepCountIn
 
         if (dbEntries.length > 0) {
             await this.core.fitbitLocalDbManager.insert(FitbitLocalTableName.StepCountIntraDay, dbEntries)
+            const dates = dbEntries.map(d => d.numberedDate)
+            await this.core.fitbitLocalDbManager.compactIntradayTable(FitbitLocalTableName.StepCountIntraDay, Math.min(...dates), Math.max(...dates))
         }
 
         return dbEntries.map(d => d.numberedDate)
@@ -64,6 +67,11 @@ export class FitbitIntraDayStepMeasure extends FitbitIntraDayMeasure<StepCountIn
     }
 
     protected async fetchLocalData(date: number): Promise<StepCountIntraDayData> {
+        if (NativeIntradayStorage.isNativeIntradayStorageAvailable()) {
+            const hourlySteps = await NativeIntradayStorage.readHourlySteps(date)
+            return hourlySteps != null ? { numberedDate: date, hourlySteps } as StepCountIntraDayData : null
+        }
+
         const list = await this.core.fitbitLocalDbManager.fetchData<StepCountIntraDayData>(FitbitLocalTableName.StepCountIntraDay, "`numberedDate` = ?", [date])
         if (list.length > 0) {
             const result = list[0]
@@ -15,6 +15,7 @@ import { FitbitIntraDayHeartRateMeasure } from './FitbitIntraDayHeartRateMeasure
 import { GroupedData, GroupedRangeData, IAggregatedValue, IAggregatedRangeValue, FilteredDailyValues, BoxPlotInfo } from '@core/exploration/data/types';
 import { CyclicTimeFrame, CycleDimension } from '@data-at-hand/core/exploration/CyclicTimeFrame';
 import { FitbitLocalTableName } from './sqlite/database';
+import * as NativeSeriesStream from './sqlite/native-series-stream';
 import { DataDrivenQuery, NumericConditionType } from '@data-at-hand/core/exploration/ExplorationInfo';
 import { FitbitServiceMeasureBase } from './FitbitServiceMeasureBase';
 
@@ -159,17 +160,18 @@ export default class FitbitService extends DataService {
     end: number,
     includeStatistics: boolean,
     includeToday: boolean,
+    loadId?: string,
   ): Promise<any> {
     switch (dataSource) {
       case DataSourceType.StepCount:
-        return await this.dailyStepMeasure.fetchData(start, end, includeStatistics, includeToday);
+        return await this.dailyStepMeasure.fetchData(start, end, includeStatistics, includeToday, loadId);
       case DataSourceType.HeartRate:
-        return await this.dailyHeartRateMeasure.fetchData(start, end, includeStatistics, includeToday);
+        return await this.dailyHeartRateMeasure.fetchData(start, end, includeStatistics, includeToday, loadId);
       case DataSourceType.HoursSlept:
       case DataSourceType.SleepRange:
         return await this.sleepMeasure.fetchData(dataSource, start, end, includeStatistics, includeToday);
       case DataSourceType.Weight:
-        return await this.weightLogMeasure.fetchData(start, end, includeStatistics, includeToday);
+        return await this.weightLogMeasure.fetchData(start, end, includeStatistics, includeToday, loadId);
     }
   }
 
@@ -310,10 +312,8 @@ export default class FitbitService extends DataService {
   async refreshDataToReflectRecentInfo(): Promise<void> {
     const now = DateTimeHelper.toNumberedDateFromDate(this.core.getToday());
 
-    for (const measure of this.preloadableMeasures) {
-      await measure.cacheServerData(now);
-    }
-
+    //The native sync runs the measures side by side under one shared rate limit.
+    await Promise.all(this.preloadableMeasures.map(measure => measure.cacheServerData(now)));
   }
 
 
@@ -330,13 +330,11 @@ export default class FitbitService extends DataService {
       if (accessToken != null) {
         const now = DateTimeHelper.toNumberedDateFromDate(this.core.getToday());
 
-        for (const measure of this.preloadableMeasures) {
-          progressHandler({
-            progress: 0,
-            message: `Fetching ${measure.displayName} data...`
-          })
-          await measure.cacheServerData(now);
-        }
+        progressHandler({
+          progress: 0,
+          message: `Fetching ${this.preloadableMeasures.map(measure => measure.displayName).join(', ')} data...`
+        })
+        await Promise.all(this.preloadableMeasures.map(measure => measure.cacheServerData(now)));
 
         return {
           success: true,
@@ -366,6 +364,12 @@ export default class FitbitService extends DataService {
     await this.core.fitbitLocalDbManager.close();
   }
 
+  cancelPendingLoads(loadId: string): void {
+    if (NativeSeriesStream.isNativeSeriesStreamAvailable()) {
+      NativeSeriesStream.cancelLoad(loadId)
+    }
+  }
+
   getMembershipStartDate(): Promise<number> {
     return this.core.getMembershipStartDate()
   }
@@ -4,7 +4,6 @@ import { makeFitbitSleepApiUrl, FITBIT_DATE_FORMAT } from './api';
 import { DateTimeHelper } from '@data-at-hand/core/utils/time';
 import {
   parse,
-  getDay,
   parseISO,
   differenceInSeconds,
   startOfDay,
@@ -30,7 +29,9 @@ import {
   INTRADAY_SEPARATOR_WITHIN,
   INTRADAY_SEPARATOR_BETWEEN,
 } from './sqlite/database';
+import { makeCyclicGrouping, makeCycleDimensionGrouping } from './sqlite/native-aggregation';
 import { SQLiteHelper } from '@utils/sqlite-helper';
+import { DateSequenceCache } from '@utils/DateSequenceCache';
 import {
   CyclicTimeFrame,
   CycleDimension,
@@ -88,6 +89,7 @@ export class FitbitSleepMeasure extends FitbitRangeMeasure<
     entries: Array<any>,
     now: Date,
   ): Promise<void> {
+    const cycleKeysOf = DateSequenceCache.makeCycleKeyLookup(entries.map(entry => DateTimeHelper.fromFormattedString(entry.dateOfSleep)))
     const entriesReady = entries
       .map(entry => {
         if (entry.isMainSleep === true) {
@@ -124,9 +126,7 @@ export class FitbitSleepMeasure extends FitbitRangeMeasure<
               })
               .join(INTRADAY_SEPARATOR_BETWEEN),
             numberedDate,
-            year: DateTimeHelper.getYear(numberedDate),
-            month: DateTimeHelper.getMonth(numberedDate),
-            dayOfWeek: getDay(date),
+            ...cycleKeysOf(numberedDate),
           };
         } else return null;
       })
@@ -261,7 +261,9 @@ export class FitbitSleepMeasure extends FitbitRangeMeasure<
 
   async fetchHoursSleptCyclicGroupedData(start: number, end: number, cycleType: CyclicTimeFrame,
   ): Promise<GroupedData> {
-    const result = await this.core.fitbitLocalDbManager.selectQuery(
+    const result = await this.core.fitbitLocalDbManager.selectAggregatedValues(
+      FitbitLocalTableName.SleepLog, 'lengthInSeconds', start, end,
+      makeCyclicGrouping(cycleType),
       makeCyclicGroupQuery(FitbitLocalTableName.SleepLog, start, end, cycleType,
         makeGroupSelectClause(
           'lengthInSeconds',
@@ -283,7 +285,9 @@ export class FitbitSleepMeasure extends FitbitRangeMeasure<
     end: number,
     cycleType: CyclicTimeFrame,
   ): Promise<GroupedRangeData> {
-    const result = await this.core.fitbitLocalDbManager.selectQuery(
+    const result = await this.core.fitbitLocalDbManager.selectAggregatedRanges(
+      FitbitLocalTableName.SleepLog, 'bedTimeDiffSeconds', 'wakeTimeDiffSeconds', start, end,
+      makeCyclicGrouping(cycleType),
       makeCyclicGroupQuery(
         FitbitLocalTableName.SleepLog,
         start,
@@ -302,7 +306,9 @@ export class FitbitSleepMeasure extends FitbitRangeMeasure<
     start: number,
     end: number,
   ): Promise<IAggregatedValue> {
-    const result = await this.core.fitbitLocalDbManager.selectQuery(
+    const result = await this.core.fitbitLocalDbManager.selectAggregatedValues(
+      FitbitLocalTableName.SleepLog, 'lengthInSeconds', start, end,
+      undefined,
       makeAggregatedQuery(
         FitbitLocalTableName.SleepLog,
         start,
@@ -323,7 +329,9 @@ export class FitbitSleepMeasure extends FitbitRangeMeasure<
   }
 
   async fetchHoursSleptRangeDimensionData(start: number, end: number, cycleDimension: CycleDimension): Promise<IAggregatedValue[]> {
-    const result = await this.core.fitbitLocalDbManager.selectQuery<IAggregatedValue>(
+    const result = await this.core.fitbitLocalDbManager.selectAggregatedValues<IAggregatedValue>(
+      FitbitLocalTableName.SleepLog, 'lengthInSeconds', start, end,
+      makeCycleDimensionGrouping(cycleDimension),
       makeCycleDimensionRangeQuery(
         FitbitLocalTableName.SleepLog,
         start,
@@ -345,7 +353,9 @@ export class FitbitSleepMeasure extends FitbitRangeMeasure<
     start: number,
     end: number,
   ): Promise<IAggregatedRangeValue> {
-    const result = await this.core.fitbitLocalDbManager.selectQuery(
+    const result = await this.core.fitbitLocalDbManager.selectAggregatedRanges(
+      FitbitLocalTableName.SleepLog, 'bedTimeDiffSeconds', 'wakeTimeDiffSeconds', start, end,
+      undefined,
       makeAggregatedQuery(
         FitbitLocalTableName.SleepLog,
         start,
@@ -364,7 +374,9 @@ export class FitbitSleepMeasure extends FitbitRangeMeasure<
     end: number,
     cycleDimension: CycleDimension,
   ): Promise<IAggregatedRangeValue[]> {
-    const result = await this.core.fitbitLocalDbManager.selectQuery<IAggregatedRangeValue>(
+    const result = await this.core.fitbitLocalDbManager.selectAggregatedRanges<IAggregatedRangeValue>(
+      FitbitLocalTableName.SleepLog, 'bedTimeDiffSeconds', 'wakeTimeDiffSeconds', start, end,
+      makeCycleDimensionGrouping(cycleDimension),
       makeCycleDimensionRangeQuery(
         FitbitLocalTableName.SleepLog,
         start,
@@ -1,9 +1,10 @@
 import { DateTimeHelper } from '@data-at-hand/core/utils/time';
-import { parse, getDay } from 'date-fns';
-import { FITBIT_DATE_FORMAT } from './api';
 import { FitbitRangeMeasure } from './FitbitRangeMeasure';
 import { FitbitLocalTableName, makeCyclicGroupQuery, makeAggregatedQuery, makeCycleDimensionRangeQuery } from './sqlite/database';
+import { makeCyclicGrouping, makeCycleDimensionGrouping } from './sqlite/native-aggregation';
+import * as NativeSeriesStream from './sqlite/native-series-stream';
 import { SQLiteHelper } from '@utils/sqlite-helper';
+import { DateSequenceCache } from '@utils/DateSequenceCache';
 import { GroupedData, IAggregatedValue, GroupedRangeData, FilteredDailyValues, BoxPlotInfo } from '@core/exploration/data/types';
 import { CyclicTimeFrame, CycleDimension, getCycleTypeOfDimension, getTimeKeyOfDimension } from '@data-at-hand/core/exploration/CyclicTimeFrame';
 
@@ -24,6 +25,17 @@ export abstract class FitbitSummaryLogMeasure<
 
   protected shouldReject(rowValue: number): boolean { return false }
 
+  protected async fetchAndCacheFitbitData(startDate: number, endDate: number, tryPrefetch: boolean): Promise<void> {
+    if (this.core.syncDailySummaryNatively != null) {
+      const benchMarkStart = Date.now();
+      if (await this.core.syncDailySummaryNatively(this.key, startDate, endDate, tryPrefetch) === true) {
+        console.log('Finished syncing', this.key, 'natively. Took', Date.now() - benchMarkStart, 'millis.');
+        return
+      }
+    }
+    return super.fetchAndCacheFitbitData(startDate, endDate, tryPrefetch)
+  }
+
   protected getBoxPlotInfoOfDatasetFromDb(): Promise<BoxPlotInfo> {
     return this.core.fitbitLocalDbManager.getBoxplotInfo(this.dbTableName)
   }
@@ -31,7 +43,8 @@ export abstract class FitbitSummaryLogMeasure<
   async fetchPreliminaryData(
     startDate: number,
     endDate: number,
-    includeStatistics: boolean
+    includeStatistics: boolean,
+    loadId?: string
   ): Promise<{
     list: Array<any>;
     avg: number;
@@ -43,7 +56,19 @@ export abstract class FitbitSummaryLogMeasure<
 
     const condition = "`numberedDate` BETWEEN ? AND ? ORDER BY `numberedDate`"
     const params = [startDate, endDate]
-    const list = await this.core.fitbitLocalDbManager.fetchData(this.dbTableName, condition, params)
+    //Multi-year ranges come in chunks rather than one large result, and each chunk is turned into rows as it arrives.
+    let list: Array<any>
+    if (NativeSeriesStream.isNativeSeriesStreamAvailable()) {
+      list = []
+      await NativeSeriesStream.streamSeries(this.dbTableName, ['year', 'month', 'dayOfWeek', 'value'], startDate, endDate, chunk => {
+        const { year, month, dayOfWeek, value } = chunk.columns
+        for (let i = 0; i < chunk.numberedDate.length; i++) {
+          list.push({ numberedDate: chunk.numberedDate[i], year: year[i], month: month[i], dayOfWeek: dayOfWeek[i], value: value[i] })
+        }
+      }, 0, loadId).promise
+    } else {
+      list = await this.core.fitbitLocalDbManager.fetchData(this.dbTableName, condition, params)
+    }
 
     const boxPlotInfo = await this.getBoxPlotInfoOfDataset()
 
@@ -78,19 +103,17 @@ export abstract class FitbitSummaryLogMeasure<
   //abstract formatTodayValue(value: number): Array<{text: string, type: 'unit'|'value'}>
 
   protected async handleQueryResultEntry(entries: any[], now: Date) {
+    const cycleKeysOf = DateSequenceCache.makeCycleKeyLookup(entries.map(entry => DateTimeHelper.fromFormattedString(entry.dateTime)))
     const entriesReady = entries
       .map(entry => {
         const numberedDate = DateTimeHelper.fromFormattedString(entry.dateTime);
-        const date = parse(entry.dateTime, FITBIT_DATE_FORMAT, now);
 
         const value = this.getQueryResultEntryValue(entry);
         if (value != null && Number.isNaN(value) === false && this.shouldReject(value) === false) {
           return {
             value,
             numberedDate,
-            year: DateTimeHelper.getYear(numberedDate),
-            month: DateTimeHelper.getMonth(numberedDate),
-            dayOfWeek: getDay(date),
+            ...cycleKeysOf(numberedDate),
           };
         } else return null;
       })
@@ -100,21 +123,24 @@ export abstract class FitbitSummaryLogMeasure<
   }
 
   async fetchCyclicGroupedData(start: number, end: number, cycleType: CyclicTimeFrame): Promise<GroupedData> {
-    const result = await this.core.fitbitLocalDbManager.selectQuery(makeCyclicGroupQuery(this.dbTableName, start, end, cycleType))
+    const result = await this.core.fitbitLocalDbManager.selectAggregatedValues(this.dbTableName, 'value', start, end,
+      makeCyclicGrouping(cycleType), makeCyclicGroupQuery(this.dbTableName, start, end, cycleType))
     return {
       data: result as any
     }
   }
 
   async fetchRangeGroupedData(start: number, end: number): Promise<IAggregatedValue> {
-    const result = await this.core.fitbitLocalDbManager.selectQuery(makeAggregatedQuery(this.dbTableName, start, end))
+    const result = await this.core.fitbitLocalDbManager.selectAggregatedValues(this.dbTableName, 'value', start, end,
+      undefined, makeAggregatedQuery(this.dbTableName, start, end))
     if (result.length > 0) {
       return result[0] as any
     } else return null
   }
 
   async fetchCycleRangeDimensionData(start: number, end: number, cycleDimension: CycleDimension): Promise<IAggregatedValue[]> {
-    const result = await this.core.fitbitLocalDbManager.selectQuery<IAggregatedValue>(makeCycleDimensionRangeQuery(this.dbTableName, start, end, cycleDimension))
+    const result = await this.core.fitbitLocalDbManager.selectAggregatedValues<IAggregatedValue>(this.dbTableName, 'value', start, end,
+      makeCycleDimensionGrouping(cycleDimension), makeCycleDimensionRangeQuery(this.dbTableName, start, end, cycleDimension))
     return result
   }
 
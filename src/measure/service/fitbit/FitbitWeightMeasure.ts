@@ -4,11 +4,10 @@ import { FitbitSummaryLogMeasure } from './FitbitSummaryLogMeasure';
 import {
   makeFitbitWeightTrendApiUrl,
   makeFitbitWeightLogApiUrl,
-  FITBIT_DATE_FORMAT,
 } from './api';
 import { FitbitRangeMeasure } from './FitbitRangeMeasure';
 import { DateTimeHelper } from '@data-at-hand/core/utils/time';
-import { parse, getDay } from 'date-fns';
+import { DateSequenceCache } from '@utils/DateSequenceCache';
 import { WeightRangedData, GroupedData, IAggregatedValue, FilteredDailyValues, BoxPlotInfo } from '@core/exploration/data/types';
 import { DataSourceType } from '@data-at-hand/core/measure/DataSourceSpec';
 import { FitbitLocalTableName } from './sqlite/database';
@@ -55,12 +54,14 @@ export class FitbitWeightMeasure extends FitbitServiceMeasure {
     startDate: number,
     endDate: number,
     includeStatistics: boolean,
-    includeToday: boolean
+    includeToday: boolean,
+    loadId?: string
   ): Promise<WeightRangedData> {
     const trendData = await this.trendMeasure.fetchPreliminaryData(
       startDate,
       endDate,
-      includeStatistics
+      includeStatistics,
+      loadId
     );
     const logData = await this.logMeasure.fetchData(startDate, endDate);
     const latestLog = await this.logMeasure.fetchLatestLog(startDate);
@@ -162,10 +163,10 @@ class FitbitWeightLogMeasure extends FitbitRangeMeasure<
   }
 
   protected handleQueryResultEntry(entries: Array<any>, now: Date): Promise<void> {
+    const cycleKeysOf = DateSequenceCache.makeCycleKeyLookup(entries.map(entry => DateTimeHelper.fromFormattedString(entry.date)))
     const entriesReady = entries.map(entry => {
       if (entry.weight != null) {
         const numberedDate = DateTimeHelper.fromFormattedString(entry.date);
-        const date = parse(entry.date, FITBIT_DATE_FORMAT, now);
 
         const timeSplit = entry.time.split(':');
         const hour = Number.parseInt(timeSplit[0]);
@@ -178,9 +179,7 @@ class FitbitWeightLogMeasure extends FitbitRangeMeasure<
           source: entry.source,
           numberedDate,
           secondsOfDay: hour * 3600 + minute * 60 + second,
-          year: DateTimeHelper.getYear(numberedDate),
-          month: DateTimeHelper.getMonth(numberedDate),
-          dayOfWeek: getDay(date),
+          ...cycleKeysOf(numberedDate),
         }
       } else null
     }).filter(e => e != null)
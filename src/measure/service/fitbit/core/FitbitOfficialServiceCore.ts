@@ -10,6 +10,7 @@ import { parseISO, max } from 'date-fns';
 import { SystemError } from '@utils/errors';
 import { notifyError } from '@core/logging/ErrorReportingService';
 import path from 'react-native-path';
+import * as NativeSync from '../native-sync';
 
 
 interface FitbitCredential {
@@ -344,6 +345,58 @@ export default class FitbitOfficialServiceCore implements FitbitServiceCore {
         } else return this.fetchFitbitQuery(makeFitbitSleepApiUrl(start, end))
     }
 
+    async syncDailySummaryNatively(measureKey: string, start: number, end: number, tryPrefetch: boolean): Promise<boolean> {
+        if (NativeSync.isNativeSyncAvailable(measureKey) === false) {
+            return false
+        }
+
+        const state = await this.localAsyncStorage.getObject(STORAGE_KEY_AUTH_STATE);
+        let accessToken = state != null && state.accessToken != null ? state.accessToken : await this.authenticate()
+
+        const options: NativeSync.NativeSyncOptions = {
+            accessToken,
+            measures: [{ key: measureKey, startDate: start, endDate: end, tryPrefetch: tryPrefetch === true && this.isPrefetchAvailable() }]
+        }
+        if (options.measures[0].tryPrefetch === true) {
+            options.prefetchBaseUrl = this._credential.prefetch_backend_uri
+            options.fitbitUserId = await this.getFitbitUserId()
+        }
+
+        let result: NativeSync.NativeSyncResult
+        try {
+            result = await NativeSync.sync(options)
+        } catch (err) {
+            switch (err.code) {
+                case NativeSync.NATIVE_SYNC_ERROR_CREDENTIAL:
+                    //The token may be expired. Refresh it and try once again.
+                    console.log('Fitbit token was rejected during the native sync. refresh token and try once again.')
+                    accessToken = await this.authenticate()
+                    try {
+                        result = await NativeSync.sync({ ...options, accessToken })
+                    } catch (retryError) {
+                        if (retryError.code === NativeSync.NATIVE_SYNC_ERROR_CREDENTIAL) {
+                            throw new SystemError(ServiceApiErrorType.CredentialError, "Access token invalid.")
+                        } else if (retryError.code === NativeSync.NATIVE_SYNC_ERROR_QUOTA_LIMIT) {
+                            throw new SystemError(ServiceApiErrorType.QuotaLimitReached, "Quota limit reached.")
+                        } else throw retryError
+                    }
+                    break;
+                case NativeSync.NATIVE_SYNC_ERROR_QUOTA_LIMIT:
+                    throw new SystemError(ServiceApiErrorType.QuotaLimitReached, "Quota limit reached.")
+                default:
+                    throw err
+            }
+        }
+
+        if (result.quotaRemaining >= 0) {
+            await this.localAsyncStorage.set(STORAGE_KEY_LEFT_QUOTA, result.quotaRemaining)
+            await this.localAsyncStorage.set(STORAGE_KEY_QUOTA_RESET_AT, result.quotaResetSeconds * 1000 + Date.now())
+        }
+
+        console.log('Native sync of', measureKey, 'stored', result.storedRows, 'rows in', result.storedChunks, 'chunks.')
+        return true
+    }
+
     async fetchIntradayStepCount(date: number): Promise<FitbitIntradayStepDayQueryResult> {
         return this.fetchFitbitQuery(makeFitbitIntradayActivityApiUrl("activities/steps", date))
     }
@@ -0,0 +1,55 @@
+import { NativeModules, Platform, DeviceEventEmitter, EmitterSubscription } from 'react-native';
+
+/**
+ * Bridge to FitbitSyncModule on Android, which fetches daily summaries in parallel chunks
+ * and writes them into the local cache without passing the responses through JavaScript.
+ */
+
+export const NATIVE_SYNC_MEASURE_KEYS = ['daily_step', 'resting_heart_rate', 'weight_trend']
+
+export const NATIVE_SYNC_ERROR_CREDENTIAL = 'CredentialError'
+export const NATIVE_SYNC_ERROR_QUOTA_LIMIT = 'QuotaLimitReached'
+
+const EVENT_PROGRESS = 'fitbit.sync.progress'
+
+export interface NativeSyncOptions {
+  accessToken: string
+  prefetchBaseUrl?: string
+  fitbitUserId?: string
+  maxConcurrency?: number
+  requestsPerSecond?: number
+  measures: Array<{ key: string, startDate: number, endDate: number, tryPrefetch?: boolean }>
+}
+
+export interface NativeSyncResult {
+  storedChunks: number
+  storedRows: number
+  //-1 when no Fitbit API request was made.
+  quotaRemaining: number
+  quotaResetSeconds: number
+}
+
+export interface NativeSyncProgress {
+  measureKey: string
+  completedChunks: number
+  totalChunks: number
+  storedRows: number
+}
+
+const nativeModule = Platform.OS === 'android' ? NativeModules.FitbitSync : null
+
+export function isNativeSyncAvailable(measureKey: string): boolean {
+  return nativeModule != null && NATIVE_SYNC_MEASURE_KEYS.indexOf(measureKey) >= 0
+}
+
+export function sync(options: NativeSyncOptions): Promise<NativeSyncResult> {
+  return nativeModule.sync(options)
+}
+
+export function cancel(): Promise<boolean> {
+  return nativeModule.cancel()
+}
+
+export function addProgressListener(listener: (progress: NativeSyncProgress) => void): EmitterSubscription {
+  return DeviceEventEmitter.addListener(EVENT_PROGRESS, listener)
+}
@@ -6,6 +6,8 @@ import { IIntraDayHeartRatePoint, BoxPlotInfo } from '@core/exploration/data/typ
 import { DateTimeHelper } from '@data-at-hand/core/utils/time';
 import { Lazy, fastConcatTo } from '@data-at-hand/core/utils';
 import { notifyError } from '@core/logging/ErrorReportingService';
+import * as NativeAggregation from './native-aggregation';
+import * as NativeIntradayStorage from './native-intraday-storage';
 
 SQLite.DEBUG(false);
 SQLite.enablePromise(true);
@@ -321,6 +323,9 @@ export class FitbitLocalDbManager {
         await this._dbInitPromise
 
       }
+      if (NativeAggregation.isNativeAggregationAvailable()) {
+        await NativeAggregation.close()
+      }
       await SQLite.deleteDatabase({ ...this._dbConfig });
       this._dbInitPromise = null
     } catch (e) {
@@ -355,12 +360,39 @@ export class FitbitLocalDbManager {
                 }
               }
             }
+            if (NativeAggregation.isNativeAggregationAvailable()) {
+              tx.executeSql(NativeAggregation.CREATE_ROLLUP_DIRTY_TABLE_QUERY);
+            }
           }).then(tx => db)
       })
 
+    if (NativeIntradayStorage.isNativeIntradayStorageAvailable()) {
+      //Migrate rows cached as delimited strings before the database is used, so that the native connection
+      //does not rewrite rows while this one writes them. A failed migration is resumed on the next open.
+      this._dbInitPromise = this._dbInitPromise.then(async db => {
+        await this.compactIntradayTable(FitbitLocalTableName.HeartRateIntraDayInfo)
+        await this.compactIntradayTable(FitbitLocalTableName.StepCountIntraDay)
+        return db
+      })
+    }
+
     return this._dbInitPromise
   }
 
+  /**
+   * Re-encodes the intraday column of newly inserted rows as compact blobs. Does nothing without the native module.
+   * Pass the range of the inserted rows so that only those are looked at; without it, the whole table is swept.
+   */
+  async compactIntradayTable(tableName: FitbitLocalTableName.HeartRateIntraDayInfo | FitbitLocalTableName.StepCountIntraDay, startDate?: number, endDate?: number): Promise<void> {
+    if (NativeIntradayStorage.isNativeIntradayStorageAvailable()) {
+      try {
+        await NativeIntradayStorage.compact(tableName, startDate, endDate)
+      } catch (e) {
+        console.log("Intraday compaction failed:", e)
+      }
+    }
+  }
+
   async close(): Promise<void> {
     if (this._dbInitPromise) {
       (await this._dbInitPromise).close();
@@ -395,7 +427,17 @@ export class FitbitLocalDbManager {
       'VALUES ' +
       valueTemplate;
 
-    return (await this.open())
+    const isDated = NativeAggregation.isNativeAggregationAvailable() && columnNames.indexOf('numberedDate') >= 0
+    let startDate = Number.MAX_SAFE_INTEGER
+    let endDate = Number.MIN_SAFE_INTEGER
+    if (isDated) {
+      for (const entry of entries) {
+        startDate = Math.min(startDate, entry.numberedDate)
+        endDate = Math.max(endDate, entry.numberedDate)
+      }
+    }
+
+    await (await this.open())
       .transaction(tx => {
         for (const entry of entries) {
           tx.executeSql(
@@ -403,8 +445,15 @@ export class FitbitLocalDbManager {
             columnNames.map(c => entry[c]),
           );
         }
+        //Committed with the rows, so that the rollups are refreshed however the call below fares.
+        if (isDated) {
+          NativeAggregation.insertDirtyRange(tx, tableName, startDate, endDate)
+        }
       })
-      .then(tx => { });
+
+    if (isDated) {
+      await NativeAggregation.onRowsWritten(tableName, startDate, endDate)
+    }
   }
 
   async getCachedRange(measureKey: string): Promise<ICachedRangeEntry> {
@@ -534,7 +583,49 @@ export class FitbitLocalDbManager {
     } else return null
   }
 
+  /**
+   * Runs MIN/MAX/SUM/AVG/COUNT over a column natively when possible. Passing a null grouping, which means
+   * the grouping is not supported natively, or a native failure falls back to the given SQL query.
+   */
+  async selectAggregatedValues<T>(tableName: string, columnName: string, start: number, end: number,
+    grouping: NativeAggregation.AggregationGrouping | null | undefined, fallbackQuery: string): Promise<T[]> {
+    if (NativeAggregation.isNativeAggregationAvailable() && grouping !== null) {
+      await this.open()
+      try {
+        return await NativeAggregation.aggregateValues<T>(tableName, columnName, start, end, grouping)
+      } catch (e) {
+        console.log("Native aggregation failed. Fall back to SQL:", e)
+      }
+    }
+    return this.selectQuery<T>(fallbackQuery)
+  }
+
+  /**
+   * Same as selectAggregatedValues() for two columns forming a range: avgA, minA, maxA, avgB, minB, maxB and n.
+   */
+  async selectAggregatedRanges<T>(tableName: string, columnA: string, columnB: string, start: number, end: number,
+    grouping: NativeAggregation.AggregationGrouping | null | undefined, fallbackQuery: string): Promise<T[]> {
+    if (NativeAggregation.isNativeAggregationAvailable() && grouping !== null) {
+      await this.open()
+      try {
+        return await NativeAggregation.aggregateRanges<T>(tableName, columnA, columnB, start, end, grouping)
+      } catch (e) {
+        console.log("Native aggregation failed. Fall back to SQL:", e)
+      }
+    }
+    return this.selectQuery<T>(fallbackQuery)
+  }
+
   async getBoxplotInfo(tableName: string, valueColumnName: string = 'value'): Promise<BoxPlotInfo> {
+    if (NativeAggregation.isNativeAggregationAvailable()) {
+      await this.open()
+      try {
+        return await NativeAggregation.getBoxPlotInfo(tableName, valueColumnName)
+      } catch (e) {
+        console.log("Native box plot computation failed. Fall back to SQL:", e)
+      }
+    }
+
     const median = await this.findPercentileValue(0.5, tableName, valueColumnName)
 
     const percentile25 = await this.findPercentileValue(0.25, tableName, valueColumnName)
@@ -680,22 +771,28 @@ export class FitbitLocalDbManager {
     const schemas = [
       {schema: WeightLogSchema, valueColumnName: ["value"], valueColumnNameConvert: ["kg_log"]},
       {schema: MainSleepLogSchema, valueColumnName: ["listOfLevels"], valueColumnNameConvert: ["sleep_stages"]},
-      {schema: IntraDayStepCountSchema, valueColumnName: ["hourlySteps"], valueColumnNameConvert: ["hourly_steps"]},
-      {schema: IntraDayHeartRateInfoSchema, valueColumnName: ["points", "zones"], valueColumnNameConvert:["bpm_points", "hr_zones"]},
+      {schema: IntraDayStepCountSchema, valueColumnName: ["hourlySteps"], valueColumnNameConvert: ["hourly_steps"], encodedColumnName: "hourlySteps"},
+      {schema: IntraDayHeartRateInfoSchema, valueColumnName: ["points", "zones"], valueColumnNameConvert:["bpm_points", "hr_zones"], encodedColumnName: "points"},
       
     ]
 
+    const joinedRowByDate = new Map<number, any>()
+    joinedTable.data.forEach(d => joinedRowByDate.set(d.numberedDate, d))
+
     for (const schemaInfo of schemas) {
       fastConcatTo(joinedTable.fields, schemaInfo.valueColumnNameConvert)
-      
-      const [queryResult] = await (await this.open()).executeSql(`SELECT * FROM ${schemaInfo.schema.name}`)
+
+      //Compacted intraday columns hold blobs, so they are decoded natively instead of selected.
+      const isEncoded = schemaInfo.encodedColumnName != null && NativeIntradayStorage.isNativeIntradayStorageAvailable()
+      const selectClause = isEncoded ? ["numberedDate"].concat(schemaInfo.valueColumnName.filter(c => c !== schemaInfo.encodedColumnName)).join(",") : "*"
+      const [queryResult] = await (await this.open()).executeSql(`SELECT ${selectClause} FROM ${schemaInfo.schema.name}`)
       if (queryResult) {
         if (queryResult.rows) {
           if (queryResult.rows.length > 0) {
             const rows = queryResult.rows.raw()
             if (schemaInfo.schema.columns.numberedDate) {
               rows.forEach(row => {
-                const rowInJoinedTable = joinedTable.data.find(d => d.numberedDate === row["numberedDate"])
+                const rowInJoinedTable = joinedRowByDate.get(row["numberedDate"])
                 schemaInfo.valueColumnNameConvert.forEach((columnName, i) => {
                   rowInJoinedTable[columnName] = row[schemaInfo.valueColumnName[i]]
                 })
@@ -704,6 +801,17 @@ export class FitbitLocalDbManager {
           }
         }
       }
+
+      if (isEncoded) {
+        const exported = await NativeIntradayStorage.exportAsText(schemaInfo.schema.name)
+        const convertedColumnName = schemaInfo.valueColumnNameConvert[schemaInfo.valueColumnName.indexOf(schemaInfo.encodedColumnName)]
+        exported.numberedDate.forEach((numberedDate, i) => {
+          const rowInJoinedTable = joinedRowByDate.get(numberedDate)
+          if (rowInJoinedTable) {
+            rowInJoinedTable[convertedColumnName] = exported.text[i]
+          }
+        })
+      }
     }
 
 
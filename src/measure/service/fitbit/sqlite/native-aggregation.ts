@@ -0,0 +1,141 @@
+import { NativeModules, Platform } from 'react-native';
+import { CyclicTimeFrame, CycleDimension, getCycleLevelOfDimension, getCycleTypeOfDimension, getTimeKeyOfDimension } from '@data-at-hand/core/exploration/CyclicTimeFrame';
+import { BoxPlotInfo } from '@core/exploration/data/types';
+
+/**
+ * Bridge to FitbitAggregationModule on Android.
+ * The native side returns each result column as an array of numbers, which is turned back into row objects here.
+ * It caches the results and keeps week, month and year rollups of the daily tables,
+ * so every write to an aggregated table has to record its dates with insertDirtyRange() in the same transaction,
+ * and be followed by onRowsWritten().
+ */
+
+type ColumnarResult = { [columnName: string]: Array<number | null> }
+
+export type AggregationGrouping = { groupBy: string, filterBy?: string, filterKey?: number }
+
+const nativeModule = Platform.OS === 'android' ? NativeModules.FitbitLocalAggregation : null
+
+export function isNativeAggregationAvailable(): boolean {
+  return nativeModule != null
+}
+
+function toTimeKey(cycleType: CyclicTimeFrame): string | null {
+  switch (cycleType) {
+    case CyclicTimeFrame.DayOfWeek:
+      return 'dayOfWeek'
+    case CyclicTimeFrame.MonthOfYear:
+      return 'month'
+    case CyclicTimeFrame.SeasonOfYear:
+      return 'season'
+    default:
+      return null
+  }
+}
+
+export function makeCyclicGrouping(cycleType: CyclicTimeFrame): AggregationGrouping | null {
+  const groupBy = toTimeKey(cycleType)
+  return groupBy != null ? { groupBy } : null
+}
+
+//Mirrors makeCycleDimensionRangeQuery().
+export function makeCycleDimensionGrouping(cycleDimension: CycleDimension): AggregationGrouping | null {
+  if (getCycleLevelOfDimension(cycleDimension) != "year") {
+    return null
+  }
+
+  const filterBy = toTimeKey(getCycleTypeOfDimension(cycleDimension))
+  if (filterBy == null) {
+    return null
+  }
+
+  return {
+    groupBy: filterBy === 'season' ? 'season' : 'year',
+    filterBy,
+    filterKey: getTimeKeyOfDimension(cycleDimension)
+  }
+}
+
+function toRows<T>(result: ColumnarResult): Array<T> {
+  const columnNames = Object.keys(result)
+  const length = columnNames.length > 0 ? result[columnNames[0]].length : 0
+  const rows = new Array<T>(length)
+  for (let i = 0; i < length; i++) {
+    const row: any = {}
+    for (const columnName of columnNames) {
+      row[columnName] = result[columnName][i]
+    }
+    rows[i] = row
+  }
+  return rows
+}
+
+export async function aggregateValues<T>(tableName: string, columnName: string, start: number, end: number, grouping?: AggregationGrouping): Promise<Array<T>> {
+  const result = await nativeModule.aggregateValues(tableName, columnName, start, end,
+    grouping != null ? grouping.groupBy : null,
+    grouping != null && grouping.filterBy != null ? grouping.filterBy : null,
+    grouping != null && grouping.filterKey != null ? grouping.filterKey : 0)
+  return toRows<T>(result)
+}
+
+export async function aggregateRanges<T>(tableName: string, columnA: string, columnB: string, start: number, end: number, grouping?: AggregationGrouping): Promise<Array<T>> {
+  const result = await nativeModule.aggregateRanges(tableName, columnA, columnB, start, end,
+    grouping != null ? grouping.groupBy : null,
+    grouping != null && grouping.filterBy != null ? grouping.filterBy : null,
+    grouping != null && grouping.filterKey != null ? grouping.filterKey : 0)
+  return toRows<T>(result)
+}
+
+export function getBoxPlotInfo(tableName: string, columnName: string): Promise<BoxPlotInfo> {
+  return nativeModule.getBoxPlotInfo(tableName, columnName)
+}
+
+export interface AggregationCacheStats {
+  hits: number,
+  misses: number,
+  evictions: number,
+  invalidations: number,
+  entries: number,
+  bytes: number,
+  maxBytes: number
+}
+
+//Mirrors RollupMaintainer, which creates the same table.
+const ROLLUP_DIRTY_TABLE_NAME = 'DailyRollupDirty'
+const ROLLED_UP_TABLE_NAMES = ['StepCount', 'RestingHeartRate', 'WeightTrend', 'SleepLog']
+
+export const CREATE_ROLLUP_DIRTY_TABLE_QUERY = 'CREATE TABLE IF NOT EXISTS ' + ROLLUP_DIRTY_TABLE_NAME +
+  ' (tableName TEXT NOT NULL, startDate INTEGER NOT NULL, endDate INTEGER NOT NULL)'
+
+/**
+ * Records that rows of the table between the dates were written, within the transaction that writes them,
+ * so that the rollups are refreshed even if the process dies before onRowsWritten() runs.
+ */
+export function insertDirtyRange(tx: { executeSql: (query: string, args: Array<any>) => any }, tableName: string, startDate: number, endDate: number): void {
+  if (ROLLED_UP_TABLE_NAMES.indexOf(tableName) >= 0) {
+    tx.executeSql('INSERT INTO ' + ROLLUP_DIRTY_TABLE_NAME + ' (tableName, startDate, endDate) VALUES (?, ?, ?)', [tableName, startDate, endDate])
+  }
+}
+
+//Refreshes the rollups and drops the cached aggregations over rows of the table that were just written. Dates are numbered and inclusive.
+export function onRowsWritten(tableName: string, startDate: number, endDate: number): Promise<boolean> {
+  return nativeModule.onRowsWritten(tableName, startDate, endDate)
+}
+
+export interface RollupCheckReport {
+  checkedCells: number,
+  mismatches: Array<string>
+}
+
+//Compares the rollups of the table with ones recomputed from its rows. For debugging.
+export function checkRollups(tableName: string): Promise<RollupCheckReport> {
+  return nativeModule.checkRollups(tableName)
+}
+
+export function getCacheStats(): Promise<AggregationCacheStats> {
+  return nativeModule.getCacheStats()
+}
+
+export function close(): Promise<boolean> {
+  return nativeModule.close()
+}
@@ -0,0 +1,37 @@
+import { NativeModules, Platform } from 'react-native';
+
+/**
+ * Bridge to FitbitDownsamplingModule on Android, which reduces intraday series to about as many points
+ * as the chart is wide before they cross the bridge. Results are cached natively per zoom level,
+ * the chart width rounded down to a power of two.
+ */
+
+const nativeModule = Platform.OS === 'android' ? NativeModules.FitbitLocalDownsampling : null
+
+export type DownsamplingMethod = 'lttb' | 'minmax'
+
+export interface DownsampledSeries {
+  zoomLevel: number,
+  //Seconds since the start of the start date.
+  x: Array<number>,
+  value: Array<number>,
+  //The first and last point of each period, present when a period gap was given.
+  periodStartX?: Array<number>,
+  periodStartValue?: Array<number>,
+  periodEndX?: Array<number>,
+  periodEndValue?: Array<number>
+}
+
+export function isNativeDownsamplingAvailable(): boolean {
+  return nativeModule != null
+}
+
+/**
+ * @param measureKey intraday-heartrate or intraday_step.
+ * @param method lttb keeps the shape of a line; minmax keeps the lowest and highest point of each bucket.
+ * @param periodGapSeconds when positive, the periods whose points are less than this apart are found on the full series.
+ */
+export function downsample(measureKey: string, startDate: number, endDate: number, pixelWidth: number,
+  method: DownsamplingMethod = 'lttb', periodGapSeconds: number = 0): Promise<DownsampledSeries> {
+  return nativeModule.downsample(measureKey, startDate, endDate, Math.round(pixelWidth), method, Math.round(periodGapSeconds))
+}
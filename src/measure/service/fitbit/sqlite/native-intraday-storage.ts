@@ -0,0 +1,46 @@
+import { NativeModules, Platform } from 'react-native';
+import { IIntraDayHeartRatePoint, IIntraDayStepCountLog } from '@core/exploration/data/types';
+
+/**
+ * Bridge to FitbitIntradayStorageModule on Android, which keeps intraday series as delta/varint-encoded blobs.
+ * Once a table is compacted, its intraday column must be read through this module instead of SQL.
+ */
+
+const nativeModule = Platform.OS === 'android' ? NativeModules.FitbitIntradayStorage : null
+
+//The bounds of a Java int.
+const MIN_INT = -2147483648
+const MAX_INT = 2147483647
+
+export function isNativeIntradayStorageAvailable(): boolean {
+  return nativeModule != null
+}
+
+//Converts the rows of the table between the numbered dates, both inclusive, that are still stored as delimited strings.
+//Without dates, the whole table is swept. Resolves the number of converted rows.
+export function compact(tableName: string, startDate: number = MIN_INT, endDate: number = MAX_INT): Promise<number> {
+  return nativeModule.compact(tableName, startDate, endDate)
+}
+
+export async function readHeartRatePoints(date: number): Promise<Array<IIntraDayHeartRatePoint> | null> {
+  const result: { secondOfDay: Array<number>, value: Array<number> } = await nativeModule.readHeartRatePoints(date)
+  if (result == null) {
+    return null
+  }
+
+  const points = new Array<IIntraDayHeartRatePoint>(result.secondOfDay.length)
+  for (let i = 0; i < points.length; i++) {
+    points[i] = { secondOfDay: result.secondOfDay[i], value: result.value[i] }
+  }
+  return points
+}
+
+export async function readHourlySteps(date: number): Promise<Array<IIntraDayStepCountLog> | null> {
+  const result: Array<number> = await nativeModule.readHourlySteps(date)
+  return result != null ? result.map((value, hourOfDay) => ({ hourOfDay, value })) : null
+}
+
+//Every row of the table with its intraday column in the delimited string format.
+export function exportAsText(tableName: string): Promise<{ numberedDate: Array<number>, text: Array<string> }> {
+  return nativeModule.exportAsText(tableName)
+}
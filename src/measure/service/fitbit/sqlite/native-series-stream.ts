@@ -0,0 +1,117 @@
+import { NativeModules, Platform, DeviceEventEmitter } from 'react-native';
+
+/**
+ * Bridge to FitbitSeriesStreamModule on Android, which sends long daily series in sequenced chunks
+ * instead of one large result. Each chunk is acknowledged once it is taken in, and the native reader
+ * stays at most two chunks ahead, so a slow JavaScript thread is never flooded.
+ */
+
+const EVENT_CHUNK = 'fitbit.series.chunk'
+const EVENT_ERROR = 'fitbit.series.error'
+
+export const SERIES_STREAM_ERROR_CANCELLED = 'CANCELLED'
+
+type NativeChunk = SeriesChunk & {
+  streamId: number,
+  sequence: number,
+  isLast: boolean,
+}
+
+//A chunk of rows, column by column. NULL values are null.
+export type SeriesChunk = {
+  numberedDate: Array<number>,
+  columns: { [columnName: string]: Array<number | null> }
+}
+
+type NativeError = { streamId: number, code: string, message: string }
+
+export interface SeriesStream {
+  //Resolves the number of rows once the last chunk was consumed.
+  promise: Promise<number>
+  cancel: () => void
+}
+
+const nativeModule = Platform.OS === 'android' ? NativeModules.FitbitSeriesStream : null
+
+let nextStreamId = 1
+const openStreams = new Map<number, { loadId?: string, cancel: () => void }>()
+
+export function isNativeSeriesStreamAvailable(): boolean {
+  return nativeModule != null
+}
+
+/**
+ * Streams numberedDate and the columns of the table between the numbered dates, both inclusive.
+ * Each chunk is handed to onChunk in ascending order of date and not kept afterwards,
+ * so the consumer decides what of it stays in memory.
+ * The promise rejects with code CANCELLED when the stream is cancelled, also through cancelLoad(loadId).
+ */
+export function streamSeries(tableName: string, columnNames: Array<string>, startDate: number, endDate: number,
+  onChunk: (chunk: SeriesChunk) => void, chunkSize: number = 0, loadId?: string): SeriesStream {
+  const streamId = nextStreamId++
+  let rowCount = 0
+
+  let cancel: () => void
+  const promise = new Promise<number>((resolve, reject) => {
+    let isFinished = false
+    const finish = (error?: { code: string, message: string }) => {
+      if (isFinished === true) {
+        return
+      }
+      isFinished = true
+      chunkSubscription.remove()
+      errorSubscription.remove()
+      openStreams.delete(streamId)
+      if (error != null) {
+        const err = new Error(error.message) as any
+        err.code = error.code
+        reject(err)
+      } else {
+        resolve(rowCount)
+      }
+    }
+
+    const chunkSubscription = DeviceEventEmitter.addListener(EVENT_CHUNK, (chunk: NativeChunk) => {
+      if (chunk.streamId !== streamId) {
+        return
+      }
+
+      rowCount += chunk.numberedDate.length
+      onChunk(chunk)
+
+      if (chunk.isLast === true) {
+        finish()
+      } else {
+        nativeModule.acknowledge(streamId, chunk.sequence)
+      }
+    })
+
+    const errorSubscription = DeviceEventEmitter.addListener(EVENT_ERROR, (error: NativeError) => {
+      if (error.streamId === streamId) {
+        finish(error)
+      }
+    })
+
+    //Settles at once; the native reader stops on its own thread.
+    cancel = () => {
+      nativeModule.cancel(streamId)
+      finish({ code: SERIES_STREAM_ERROR_CANCELLED, message: 'Cancelled' })
+    }
+    openStreams.set(streamId, { loadId, cancel })
+
+    nativeModule.open(streamId, tableName, columnNames, startDate, endDate, chunkSize).catch((error: any) => {
+      finish({ code: error.code, message: error.message })
+    })
+  })
+
+  return { promise, cancel }
+}
+
+//Cancels the open streams of a load whose data is no longer wanted.
+export function cancelLoad(loadId: string) {
+  openStreams.forEach(stream => {
+    if (stream.loadId === loadId) {
+      stream.cancel()
+    }
+  })
+}
@@ -0,0 +1,52 @@
+import { NativeModules, Platform } from 'react-native';
+import { BoxPlotInfo, HeartRateIntraDayStatistics } from '@core/exploration/data/types';
+
+/**
+ * Bridge to FitbitStatisticsModule on Android, which summarizes intraday series on a background thread
+ * so that large point lists are not sorted on the JavaScript thread.
+ */
+
+const nativeModule = Platform.OS === 'android' ? NativeModules.FitbitLocalStatistics : null
+
+export function isNativeStatisticsAvailable(): boolean {
+  return nativeModule != null
+}
+
+type NativeHeartRateStatistics = {
+  count: number,
+  min: number | null,
+  max: number | null,
+  mean: number | null,
+  boxPlot: BoxPlotInfo,
+  zones: { name: Array<string>, seconds: Array<number>, reportedMinutes: Array<number> },
+  hourly: { count: Array<number>, min: Array<number | null>, max: Array<number | null>, mean: Array<number | null>, zoneSeconds: Array<Array<number>> }
+}
+
+//Resolves null if the day is not cached.
+export async function getHeartRateStatistics(date: number): Promise<HeartRateIntraDayStatistics | null> {
+  const result: NativeHeartRateStatistics = await nativeModule.getHeartRateStatistics(date)
+  if (result == null) {
+    return null
+  }
+
+  return {
+    count: result.count,
+    min: result.min,
+    max: result.max,
+    mean: result.mean,
+    boxPlot: result.boxPlot,
+    zones: result.zones.name.map((name, i) => ({
+      name: name as any,
+      seconds: result.zones.seconds[i],
+      reportedMinutes: result.zones.reportedMinutes[i],
+      hourlySeconds: result.hourly.zoneSeconds[i]
+    })),
+    hourly: result.hourly.count.map((count, hourOfDay) => ({
+      hourOfDay,
+      count,
+      min: result.hourly.min[hourOfDay],
+      max: result.hourly.max[hourOfDay],
+      mean: result.hourly.mean[hourOfDay]
+    }))
+  }
+}
@@ -216,6 +216,9 @@ export interface FitbitServiceCore {
   fetchWeightLogs(start: number, end: number, prefetchMode: boolean): Promise<FitbitWeightQueryResult>
   fetchSleepLogs(start: number, end: number, prefetchMode: boolean): Promise<FitbitSleepQueryResult>
 
+  //Fetches and caches a daily summary measure on the native side. Resolves false if the measure or the platform is not supported.
+  syncDailySummaryNatively?(measureKey: string, start: number, end: number, tryPrefetch: boolean): Promise<boolean>
+
   fetchIntradayStepCount(date: number): Promise<FitbitIntradayStepDayQueryResult>
   fetchIntradayHeartRate(date: number): Promise<FitbitHeartRateIntraDayQueryResult>
 
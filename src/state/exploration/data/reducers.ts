@@ -8,6 +8,8 @@ import {
 import { Dispatch } from 'redux';
 import uuid from 'uuid';
 import { explorationDataResolver } from '@core/exploration/data/ExplorationDataResolver';
+import { DataServiceManager } from '@measure/DataServiceManager';
+import { LOAD_CANCELLED } from '@measure/service/DataService';
 
 export interface ExplorationDataState {
   info?: ExplorationInfo;
@@ -64,6 +66,11 @@ export function startLoadingForInfo(info?: ExplorationInfo, force?: boolean) {
     var currentAppState = getState();
     const explorationInfo = info || currentAppState.explorationState.info
 
+    //The previous load would be dropped anyway, so it stops reading as well.
+    if (currentAppState.explorationDataState.ongoingTaskId != null && currentAppState.explorationDataState.serviceKey != null) {
+      DataServiceManager.instance.getServiceByKey(currentAppState.explorationDataState.serviceKey).cancelPendingLoads(currentAppState.explorationDataState.ongoingTaskId)
+    }
+
     dispatch({
       type: ExplorationDataActionType.StartLoadingDataAction,
       taskId: taskId,
@@ -84,6 +91,7 @@ export function startLoadingForInfo(info?: ExplorationInfo, force?: boolean) {
         currentAppState.explorationDataState.info,
         force !==true ? currentAppState.explorationDataState.serviceKey : undefined,
         force !==true ? currentAppState.explorationDataState.data : undefined,
+        taskId,
       );
 
       currentAppState = getState();
@@ -96,6 +104,11 @@ export function startLoadingForInfo(info?: ExplorationInfo, force?: boolean) {
         } as FinishLoadingData);
       }
     } catch (err) {
+      if (err != null && err.code === LOAD_CANCELLED) {
+        //Superseded by a newer load, which reports its own result.
+        console.log('Data load cancelled:', taskId)
+        return
+      }
       console.error("error in data loading task.", err)
       //console.error('Error in data loading task: ', taskId, err, JSON.stringify(err));
       const currentAppState = getState();
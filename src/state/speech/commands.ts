@@ -2,7 +2,7 @@ import { Dispatch } from "redux";
 import { ReduxAppState, setMetadataToAction } from "../types";
 import { createBootstrapAction, createTerminateSessionAction, createUpdateDictationResultAction, createStartDictationAction, TerminationReason, createWaitAction, createSpeechAbortAction } from "./actions";
 import { VoiceDictator } from "../../core/speech/VoiceDictator";
-import { DictationResult } from "../../core/speech/types";
+import { DictationResult, SpeculativeIntent } from "../../core/speech/types";
 import { SpeechRecognizerSessionStatus } from "./types";
 import { Mutex } from 'async-mutex';
 import { SpeechContext } from "@data-at-hand/core/speech/SpeechContext";
@@ -15,9 +15,13 @@ import { Lazy } from "@data-at-hand/core/utils";
 import { notifyError } from "@core/logging/ErrorReportingService";
 import { NLUResultType, NLUResult } from "@data-at-hand/core/speech/types";
 import { dispatch } from "rxjs/internal/observable/pairs";
+import { DateTimeHelper } from "@data-at-hand/core/utils/time";
 
 const sessionMutex = new Mutex()
 
+//Speculative intents at least this stable have their data range fetched ahead of the final result.
+const PREFETCH_MIN_STABILITY = 0.66
+
 const nluCommandResolver = new Lazy(() => require("../../core/speech/nlp/nlu").default.instance as NLUCommandResolver)
 
 export function startSpeechSession(sessionId: string, speechContext: SpeechContext): (dispatch: Dispatch, getState: () => ReduxAppState) => void {
@@ -57,6 +61,34 @@ export function startSpeechSession(sessionId: string, speechContext: SpeechConte
 
             let hasDictatorStoppEventCalled: boolean = false
 
+            //Load the range the user is most likely asking for ahead of the final result. The load of the exploration takes it over.
+            //Only the latest range is kept loading; the one it replaces is cancelled.
+            const service = DataServiceManager.instance.getServiceByKey(getState().settingsState.serviceKey)
+            let prefetchKey: string | null = null
+            let prefetchLoadId: string | null = null
+            let prefetchCount = 0
+            let finalIntent: SpeculativeIntent | null = null
+            let finalIntentReceivedAt: number | null = null
+
+            VoiceDictator.instance.registerIntentEventListener(intent => {
+                if (intent.isFinal === true) {
+                    finalIntent = intent
+                    finalIntentReceivedAt = Date.now()
+                }
+
+                if (intent.dataSource != null && intent.range != null && (intent.isFinal === true || intent.stability >= PREFETCH_MIN_STABILITY)) {
+                    const key = intent.dataSource + "|" + intent.range[0] + "|" + intent.range[1]
+                    if (key !== prefetchKey) {
+                        if (prefetchLoadId != null) {
+                            service.cancelPendingLoads(prefetchLoadId)
+                        }
+                        prefetchKey = key
+                        prefetchLoadId = sessionId + ":prefetch:" + (prefetchCount++)
+                        service.prefetchData(intent.dataSource as any, intent.range[0], intent.range[1], prefetchLoadId)
+                    }
+                }
+            })
+
             VoiceDictator.instance.registerStartEventListener(() => {
                 console.log(sessionId, "dictator start event")
                 dispatch(createStartDictationAction(sessionId))
@@ -90,6 +122,9 @@ export function startSpeechSession(sessionId: string, speechContext: SpeechConte
 
                 if (error) {
                     console.log(sessionId, "Finish without dictation")
+                    if (prefetchLoadId != null) {
+                        service.cancelPendingLoads(prefetchLoadId)
+                    }
                     terminate(releaseMutex, dispatch, TerminationReason.Fail, sessionId, error)
                 } else {
                     const currentState = getState()
@@ -113,7 +148,8 @@ export function startSpeechSession(sessionId: string, speechContext: SpeechConte
                                     getToday: service.getToday,
                                     getGoal: (dataSource) => service.getGoalValue(dataSource),
                                     dataInitialDate: await service.getDataInitialDate(),
-                                    measureUnit: currentState.settingsState.unit
+                                    measureUnit: currentState.settingsState.unit,
+                                    nativeAnnotations: dictationResult.annotations
                                 }
                             )
                         } catch (err) {
@@ -128,6 +164,10 @@ export function startSpeechSession(sessionId: string, speechContext: SpeechConte
                             })
                         }
 
+                        if (finalIntent != null && finalIntentReceivedAt != null && finalIntent.sinceLastAudioFrameMillis != null) {
+                            console.log(sessionId, "Intent latency since the last audio frame:", finalIntent.sinceLastAudioFrameMillis + (Date.now() - finalIntentReceivedAt), "millis (native", finalIntent.sinceLastAudioFrameMillis, "millis)")
+                        }
+
                         const speechCommandLogId = SystemLogger.instance.logSpeechCommandResult(
                             dictationResult.text,
                             currentState.explorationState.info,
@@ -178,6 +218,12 @@ export function startSpeechSession(sessionId: string, speechContext: SpeechConte
                 }
             })
 
+            //Not awaited: the data initial date may take a while, and partial results simply go without annotations until then.
+            const preprocessingService = DataServiceManager.instance.getServiceByKey(currentState.settingsState.serviceKey)
+            preprocessingService.getDataInitialDate().then(dataInitialDate =>
+                VoiceDictator.instance.setPreprocessingContext(DateTimeHelper.toNumberedDateFromDate(preprocessingService.getToday()), dataInitialDate)
+            ).catch(err => console.log("Could not set the preprocessing context - ", err))
+
             console.log(sessionId, "Start dictator")
             await VoiceDictator.instance.start()
 
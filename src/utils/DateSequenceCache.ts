@@ -2,9 +2,16 @@ import { DateTimeHelper } from "@data-at-hand/core/utils/time"
 import { differenceInDays, addDays, subDays } from "date-fns"
 import binarySearch from 'binary-search';
 import { fastConcatTo } from "@data-at-hand/core/utils";
+import { NativeModules, Platform } from "react-native";
 
 const compareFunc = (element: number, needle: number) => element - needle
 
+//The native sequence fills the cache when it misses, through synchronous bridge calls, which are unavailable under the remote debugger.
+const nativeDateSequence = Platform.OS === 'android' && typeof (global as any).nativeCallSyncHook === 'function' ? NativeModules.DateSequence : null
+
+//The day of week (0 is Sunday), the month (1-12) and the year of each day of a range.
+export type CycleKeys = { numberedDate: Array<number>, dayOfWeek: Array<number>, month: Array<number>, year: Array<number> }
+
 export class DateSequenceCache {
 
     private static _instance: DateSequenceCache | undefined = undefined
@@ -16,6 +23,10 @@ export class DateSequenceCache {
     }
 
     static makeSequence(start: number, end: number): Array<number> {
+        if (nativeDateSequence != null) {
+            return nativeDateSequence.getSequence(start, end)
+        }
+
         const startDate = DateTimeHelper.toDate(start)
         const endDate = DateTimeHelper.toDate(end)
         const diff = differenceInDays(endDate, startDate) + 1
@@ -28,6 +39,40 @@ export class DateSequenceCache {
         return seq
     }
 
+    //Computed natively in one call where available.
+    static makeCycleKeys(start: number, end: number): CycleKeys {
+        if (nativeDateSequence != null) {
+            return nativeDateSequence.getSequenceWithCycles(start, end)
+        }
+
+        const numberedDate = DateSequenceCache.makeSequence(start, end)
+        return {
+            numberedDate,
+            dayOfWeek: numberedDate.map(date => DateTimeHelper.toDate(date).getDay()),
+            month: numberedDate.map(date => DateTimeHelper.getMonth(date)),
+            year: numberedDate.map(date => DateTimeHelper.getYear(date)),
+        }
+    }
+
+    //Buckets the dates into their cycles at once, and returns a lookup of the keys of each of them.
+    static makeCycleKeyLookup(numberedDates: Array<number>): (numberedDate: number) => { year: number, month: number, dayOfWeek: number } {
+        if (numberedDates.length === 0) {
+            return () => null
+        }
+
+        let start = numberedDates[0]
+        let end = numberedDates[0]
+        for (const date of numberedDates) {
+            start = Math.min(start, date)
+            end = Math.max(end, date)
+        }
+        const keys = DateSequenceCache.makeCycleKeys(start, end)
+        return (numberedDate: number) => {
+            const index = binarySearch(keys.numberedDate, numberedDate, compareFunc)
+            return index >= 0 ? { year: keys.year[index], month: keys.month[index], dayOfWeek: keys.dayOfWeek[index] } : null
+        }
+    }
+
     private constructor() { }
 
     private currentCache: Array<number> = null
@@ -77,7 +122,6 @@ export class DateSequenceCache {
 
 
     getSequence(start: number, end: number): Array<number> {
-
         if (this.currentCache == null || (this.currentCache[this.currentCache.length - 1] >= end && this.currentCache[0] <= start) === false) {
             //cannot get from cache
             this.prepare(DateTimeHelper.getYear(start) * 10000 + 101, DateTimeHelper.getYear(end)*10000 + 1231) // cache for one year